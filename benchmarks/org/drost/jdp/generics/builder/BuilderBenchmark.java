@@ -0,0 +1,135 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of the generic {@code Builder} compared to creating and
+ * initializing the same object by hand. Run with {@code -prof gc} to see the
+ * allocations per operation caused by the varargs and boxed arguments.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BuilderBenchmark
+{
+	@Benchmark
+	@Threads( 1 )
+	public Person builder1( ) throws Exception
+	{
+		return builder( );
+	}
+
+	@Benchmark
+	@Threads( 4 )
+	public Person builder4( ) throws Exception
+	{
+		return builder( );
+	}
+
+	/**
+	 * The reference: a hand-written instantiation.
+	 */
+	@Benchmark
+	@Threads( 1 )
+	public Person reference1( )
+	{
+		return reference( );
+	}
+
+	@Benchmark
+	@Threads( 4 )
+	public Person reference4( )
+	{
+		return reference( );
+	}
+
+	/**
+	 * A single {@code set} call by property name on an existing builder.
+	 */
+	@Benchmark
+	public Builder<Person> set( BuilderState state ) throws Exception
+	{
+		return state.builder.set( "age", 35 );
+	}
+
+	private static Person builder( ) throws Exception
+	{
+		return new Builder<Person>( Person.class ).set( "setAge", 35 ).set( "setName", "Mike" ).build( );
+	}
+
+	private static Person reference( )
+	{
+		Person p = new Person( );
+		p.setAge( 35 );
+		p.setName( "Mike" );
+		return p;
+	}
+
+	@State( Scope.Thread )
+	public static class BuilderState
+	{
+		final Builder<Person> builder;
+
+		public BuilderState( )
+		{
+			try
+			{
+				builder = new Builder<Person>( Person.class );
+			}
+			catch ( Exception e )
+			{
+				throw new IllegalStateException( e );
+			}
+		}
+	}
+
+	public static class Person
+	{
+		int age;
+
+		String name;
+
+		public void setAge( int age )
+		{
+			this.age = age;
+		}
+
+		public void setName( String name )
+		{
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building and traversing {@code Composite} trees of growing size,
+ * compared to hand-written nodes holding a raw {@code ArrayList} of children
+ * and traversed by plain recursion. The trees are complete with a fixed
+ * number of children per node.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CompositeBenchmark
+{
+	private static final int FANOUT = 8;
+
+	@Param( { "1000", "100000", "1000000" } )
+	public int size;
+
+	private Node root;
+
+	private RawNode rawRoot;
+
+	@Setup
+	public void setUp( )
+	{
+		root = build( );
+		rawRoot = buildRaw( );
+	}
+
+	@Benchmark
+	public long walk( )
+	{
+		final long[] sum = new long[1];
+
+		CompositeWalker.walk( root, new SimpleCompositeVisitor<Node>( )
+		{
+			@Override
+			public VisitResult enter( Node node )
+			{
+				sum[0] += node.value;
+				return VisitResult.CONTINUE;
+			}
+		} );
+
+		return sum[0];
+	}
+
+	@Benchmark
+	public long walkParallel( )
+	{
+		final LongAdder sum = new LongAdder( );
+
+		CompositeWalker.walkParallel( root, new SimpleCompositeVisitor<Node>( )
+		{
+			@Override
+			public VisitResult enter( Node node )
+			{
+				sum.add( node.value );
+				return VisitResult.CONTINUE;
+			}
+		} );
+
+		return sum.sum( );
+	}
+
+	/**
+	 * The reference: recursion over raw lists.
+	 */
+	@Benchmark
+	public long walkRaw( )
+	{
+		return sum( rawRoot );
+	}
+
+	@Benchmark
+	public Node build( )
+	{
+		Node root = new Node( 0 );
+		TreeBuilder<Node> builder = new TreeBuilder<Node>( root, size );
+
+		record( builder, 0 );
+		return builder.build( );
+	}
+
+	/**
+	 * The reference: appending to raw lists.
+	 */
+	@Benchmark
+	public RawNode buildRaw( )
+	{
+		RawNode root = new RawNode( 0 );
+
+		append( root );
+		return root;
+	}
+
+	/**
+	 * Records the children of the node with the specified index in pre-order.
+	 * The children of node {@code i} have the indexes {@code FANOUT * i + 1}
+	 * to {@code FANOUT * i + FANOUT}.
+	 */
+	private void record( TreeBuilder<Node> builder, int index )
+	{
+		for( int child = index * FANOUT + 1; child <= index * FANOUT + FANOUT && child < size; child++ )
+		{
+			if( child * FANOUT + 1 < size )
+			{
+				builder.begin( new Node( child ) );
+				record( builder, child );
+				builder.end( );
+			}
+			else
+			{
+				builder.add( new Node( child ) );
+			}
+		}
+	}
+
+	private void append( RawNode parent )
+	{
+		for( int child = parent.value * FANOUT + 1; child <= parent.value * FANOUT + FANOUT && child < size; child++ )
+		{
+			RawNode node = new RawNode( child );
+			parent.children.add( node );
+			append( node );
+		}
+	}
+
+	private static long sum( RawNode node )
+	{
+		long sum = node.value;
+
+		for( RawNode child : node.children )
+			sum += sum( child );
+
+		return sum;
+	}
+
+	public static class Node extends Composite<Node>
+	{
+		final int value;
+
+		Node( int value )
+		{
+			this.value = value;
+		}
+	}
+
+	public static class RawNode
+	{
+		final int value;
+
+		final List<RawNode> children = new ArrayList<RawNode>( );
+
+		RawNode( int value )
+		{
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures recording a history of growing size with each of the
+ * {@code Caretaker} implementations, compared to appending the states to a
+ * raw {@code ArrayList}. Each invocation records a complete history into a
+ * new caretaker, so the time per operation shows how the cost grows with the
+ * history size and {@code -prof gc} shows the memory needed per history.
+ * <p>
+ * The delta caretakers store the differences between consecutive states,
+ * which share a common prefix. The journal syncs to a temporary directory
+ * with its default settings. Creating and closing the caretakers is not
+ * measured.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CaretakerBenchmark
+{
+	@Param( { "1000", "100000" } )
+	public int history;
+
+	private Originator<String> originator;
+
+	private String[] states;
+
+	private IndexedCaretaker<String> indexed;
+
+	@Setup
+	public void setUp( )
+	{
+		originator = new Originator<String>( );
+		states = new String[history];
+
+		for( int i = 0; i < history; i++ )
+			states[i] = "State " + i;
+
+		indexed = new IndexedCaretaker<String>( );
+		for( int i = 0; i < history; i++ )
+			indexed.addMemento( new Memento<String>( "State", i, i ) );
+	}
+
+	@Benchmark
+	public int record( CaretakerState state )
+	{
+		Caretaker<String> c = state.caretaker;
+
+		for( int i = 0; i < history; i++ )
+		{
+			originator.setState( states[i] );
+			c.addMemento( originator.saveStateToMemento( ) );
+		}
+
+		return c.getMementoCount( );
+	}
+
+	/**
+	 * The reference: appending the states to a raw list.
+	 */
+	@Benchmark
+	public int recordRaw( )
+	{
+		List<String> list = new ArrayList<String>( );
+
+		for( int i = 0; i < history; i++ )
+		{
+			originator.setState( states[i] );
+			list.add( originator.getState( ) );
+		}
+
+		return list.size( );
+	}
+
+	/**
+	 * Looks up the memento current at a point in time, which should stay
+	 * logarithmic in the history size.
+	 */
+	@Benchmark
+	public Memento<String> lookupAt( )
+	{
+		return indexed.getMementoAt( history / 3 );
+	}
+
+	/**
+	 * The fresh caretaker of each invocation of {@link #record(CaretakerState)}.
+	 */
+	@State( Scope.Thread )
+	public static class CaretakerState
+	{
+		@Param( { "caretaker", "bounded", "indexed", "concurrent", "branching", "delta", "archiving", "journal" } )
+		public String type;
+
+		Caretaker<String> caretaker;
+
+		private Path directory;
+
+		@Setup( Level.Invocation )
+		public void open( CaretakerBenchmark benchmark ) throws IOException
+		{
+			caretaker = create( benchmark.history );
+		}
+
+		@TearDown( Level.Invocation )
+		public void close( ) throws IOException
+		{
+			if( caretaker instanceof Closeable )
+				( (Closeable) caretaker ).close( );
+
+			if( directory != null )
+				delete( directory );
+
+			caretaker = null;
+			directory = null;
+		}
+
+		private Caretaker<String> create( int history ) throws IOException
+		{
+			if( "bounded".equals( type ) )
+				return new BoundedCaretaker<String>( history );
+			if( "indexed".equals( type ) )
+				return new IndexedCaretaker<String>( );
+			if( "concurrent".equals( type ) )
+				return new ConcurrentCaretaker<String>( );
+			if( "branching".equals( type ) )
+				return new BranchingCaretaker<String>( new SuffixStrategy( ), 16 );
+			if( "delta".equals( type ) )
+				return new DeltaCaretaker<String>( new SuffixStrategy( ), 16 );
+			if( "archiving".equals( type ) )
+				return new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 64, 64 );
+
+			if( "journal".equals( type ) )
+			{
+				directory = Files.createTempDirectory( "journal" );
+				return new JournalCaretaker<String>( directory, new SerializableStateSerializer<String>( ) );
+			}
+
+			return new Caretaker<String>( );
+		}
+
+		private static void delete( Path directory ) throws IOException
+		{
+			Files.walkFileTree( directory, new SimpleFileVisitor<Path>( )
+			{
+				@Override
+				public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException
+				{
+					Files.delete( file );
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory( Path dir, IOException e ) throws IOException
+				{
+					Files.delete( dir );
+					return FileVisitResult.CONTINUE;
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Stores the length of the common prefix of two states and the remaining
+	 * suffix of the newer one.
+	 */
+	private static class SuffixStrategy implements DeltaStrategy<String, String[]>
+	{
+		@Override
+		public String[] diff( String from, String to )
+		{
+			int prefix = 0;
+			while( prefix < from.length( ) && prefix < to.length( ) && from.charAt( prefix ) == to.charAt( prefix ) )
+				prefix++;
+
+			return new String[] { String.valueOf( prefix ), to.substring( prefix ) };
+		}
+
+		@Override
+		public String patch( String base, String[] delta )
+		{
+			return base.substring( 0, Integer.parseInt( delta[0] ) ) + delta[1];
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of several threads recording mementos at the same
+ * time, comparing the lock-free {@code ConcurrentCaretaker} with a plain
+ * {@code Caretaker} guarded by an external lock. The throughput of the
+ * lock-free log should grow with the number of threads, while the locked one
+ * stays flat or degrades.
+ * <p>
+ * The caretakers are cleared once they hold {@link #LIMIT} mementos, so that
+ * long iterations do not run out of memory.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ConcurrentCaretakerBenchmark
+{
+	private static final int LIMIT = 1 << 20;
+
+	@Param( { "concurrent", "locked" } )
+	public String caretaker;
+
+	private final Memento<String> memento = new Memento<String>( "State" );
+
+	private ConcurrentCaretaker<String> concurrent;
+
+	private Caretaker<String> locked;
+
+	@Setup( Level.Iteration )
+	public void setUp( )
+	{
+		concurrent = new ConcurrentCaretaker<String>( );
+		locked = new Caretaker<String>( );
+	}
+
+	@Benchmark
+	@Threads( 1 )
+	public int append1( )
+	{
+		return append( );
+	}
+
+	@Benchmark
+	@Threads( 2 )
+	public int append2( )
+	{
+		return append( );
+	}
+
+	@Benchmark
+	@Threads( 4 )
+	public int append4( )
+	{
+		return append( );
+	}
+
+	@Benchmark
+	@Threads( 8 )
+	public int append8( )
+	{
+		return append( );
+	}
+
+	private int append( )
+	{
+		if( "concurrent".equals( caretaker ) )
+		{
+			int version = concurrent.append( memento );
+
+			if( version == LIMIT )
+				concurrent.clearAll( );
+
+			return version;
+		}
+
+		synchronized ( locked )
+		{
+			locked.addMemento( memento );
+
+			int count = locked.getMementoCount( );
+			if( count == LIMIT )
+				locked.clearAll( );
+
+			return count;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.singleton;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the lookup of an already created instance through
+ * {@code Singleton.getInstance(Class)} compared to the initialization-on-demand
+ * holder idiom, which the JIT reduces to a constant load. With several
+ * threads the benchmark shows whether the lookup scales without contention.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SingletonBenchmark
+{
+	@Benchmark
+	@Threads( 1 )
+	public Object singleton1( ) throws Exception
+	{
+		return Singleton.getInstance( Service.class );
+	}
+
+	@Benchmark
+	@Threads( 8 )
+	public Object singleton8( ) throws Exception
+	{
+		return Singleton.getInstance( Service.class );
+	}
+
+	/**
+	 * The reference: the holder idiom.
+	 */
+	@Benchmark
+	@Threads( 1 )
+	public Object holder1( )
+	{
+		return Holder.INSTANCE;
+	}
+
+	@Benchmark
+	@Threads( 8 )
+	public Object holder8( )
+	{
+		return Holder.INSTANCE;
+	}
+
+	public static class Service
+	{
+		private Service( )
+		{
+		}
+	}
+
+	private static final class Holder
+	{
+		static final Service INSTANCE = new Service( );
+	}
+}
@@ -20,16 +20,27 @@
 package org.drost.jdp.generics.builder;
 
 import java.io.InvalidClassException;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import org.drost.jdp.generics.reflect.ClassMetadata;
+
 public class Builder<T>
 {
 	public final T instance;
 
 	private final Class<?> clazz;
 
+	private final ClassMetadata<T> metadata;
+
+	/**
+	 * The pending flight recorder event or {@code null} if it is disabled or
+	 * has been committed.
+	 */
+	private BuilderBuildEvent event;
+
+	private int setterCount;
+
 	/**
 	 * Creates a builder object associated to a specified class type. This
 	 * builder object allows to preset any class fields by using
@@ -52,33 +63,21 @@ public class Builder<T>
 			throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, InvalidClassException
 	{
 		super( );
-		this.clazz = clazz;
-
-		@SuppressWarnings( "unchecked" )
-		Constructor<T>[] ctors = (Constructor<T>[]) clazz.getDeclaredConstructors( );
-		Constructor<T> ctor = null;
 
-		for( int i = 0; i < ctors.length; i++ )
+		BuilderBuildEvent event = new BuilderBuildEvent( );
+		if( event.isEnabled( ) )
 		{
-			
-			if( ctors[i].getGenericParameterTypes( ).length == 0 )
-			{
-				ctor = ctors[i];
-				break;
-			}
+			event.begin( );
+			this.event = event;
 		}
 
-		if( ctor != null )
-		{
-			ctor.setAccessible( true );
-			this.instance = ctor.newInstance( );
-			ctor.setAccessible( false );
-		}
-		else
-		{
+		this.clazz = clazz;
+		this.metadata = ClassMetadata.of( clazz );
+
+		if( !metadata.hasDefaultConstructor( ) )
 			throw new InvalidClassException( "The generic class type does not provide an accessible default constructor." );
-		}
-		
+
+		this.instance = metadata.newInstance( );
 	}
 
 	/**
@@ -126,6 +125,10 @@ public class Builder<T>
 	 * {@code set( "state", 5 )}. This is only possible for methods having the
 	 * same name as their associated members.
 	 * </p>
+	 * <p>
+	 * The setters of a class are resolved once and shared by all
+	 * builders of that class, see {@link ClassMetadata}.
+	 * </p>
 	 * 
 	 * @param name
 	 *            The name of the associated setter method or even the same
@@ -148,64 +151,28 @@ public class Builder<T>
 		if( name == null || name.isEmpty( ) )
 			throw new IllegalArgumentException( "Invalid property name: " + name );
 
-		// Set to lower case.
-		name.toLowerCase( );
+		setterCount++;
 
-		Class<?>[] classes = new Class<?>[values.length];
-		for( int i = 0; i < values.length; i++ )
+		String mName = ( name.startsWith( "set" ) ) ? name : ("set" + name.substring( 0, 1 ).toUpperCase( ) + name.substring( 1 ));
+
+		// Fetch associated method, resolved once per class.
+		if( values.length == 1 )
 		{
-			Class<?> type = values[i].getClass( );
-			
-			if(type.equals( Integer.class ))
-			{
-				classes[i] = int.class;
-				continue;
-			}
-			if(type.equals( Double.class ))
-			{
-				classes[i] = double.class;
-				continue;
-			}
-			if(type.equals( Short.class ))
-			{
-				classes[i] = short.class;
-				continue;
-			}
-			if(type.equals( Long.class ))
-			{
-				classes[i] = long.class;
-				continue;
-			}
-			if(type.equals( Float.class ))
-			{
-				classes[i] = float.class;
-				continue;
-			}
-			if(type.equals( Character.class ))
-			{
-				classes[i] = char.class;
-				continue;
-			}
-			if(type.equals( Boolean.class ))
+			if( metadata.set( instance, mName, values[0] ) )
+				return this;
+		}
+		else
+		{
+			Method method = metadata.findSetter( mName, values );
+
+			if( method != null )
 			{
-				classes[i] = boolean.class;
-				continue;
+				method.invoke( instance, values );
+				return this;
 			}
-			
-			classes[i] = type;
 		}
 
-		String mName = ( name.startsWith( "set" ) ) ? name : ("set" + name.substring( 0, 1 ).toUpperCase( ) + name.substring( 1 ));
-		
-		System.out.println(mName + "(" + classes[0] + ")");
-		
-		// Fetch associated method.
-		Method method = clazz.getMethod(
-				mName,
-				classes );
-
-		method.invoke( instance, values );
-		return this;
+		throw new NoSuchMethodException( clazz.getName( ) + "." + mName );
 	}
 
 	/**
@@ -221,6 +188,20 @@ public class Builder<T>
 	 */
 	public T build( )
 	{
+		if( event != null )
+		{
+			event.end( );
+
+			if( event.shouldCommit( ) )
+			{
+				event.builtClass = clazz;
+				event.setterCount = setterCount;
+				event.commit( );
+			}
+
+			event = null;
+		}
+
 		return instance;
 	}
 
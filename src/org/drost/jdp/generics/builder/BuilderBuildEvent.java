@@ -0,0 +1,49 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event covering a {@link Builder} from its creation to
+ * {@link Builder#build()}. The event is disabled by default, enable
+ * {@code org.drost.jdp.generics.BuilderBuild} in the recording settings to
+ * record it.
+ */
+@Name( "org.drost.jdp.generics.BuilderBuild" )
+@Label( "Builder Build" )
+@Description( "An instance created and initialized by a generic builder" )
+@Category( { "JDP Generics", "Builder" } )
+@Enabled( false )
+@StackTrace( false )
+final class BuilderBuildEvent extends jdk.jfr.Event
+{
+	@Label( "Built Class" )
+	Class<?> builtClass;
+
+	@Label( "Setter Count" )
+	@Description( "The number of properties set before building" )
+	int setterCount;
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads bytes from a channel through a fixed size buffer and keeps track of
+ * the absolute position, so that a parser can tell where each record starts.
+ * A {@code FileChannel} is read with positional reads starting at any offset,
+ * which allows several inputs to read different parts of the same file
+ * concurrently.
+ */
+final class ByteInput
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ReadableByteChannel channel;
+
+	private final FileChannel file;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private final ByteBuffer wrapper = ByteBuffer.wrap( buffer );
+
+	/**
+	 * The absolute position of the first byte in the buffer.
+	 */
+	private long offset;
+
+	private int pos;
+
+	private int limit;
+
+	private boolean eof;
+
+	/**
+	 * The bytes of the current token.
+	 */
+	private byte[] text = new byte[256];
+
+	private int length;
+
+	/**
+	 * Reads a channel sequentially from its current position.
+	 */
+	ByteInput( ReadableByteChannel channel )
+	{
+		this.channel = channel;
+		this.file = null;
+	}
+
+	/**
+	 * Reads a file from the specified position without changing the position
+	 * of the channel.
+	 */
+	ByteInput( FileChannel file, long position )
+	{
+		this.channel = null;
+		this.file = file;
+		this.offset = position;
+	}
+
+	/**
+	 * Returns the next byte or {@code -1} at the end of the input.
+	 */
+	int read( ) throws IOException
+	{
+		if( pos == limit && !fill( ) )
+			return -1;
+
+		return buffer[pos++] & 0xFF;
+	}
+
+	/**
+	 * Returns the next byte without consuming it or {@code -1} at the end of
+	 * the input.
+	 */
+	int peek( ) throws IOException
+	{
+		if( pos == limit && !fill( ) )
+			return -1;
+
+		return buffer[pos] & 0xFF;
+	}
+
+	/**
+	 * Returns the absolute position of the next byte.
+	 */
+	long position( )
+	{
+		return offset + pos;
+	}
+
+	/**
+	 * Starts a new token.
+	 */
+	void clearText( )
+	{
+		length = 0;
+	}
+
+	/**
+	 * Appends a byte to the current token.
+	 */
+	void appendText( int b )
+	{
+		if( length == text.length )
+			text = Arrays.copyOf( text, length * 2 );
+
+		text[length++] = (byte) b;
+	}
+
+	/**
+	 * Appends a code point to the current token, encoded as UTF-8.
+	 */
+	void appendCodePoint( int codePoint )
+	{
+		if( codePoint < 0x80 )
+		{
+			appendText( codePoint );
+		}
+		else if( codePoint < 0x800 )
+		{
+			appendText( 0xC0 | ( codePoint >> 6 ) );
+			appendText( 0x80 | ( codePoint & 0x3F ) );
+		}
+		else if( codePoint < 0x10000 )
+		{
+			appendText( 0xE0 | ( codePoint >> 12 ) );
+			appendText( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+			appendText( 0x80 | ( codePoint & 0x3F ) );
+		}
+		else
+		{
+			appendText( 0xF0 | ( codePoint >> 18 ) );
+			appendText( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+			appendText( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+			appendText( 0x80 | ( codePoint & 0x3F ) );
+		}
+	}
+
+	int textLength( )
+	{
+		return length;
+	}
+
+	/**
+	 * Decodes the current token.
+	 */
+	String text( )
+	{
+		return new String( text, 0, length, StandardCharsets.UTF_8 );
+	}
+
+	private boolean fill( ) throws IOException
+	{
+		if( eof )
+			return false;
+
+		offset += limit;
+		pos = 0;
+		limit = 0;
+		wrapper.clear( );
+
+		int n;
+		do
+		{
+			n = file != null ? file.read( wrapper, offset ) : channel.read( wrapper );
+		}
+		while( n == 0 );
+
+		if( n < 0 )
+		{
+			eof = true;
+			return false;
+		}
+
+		limit = n;
+		return true;
+	}
+}
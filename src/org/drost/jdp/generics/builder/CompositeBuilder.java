@@ -0,0 +1,462 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.InvalidClassException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+import org.drost.jdp.generics.composite.Composite;
+import org.drost.jdp.generics.reflect.Accessor;
+import org.drost.jdp.generics.reflect.ClassMetadata;
+
+/**
+ * Describes a whole {@code Composite} hierarchy of nodes to instantiate, the
+ * hierarchical counterpart of {@link Builder}. Each description names the
+ * class of a node, its properties and the descriptions of its children:
+ *
+ * <pre>
+ * Item root = new CompositeBuilder&lt;Item&gt;( Folder.class ).set( "name", "root" )
+ * 		.add( new CompositeBuilder&lt;Item&gt;( File.class ).set( "name", "a.txt" ).set( "size", 12 ) )
+ * 		.add( new CompositeBuilder&lt;Item&gt;( Folder.class ).set( "name", "empty" ) )
+ * 		.build( );
+ * </pre>
+ *
+ * <p>
+ * Properties are named like in {@link Builder#set(String, Object...)}. They
+ * are resolved to their setter when they are described, using the metadata
+ * shared by all builders of a class, so building only invokes the resolved
+ * setters. The child storage of every node is presized to the exact
+ * number of described children, which are attached with a single bulk
+ * operation.
+ * </p>
+ * <p>
+ * A description can be built any number of times, each time creating new
+ * nodes, and may be shared by several parents. It must not contain itself,
+ * neither directly nor through its children. The pending nodes are kept on an
+ * explicit stack, so that arbitrarily deep descriptions can be built.
+ * Independent subtrees can be built concurrently with
+ * {@link #buildParallel()}.
+ * </p>
+ *
+ * @param <T>
+ *            The type of the nodes.
+ */
+public class CompositeBuilder<T extends Composite<T>>
+{
+	/**
+	 * The number of surplus queued tasks from which on a parallel build
+	 * continues sequentially.
+	 */
+	private static final int SURPLUS_THRESHOLD = 3;
+
+	private final ClassMetadata<? extends T> metadata;
+
+	/**
+	 * The resolved setters of the described properties.
+	 */
+	private Method[] members = new Method[4];
+
+	private Object[][] arguments = new Object[4][];
+
+	private int propertyCount;
+
+	private CompositeBuilder<T>[] children;
+
+	private int childCount;
+
+	/**
+	 * Creates the description of a node of the specified class.
+	 *
+	 * @param type
+	 *            The class of the node.
+	 * @throws InvalidClassException
+	 *             if the class does not provide an accessible default
+	 *             constructor.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public CompositeBuilder( Class<? extends T> type ) throws InvalidClassException
+	{
+		if( type == null )
+			throw new IllegalArgumentException( "Null argument. Cannot describe node." );
+
+		this.metadata = ClassMetadata.of( type );
+		this.children = (CompositeBuilder<T>[]) new CompositeBuilder<?>[4];
+
+		if( !metadata.hasDefaultConstructor( ) )
+			throw new InvalidClassException( "The generic class type does not provide an accessible default constructor." );
+	}
+
+	/**
+	 * Describes a property of the node. The property is named like in
+	 * {@link Builder#set(String, Object...)} and resolved immediately.
+	 *
+	 * @param name
+	 *            The name of the setter method or of the property.
+	 * @param values
+	 *            The arguments of the setter.
+	 * @return This builder instance.
+	 * @throws NoSuchMethodException
+	 *             if there is no matching setter.
+	 */
+	public CompositeBuilder<T> set( String name, Object... values ) throws NoSuchMethodException
+	{
+		if( name == null || name.isEmpty( ) )
+			throw new IllegalArgumentException( "Invalid property name: " + name );
+
+		String mName = ( name.startsWith( "set" ) ) ? name : ("set" + name.substring( 0, 1 ).toUpperCase( ) + name.substring( 1 ));
+
+		Method member = metadata.findSetter( mName, values );
+
+		if( member == null )
+			throw new NoSuchMethodException( metadata.getType( ).getName( ) + "." + mName );
+
+		if( propertyCount == members.length )
+		{
+			members = Arrays.copyOf( members, propertyCount * 2 );
+			arguments = Arrays.copyOf( arguments, propertyCount * 2 );
+		}
+
+		members[propertyCount] = member;
+		arguments[propertyCount] = values.clone( );
+		propertyCount++;
+		return this;
+	}
+
+	/**
+	 * Describes the next child of the node. Only a description adding itself
+	 * is rejected here, one that contains itself through its children is
+	 * rejected when it is built, so that adding does not have to walk the
+	 * subtree of the child.
+	 *
+	 * @param child
+	 *            The description of the child.
+	 * @return This builder instance.
+	 */
+	public CompositeBuilder<T> add( CompositeBuilder<T> child )
+	{
+		if( child == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add child." );
+		if( child == this )
+			throw new IllegalArgumentException( "A node cannot contain itself." );
+
+		if( childCount == children.length )
+			children = Arrays.copyOf( children, childCount * 2 );
+
+		children[childCount++] = child;
+		return this;
+	}
+
+	/**
+	 * Returns the number of described children of the node.
+	 *
+	 * @return the number of described children.
+	 */
+	public int getChildCount( )
+	{
+		return childCount;
+	}
+
+	/**
+	 * Instantiates the described hierarchy on the calling thread.
+	 *
+	 * @return the root of the new hierarchy.
+	 * @throws InvocationTargetException
+	 *             if a constructor or a setter throws an exception.
+	 * @throws IllegalStateException
+	 *             if the description contains itself.
+	 */
+	public T build( ) throws InvocationTargetException
+	{
+		checkAcyclic( );
+		return construct( );
+	}
+
+	/**
+	 * Instantiates the described hierarchy in parallel on the common
+	 * {@code ForkJoinPool}.
+	 *
+	 * @see #buildParallel(ForkJoinPool)
+	 */
+	public T buildParallel( ) throws InvocationTargetException
+	{
+		return buildParallel( ForkJoinPool.commonPool( ) );
+	}
+
+	/**
+	 * Instantiates the described hierarchy in parallel on the specified pool.
+	 * Sibling subtrees are built concurrently, each node is attached to its
+	 * parent once its own subtree is complete. The constructors and setters
+	 * of the nodes must therefore not depend on each other.
+	 *
+	 * @param pool
+	 *            The pool to run the build on.
+	 * @return the root of the new hierarchy.
+	 * @throws InvocationTargetException
+	 *             if a constructor or a setter throws an exception.
+	 * @throws IllegalStateException
+	 *             if the description contains itself.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T buildParallel( ForkJoinPool pool ) throws InvocationTargetException
+	{
+		if( pool == null )
+			throw new IllegalArgumentException( "Null argument. Cannot build hierarchy." );
+
+		checkAcyclic( );
+
+		Object[] root = new Object[1];
+
+		try
+		{
+			pool.invoke( new BuildTask<T>( null, this, root, 0 ) );
+		}
+		catch ( RuntimeException e )
+		{
+			// The pool may rethrow a copy of the exception of the failed task.
+			for( Throwable cause = e; cause != null; cause = cause.getCause( ) )
+				if( cause instanceof InvocationTargetException )
+					throw (InvocationTargetException) cause;
+
+			throw e;
+		}
+
+		return (T) root[0];
+	}
+
+	/**
+	 * Ensures that no description is reachable from its own children. Each
+	 * description is visited once, however many parents share it.
+	 */
+	private void checkAcyclic( )
+	{
+		// The index of the next child to visit of each description on the
+		// current path, or -1 once all of its descendants have been visited.
+		Map<CompositeBuilder<T>, int[]> visits = new IdentityHashMap<CompositeBuilder<T>, int[]>( );
+		Deque<CompositeBuilder<T>> stack = new ArrayDeque<CompositeBuilder<T>>( );
+		visits.put( this, new int[1] );
+		stack.push( this );
+
+		while( !stack.isEmpty( ) )
+		{
+			CompositeBuilder<T> current = stack.peek( );
+			int[] next = visits.get( current );
+
+			if( next[0] == current.childCount )
+			{
+				next[0] = -1;
+				stack.pop( );
+				continue;
+			}
+
+			CompositeBuilder<T> child = current.children[next[0]++];
+			int[] visit = visits.get( child );
+
+			if( visit == null )
+			{
+				visits.put( child, new int[1] );
+				stack.push( child );
+			}
+			else if( visit[0] != -1 )
+			{
+				throw new IllegalStateException( "A node cannot contain itself." );
+			}
+		}
+	}
+
+	/**
+	 * Instantiates the described hierarchy of an acyclic description. Each
+	 * node is attached to its parent once its own subtree is complete.
+	 */
+	private T construct( ) throws InvocationTargetException
+	{
+		Deque<Construction<T>> stack = new ArrayDeque<Construction<T>>( );
+		stack.push( new Construction<T>( this, instantiate( ) ) );
+
+		while( true )
+		{
+			Construction<T> current = stack.peek( );
+
+			if( current.next < current.built.length )
+			{
+				CompositeBuilder<T> child = current.description.children[current.next++];
+				stack.push( new Construction<T>( child, child.instantiate( ) ) );
+				continue;
+			}
+
+			stack.pop( );
+
+			if( current.built.length > 0 )
+				attach( current.node, current.built );
+
+			Construction<T> parent = stack.peek( );
+
+			if( parent == null )
+				return current.node;
+
+			parent.built[parent.next - 1] = current.node;
+		}
+	}
+
+	/**
+	 * Creates the node and sets its described properties.
+	 */
+	private T instantiate( ) throws InvocationTargetException
+	{
+		T node;
+
+		try
+		{
+			node = metadata.newInstance( );
+		}
+		catch ( InstantiationException e )
+		{
+			throw new IllegalStateException( e );
+		}
+
+		@SuppressWarnings( "unchecked" )
+		Accessor<T> accessor = (Accessor<T>) metadata.getAccessor( );
+
+		try
+		{
+			for( int i = 0; i < propertyCount; i++ )
+			{
+				Method setter = members[i];
+				Object[] values = arguments[i];
+
+				if( accessor == null || values.length != 1 || !accessor.set( node, setter.getName( ), values[0] ) )
+					setter.invoke( node, values );
+			}
+		}
+		catch ( IllegalAccessException e )
+		{
+			throw new IllegalStateException( e );
+		}
+
+		return node;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static <T extends Composite<T>> void attach( T node, Object[] children )
+	{
+		node.ensureChildCapacity( node.getChildCount( ) + children.length );
+		node.addChildren( (List<T>) (List<?>) Arrays.asList( children ) );
+	}
+
+	/**
+	 * A node being built while its children are instantiated.
+	 */
+	private static final class Construction<T extends Composite<T>>
+	{
+		final CompositeBuilder<T> description;
+
+		final T node;
+
+		final Object[] built;
+
+		int next;
+
+		Construction( CompositeBuilder<T> description, T node )
+		{
+			this.description = description;
+			this.node = node;
+			this.built = new Object[description.childCount];
+		}
+	}
+
+	/**
+	 * Instantiates a node and forks a task for each child. The children are
+	 * attached in {@link #onCompletion(CountedCompleter)} once all child
+	 * tasks have completed, so no task ever blocks while waiting for its
+	 * children.
+	 */
+	private static final class BuildTask<T extends Composite<T>> extends CountedCompleter<Void>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final CompositeBuilder<T> description;
+
+		/**
+		 * The built children of the parent, this task fills {@link #slot}.
+		 */
+		private final Object[] siblings;
+
+		private final int slot;
+
+		private T node;
+
+		private Object[] children;
+
+		BuildTask( CountedCompleter<?> parent, CompositeBuilder<T> description, Object[] siblings, int slot )
+		{
+			super( parent );
+			this.description = description;
+			this.siblings = siblings;
+			this.slot = slot;
+		}
+
+		@Override
+		public void compute( )
+		{
+			try
+			{
+				if( getSurplusQueuedTaskCount( ) > SURPLUS_THRESHOLD || description.childCount == 0 )
+				{
+					// Enough work is queued, continue with this subtree alone.
+					node = description.construct( );
+				}
+				else
+				{
+					node = description.instantiate( );
+					int count = description.childCount;
+					children = new Object[count];
+					addToPendingCount( count );
+
+					for( int i = 0; i < count; i++ )
+						new BuildTask<T>( this, description.children[i], children, i ).fork( );
+				}
+			}
+			catch ( InvocationTargetException e )
+			{
+				throw new UndeclaredThrowableException( e );
+			}
+
+			tryComplete( );
+		}
+
+		@Override
+		public void onCompletion( CountedCompleter<?> caller )
+		{
+			if( children != null )
+				attach( node, children );
+
+			siblings[slot] = node;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses comma separated values as described by RFC 4180. Values may be
+ * enclosed in double quotes, which allows them to contain delimiters, line
+ * breaks and doubled quotes. Empty lines are skipped. Each record is bound to
+ * the columns of the header row by position; values beyond the header are
+ * ignored.
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+final class CsvRecordParser<T> extends RecordParser<T>
+{
+	private static final int DELIMITER = 0;
+
+	private static final int LINE_END = 1;
+
+	private static final int INPUT_END = 2;
+
+	private final int delimiter;
+
+	/**
+	 * The bindings of the columns, {@code null} for ignored columns.
+	 */
+	private PropertyBinding<T>[] columns;
+
+	/**
+	 * The value of the most recent field or {@code null} if it was empty and
+	 * not quoted.
+	 */
+	private String value;
+
+	CsvRecordParser( ByteInput in, Hydrator<T> hydrator, char delimiter, PropertyBinding<T>[] columns )
+	{
+		super( in, hydrator );
+		this.delimiter = delimiter;
+		this.columns = columns;
+	}
+
+	/**
+	 * Reads the header row and binds its columns.
+	 *
+	 * @return the bindings of the columns.
+	 */
+	PropertyBinding<T>[] readHeader( ) throws IOException
+	{
+		if( skipToRecord( ) < 0 )
+			throw corrupted( "Missing header row" );
+
+		List<String> names = new ArrayList<String>( );
+		int end;
+
+		do
+		{
+			end = readField( );
+			names.add( value != null ? value.trim( ) : "" );
+		}
+		while( end == DELIMITER );
+
+		columns = hydrator.bind( names );
+		return columns;
+	}
+
+	@Override
+	long skipToRecord( ) throws IOException
+	{
+		int c;
+		while( ( c = in.peek( ) ) == '\n' || c == '\r' )
+			in.read( );
+
+		return c < 0 ? -1 : in.position( );
+	}
+
+	@Override
+	T parseRecord( ) throws IOException
+	{
+		T instance = hydrator.newInstance( );
+		int column = 0;
+		int end;
+
+		do
+		{
+			end = readField( );
+
+			if( column < columns.length && columns[column] != null )
+				columns[column].apply( instance, value );
+
+			column++;
+		}
+		while( end == DELIMITER );
+
+		return instance;
+	}
+
+	/**
+	 * Reads a single field including the following delimiter or line break.
+	 *
+	 * @return what ended the field.
+	 */
+	private int readField( ) throws IOException
+	{
+		in.clearText( );
+		int c = in.read( );
+		boolean quoted = c == '"';
+
+		if( quoted )
+		{
+			while( true )
+			{
+				c = in.read( );
+
+				if( c < 0 )
+					throw corrupted( "Unterminated quoted value" );
+
+				if( c == '"' )
+				{
+					if( in.peek( ) != '"' )
+						break;
+
+					in.read( );
+				}
+
+				in.appendText( c );
+			}
+
+			c = in.read( );
+
+			if( c >= 0 && c != delimiter && c != '\n' && c != '\r' )
+				throw corrupted( "Unexpected character after quoted value" );
+		}
+		else
+		{
+			while( c >= 0 && c != delimiter && c != '\n' && c != '\r' )
+			{
+				in.appendText( c );
+				c = in.read( );
+			}
+		}
+
+		value = quoted || in.textLength( ) > 0 ? in.text( ) : null;
+
+		if( c == delimiter )
+			return DELIMITER;
+
+		if( c == '\r' && in.peek( ) == '\n' )
+			in.read( );
+
+		return c < 0 ? INPUT_END : LINE_END;
+	}
+}
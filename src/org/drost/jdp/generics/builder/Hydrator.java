@@ -0,0 +1,421 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.drost.jdp.generics.reflect.ClassMetadata;
+
+/**
+ * Streams instances of a class hydrated from CSV or JSON input, the streaming
+ * counterpart of filling a {@link Builder} one property at a time. The input
+ * is parsed incrementally from a channel and every value is written straight
+ * to the property of a new instance, so no intermediate collection is created
+ * per record.
+ * <p>
+ * Column and member names refer to properties like the names accepted by
+ * {@link Builder#set(String, Object...)}, for example {@code age} for the
+ * setter {@code setAge}, or to fields of the same name. Each name is resolved
+ * to its setter or field and to the conversion of the text to its type only
+ * once per hydrator, using the metadata shared with {@code Builder}. Names
+ * that cannot be resolved are ignored. See {@link #csv(Class, char)} and
+ * {@link #json(Class)} for the supported formats.
+ * </p>
+ * <p>
+ * Files can also be hydrated in parallel, see
+ * {@link #stream(Path, boolean)}. A hydrator is thread safe and may be used
+ * for any number of streams.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public final class Hydrator<T>
+{
+	/**
+	 * The minimum number of bytes of a file split in parallel mode.
+	 */
+	private static final long MIN_SPLIT_SIZE = 1 << 20;
+
+	/**
+	 * Marks names that cannot be resolved.
+	 */
+	private static final Object UNBOUND = new Object( );
+
+	private final ClassMetadata<T> metadata;
+
+	private final boolean json;
+
+	private final char delimiter;
+
+	/**
+	 * The resolved bindings mapped by their name.
+	 */
+	private final ConcurrentMap<String, Object> bindings = new ConcurrentHashMap<String, Object>( );
+
+	private Hydrator( Class<T> type, boolean json, char delimiter )
+	{
+		if( type == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create hydrator." );
+
+		this.metadata = ClassMetadata.of( type );
+		this.json = json;
+		this.delimiter = delimiter;
+
+		if( !metadata.hasDefaultConstructor( ) )
+			throw new IllegalArgumentException( "The class " + type.getName( )
+					+ " does not provide an accessible default constructor." );
+	}
+
+	/**
+	 * Creates a hydrator of comma separated values.
+	 *
+	 * @param type
+	 *            The class of the instances.
+	 * @return the hydrator.
+	 * @see #csv(Class, char)
+	 */
+	public static <T> Hydrator<T> csv( Class<T> type )
+	{
+		return csv( type, ',' );
+	}
+
+	/**
+	 * Creates a hydrator of delimiter separated values as described by RFC
+	 * 4180. The first row names the columns. Values may be enclosed in double
+	 * quotes, which allows them to contain delimiters, line breaks and doubled
+	 * quotes. Empty values that are not quoted set {@code null}, empty lines
+	 * are skipped.
+	 *
+	 * @param type
+	 *            The class of the instances.
+	 * @param delimiter
+	 *            The delimiter of the values.
+	 * @return the hydrator.
+	 */
+	public static <T> Hydrator<T> csv( Class<T> type, char delimiter )
+	{
+		if( delimiter == '"' || delimiter == '\n' || delimiter == '\r' || delimiter > 0x7F )
+			throw new IllegalArgumentException( "Invalid delimiter: " + delimiter );
+
+		return new Hydrator<T>( type, false, delimiter );
+	}
+
+	/**
+	 * Creates a hydrator of flat JSON objects, which are either the elements
+	 * of a top level array or simply follow each other like in JSON Lines.
+	 * Strings, numbers, booleans and {@code null} are supported as values,
+	 * nested objects and arrays are skipped.
+	 *
+	 * @param type
+	 *            The class of the instances.
+	 * @return the hydrator.
+	 */
+	public static <T> Hydrator<T> json( Class<T> type )
+	{
+		return new Hydrator<T>( type, true, ',' );
+	}
+
+	public Class<T> getType( )
+	{
+		return metadata.getType( );
+	}
+
+	/**
+	 * Returns a sequential stream of the instances hydrated from the remaining
+	 * UTF-8 encoded input of the channel. The input is read lazily while the
+	 * stream is consumed, the channel is not closed.
+	 * <p>
+	 * Malformed input and failing reads are reported by an
+	 * {@code UncheckedIOException}, values that cannot be converted by an
+	 * {@code IllegalArgumentException}.
+	 * </p>
+	 *
+	 * @param channel
+	 *            The channel to read.
+	 * @return the stream of hydrated instances.
+	 */
+	public Stream<T> stream( ReadableByteChannel channel )
+	{
+		if( channel == null )
+			throw new IllegalArgumentException( "Null argument. Cannot read records." );
+
+		return StreamSupport.stream( new RecordSpliterator( new ByteInput( channel ) ), false );
+	}
+
+	/**
+	 * Returns a stream of the instances hydrated from the UTF-8 encoded file.
+	 * The file is closed when the stream is closed.
+	 * <p>
+	 * In parallel mode the file is split into ranges that are read
+	 * concurrently with positional reads. A range is extended to the end of
+	 * its last record and starts after its first line break, so records must
+	 * not span several lines: no quoted line breaks in CSV and one object per
+	 * line in JSON. The encounter order of the records is preserved.
+	 * </p>
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param parallel
+	 *            Whether to return a parallel stream.
+	 * @return the stream of hydrated instances.
+	 * @throws IOException
+	 *             if the file cannot be opened or its header cannot be read.
+	 */
+	public Stream<T> stream( Path file, boolean parallel ) throws IOException
+	{
+		if( file == null )
+			throw new IllegalArgumentException( "Null argument. Cannot read records." );
+
+		final FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+
+		try
+		{
+			if( !parallel )
+				return StreamSupport.stream( new RecordSpliterator( new ByteInput( channel ) ), false ).onClose(
+						closer( channel ) );
+
+			long start = 0;
+			PropertyBinding<T>[] columns = null;
+
+			if( !json )
+			{
+				ByteInput in = new ByteInput( channel, 0 );
+				columns = new CsvRecordParser<T>( in, this, delimiter, null ).readHeader( );
+				start = in.position( );
+			}
+
+			return StreamSupport.stream( new RecordSpliterator( channel, start, channel.size( ), columns ), true )
+					.onClose( closer( channel ) );
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			channel.close( );
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a new instance to hydrate.
+	 */
+	T newInstance( )
+	{
+		try
+		{
+			return metadata.newInstance( );
+		}
+		catch ( InstantiationException e )
+		{
+			throw new IllegalStateException( e );
+		}
+		catch ( InvocationTargetException e )
+		{
+			throw new IllegalStateException( "Cannot create " + getType( ).getName( ), e.getCause( ) );
+		}
+	}
+
+	/**
+	 * Returns the binding of the specified name, resolving it on the first
+	 * call.
+	 *
+	 * @return the binding or {@code null} if the name cannot be resolved.
+	 */
+	@SuppressWarnings( "unchecked" )
+	PropertyBinding<T> bind( String name )
+	{
+		Object binding = bindings.get( name );
+
+		if( binding == null )
+		{
+			binding = PropertyBinding.resolve( metadata, name );
+			bindings.putIfAbsent( name, binding != null ? binding : UNBOUND );
+		}
+
+		return binding != UNBOUND ? (PropertyBinding<T>) binding : null;
+	}
+
+	/**
+	 * Returns the bindings of the specified column names.
+	 */
+	@SuppressWarnings( "unchecked" )
+	PropertyBinding<T>[] bind( List<String> names )
+	{
+		PropertyBinding<T>[] columns = (PropertyBinding<T>[]) new PropertyBinding<?>[names.size( )];
+
+		for( int i = 0; i < columns.length; i++ )
+			columns[i] = bind( names.get( i ) );
+
+		return columns;
+	}
+
+	private RecordParser<T> parser( ByteInput in, PropertyBinding<T>[] columns )
+	{
+		return json ? new JsonRecordParser<T>( in, this ) : new CsvRecordParser<T>( in, this, delimiter, columns );
+	}
+
+	private static Runnable closer( final FileChannel channel )
+	{
+		return new Runnable( )
+		{
+			@Override
+			public void run( )
+			{
+				try
+				{
+					channel.close( );
+				}
+				catch ( IOException e )
+				{
+					throw new UncheckedIOException( e );
+				}
+			}
+		};
+	}
+
+	/**
+	 * Parses the records of a channel or of a range of a file. A range owns
+	 * the records starting within it.
+	 */
+	private final class RecordSpliterator implements Spliterator<T>
+	{
+		private final FileChannel file;
+
+		private long start;
+
+		private long end;
+
+		/**
+		 * Whether the range starts at a record, otherwise the first partial
+		 * line is skipped.
+		 */
+		private boolean aligned;
+
+		private PropertyBinding<T>[] columns;
+
+		private ByteInput in;
+
+		private RecordParser<T> parser;
+
+		RecordSpliterator( ByteInput in )
+		{
+			this.file = null;
+			this.end = Long.MAX_VALUE;
+			this.aligned = true;
+			this.in = in;
+		}
+
+		RecordSpliterator( FileChannel file, long start, long end, PropertyBinding<T>[] columns )
+		{
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.aligned = true;
+			this.columns = columns;
+		}
+
+		@Override
+		public boolean tryAdvance( Consumer<? super T> action )
+		{
+			try
+			{
+				if( parser == null )
+					open( );
+
+				long position = parser.skipToRecord( );
+
+				if( position < 0 || position >= end )
+				{
+					end = -1;
+					return false;
+				}
+
+				action.accept( parser.parseRecord( ) );
+				return true;
+			}
+			catch ( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		/**
+		 * Splits off the first half of an unread file range.
+		 */
+		@Override
+		public Spliterator<T> trySplit( )
+		{
+			if( file == null || parser != null || end - start < 2 * MIN_SPLIT_SIZE )
+				return null;
+
+			long middle = start + ( end - start ) / 2;
+			RecordSpliterator prefix = new RecordSpliterator( file, start, middle, columns );
+			prefix.aligned = aligned;
+
+			start = middle;
+			aligned = false;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize( )
+		{
+			return file != null ? Math.max( end - start, 0 ) : Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics( )
+		{
+			return ORDERED | NONNULL;
+		}
+
+		private void open( ) throws IOException
+		{
+			if( in == null )
+			{
+				in = new ByteInput( file, aligned ? start : start - 1 );
+
+				if( !aligned )
+				{
+					int c;
+					while( ( c = in.read( ) ) >= 0 && c != '\n' )
+						;
+				}
+			}
+
+			parser = parser( in, columns );
+
+			if( !json && columns == null )
+				columns = ( (CsvRecordParser<T>) parser ).readHeader( );
+		}
+	}
+}
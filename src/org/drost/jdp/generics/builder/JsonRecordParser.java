@@ -0,0 +1,301 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses flat JSON objects, either as elements of a top level array or as a
+ * sequence of objects like JSON Lines. Each member is bound to the property of
+ * the same name. Strings, numbers, booleans and {@code null} are supported,
+ * nested objects and arrays are skipped.
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+final class JsonRecordParser<T> extends RecordParser<T>
+{
+	/**
+	 * Marks the value of a skipped object or array.
+	 */
+	private static final String SKIPPED = new String( );
+
+	/**
+	 * The bindings of the member names seen by this parser, {@code null} for
+	 * ignored members.
+	 */
+	private final Map<String, PropertyBinding<T>> members = new HashMap<String, PropertyBinding<T>>( );
+
+	JsonRecordParser( ByteInput in, Hydrator<T> hydrator )
+	{
+		super( in, hydrator );
+	}
+
+	/**
+	 * Skips white space as well as the brackets and commas of a top level
+	 * array.
+	 */
+	@Override
+	long skipToRecord( ) throws IOException
+	{
+		int c;
+		while( isWhitespace( c = in.peek( ) ) || c == ',' || c == '[' || c == ']' )
+			in.read( );
+
+		if( c < 0 )
+			return -1;
+
+		if( c != '{' )
+		{
+			in.read( );
+			throw corrupted( "Expected an object" );
+		}
+
+		return in.position( );
+	}
+
+	@Override
+	T parseRecord( ) throws IOException
+	{
+		T instance = hydrator.newInstance( );
+		in.read( );
+
+		int c = skipWhitespace( );
+
+		if( c == '}' )
+			return instance;
+
+		while( true )
+		{
+			if( c != '"' )
+				throw corrupted( "Expected a member name" );
+
+			PropertyBinding<T> binding = binding( readString( ) );
+
+			if( skipWhitespace( ) != ':' )
+				throw corrupted( "Expected a colon" );
+
+			String value = readValue( );
+
+			if( binding != null && value != SKIPPED )
+				binding.apply( instance, value );
+
+			c = skipWhitespace( );
+
+			if( c == '}' )
+				return instance;
+
+			if( c != ',' )
+				throw corrupted( "Expected a comma" );
+
+			c = skipWhitespace( );
+		}
+	}
+
+	private PropertyBinding<T> binding( String name )
+	{
+		PropertyBinding<T> binding = members.get( name );
+
+		if( binding == null && !members.containsKey( name ) )
+		{
+			binding = hydrator.bind( name );
+			members.put( name, binding );
+		}
+
+		return binding;
+	}
+
+	/**
+	 * Reads a value, returning the text of strings, numbers and booleans,
+	 * {@code null} for {@code null} and {@link #SKIPPED} for objects and
+	 * arrays.
+	 */
+	private String readValue( ) throws IOException
+	{
+		int c = skipWhitespace( );
+
+		if( c == '"' )
+			return readString( );
+
+		if( c == '{' || c == '[' )
+		{
+			skipNested( );
+			return SKIPPED;
+		}
+
+		in.clearText( );
+
+		while( c >= 0 && !isWhitespace( c ) && c != ',' && c != '}' && c != ']' )
+		{
+			in.appendText( c );
+
+			int next = in.peek( );
+			if( next < 0 || isWhitespace( next ) || next == ',' || next == '}' || next == ']' )
+				break;
+
+			c = in.read( );
+		}
+
+		if( in.textLength( ) == 0 )
+			throw corrupted( "Expected a value" );
+
+		String literal = in.text( );
+		return literal.equals( "null" ) ? null : literal;
+	}
+
+	/**
+	 * Reads a string after its opening quote.
+	 */
+	private String readString( ) throws IOException
+	{
+		in.clearText( );
+
+		while( true )
+		{
+			int c = in.read( );
+
+			if( c < 0 )
+				throw corrupted( "Unterminated string" );
+
+			if( c == '"' )
+				return in.text( );
+
+			if( c != '\\' )
+			{
+				in.appendText( c );
+				continue;
+			}
+
+			c = in.read( );
+
+			switch( c )
+			{
+			case 'b':
+				in.appendText( '\b' );
+				break;
+			case 'f':
+				in.appendText( '\f' );
+				break;
+			case 'n':
+				in.appendText( '\n' );
+				break;
+			case 'r':
+				in.appendText( '\r' );
+				break;
+			case 't':
+				in.appendText( '\t' );
+				break;
+			case 'u':
+				in.appendCodePoint( readEscapedCodePoint( ) );
+				break;
+			case '"':
+			case '\\':
+			case '/':
+				in.appendText( c );
+				break;
+			default:
+				throw corrupted( "Invalid escape sequence" );
+			}
+		}
+	}
+
+	/**
+	 * Reads the hexadecimal digits of a unicode escape, combining surrogate
+	 * pairs.
+	 */
+	private int readEscapedCodePoint( ) throws IOException
+	{
+		char high = (char) readHex( );
+
+		if( !Character.isHighSurrogate( high ) || in.peek( ) != '\\' )
+			return Character.isSurrogate( high ) ? '?' : high;
+
+		in.read( );
+
+		if( in.read( ) != 'u' )
+			throw corrupted( "Invalid surrogate pair" );
+
+		char low = (char) readHex( );
+
+		if( !Character.isLowSurrogate( low ) )
+			throw corrupted( "Invalid surrogate pair" );
+
+		return Character.toCodePoint( high, low );
+	}
+
+	private int readHex( ) throws IOException
+	{
+		int value = 0;
+
+		for( int i = 0; i < 4; i++ )
+		{
+			int digit = Character.digit( in.read( ), 16 );
+
+			if( digit < 0 )
+				throw corrupted( "Invalid unicode escape" );
+
+			value = value << 4 | digit;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Skips an object or array after its opening bracket.
+	 */
+	private void skipNested( ) throws IOException
+	{
+		int depth = 1;
+
+		while( depth > 0 )
+		{
+			int c = in.read( );
+
+			if( c < 0 )
+				throw corrupted( "Unterminated value" );
+
+			if( c == '{' || c == '[' )
+				depth++;
+			else if( c == '}' || c == ']' )
+				depth--;
+			else if( c == '"' )
+				readString( );
+		}
+	}
+
+	/**
+	 * Returns the next character that is not white space, consuming it.
+	 */
+	private int skipWhitespace( ) throws IOException
+	{
+		int c;
+		while( isWhitespace( c = in.read( ) ) )
+			;
+
+		return c;
+	}
+
+	private static boolean isWhitespace( int c )
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+}
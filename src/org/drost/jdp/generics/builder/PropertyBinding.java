@@ -0,0 +1,296 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import org.drost.jdp.generics.reflect.Accessor;
+import org.drost.jdp.generics.reflect.ClassMetadata;
+
+/**
+ * Writes the text of a column or field to a property of an instance. The
+ * setter or field and the conversion of the text to its type are resolved
+ * once per property name, so that hydrating a record only needs to convert
+ * and assign each value.
+ * <p>
+ * Supported are strings, primitives and their wrappers, {@code BigDecimal},
+ * {@code BigInteger}, enums and all types with a public static
+ * {@code valueOf(String)} or {@code parse(CharSequence)} method or a public
+ * constructor taking a single {@code String}. An empty or {@code null} text
+ * sets {@code null}, except for strings, and leaves primitives untouched.
+ * </p>
+ */
+final class PropertyBinding<T>
+{
+	private enum Conversion
+	{
+		STRING, BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, CHAR, BIG_DECIMAL, BIG_INTEGER, ENUM, FACTORY
+	}
+
+	private final String name;
+
+	private final Accessor<T> accessor;
+
+	private final String setterName;
+
+	private final Method setter;
+
+	private final Field field;
+
+	private final Class<?> type;
+
+	private final Conversion conversion;
+
+	/**
+	 * The {@code valueOf}, {@code parse} method or constructor of a
+	 * {@link Conversion#FACTORY} conversion.
+	 */
+	private final Executable factory;
+
+	private PropertyBinding( String name, Accessor<T> accessor, Method setter, Field field, Class<?> type,
+			Conversion conversion, Executable factory )
+	{
+		this.name = name;
+		this.accessor = accessor;
+		this.setterName = setter != null ? setter.getName( ) : null;
+		this.setter = setter;
+		this.field = field;
+		this.type = type;
+		this.conversion = conversion;
+		this.factory = factory;
+	}
+
+	/**
+	 * Resolves the setter of the specified property or the field of the same
+	 * name, preferring setters.
+	 *
+	 * @return the binding or {@code null} if the property cannot be written.
+	 */
+	static <T> PropertyBinding<T> resolve( ClassMetadata<T> metadata, String name )
+	{
+		List<Method> setters = metadata.getPropertySetters( name );
+
+		for( Method setter : setters )
+		{
+			if( setter.getParameterCount( ) != 1 )
+				continue;
+
+			Class<?> type = setter.getParameterTypes( )[0];
+			Conversion conversion = conversionOf( type );
+			Executable factory = conversion == Conversion.FACTORY ? factoryOf( type ) : null;
+
+			if( conversion != null && ( conversion != Conversion.FACTORY || factory != null ) )
+				return new PropertyBinding<T>( name, metadata.getAccessor( ), setter, null, type, conversion, factory );
+		}
+
+		Field field = metadata.getField( name );
+
+		if( field != null && !Modifier.isFinal( field.getModifiers( ) ) )
+		{
+			Class<?> type = field.getType( );
+			Conversion conversion = conversionOf( type );
+			Executable factory = conversion == Conversion.FACTORY ? factoryOf( type ) : null;
+
+			if( conversion != null && ( conversion != Conversion.FACTORY || factory != null ) )
+				return new PropertyBinding<T>( name, null, null, field, type, conversion, factory );
+		}
+
+		return null;
+	}
+
+	String getName( )
+	{
+		return name;
+	}
+
+	/**
+	 * Converts the text and writes it to the property of the instance.
+	 *
+	 * @param instance
+	 *            The instance to modify.
+	 * @param text
+	 *            The text of the value or {@code null} if it is absent.
+	 */
+	void apply( T instance, String text )
+	{
+		Object value;
+
+		try
+		{
+			value = convert( text );
+		}
+		catch ( RuntimeException e )
+		{
+			throw new IllegalArgumentException( "Invalid value of " + name + ": " + text, e );
+		}
+
+		if( value == null && type.isPrimitive( ) )
+			return;
+
+		try
+		{
+			if( field != null )
+				field.set( instance, value );
+			else if( accessor == null || !accessor.set( instance, setterName, value ) )
+				setter.invoke( instance, value );
+		}
+		catch ( IllegalAccessException e )
+		{
+			throw new IllegalStateException( "Cannot set " + name + " of " + instance.getClass( ).getName( ), e );
+		}
+		catch ( InvocationTargetException e )
+		{
+			throw new IllegalStateException( "Cannot set " + name + " of " + instance.getClass( ).getName( ), e.getCause( ) );
+		}
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private Object convert( String text )
+	{
+		if( conversion == Conversion.STRING )
+			return text;
+
+		if( text == null || text.isEmpty( ) )
+			return null;
+
+		switch( conversion )
+		{
+		case BOOLEAN:
+			return Boolean.valueOf( text.trim( ) );
+		case BYTE:
+			return Byte.valueOf( text.trim( ) );
+		case SHORT:
+			return Short.valueOf( text.trim( ) );
+		case INT:
+			return Integer.valueOf( text.trim( ) );
+		case LONG:
+			return Long.valueOf( text.trim( ) );
+		case FLOAT:
+			return Float.valueOf( text.trim( ) );
+		case DOUBLE:
+			return Double.valueOf( text.trim( ) );
+		case CHAR:
+			if( text.length( ) != 1 )
+				throw new IllegalArgumentException( "Not a single character." );
+			return Character.valueOf( text.charAt( 0 ) );
+		case BIG_DECIMAL:
+			return new BigDecimal( text.trim( ) );
+		case BIG_INTEGER:
+			return new BigInteger( text.trim( ) );
+		case ENUM:
+			return Enum.valueOf( (Class<Enum>) type, text.trim( ) );
+		default:
+			return create( text );
+		}
+	}
+
+	private Object create( String text )
+	{
+		try
+		{
+			if( factory instanceof Constructor )
+				return ( (Constructor<?>) factory ).newInstance( text );
+
+			return ( (Method) factory ).invoke( null, text );
+		}
+		catch ( InvocationTargetException e )
+		{
+			Throwable cause = e.getCause( );
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalArgumentException( cause );
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			throw new IllegalStateException( e );
+		}
+	}
+
+	private static Conversion conversionOf( Class<?> type )
+	{
+		if( type == String.class || type == CharSequence.class || type == Object.class )
+			return Conversion.STRING;
+		if( type == boolean.class || type == Boolean.class )
+			return Conversion.BOOLEAN;
+		if( type == byte.class || type == Byte.class )
+			return Conversion.BYTE;
+		if( type == short.class || type == Short.class )
+			return Conversion.SHORT;
+		if( type == int.class || type == Integer.class )
+			return Conversion.INT;
+		if( type == long.class || type == Long.class )
+			return Conversion.LONG;
+		if( type == float.class || type == Float.class )
+			return Conversion.FLOAT;
+		if( type == double.class || type == Double.class )
+			return Conversion.DOUBLE;
+		if( type == char.class || type == Character.class )
+			return Conversion.CHAR;
+		if( type == BigDecimal.class )
+			return Conversion.BIG_DECIMAL;
+		if( type == BigInteger.class )
+			return Conversion.BIG_INTEGER;
+		if( type.isEnum( ) )
+			return Conversion.ENUM;
+		if( type.isPrimitive( ) || type.isArray( ) )
+			return null;
+
+		return Conversion.FACTORY;
+	}
+
+	/**
+	 * Finds a public static {@code valueOf(String)} or
+	 * {@code parse(CharSequence)} method returning the type or a public
+	 * constructor taking a single {@code String}.
+	 */
+	private static Executable factoryOf( Class<?> type )
+	{
+		if( !Modifier.isPublic( type.getModifiers( ) ) )
+			return null;
+
+		for( Method method : type.getMethods( ) )
+		{
+			if( !Modifier.isStatic( method.getModifiers( ) ) || method.getReturnType( ) != type
+					|| method.getParameterCount( ) != 1 )
+				continue;
+
+			Class<?> parameter = method.getParameterTypes( )[0];
+
+			if( ( method.getName( ).equals( "valueOf" ) && parameter == String.class )
+					|| ( method.getName( ).equals( "parse" ) && parameter == CharSequence.class ) )
+				return method;
+		}
+
+		try
+		{
+			return type.getConstructor( String.class );
+		}
+		catch ( NoSuchMethodException e )
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Parses records from a {@code ByteInput} and writes their values directly to
+ * new instances, without collecting the values of a record first.
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+abstract class RecordParser<T>
+{
+	final ByteInput in;
+
+	final Hydrator<T> hydrator;
+
+	RecordParser( ByteInput in, Hydrator<T> hydrator )
+	{
+		this.in = in;
+		this.hydrator = hydrator;
+	}
+
+	/**
+	 * Skips everything up to the start of the next record.
+	 *
+	 * @return the position of the next record or {@code -1} at the end of the
+	 *         input.
+	 */
+	abstract long skipToRecord( ) throws IOException;
+
+	/**
+	 * Parses the record starting at the current position.
+	 *
+	 * @return the hydrated instance.
+	 */
+	abstract T parseRecord( ) throws IOException;
+
+	StreamCorruptedException corrupted( String message )
+	{
+		return new StreamCorruptedException( message + " at position " + ( in.position( ) - 1 ) );
+	}
+}
@@ -19,14 +19,24 @@
  */
 package org.drost.jdp.generics.composite;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Predicate;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
 
 public class Composite<T extends Composite<?>>
 {
 	protected List<T> children = new ArrayList<T>();
 	
-	
+	/**
+	 * The publisher of the changes of the children or {@code null} if this
+	 * node is not observed.
+	 */
+	private ChangePublisher<CompositeChange<?>> publisher;
 	
 	
 	
@@ -39,7 +49,15 @@ public class Composite<T extends Composite<?>>
 
 	public void setChildren( List<T> children )
 	{
+		if( publisher != null )
+			for( T child : this.children )
+				childRemoved( child );
+
 		this.children = children;
+
+		if( publisher != null )
+			for( T child : children )
+				childAdded( child );
 	}
 
 
@@ -52,23 +70,233 @@ public class Composite<T extends Composite<?>>
 
 	public boolean addChild(T child)
 	{
-		return children.add( child );
+		boolean added = children.add( child );
+
+		if( added )
+			childAdded( child );
+
+		return added;
 	}
 	
 	
 	public boolean removeChild(T child)
 	{
-		return children.remove( child );
+		boolean removed = children.remove( child );
+
+		if( removed )
+			childRemoved( child );
+
+		return removed;
 	}
 	
 	
 	public T removeChild(int index)
 	{
-		return children.remove( index );
+		T child = children.remove( index );
+		childRemoved( child );
+		return child;
 	}
 	
 	public boolean removeAllChildren()
 	{
-		return children.removeAll( children );
+		boolean changed = !children.isEmpty( );
+		clearChildren( );
+		return changed;
+	}
+	
+	
+	/**
+	 * Adds all children of the specified collection in its iteration order.
+	 * The child list grows at most once, no matter how many children are
+	 * added.
+	 * 
+	 * @param children
+	 *            The children to add.
+	 * @return whether any child has been added.
+	 */
+	public boolean addChildren(Collection<? extends T> children)
+	{
+		boolean changed = this.children.addAll( children );
+
+		if( changed && publisher != null )
+			for( T child : children )
+				childAdded( child );
+
+		return changed;
+	}
+	
+	
+	/**
+	 * Removes all children matching the specified condition in a single pass
+	 * over the child list.
+	 * 
+	 * @param condition
+	 *            The condition of the children to remove.
+	 * @return whether any child has been removed.
+	 */
+	public boolean removeChildrenIf(final Predicate<? super T> condition)
+	{
+		if( publisher == null )
+			return children.removeIf( condition );
+
+		final List<T> removed = new ArrayList<T>( );
+
+		children.removeIf( new Predicate<T>( )
+		{
+			@Override
+			public boolean test( T child )
+			{
+				boolean matches = condition.test( child );
+
+				if( matches )
+					removed.add( child );
+
+				return matches;
+			}
+		} );
+
+		for( T child : removed )
+			childRemoved( child );
+
+		return !removed.isEmpty( );
+	}
+	
+	
+	/**
+	 * Removes all children in linear time.
+	 */
+	public void clearChildren()
+	{
+		if( publisher == null )
+		{
+			children.clear( );
+			return;
+		}
+
+		List<T> removed = new ArrayList<T>( children );
+		children.clear( );
+
+		for( T child : removed )
+			childRemoved( child );
+	}
+	
+	
+	/**
+	 * Increases the capacity of the child list, if necessary, so that it can
+	 * hold at least the specified number of children without growing again.
+	 * This has no effect if the child list has been replaced by a list type
+	 * without a capacity.
+	 * 
+	 * @param capacity
+	 *            The desired minimum capacity.
+	 */
+	public void ensureChildCapacity(int capacity)
+	{
+		if( children instanceof ArrayList )
+			( (ArrayList<T>) children ).ensureCapacity( capacity );
+	}
+	
+	
+	/**
+	 * Publishes the changes of the children of this node and all of its
+	 * descendants to the specified publisher. Every child added to an
+	 * observed node is observed as well, every child removed from it is no
+	 * longer observed. Without a publisher, which is the default, changes
+	 * cost nothing extra.
+	 * <p>
+	 * Changes are published by {@link #addChild(Composite)},
+	 * {@link #removeChild(Composite)} and all other methods modifying the
+	 * children, but not by modifications of the list returned by
+	 * {@link #getChildren()}.
+	 * </p>
+	 * 
+	 * @param publisher
+	 *            The publisher of the changes or {@code null} to stop
+	 *            observing the hierarchy below this node.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void setChangePublisher(ChangePublisher<? super CompositeChange<T>> publisher)
+	{
+		propagate( this, null, (ChangePublisher<CompositeChange<?>>) (ChangePublisher<?>) publisher );
+	}
+	
+	
+	/**
+	 * Returns the publisher of the changes of the children.
+	 * 
+	 * @return the publisher or {@code null} if this node is not observed.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public ChangePublisher<? super CompositeChange<T>> getChangePublisher()
+	{
+		return (ChangePublisher<? super CompositeChange<T>>) (ChangePublisher<?>) publisher;
+	}
+	
+	
+	/**
+	 * Observes the added child and publishes its addition, if this node is
+	 * observed. Subclasses replacing the child storage call this method
+	 * after adding a child.
+	 * 
+	 * @param child
+	 *            The added child.
+	 */
+	protected final void childAdded(T child)
+	{
+		if( publisher == null )
+			return;
+
+		propagate( child, null, publisher );
+
+		if( publisher.hasSubscribers( ) )
+			publisher.publish( new CompositeChange<T>( CompositeChange.Kind.ADDED, this, child ) );
+	}
+	
+	
+	/**
+	 * Stops observing the removed child and publishes its removal, if this
+	 * node is observed. Subclasses replacing the child storage call this
+	 * method after removing a child.
+	 * 
+	 * @param child
+	 *            The removed child.
+	 */
+	protected final void childRemoved(T child)
+	{
+		if( publisher == null )
+			return;
+
+		propagate( child, publisher, null );
+
+		if( publisher.hasSubscribers( ) )
+			publisher.publish( new CompositeChange<T>( CompositeChange.Kind.REMOVED, this, child ) );
+	}
+	
+	
+	/**
+	 * Sets the publisher of all nodes of the subtree, skipping subtrees whose
+	 * publisher is neither {@code expected} nor the new one if
+	 * {@code expected} is given. Immutable nodes are never modified, since
+	 * they may be shared with lock-free readers.
+	 */
+	private static void propagate(Composite<?> subtree, ChangePublisher<CompositeChange<?>> expected,
+			ChangePublisher<CompositeChange<?>> publisher)
+	{
+		Deque<Composite<?>> stack = new ArrayDeque<Composite<?>>( );
+		stack.push( subtree );
+
+		while( !stack.isEmpty( ) )
+		{
+			Composite<?> node = stack.pop( );
+
+			if( node == null || node instanceof PersistentComposite || node.publisher == publisher
+					|| ( expected != null && node.publisher != expected ) )
+				continue;
+
+			node.publisher = publisher;
+
+			for( Composite<?> child : node.getChildren( ) )
+				stack.push( child );
+		}
 	}
 }
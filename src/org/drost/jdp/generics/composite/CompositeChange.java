@@ -0,0 +1,119 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import org.drost.jdp.generics.flow.ChangeEvent;
+
+/**
+ * A child that has been added to or removed from a {@code Composite}, see
+ * {@link Composite#setChangePublisher(org.drost.jdp.generics.flow.ChangePublisher)}.
+ * Pending changes of the same parent and child coalesce: a child that has
+ * been added and removed again before the subscriber received either change,
+ * or removed and added again, is not reported at all.
+ *
+ * @param <T>
+ *            The type of the child nodes.
+ */
+public final class CompositeChange<T extends Composite<?>> implements ChangeEvent
+{
+	public enum Kind
+	{
+		ADDED, REMOVED
+	}
+
+	private final Kind kind;
+
+	private final Composite<T> parent;
+
+	private final T child;
+
+	CompositeChange( Kind kind, Composite<T> parent, T child )
+	{
+		this.kind = kind;
+		this.parent = parent;
+		this.child = child;
+	}
+
+	public Kind getKind( )
+	{
+		return kind;
+	}
+
+	public Composite<T> getParent( )
+	{
+		return parent;
+	}
+
+	public T getChild( )
+	{
+		return child;
+	}
+
+	@Override
+	public Object getCoalescingKey( )
+	{
+		return new Key( parent, child );
+	}
+
+	/**
+	 * Returns whether this change undoes the pending change of the same parent
+	 * and child, that is whether one of them is an addition and the other one
+	 * a removal.
+	 */
+	@Override
+	public boolean cancels( ChangeEvent pending )
+	{
+		return pending instanceof CompositeChange && ( (CompositeChange<?>) pending ).kind != kind;
+	}
+
+	@Override
+	public String toString( )
+	{
+		return kind + " " + child + " at " + parent;
+	}
+
+	/**
+	 * Identifies a parent and a child by identity.
+	 */
+	private static final class Key
+	{
+		private final Object parent;
+
+		private final Object child;
+
+		Key( Object parent, Object child )
+		{
+			this.parent = parent;
+			this.child = child;
+		}
+
+		@Override
+		public boolean equals( Object obj )
+		{
+			return obj instanceof Key && ( (Key) obj ).parent == parent && ( (Key) obj ).child == child;
+		}
+
+		@Override
+		public int hashCode( )
+		{
+			return 31 * System.identityHashCode( parent ) + System.identityHashCode( child );
+		}
+	}
+}
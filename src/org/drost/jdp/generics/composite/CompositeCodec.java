@@ -0,0 +1,466 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Streams whole {@code Composite} hierarchies from and to {@code java.nio}
+ * channels. The nodes are written in pre-order, each node as its number of
+ * children followed by the length and the bytes of its payload:
+ *
+ * <pre>
+ * file    := MAGIC VERSION node*
+ * node    := varint(childCount) varint(payloadLength) payload
+ * </pre>
+ *
+ * Both directions work iteratively with an explicit stack, so the depth of a
+ * hierarchy is only limited by the heap and not by the thread stack. Reading
+ * a file uses memory-mapped windows of the file instead of copying it through
+ * the heap, so files larger than 2 GB are supported as well.
+ *
+ * @param <T>
+ *            The type of the nodes.
+ */
+public class CompositeCodec<T extends Composite<T>>
+{
+	/**
+	 * The magic number at the start of every stream.
+	 */
+	public static final int MAGIC = 0x4A445043;
+
+	/**
+	 * The version of the format.
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * The size of the I/O buffers.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The size of the memory-mapped windows while reading files.
+	 */
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final NodeSerializer<T> serializer;
+
+	/**
+	 * Creates a codec converting the node payloads with the specified
+	 * serializer.
+	 *
+	 * @param serializer
+	 *            The serializer of the node payloads.
+	 */
+	public CompositeCodec( NodeSerializer<T> serializer )
+	{
+		if( serializer == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create codec." );
+
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Writes the hierarchy below and including the specified root to a
+	 * channel. The channel is not closed.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param channel
+	 *            The target channel.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void write( T root, WritableByteChannel channel ) throws IOException
+	{
+		if( root == null || channel == null )
+			throw new IllegalArgumentException( "Null argument. Cannot write hierarchy." );
+
+		ByteBuffer out = ByteBuffer.allocateDirect( BUFFER_SIZE );
+		ByteBuffer payload = ByteBuffer.allocate( 256 );
+
+		out.putInt( MAGIC );
+		out.put( VERSION );
+
+		Deque<Iterator<T>> stack = new ArrayDeque<Iterator<T>>( );
+		T node = root;
+
+		while( node != null )
+		{
+			// Serialize the payload, growing the scratch buffer as needed.
+			while( true )
+			{
+				payload.clear( );
+				try
+				{
+					serializer.write( node, payload );
+					break;
+				}
+				catch ( BufferOverflowException e )
+				{
+					payload = ByteBuffer.allocate( payload.capacity( ) * 2 );
+				}
+			}
+			payload.flip( );
+
+			out = ensure( out, 10, channel );
+			putVarInt( out, node.getChildCount( ) );
+			putVarInt( out, payload.remaining( ) );
+
+			while( payload.hasRemaining( ) )
+			{
+				if( !out.hasRemaining( ) )
+					out = ensure( out, 1, channel );
+
+				int n = Math.min( out.remaining( ), payload.remaining( ) );
+				ByteBuffer slice = payload.duplicate( );
+				slice.limit( slice.position( ) + n );
+				out.put( slice );
+				payload.position( payload.position( ) + n );
+			}
+
+			if( node.getChildCount( ) > 0 )
+				stack.push( node.getChildren( ).iterator( ) );
+
+			node = null;
+			while( !stack.isEmpty( ) )
+			{
+				Iterator<T> it = stack.peek( );
+				if( it.hasNext( ) )
+				{
+					node = it.next( );
+					break;
+				}
+				stack.pop( );
+			}
+		}
+
+		out.flip( );
+		while( out.hasRemaining( ) )
+			channel.write( out );
+	}
+
+	/**
+	 * Writes the hierarchy below and including the specified root to a file.
+	 * An existing file is replaced.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param file
+	 *            The target file.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void write( T root, Path file ) throws IOException
+	{
+		FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING );
+		try
+		{
+			write( root, channel );
+		}
+		finally
+		{
+			channel.close( );
+		}
+	}
+
+	/**
+	 * Reads a hierarchy from a channel. The channel is read incrementally
+	 * through a fixed size buffer and is not closed.
+	 *
+	 * @param channel
+	 *            The source channel.
+	 * @return the root of the hierarchy.
+	 * @throws IOException
+	 *             if reading fails or the stream is corrupted.
+	 */
+	public T read( ReadableByteChannel channel ) throws IOException
+	{
+		if( channel == null )
+			throw new IllegalArgumentException( "Null argument. Cannot read hierarchy." );
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+		buffer.flip( );
+
+		return read( new ChannelInput( channel, buffer ) );
+	}
+
+	/**
+	 * Reads a hierarchy from a buffer, for example a
+	 * {@link java.nio.MappedByteBuffer}. The buffer is read from its current
+	 * position.
+	 *
+	 * @param buffer
+	 *            The source buffer.
+	 * @return the root of the hierarchy.
+	 * @throws IOException
+	 *             if the buffer is corrupted.
+	 */
+	public T read( ByteBuffer buffer ) throws IOException
+	{
+		if( buffer == null )
+			throw new IllegalArgumentException( "Null argument. Cannot read hierarchy." );
+
+		return read( new ChannelInput( null, buffer ) );
+	}
+
+	/**
+	 * Reads a hierarchy from a file by mapping it into memory window by
+	 * window.
+	 *
+	 * @param file
+	 *            The source file.
+	 * @return the root of the hierarchy.
+	 * @throws IOException
+	 *             if reading fails or the file is corrupted.
+	 */
+	public T read( Path file ) throws IOException
+	{
+		FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+		try
+		{
+			return read( new MappedInput( channel ) );
+		}
+		finally
+		{
+			channel.close( );
+		}
+	}
+
+	private T read( Input in ) throws IOException
+	{
+		ByteBuffer buffer = in.ensure( 5 );
+
+		if( buffer.getInt( ) != MAGIC )
+			throw new StreamCorruptedException( "Invalid magic number." );
+		if( buffer.get( ) != VERSION )
+			throw new StreamCorruptedException( "Unsupported version." );
+
+		Object[] nodes = new Object[16];
+		int[] remaining = new int[16];
+		int depth = 0;
+		T root = null;
+
+		do
+		{
+			int childCount = getVarInt( in );
+			int length = getVarInt( in );
+
+			buffer = in.ensure( length );
+			ByteBuffer payload = buffer.slice( );
+			payload.limit( length );
+			buffer.position( buffer.position( ) + length );
+
+			T node = serializer.read( payload.asReadOnlyBuffer( ) );
+
+			if( node == null )
+				throw new StreamCorruptedException( "The serializer returned no node." );
+
+			if( depth == 0 )
+			{
+				root = node;
+			}
+			else
+			{
+				@SuppressWarnings( "unchecked" )
+				T parent = (T) nodes[depth - 1];
+				parent.addChild( node );
+				remaining[depth - 1]--;
+			}
+
+			if( childCount > 0 )
+			{
+				if( depth == nodes.length )
+				{
+					nodes = Arrays.copyOf( nodes, depth * 2 );
+					remaining = Arrays.copyOf( remaining, depth * 2 );
+				}
+
+				nodes[depth] = node;
+				remaining[depth] = childCount;
+				depth++;
+			}
+
+			while( depth > 0 && remaining[depth - 1] == 0 )
+				nodes[--depth] = null;
+		}
+		while( depth > 0 );
+
+		return root;
+	}
+
+	/**
+	 * Flushes the buffer to the channel if it has less than the specified
+	 * number of bytes left.
+	 */
+	private static ByteBuffer ensure( ByteBuffer out, int n, WritableByteChannel channel ) throws IOException
+	{
+		if( out.remaining( ) < n )
+		{
+			out.flip( );
+			while( out.hasRemaining( ) )
+				channel.write( out );
+			out.clear( );
+		}
+		return out;
+	}
+
+	private static void putVarInt( ByteBuffer out, int value )
+	{
+		while( ( value & ~0x7F ) != 0 )
+		{
+			out.put( (byte) ( ( value & 0x7F ) | 0x80 ) );
+			value >>>= 7;
+		}
+		out.put( (byte) value );
+	}
+
+	private static int getVarInt( Input in ) throws IOException
+	{
+		int value = 0;
+
+		for( int shift = 0; shift < 35; shift += 7 )
+		{
+			byte b = in.ensure( 1 ).get( );
+			value |= ( b & 0x7F ) << shift;
+
+			if( b >= 0 )
+			{
+				if( value < 0 )
+					throw new StreamCorruptedException( "Negative length." );
+				return value;
+			}
+		}
+
+		throw new StreamCorruptedException( "Malformed length." );
+	}
+
+	/**
+	 * A source of bytes that can guarantee a number of readable bytes in its
+	 * buffer.
+	 */
+	private interface Input
+	{
+		/**
+		 * Returns the current buffer with at least the specified number of
+		 * bytes remaining.
+		 */
+		ByteBuffer ensure( int n ) throws IOException;
+	}
+
+	/**
+	 * Reads from a channel through a buffer that grows only for payloads
+	 * larger than the buffer. Without a channel the buffer is the whole input.
+	 */
+	private static final class ChannelInput implements Input
+	{
+		private final ReadableByteChannel channel;
+
+		private ByteBuffer buffer;
+
+		ChannelInput( ReadableByteChannel channel, ByteBuffer buffer )
+		{
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		@Override
+		public ByteBuffer ensure( int n ) throws IOException
+		{
+			if( buffer.remaining( ) >= n )
+				return buffer;
+
+			if( channel == null )
+				throw new EOFException( );
+
+			if( buffer.capacity( ) < n )
+			{
+				ByteBuffer larger = ByteBuffer.allocateDirect( Math.max( n, buffer.capacity( ) * 2 ) );
+				larger.put( buffer );
+				buffer = larger;
+			}
+			else
+			{
+				buffer.compact( );
+			}
+
+			while( buffer.position( ) < n )
+			{
+				if( channel.read( buffer ) < 0 )
+					throw new EOFException( );
+			}
+
+			buffer.flip( );
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads from a file by mapping consecutive windows of it into memory.
+	 */
+	private static final class MappedInput implements Input
+	{
+		private final FileChannel channel;
+
+		private final long size;
+
+		private long offset;
+
+		private ByteBuffer window;
+
+		MappedInput( FileChannel channel ) throws IOException
+		{
+			this.channel = channel;
+			this.size = channel.size( );
+			this.window = ByteBuffer.allocate( 0 );
+		}
+
+		@Override
+		public ByteBuffer ensure( int n ) throws IOException
+		{
+			if( window.remaining( ) >= n )
+				return window;
+
+			offset += window.position( );
+
+			if( size - offset < n )
+				throw new EOFException( );
+
+			long length = Math.min( size - offset, Math.max( n, WINDOW_SIZE ) );
+			window = channel.map( FileChannel.MapMode.READ_ONLY, offset, length );
+			return window;
+		}
+	}
+}
@@ -0,0 +1,525 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The edit script turning one {@code KeyedComposite} hierarchy into another,
+ * for example a live hierarchy into a freshly loaded one. Nodes correspond to
+ * each other if they have the same path. The script consists of
+ * <ul>
+ * <li>{@link Operation#UPDATE} edits of nodes whose content differs,</li>
+ * <li>{@link Operation#DELETE} edits of subtrees missing in the new
+ * hierarchy,</li>
+ * <li>{@link Operation#INSERT} edits of subtrees missing in the old
+ * hierarchy and</li>
+ * <li>{@link Operation#MOVE} edits of subtrees that either changed their
+ * position among their siblings or have been moved unchanged to another
+ * parent.</li>
+ * </ul>
+ * Within a parent only the children outside of the longest run of children
+ * that kept their relative order are moved, so the script is minimal in the
+ * number of moves.
+ * <p>
+ * Subtrees with equal {@link KeyedComposite#getSubtreeHash() subtree hashes}
+ * are skipped without visiting them. Since the hashes are cached per node and
+ * only recomputed along modified paths, diffing a large hierarchy with few
+ * changes takes time proportional to the changes and the number of children
+ * of the changed nodes, once the hashes of the new hierarchy are known.
+ * </p>
+ *
+ * <pre>
+ * CompositeDiff&lt;String, Node&gt; diff = CompositeDiff.diff( live, loaded );
+ * diff.apply( );
+ * </pre>
+ *
+ * @param <K>
+ *            The type of the child keys.
+ * @param <T>
+ *            The type of the nodes.
+ */
+public final class CompositeDiff<K, T extends KeyedComposite<K, T>>
+{
+	/**
+	 * The operation of an {@link Edit}.
+	 */
+	public enum Operation
+	{
+		INSERT, DELETE, MOVE, UPDATE
+	}
+
+	/**
+	 * A single operation of the edit script.
+	 *
+	 * @param <T>
+	 *            The type of the nodes.
+	 */
+	public static final class Edit<T>
+	{
+		private final Operation operation;
+
+		private final T node;
+
+		private final T parent;
+
+		private final T source;
+
+		private final int index;
+
+		Edit( Operation operation, T node, T parent, T source, int index )
+		{
+			this.operation = operation;
+			this.node = node;
+			this.parent = parent;
+			this.source = source;
+			this.index = index;
+		}
+
+		public Operation getOperation( )
+		{
+			return operation;
+		}
+
+		/**
+		 * Returns the node of the old hierarchy that is deleted, moved or
+		 * updated, or the node of the new hierarchy that is inserted.
+		 *
+		 * @return the affected node.
+		 */
+		public T getNode( )
+		{
+			return node;
+		}
+
+		/**
+		 * Returns the node of the old hierarchy the node is inserted into,
+		 * moved to or deleted from, or the parent of the updated node.
+		 *
+		 * @return the parent of the affected node.
+		 */
+		public T getParent( )
+		{
+			return parent;
+		}
+
+		/**
+		 * Returns the node of the new hierarchy providing the content of an
+		 * update.
+		 *
+		 * @return the source of an update, {@code null} for other edits.
+		 */
+		public T getSource( )
+		{
+			return source;
+		}
+
+		/**
+		 * Returns the position of the node among the children of its parent,
+		 * in the new hierarchy for inserts and moves and in the old hierarchy
+		 * for deletes.
+		 *
+		 * @return the position of the node or {@code -1} for updates.
+		 */
+		public int getIndex( )
+		{
+			return index;
+		}
+
+		@Override
+		public String toString( )
+		{
+			return operation + " " + node + ( index >= 0 ? " at " + parent + "[" + index + "]" : "" );
+		}
+	}
+
+	private final T target;
+
+	private final List<Edit<T>> edits = new ArrayList<Edit<T>>( );
+
+	/**
+	 * The new order of the child keys of the parents whose children need to
+	 * be reordered after all other edits.
+	 */
+	private final Map<T, List<K>> orders = new IdentityHashMap<T, List<K>>( );
+
+	private boolean applied;
+
+	private CompositeDiff( T target )
+	{
+		this.target = target;
+	}
+
+	/**
+	 * Computes the edit script turning the hierarchy below {@code target}
+	 * into the hierarchy below {@code source}. The roots always correspond to
+	 * each other, regardless of their keys.
+	 *
+	 * @param target
+	 *            The root of the hierarchy to modify.
+	 * @param source
+	 *            The root of the hierarchy to turn it into.
+	 * @return the edit script.
+	 */
+	public static <K, T extends KeyedComposite<K, T>> CompositeDiff<K, T> diff( T target, T source )
+	{
+		if( target == null || source == null )
+			throw new IllegalArgumentException( "Null argument. Cannot compare hierarchies." );
+
+		CompositeDiff<K, T> diff = new CompositeDiff<K, T>( target );
+		List<Edit<T>> inserts = new ArrayList<Edit<T>>( );
+		List<Edit<T>> deletes = new ArrayList<Edit<T>>( );
+		List<Edit<T>> moves = new ArrayList<Edit<T>>( );
+
+		diff.compare( target, source, inserts, deletes, moves );
+		diff.matchMoves( inserts, deletes, moves );
+		return diff;
+	}
+
+	/**
+	 * Returns the edits in the order they are applied: updates, deletes,
+	 * moves and inserts.
+	 *
+	 * @return the read-only list of edits.
+	 */
+	public List<Edit<T>> getEdits( )
+	{
+		return Collections.unmodifiableList( edits );
+	}
+
+	/**
+	 * Returns whether both hierarchies are equal.
+	 *
+	 * @return whether there is nothing to edit.
+	 */
+	public boolean isEmpty( )
+	{
+		return edits.isEmpty( );
+	}
+
+	/**
+	 * Applies the edit script in place to the old hierarchy, which then
+	 * equals the new one. Inserted subtrees are moved from the new hierarchy
+	 * to the old one rather than copied. Neither hierarchy must have been
+	 * modified since the script has been computed.
+	 *
+	 * @return the root of the edited hierarchy.
+	 * @throws IllegalStateException
+	 *             if the script has already been applied.
+	 */
+	public T apply( )
+	{
+		if( applied )
+			throw new IllegalStateException( "The edit script has already been applied." );
+
+		applied = true;
+
+		for( Edit<T> edit : edits )
+		{
+			T node = edit.node;
+
+			switch( edit.operation )
+			{
+			case UPDATE:
+				node.updateContent( edit.source );
+				node.contentChanged( );
+				break;
+			case DELETE:
+				edit.parent.removeChild( node );
+				break;
+			case MOVE:
+			case INSERT:
+				if( node.getParent( ) != edit.parent )
+				{
+					if( node.getParent( ) != null )
+						node.getParent( ).removeChild( node );
+
+					edit.parent.addChild( node );
+				}
+				break;
+			}
+		}
+
+		for( Map.Entry<T, List<K>> order : orders.entrySet( ) )
+			order.getKey( ).reorderChildren( order.getValue( ) );
+
+		return target;
+	}
+
+	/**
+	 * Compares two corresponding hierarchies, skipping equal subtrees. The
+	 * hierarchies are traversed depth-first with an explicit stack of the
+	 * nodes being compared, so that arbitrarily deep hierarchies can be
+	 * compared.
+	 */
+	private void compare( T target, T source, List<Edit<T>> inserts, List<Edit<T>> deletes, List<Edit<T>> moves )
+	{
+		Deque<Comparison<K, T>> stack = new ArrayDeque<Comparison<K, T>>( );
+		Comparison<K, T> first = begin( target, source, deletes );
+
+		if( first != null )
+			stack.push( first );
+
+		while( !stack.isEmpty( ) )
+		{
+			Comparison<K, T> current = stack.peek( );
+
+			if( current.next >= current.positions.length )
+			{
+				stack.pop( );
+				finish( current, moves );
+				continue;
+			}
+
+			int i = current.next++;
+			T sourceChild = current.sourceChildren.get( i );
+			Integer position = current.oldPositions.get( sourceChild.getKey( ) );
+
+			if( position == null )
+			{
+				current.positions[i] = -1;
+				inserts.add( new Edit<T>( Operation.INSERT, sourceChild, current.node, null, i ) );
+
+				// Inserted children are appended, so later matches need to be reordered.
+				current.reorder |= current.matched < current.oldPositions.size( );
+			}
+			else
+			{
+				current.positions[i] = position;
+				current.matched++;
+
+				Comparison<K, T> child = begin( current.node.getChild( sourceChild.getKey( ) ), sourceChild, deletes );
+
+				if( child != null )
+					stack.push( child );
+			}
+		}
+	}
+
+	/**
+	 * Starts the comparison of two corresponding nodes, recording the update
+	 * of the node and the deletes of its children.
+	 *
+	 * @return the pending comparison of the children or {@code null} if both
+	 *         subtrees are equal.
+	 */
+	private Comparison<K, T> begin( T node, T source, List<Edit<T>> deletes )
+	{
+		if( node.getSubtreeHash( ) == source.getSubtreeHash( ) )
+			return null;
+
+		if( !node.contentEquals( source ) )
+			edits.add( new Edit<T>( Operation.UPDATE, node, node.getParent( ), source, -1 ) );
+
+		Comparison<K, T> comparison = new Comparison<K, T>( node, source );
+		List<T> children = comparison.children;
+
+		for( int i = 0; i < children.size( ); i++ )
+		{
+			T child = children.get( i );
+
+			if( source.containsChild( child.getKey( ) ) )
+				comparison.oldPositions.put( child.getKey( ), i );
+			else
+				deletes.add( new Edit<T>( Operation.DELETE, child, node, null, i ) );
+		}
+
+		return comparison;
+	}
+
+	/**
+	 * Finishes the comparison of two corresponding nodes once all of their
+	 * children have been compared, recording the moves and the new order of
+	 * the children.
+	 */
+	private void finish( Comparison<K, T> comparison, List<Edit<T>> moves )
+	{
+		int[] positions = comparison.positions;
+		boolean[] stable = longestIncreasingRun( positions );
+		boolean reorder = comparison.reorder;
+
+		for( int i = 0; i < positions.length; i++ )
+		{
+			if( positions[i] >= 0 && !stable[i] )
+			{
+				moves.add( new Edit<T>( Operation.MOVE, comparison.children.get( positions[i] ), comparison.node, null, i ) );
+				reorder = true;
+			}
+		}
+
+		if( reorder )
+		{
+			List<K> keys = new ArrayList<K>( comparison.sourceChildren.size( ) );
+
+			for( T sourceChild : comparison.sourceChildren )
+				keys.add( sourceChild.getKey( ) );
+
+			orders.put( comparison.node, keys );
+		}
+	}
+
+	/**
+	 * Turns a delete and an insert of equal subtrees with the same key into a
+	 * move and appends all deletes, moves and inserts to the script.
+	 */
+	private void matchMoves( List<Edit<T>> inserts, List<Edit<T>> deletes, List<Edit<T>> moves )
+	{
+		Map<Long, List<Edit<T>>> deleted = new HashMap<Long, List<Edit<T>>>( );
+
+		for( Edit<T> delete : deletes )
+		{
+			Long hash = delete.node.getSubtreeHash( );
+			List<Edit<T>> candidates = deleted.get( hash );
+
+			if( candidates == null )
+			{
+				candidates = new ArrayList<Edit<T>>( 1 );
+				deleted.put( hash, candidates );
+			}
+
+			candidates.add( delete );
+		}
+
+		Set<Edit<T>> moved = new HashSet<Edit<T>>( );
+
+		for( Iterator<Edit<T>> it = inserts.iterator( ); it.hasNext( ); )
+		{
+			Edit<T> insert = it.next( );
+			List<Edit<T>> candidates = deleted.get( insert.node.getSubtreeHash( ) );
+
+			if( candidates == null )
+				continue;
+
+			for( Iterator<Edit<T>> c = candidates.iterator( ); c.hasNext( ); )
+			{
+				Edit<T> delete = c.next( );
+
+				if( delete.node.getKey( ).equals( insert.node.getKey( ) ) )
+				{
+					moves.add( new Edit<T>( Operation.MOVE, delete.node, insert.parent, null, insert.index ) );
+					moved.add( delete );
+					c.remove( );
+					it.remove( );
+					break;
+				}
+			}
+		}
+
+		for( Edit<T> delete : deletes )
+			if( !moved.contains( delete ) )
+				edits.add( delete );
+
+		edits.addAll( moves );
+		edits.addAll( inserts );
+	}
+
+	/**
+	 * Marks the elements of the longest strictly increasing subsequence of
+	 * the non-negative positions.
+	 */
+	private static boolean[] longestIncreasingRun( int[] positions )
+	{
+		int n = positions.length;
+		int[] tails = new int[n];
+		int[] previous = new int[n];
+		int length = 0;
+
+		for( int i = 0; i < n; i++ )
+		{
+			if( positions[i] < 0 )
+				continue;
+
+			// Find the first tail not smaller than the position.
+			int low = 0;
+			int high = length;
+
+			while( low < high )
+			{
+				int middle = ( low + high ) >>> 1;
+
+				if( positions[tails[middle]] < positions[i] )
+					low = middle + 1;
+				else
+					high = middle;
+			}
+
+			previous[i] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = i;
+
+			if( low == length )
+				length++;
+		}
+
+		boolean[] stable = new boolean[n];
+
+		for( int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i] )
+			stable[i] = true;
+
+		return stable;
+	}
+
+	/**
+	 * The state of the comparison of two corresponding nodes while their
+	 * children are compared.
+	 */
+	private static final class Comparison<K, T extends KeyedComposite<K, T>>
+	{
+		final T node;
+
+		final List<T> children;
+
+		final List<T> sourceChildren;
+
+		/**
+		 * The old positions of the children in their new order.
+		 */
+		final int[] positions;
+
+		final Map<K, Integer> oldPositions;
+
+		/**
+		 * The position of the next source child to compare.
+		 */
+		int next;
+
+		int matched;
+
+		boolean reorder;
+
+		Comparison( T node, T source )
+		{
+			this.node = node;
+			this.children = node.getChildren( );
+			this.sourceChildren = source.getChildren( );
+			this.positions = new int[sourceChildren.size( )];
+			this.oldPositions = new HashMap<K, Integer>( children.size( ) * 2 );
+		}
+	}
+}
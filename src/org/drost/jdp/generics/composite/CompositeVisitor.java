@@ -0,0 +1,55 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+/**
+ * A visitor of the nodes of a {@code Composite} hierarchy. The visitor is
+ * invoked by a {@link CompositeWalker} once before and once after the children
+ * of each node are visited and steers the walk with its results, so that a
+ * search can prune whole subtrees or stop at the first match.
+ *
+ * @param <T>
+ *            The type of the nodes.
+ *
+ * @see SimpleCompositeVisitor
+ */
+public interface CompositeVisitor<T>
+{
+	/**
+	 * Invoked for a node before any of its children.
+	 *
+	 * @param node
+	 *            The visited node.
+	 * @return how to continue the walk.
+	 */
+	VisitResult enter( T node );
+
+	/**
+	 * Invoked for a node after all of its children, unless
+	 * {@link #enter(Object)} returned {@link VisitResult#SKIP_SUBTREE} or the
+	 * walk has been terminated. Returning {@link VisitResult#SKIP_SUBTREE}
+	 * has the same effect as {@link VisitResult#CONTINUE}.
+	 *
+	 * @param node
+	 *            The visited node.
+	 * @return how to continue the walk.
+	 */
+	VisitResult leave( T node );
+}
@@ -0,0 +1,349 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Walks {@code Composite} hierarchies in depth-first order and reports every
+ * node to a {@link CompositeVisitor}. The sequential walk uses an explicit
+ * stack instead of recursion, so arbitrarily deep hierarchies can be walked.
+ * The parallel walk visits independent subtrees concurrently on a
+ * {@code ForkJoinPool}.
+ * <p>
+ * This class cannot be instantiated.
+ * </p>
+ *
+ * <pre>
+ * CompositeWalker.walk( root, new SimpleCompositeVisitor&lt;Node&gt;( )
+ * {
+ * 	public VisitResult enter( Node node )
+ * 	{
+ * 		return node.isHidden( ) ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+ * 	}
+ * } );
+ * </pre>
+ *
+ * @see CompositeVisitor
+ */
+public final class CompositeWalker
+{
+	/**
+	 * The number of surplus queued tasks from which on a parallel walk
+	 * continues sequentially within the current task.
+	 */
+	private static final int SURPLUS_THRESHOLD = 3;
+
+	/**
+	 * Restricted instantiation.
+	 */
+	private CompositeWalker( )
+	{
+		assert false : "Uninstantiable class: " + this.getClass( ).getName( );
+	}
+
+	/**
+	 * Walks the hierarchy below and including the specified root in the
+	 * current thread. The children of a node are visited in the order of
+	 * {@link Composite#getChildren()}.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param visitor
+	 *            The visitor to invoke for each node.
+	 * @return {@link VisitResult#TERMINATE} if the walk has been terminated by
+	 *         the visitor, {@link VisitResult#CONTINUE} otherwise.
+	 */
+	public static <T extends Composite<T>> VisitResult walk( T root, CompositeVisitor<? super T> visitor )
+	{
+		if( root == null || visitor == null )
+			throw new IllegalArgumentException( "Null argument. Cannot walk hierarchy." );
+
+		CompositeTraversalEvent event = new CompositeTraversalEvent( );
+
+		if( !event.isEnabled( ) )
+			return walk( root, visitor, null );
+
+		CountingVisitor<T> counter = new CountingVisitor<T>( visitor );
+		event.begin( );
+
+		VisitResult result = walk( root, counter, null );
+		commit( event, root, counter, false, result );
+		return result;
+	}
+
+	/**
+	 * Walks the hierarchy below and including the specified root in parallel
+	 * on the common {@code ForkJoinPool}.
+	 *
+	 * @see #walkParallel(Composite, CompositeVisitor, ForkJoinPool)
+	 */
+	public static <T extends Composite<T>> VisitResult walkParallel( T root, CompositeVisitor<? super T> visitor )
+	{
+		return walkParallel( root, visitor, ForkJoinPool.commonPool( ) );
+	}
+
+	/**
+	 * Walks the hierarchy below and including the specified root in parallel
+	 * on the specified pool. Each node is still entered before and left after
+	 * all of its children, but siblings and their subtrees may be visited
+	 * concurrently and in any order, so the visitor has to be thread safe.
+	 * After a visitor returned {@link VisitResult#TERMINATE} no further nodes
+	 * are entered, though callbacks already running in other threads still
+	 * complete. The hierarchy must not be modified during the walk.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param visitor
+	 *            The thread safe visitor to invoke for each node.
+	 * @param pool
+	 *            The pool to run the walk on.
+	 * @return {@link VisitResult#TERMINATE} if the walk has been terminated by
+	 *         the visitor, {@link VisitResult#CONTINUE} otherwise.
+	 */
+	public static <T extends Composite<T>> VisitResult walkParallel( T root, CompositeVisitor<? super T> visitor,
+			ForkJoinPool pool )
+	{
+		if( root == null || visitor == null || pool == null )
+			throw new IllegalArgumentException( "Null argument. Cannot walk hierarchy." );
+
+		CompositeTraversalEvent event = new CompositeTraversalEvent( );
+		CountingVisitor<T> counter = null;
+
+		if( event.isEnabled( ) )
+		{
+			counter = new CountingVisitor<T>( visitor );
+			visitor = counter;
+			event.begin( );
+		}
+
+		AtomicBoolean terminated = new AtomicBoolean( );
+		pool.invoke( new WalkTask<T>( null, root, visitor, terminated ) );
+
+		VisitResult result = terminated.get( ) ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+
+		if( counter != null )
+			commit( event, root, counter, true, result );
+
+		return result;
+	}
+
+	/**
+	 * Returns the first node in pre-order matching the specified condition.
+	 * The walk stops at the first match.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param condition
+	 *            The condition to match.
+	 * @return the first matching node or {@code null} if there is no match.
+	 */
+	public static <T extends Composite<T>> T find( T root, final Predicate<? super T> condition )
+	{
+		if( condition == null )
+			throw new IllegalArgumentException( "Null argument. Cannot find node." );
+
+		final AtomicReference<T> match = new AtomicReference<T>( );
+
+		walk( root, new SimpleCompositeVisitor<T>( )
+		{
+			@Override
+			public VisitResult enter( T node )
+			{
+				if( !condition.test( node ) )
+					return VisitResult.CONTINUE;
+
+				match.set( node );
+				return VisitResult.TERMINATE;
+			}
+		} );
+
+		return match.get( );
+	}
+
+	/**
+	 * Walks a subtree iteratively. If a termination flag is given it is
+	 * checked before each node, so that concurrent walks stop early as well.
+	 */
+	private static <T extends Composite<T>> VisitResult walk( T root, CompositeVisitor<? super T> visitor,
+			AtomicBoolean terminated )
+	{
+		Deque<T> nodes = new ArrayDeque<T>( );
+		Deque<Iterator<T>> iterators = new ArrayDeque<Iterator<T>>( );
+		T node = root;
+
+		while( true )
+		{
+			if( node != null )
+			{
+				if( terminated != null && terminated.get( ) )
+					return VisitResult.TERMINATE;
+
+				VisitResult result = visitor.enter( node );
+
+				if( result == VisitResult.TERMINATE )
+					return VisitResult.TERMINATE;
+
+				if( result == VisitResult.CONTINUE )
+				{
+					nodes.push( node );
+					iterators.push( node.getChildren( ).iterator( ) );
+				}
+			}
+
+			if( iterators.isEmpty( ) )
+				return VisitResult.CONTINUE;
+
+			// Descend into the next child or leave the exhausted node.
+			Iterator<T> it = iterators.peek( );
+			if( it.hasNext( ) )
+			{
+				node = it.next( );
+				continue;
+			}
+
+			iterators.pop( );
+			node = null;
+
+			if( visitor.leave( nodes.pop( ) ) == VisitResult.TERMINATE )
+				return VisitResult.TERMINATE;
+		}
+	}
+
+	private static void commit( CompositeTraversalEvent event, Composite<?> root, CountingVisitor<?> counter,
+			boolean parallel, VisitResult result )
+	{
+		event.end( );
+
+		if( event.shouldCommit( ) )
+		{
+			event.rootClass = root.getClass( );
+			event.nodeCount = counter.count.sum( );
+			event.parallel = parallel;
+			event.terminated = result == VisitResult.TERMINATE;
+			event.commit( );
+		}
+	}
+
+	/**
+	 * Counts the entered nodes for the {@link CompositeTraversalEvent}, only
+	 * used while the event is enabled.
+	 */
+	private static final class CountingVisitor<T> implements CompositeVisitor<T>
+	{
+		private final CompositeVisitor<? super T> visitor;
+
+		private final LongAdder count = new LongAdder( );
+
+		CountingVisitor( CompositeVisitor<? super T> visitor )
+		{
+			this.visitor = visitor;
+		}
+
+		@Override
+		public VisitResult enter( T node )
+		{
+			count.increment( );
+			return visitor.enter( node );
+		}
+
+		@Override
+		public VisitResult leave( T node )
+		{
+			return visitor.leave( node );
+		}
+	}
+
+	/**
+	 * Visits a node and forks a task for each child. The node is left in
+	 * {@link #onCompletion(CountedCompleter)} once all child tasks have
+	 * completed, so no task ever blocks while waiting for its children.
+	 */
+	private static final class WalkTask<T extends Composite<T>> extends CountedCompleter<Void>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final T node;
+
+		private final CompositeVisitor<? super T> visitor;
+
+		private final AtomicBoolean terminated;
+
+		private boolean entered;
+
+		WalkTask( CountedCompleter<?> parent, T node, CompositeVisitor<? super T> visitor, AtomicBoolean terminated )
+		{
+			super( parent );
+			this.node = node;
+			this.visitor = visitor;
+			this.terminated = terminated;
+		}
+
+		@Override
+		public void compute( )
+		{
+			if( !terminated.get( ) )
+			{
+				if( getSurplusQueuedTaskCount( ) > SURPLUS_THRESHOLD )
+				{
+					// Enough work is queued, continue with this subtree alone.
+					if( walk( node, visitor, terminated ) == VisitResult.TERMINATE )
+						terminated.set( true );
+				}
+				else
+				{
+					VisitResult result = visitor.enter( node );
+
+					if( result == VisitResult.TERMINATE )
+					{
+						terminated.set( true );
+					}
+					else if( result == VisitResult.CONTINUE )
+					{
+						entered = true;
+						List<T> children = node.getChildren( );
+						addToPendingCount( children.size( ) );
+
+						for( T child : children )
+							new WalkTask<T>( this, child, visitor, terminated ).fork( );
+					}
+				}
+			}
+
+			tryComplete( );
+		}
+
+		@Override
+		public void onCompletion( CountedCompleter<?> caller )
+		{
+			if( entered && !terminated.get( ) && visitor.leave( node ) == VisitResult.TERMINATE )
+				terminated.set( true );
+		}
+	}
+}
@@ -0,0 +1,728 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A {@code Composite} whose children are identified by a unique key. Every
+ * node keeps a map from the child keys to the children, so that a child can
+ * be found by its key in constant time and any node can be found by its path
+ * (for example {@code /a/b/c}) in constant time per level. Paths are not
+ * stored but derived from the parent links on demand, so deep hierarchies do
+ * not hold a path string per node and adding or removing a subtree takes time
+ * independent of its size. It is linear in the depth of the parent though,
+ * since the cycle check and the invalidation of the subtree hashes and
+ * versions walk all of its ancestors.
+ * <p>
+ * The children are stored in insertion order. Unlike the plain
+ * {@code Composite} the list returned by {@link #getChildren()} is a read-only
+ * view, since modifying it directly would bypass the key map. The view is
+ * live and reflects later modifications of the children.
+ * </p>
+ *
+ * <pre>
+ * public class Node extends KeyedComposite&lt;String, Node&gt;
+ * {
+ * 	private final String name;
+ *
+ * 	public Node( String name )
+ * 	{
+ * 		this.name = name;
+ * 	}
+ *
+ * 	public String getKey( )
+ * 	{
+ * 		return name;
+ * 	}
+ * }
+ * </pre>
+ *
+ * @param <K>
+ *            The type of the child keys.
+ * @param <T>
+ *            The type of the child nodes.
+ */
+public abstract class KeyedComposite<K, T extends KeyedComposite<K, T>> extends Composite<T>
+{
+	/**
+	 * The separator between the keys of a path.
+	 */
+	public static final char SEPARATOR = '/';
+
+	/**
+	 * Issues the modification stamps of all nodes.
+	 */
+	private static final AtomicLong CLOCK = new AtomicLong( );
+
+	/**
+	 * The children mapped by their keys in insertion order.
+	 */
+	private final Map<K, T> childMap = new LinkedHashMap<K, T>( );
+
+	/**
+	 * The children whose keys are not strings mapped by the string
+	 * representation of their keys, {@code null} if there are none. Children
+	 * with string keys are found by name in {@link #childMap} directly.
+	 */
+	private Map<String, T> childNames;
+
+	/**
+	 * The parent node or {@code null} if this node is a root.
+	 */
+	private T parent;
+
+	/**
+	 * The read-only view of the children backed by {@link #childMap}.
+	 */
+	private final List<T> childView = new ChildList( );
+
+	/**
+	 * The children in insertion order for the positional access of the view,
+	 * {@code null} if it needs to be rebuilt.
+	 */
+	private Object[] childArray;
+
+	/**
+	 * The cached hash of the subtree of this node, only valid while
+	 * {@link #hashValid} is set. A valid hash implies valid hashes of all
+	 * descendants.
+	 */
+	private long subtreeHash;
+
+	private boolean hashValid;
+
+	/**
+	 * The stamp of the latest modification of the subtree of this node.
+	 */
+	private long subtreeVersion = CLOCK.incrementAndGet( );
+
+	public KeyedComposite( )
+	{
+		super( );
+		this.children = null;
+	}
+
+	/**
+	 * Returns the key identifying this node among its siblings. The key must
+	 * not change while this node is part of a hierarchy and its string
+	 * representation must not contain the {@link #SEPARATOR}.
+	 *
+	 * @return the key identifying this node among its siblings.
+	 */
+	public abstract K getKey( );
+
+	/**
+	 * Returns the parent node or {@code null} if this node is a root.
+	 *
+	 * @return the parent node or {@code null} if this node is a root.
+	 */
+	public T getParent( )
+	{
+		return parent;
+	}
+
+	/**
+	 * Returns the root of the hierarchy this node belongs to.
+	 *
+	 * @return the root of the hierarchy this node belongs to.
+	 */
+	public T getRoot( )
+	{
+		T node = self( );
+
+		while( node.getParent( ) != null )
+			node = node.getParent( );
+
+		return node;
+	}
+
+	/**
+	 * Returns the path of this node relative to its root. The path of a root
+	 * is the empty string, the path of its children is {@code /key} and so on.
+	 * The path is built from the parent links, which takes time linear in the
+	 * depth of this node.
+	 *
+	 * @return the path of this node relative to its root.
+	 */
+	public String getPath( )
+	{
+		if( parent == null )
+			return "";
+
+		List<String> names = new ArrayList<String>( );
+
+		for( KeyedComposite<K, T> node = this; node.parent != null; node = node.parent )
+			names.add( String.valueOf( node.getKey( ) ) );
+
+		StringBuilder path = new StringBuilder( );
+
+		for( int i = names.size( ) - 1; i >= 0; i-- )
+			path.append( SEPARATOR ).append( names.get( i ) );
+
+		return path.toString( );
+	}
+
+	/**
+	 * Returns the direct child with the specified key.
+	 *
+	 * @param key
+	 *            The key of the child.
+	 * @return the child with the specified key or {@code null} if there is no
+	 *         such child.
+	 */
+	public T getChild( K key )
+	{
+		return childMap.get( key );
+	}
+
+	/**
+	 * Returns whether this node has a direct child with the specified key.
+	 *
+	 * @param key
+	 *            The key of the child.
+	 * @return whether this node has a direct child with the specified key.
+	 */
+	public boolean containsChild( K key )
+	{
+		return childMap.containsKey( key );
+	}
+
+	/**
+	 * Returns the node with the specified path within the hierarchy this node
+	 * belongs to. The path is always resolved from the root, so every node of
+	 * a hierarchy returns the same result. Each key of the path is looked up
+	 * in constant time.
+	 *
+	 * @param path
+	 *            The path of the node, for example {@code /a/b/c}.
+	 * @return the node with the specified path or {@code null} if there is no
+	 *         such node.
+	 */
+	public T findByPath( String path )
+	{
+		if( path == null )
+			return null;
+
+		T node = getRoot( );
+
+		if( path.isEmpty( ) )
+			return node;
+		if( path.charAt( 0 ) != SEPARATOR )
+			return null;
+
+		int start = 1;
+
+		while( node != null )
+		{
+			int end = path.indexOf( SEPARATOR, start );
+			String name = end < 0 ? path.substring( start ) : path.substring( start, end );
+			node = node( node ).getChildByName( name );
+
+			if( end < 0 )
+				return node;
+
+			start = end + 1;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a live read-only view of the children. Iterating the view and
+	 * querying its size takes no extra copy; the first positional access after
+	 * a modification copies the children once.
+	 */
+	@Override
+	public List<T> getChildren( )
+	{
+		return childView;
+	}
+
+	@Override
+	public void setChildren( List<T> children )
+	{
+		// The list may be a view of the current children.
+		List<T> added = new ArrayList<T>( children );
+		removeAllChildren( );
+
+		for( T child : added )
+			addChild( child );
+	}
+
+	@Override
+	public int getChildCount( )
+	{
+		return childMap.size( );
+	}
+
+	/**
+	 * Adds a child to this node in time linear in the depth of this node,
+	 * independent of the size of the subtree of the child.
+	 *
+	 * @param child
+	 *            The child to add.
+	 * @return {@code false} if this node already has a child with the same
+	 *         key, {@code true} otherwise.
+	 * @throws IllegalArgumentException
+	 *             if the child is {@code null}, already has a parent or is an
+	 *             ancestor of this node.
+	 */
+	@Override
+	public boolean addChild( T child )
+	{
+		if( child == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add child." );
+		if( child.getParent( ) != null )
+			throw new IllegalArgumentException( "The child already belongs to another parent: " + child.getParent( ).getPath( ) );
+		if( child == getRoot( ) )
+			throw new IllegalArgumentException( "A node cannot be added to its own subtree." );
+
+		K key = child.getKey( );
+
+		if( childMap.containsKey( key ) )
+			return false;
+
+		String name = String.valueOf( key );
+		if( name.indexOf( SEPARATOR ) >= 0 )
+			throw new IllegalArgumentException( "Invalid key: " + name );
+
+		childMap.put( key, child );
+
+		if( !( key instanceof String ) )
+		{
+			if( childNames == null )
+				childNames = new HashMap<String, T>( );
+
+			childNames.put( name, child );
+		}
+
+		childrenChanged( );
+		node( child ).parent = self( );
+		childAdded( child );
+		return true;
+	}
+
+	/**
+	 * Removes a child from this node in time linear in the depth of this node,
+	 * independent of the size of the subtree of the child. The removed child
+	 * becomes the root of its own hierarchy.
+	 *
+	 * @param child
+	 *            The child to remove.
+	 * @return whether the child has been removed.
+	 */
+	@Override
+	public boolean removeChild( T child )
+	{
+		if( child == null || child.getParent( ) != this || childMap.get( child.getKey( ) ) != child )
+			return false;
+
+		detach( child );
+		childMap.remove( child.getKey( ) );
+		childrenChanged( );
+		childRemoved( child );
+		return true;
+	}
+
+	/**
+	 * Removes the child at the specified position. Since the children are not
+	 * stored in an indexed list this method needs linear time, prefer
+	 * {@link #removeChild(KeyedComposite)} or {@link #removeChildByKey(Object)}
+	 * instead.
+	 */
+	@Override
+	public T removeChild( int index )
+	{
+		if( index < 0 || index >= childMap.size( ) )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + childMap.size( ) );
+
+		Iterator<T> it = childMap.values( ).iterator( );
+		T child = it.next( );
+
+		for( int i = 0; i < index; i++ )
+			child = it.next( );
+
+		detach( child );
+		it.remove( );
+		childrenChanged( );
+		childRemoved( child );
+		return child;
+	}
+
+	/**
+	 * Removes the child with the specified key.
+	 *
+	 * @param key
+	 *            The key of the child.
+	 * @return the removed child or {@code null} if there is no such child.
+	 */
+	public T removeChildByKey( K key )
+	{
+		T child = childMap.get( key );
+
+		if( child != null )
+			removeChild( child );
+
+		return child;
+	}
+
+	@Override
+	public boolean removeAllChildren( )
+	{
+		if( childMap.isEmpty( ) )
+			return false;
+
+		clearChildren( );
+		return true;
+	}
+
+	/**
+	 * Adds all children of the specified collection, skipping those with a
+	 * key that is already present.
+	 */
+	@Override
+	public boolean addChildren( Collection<? extends T> children )
+	{
+		boolean changed = false;
+
+		for( T child : children )
+			changed |= addChild( child );
+
+		return changed;
+	}
+
+	@Override
+	public boolean removeChildrenIf( Predicate<? super T> condition )
+	{
+		List<T> removed = new ArrayList<T>( );
+		Iterator<T> it = childMap.values( ).iterator( );
+
+		while( it.hasNext( ) )
+		{
+			T child = it.next( );
+
+			if( condition.test( child ) )
+			{
+				detach( child );
+				it.remove( );
+				removed.add( child );
+			}
+		}
+
+		if( removed.isEmpty( ) )
+			return false;
+
+		childrenChanged( );
+
+		for( T child : removed )
+			childRemoved( child );
+
+		return true;
+	}
+
+	@Override
+	public void clearChildren( )
+	{
+		List<T> removed = getChangePublisher( ) != null ? new ArrayList<T>( childMap.values( ) ) : null;
+
+		for( T child : childMap.values( ) )
+			node( child ).parent = null;
+
+		childMap.clear( );
+		childNames = null;
+		childrenChanged( );
+
+		if( removed != null )
+			for( T child : removed )
+				childRemoved( child );
+	}
+
+	/**
+	 * Has no effect, since the children are not stored in a list.
+	 */
+	@Override
+	public void ensureChildCapacity( int capacity )
+	{
+	}
+
+	/**
+	 * Returns a hash of the structure and the content of the subtree of this
+	 * node, combining the keys and the {@link #contentHash() content hashes}
+	 * of all nodes in order. The hash is cached and only recomputed for nodes
+	 * whose subtree has been modified since, so comparing the hashes of two
+	 * unmodified subtrees takes constant time.
+	 *
+	 * @return the hash of the subtree of this node.
+	 * @see CompositeDiff
+	 */
+	public long getSubtreeHash( )
+	{
+		if( hashValid )
+			return subtreeHash;
+
+		// Hash the invalid descendants bottom-up without recursion, so that
+		// arbitrarily deep hierarchies can be hashed.
+		Deque<KeyedComposite<K, T>> stack = new ArrayDeque<KeyedComposite<K, T>>( );
+		stack.push( this );
+
+		while( !stack.isEmpty( ) )
+		{
+			KeyedComposite<K, T> node = stack.peek( );
+			boolean ready = true;
+
+			for( T child : node.childMap.values( ) )
+			{
+				if( !node( child ).hashValid )
+				{
+					stack.push( child );
+					ready = false;
+				}
+			}
+
+			if( ready )
+			{
+				stack.pop( );
+				node.updateSubtreeHash( );
+			}
+		}
+
+		return subtreeHash;
+	}
+
+	/**
+	 * Combines the hashes of this node and its children, whose hashes must be
+	 * valid.
+	 */
+	private void updateSubtreeHash( )
+	{
+		long hash = mix( 31L * String.valueOf( getKey( ) ).hashCode( ) + contentHash( ) );
+
+		for( T child : childMap.values( ) )
+			hash = hash * 0x9E3779B97F4A7C15L + node( child ).subtreeHash;
+
+		subtreeHash = mix( hash ^ childMap.size( ) );
+		hashValid = true;
+	}
+
+	/**
+	 * Returns a hash of the content of this node, excluding its key and its
+	 * children. Nodes with equal content must return equal hashes. The
+	 * default implementation returns {@code 0}, so only the structure of
+	 * hierarchies is compared.
+	 * <p>
+	 * Subclasses overriding this method have to call
+	 * {@link #contentChanged()} whenever their content changes.
+	 * </p>
+	 *
+	 * @return the hash of the content of this node.
+	 */
+	protected int contentHash( )
+	{
+		return 0;
+	}
+
+	/**
+	 * Returns whether this node has the same content as the specified node,
+	 * ignoring their keys and children. The default implementation returns
+	 * {@code true}.
+	 *
+	 * @param other
+	 *            The node to compare with.
+	 * @return whether both nodes have the same content.
+	 */
+	protected boolean contentEquals( T other )
+	{
+		return true;
+	}
+
+	/**
+	 * Replaces the content of this node with the content of the specified
+	 * node, leaving the key and the children untouched. Called by
+	 * {@link CompositeDiff} to update nodes in place. The default
+	 * implementation does nothing.
+	 *
+	 * @param source
+	 *            The node to copy the content from.
+	 */
+	protected void updateContent( T source )
+	{
+	}
+
+	/**
+	 * Returns a stamp that changes whenever this node or one of its
+	 * descendants is modified, either by adding or removing children or by
+	 * {@link #contentChanged()}. Moving this node to another parent leaves
+	 * the stamp unchanged. Stamps are unique across all hierarchies, so an
+	 * unchanged stamp means that the subtree has not been modified.
+	 *
+	 * @return the stamp of the latest modification of the subtree.
+	 */
+	public long getSubtreeVersion( )
+	{
+		return subtreeVersion;
+	}
+
+	/**
+	 * Invalidates the cached subtree hashes and advances the subtree versions
+	 * of this node and its ancestors. Subclasses call this method whenever
+	 * their content changes.
+	 */
+	protected final void contentChanged( )
+	{
+		long stamp = CLOCK.incrementAndGet( );
+
+		for( KeyedComposite<K, T> node = this; node != null; node = node.parent )
+		{
+			node.hashValid = false;
+			node.subtreeVersion = stamp;
+		}
+	}
+
+	/**
+	 * Moves the children with the specified keys to the front in the
+	 * specified order. Since the paths do not change this takes time linear
+	 * in the number of children only.
+	 */
+	void reorderChildren( List<K> keys )
+	{
+		Map<K, T> ordered = new LinkedHashMap<K, T>( );
+
+		for( K key : keys )
+		{
+			T child = childMap.remove( key );
+
+			if( child != null )
+				ordered.put( key, child );
+		}
+
+		ordered.putAll( childMap );
+		childMap.clear( );
+		childMap.putAll( ordered );
+		childrenChanged( );
+	}
+
+	private void childrenChanged( )
+	{
+		childArray = null;
+		contentChanged( );
+	}
+
+	/**
+	 * Returns the direct child whose key has the specified string
+	 * representation.
+	 */
+	private T getChildByName( String name )
+	{
+		T child = childMap.get( name );
+
+		if( child == null && childNames != null )
+			child = childNames.get( name );
+
+		return child;
+	}
+
+	/**
+	 * Spreads the bits of a hash, the finalizer of MurmurHash3.
+	 */
+	private static long mix( long hash )
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB93FE53CA63BL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Returns this node as an instance of the child type, which holds for
+	 * every properly declared subclass.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private T self( )
+	{
+		return (T) this;
+	}
+
+	/**
+	 * Widens a node of the child type so that its private members can be
+	 * accessed.
+	 */
+	private static <K, T extends KeyedComposite<K, T>> KeyedComposite<K, T> node( T node )
+	{
+		return node;
+	}
+
+	/**
+	 * Unlinks the specified child, which is removed from the key map by the
+	 * caller, and turns it into the root of its own hierarchy.
+	 */
+	private void detach( T child )
+	{
+		if( childNames != null )
+			childNames.remove( String.valueOf( child.getKey( ) ) );
+
+		node( child ).parent = null;
+	}
+
+	/**
+	 * The read-only view of the children.
+	 */
+	private final class ChildList extends AbstractList<T>
+	{
+		@Override
+		@SuppressWarnings( "unchecked" )
+		public T get( int index )
+		{
+			if( index < 0 || index >= childMap.size( ) )
+				throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + childMap.size( ) );
+
+			if( childArray == null )
+				childArray = childMap.values( ).toArray( );
+
+			return (T) childArray[index];
+		}
+
+		@Override
+		public int size( )
+		{
+			return childMap.size( );
+		}
+
+		@Override
+		public Iterator<T> iterator( )
+		{
+			return Collections.unmodifiableCollection( childMap.values( ) ).iterator( );
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the payload of a single {@code Composite} node from and to bytes.
+ * The structure of the hierarchy is handled by the {@link CompositeCodec}, so
+ * an implementation must neither write nor read any children.
+ *
+ * @param <T>
+ *            The type of the nodes.
+ */
+public interface NodeSerializer<T>
+{
+	/**
+	 * Writes the payload of a node to the specified buffer. If the buffer is
+	 * too small a {@link java.nio.BufferOverflowException} may be thrown, in
+	 * which case the codec retries with a larger buffer.
+	 *
+	 * @param node
+	 *            The node to write.
+	 * @param out
+	 *            The buffer to write the payload to.
+	 * @throws IOException
+	 *             if the node cannot be written.
+	 */
+	void write( T node, ByteBuffer out ) throws IOException;
+
+	/**
+	 * Creates a new node without any children from its payload.
+	 *
+	 * @param in
+	 *            A buffer holding exactly the payload written by
+	 *            {@link #write(Object, ByteBuffer)}.
+	 * @return the new node.
+	 * @throws IOException
+	 *             if the node cannot be read.
+	 */
+	T read( ByteBuffer in ) throws IOException;
+}
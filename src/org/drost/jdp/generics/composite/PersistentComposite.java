@@ -0,0 +1,365 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
+
+/**
+ * An immutable {@code Composite} holding a value of type {@code V}. Instead of
+ * modifying a node every operation returns a new node, sharing all unchanged
+ * children with the original one. Operations on a descendant, addressed by
+ * the child indexes leading from this node to it, only copy the nodes along
+ * that path, so a modified hierarchy costs {@code O(depth)} new nodes while
+ * every previous root stays a valid snapshot.
+ * <p>
+ * Since nodes never change, snapshots can be handed to any number of readers
+ * without locking, for example by publishing the current root through a
+ * {@code volatile} field or an {@code AtomicReference}. All inherited mutators
+ * throw an {@code UnsupportedOperationException}.
+ * </p>
+ *
+ * <pre>
+ * PersistentComposite&lt;String&gt; v1 = PersistentComposite.of( "root" ).withChild( PersistentComposite.of( "a" ) );
+ * PersistentComposite&lt;String&gt; v2 = v1.withChild( new int[] { 0 }, PersistentComposite.of( "b" ) );
+ * // v1 is unchanged, v2 shares everything but the root and "a"
+ * </pre>
+ *
+ * @param <V>
+ *            The type of the node values.
+ */
+public final class PersistentComposite<V> extends Composite<PersistentComposite<V>>
+{
+	private static final PersistentComposite<?>[] NO_CHILDREN = new PersistentComposite<?>[0];
+
+	private final V value;
+
+	private final PersistentComposite<V>[] nodes;
+
+	private PersistentComposite( V value, PersistentComposite<V>[] nodes )
+	{
+		super( );
+		this.value = value;
+		this.nodes = nodes;
+		this.children = nodes.length == 0 ? Collections.<PersistentComposite<V>> emptyList( )
+				: Collections.unmodifiableList( Arrays.asList( nodes ) );
+	}
+
+	/**
+	 * Creates a node without any children.
+	 *
+	 * @param value
+	 *            The value of the node.
+	 * @return the new node.
+	 */
+	public static <V> PersistentComposite<V> of( V value )
+	{
+		return new PersistentComposite<V>( value, PersistentComposite.<V> newArray( 0 ) );
+	}
+
+	/**
+	 * Creates a node with the specified children.
+	 *
+	 * @param value
+	 *            The value of the node.
+	 * @param children
+	 *            The children of the node.
+	 * @return the new node.
+	 */
+	public static <V> PersistentComposite<V> of( V value, List<PersistentComposite<V>> children )
+	{
+		PersistentComposite<V>[] nodes = children.toArray( PersistentComposite.<V> newArray( children.size( ) ) );
+
+		for( PersistentComposite<V> node : nodes )
+			if( node == null )
+				throw new IllegalArgumentException( "Null child." );
+
+		return new PersistentComposite<V>( value, nodes );
+	}
+
+	/**
+	 * Immutable nodes never change, so there is nothing to observe. Setting
+	 * the publisher of a node shared by any number of snapshots would also
+	 * race with their readers.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the publisher is not {@code null}.
+	 */
+	@Override
+	public void setChangePublisher( ChangePublisher<? super CompositeChange<PersistentComposite<V>>> publisher )
+	{
+		if( publisher != null )
+			throw new UnsupportedOperationException( "Immutable nodes cannot be observed." );
+	}
+
+	public V getValue( )
+	{
+		return value;
+	}
+
+	@Override
+	public int getChildCount( )
+	{
+		return nodes.length;
+	}
+
+	public PersistentComposite<V> getChild( int index )
+	{
+		return nodes[index];
+	}
+
+	/**
+	 * Returns the descendant addressed by the specified child indexes.
+	 *
+	 * @param path
+	 *            The child indexes leading from this node to the descendant.
+	 *            An empty path addresses this node.
+	 * @return the addressed descendant.
+	 * @throws IndexOutOfBoundsException
+	 *             if the path does not address a node.
+	 */
+	public PersistentComposite<V> get( int... path )
+	{
+		PersistentComposite<V> node = this;
+
+		for( int index : path )
+			node = node.getChild( index );
+
+		return node;
+	}
+
+	/**
+	 * Returns a copy of this node with a different value and the same
+	 * children.
+	 */
+	public PersistentComposite<V> withValue( V value )
+	{
+		return new PersistentComposite<V>( value, nodes );
+	}
+
+	/**
+	 * Returns a copy of this node with the specified child appended.
+	 */
+	public PersistentComposite<V> withChild( PersistentComposite<V> child )
+	{
+		return withChild( nodes.length, child );
+	}
+
+	/**
+	 * Returns a copy of this node with the specified child inserted at the
+	 * specified position.
+	 */
+	public PersistentComposite<V> withChild( int index, PersistentComposite<V> child )
+	{
+		if( child == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add child." );
+		if( index < 0 || index > nodes.length )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + nodes.length );
+
+		PersistentComposite<V>[] copy = newArray( nodes.length + 1 );
+		System.arraycopy( nodes, 0, copy, 0, index );
+		copy[index] = child;
+		System.arraycopy( nodes, index, copy, index + 1, nodes.length - index );
+
+		return new PersistentComposite<V>( value, copy );
+	}
+
+	/**
+	 * Returns a copy of this node with the child at the specified position
+	 * replaced.
+	 */
+	public PersistentComposite<V> withChildReplaced( int index, PersistentComposite<V> child )
+	{
+		if( child == null )
+			throw new IllegalArgumentException( "Null argument. Cannot set child." );
+
+		if( nodes[index] == child )
+			return this;
+
+		PersistentComposite<V>[] copy = nodes.clone( );
+		copy[index] = child;
+
+		return new PersistentComposite<V>( value, copy );
+	}
+
+	/**
+	 * Returns a copy of this node without the child at the specified
+	 * position.
+	 */
+	public PersistentComposite<V> withoutChild( int index )
+	{
+		if( index < 0 || index >= nodes.length )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + nodes.length );
+
+		PersistentComposite<V>[] copy = newArray( nodes.length - 1 );
+		System.arraycopy( nodes, 0, copy, 0, index );
+		System.arraycopy( nodes, index + 1, copy, index, nodes.length - index - 1 );
+
+		return new PersistentComposite<V>( value, copy );
+	}
+
+	/**
+	 * Returns a copy of this node without the specified child, compared by
+	 * identity, or this node if it is not a child.
+	 */
+	public PersistentComposite<V> withoutChild( PersistentComposite<V> child )
+	{
+		for( int i = 0; i < nodes.length; i++ )
+			if( nodes[i] == child )
+				return withoutChild( i );
+
+		return this;
+	}
+
+	/**
+	 * Returns a new root in which the descendant addressed by the specified
+	 * path is replaced by another node. Only the nodes along the path are
+	 * copied, all other subtrees are shared with this root.
+	 *
+	 * @param path
+	 *            The child indexes leading from this node to the descendant.
+	 * @param node
+	 *            The replacement of the descendant.
+	 * @return the new root.
+	 */
+	public PersistentComposite<V> replace( int[] path, PersistentComposite<V> node )
+	{
+		if( node == null )
+			throw new IllegalArgumentException( "Null argument. Cannot replace node." );
+
+		// Collect the ancestors top-down, then copy them bottom-up.
+		PersistentComposite<V>[] ancestors = newArray( path.length );
+		PersistentComposite<V> current = this;
+
+		for( int i = 0; i < path.length; i++ )
+		{
+			ancestors[i] = current;
+			current = current.getChild( path[i] );
+		}
+
+		PersistentComposite<V> replacement = node;
+
+		for( int i = path.length - 1; i >= 0; i-- )
+			replacement = ancestors[i].withChildReplaced( path[i], replacement );
+
+		return replacement;
+	}
+
+	/**
+	 * Returns a new root in which the specified child is appended to the
+	 * descendant addressed by the path.
+	 */
+	public PersistentComposite<V> withChild( int[] path, PersistentComposite<V> child )
+	{
+		return replace( path, get( path ).withChild( child ) );
+	}
+
+	/**
+	 * Returns a new root in which the child at the specified position is
+	 * removed from the descendant addressed by the path.
+	 */
+	public PersistentComposite<V> withoutChild( int[] path, int index )
+	{
+		return replace( path, get( path ).withoutChild( index ) );
+	}
+
+	/**
+	 * Returns a new root in which the value of the descendant addressed by the
+	 * path is replaced.
+	 */
+	public PersistentComposite<V> withValue( int[] path, V value )
+	{
+		return replace( path, get( path ).withValue( value ) );
+	}
+
+	@Override
+	public void setChildren( List<PersistentComposite<V>> children )
+	{
+		throw new UnsupportedOperationException( "Immutable composite. Use of(Object, List) instead." );
+	}
+
+	@Override
+	public boolean addChild( PersistentComposite<V> child )
+	{
+		throw new UnsupportedOperationException( "Immutable composite. Use withChild(PersistentComposite) instead." );
+	}
+
+	@Override
+	public boolean removeChild( PersistentComposite<V> child )
+	{
+		throw new UnsupportedOperationException( "Immutable composite. Use withoutChild(PersistentComposite) instead." );
+	}
+
+	@Override
+	public PersistentComposite<V> removeChild( int index )
+	{
+		throw new UnsupportedOperationException( "Immutable composite. Use withoutChild(int) instead." );
+	}
+
+	@Override
+	public boolean removeAllChildren( )
+	{
+		throw new UnsupportedOperationException( "Immutable composite." );
+	}
+
+	@Override
+	public boolean addChildren( Collection<? extends PersistentComposite<V>> children )
+	{
+		throw new UnsupportedOperationException( "Immutable composite. Use of(Object, List) instead." );
+	}
+
+	@Override
+	public boolean removeChildrenIf( Predicate<? super PersistentComposite<V>> condition )
+	{
+		throw new UnsupportedOperationException( "Immutable composite." );
+	}
+
+	@Override
+	public void clearChildren( )
+	{
+		throw new UnsupportedOperationException( "Immutable composite." );
+	}
+
+	@Override
+	public void ensureChildCapacity( int capacity )
+	{
+		throw new UnsupportedOperationException( "Immutable composite." );
+	}
+
+	@Override
+	public String toString( )
+	{
+		return String.valueOf( value );
+	}
+
+	/**
+	 * Creates a node array, sharing a single instance for empty arrays.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static <V> PersistentComposite<V>[] newArray( int length )
+	{
+		return (PersistentComposite<V>[]) ( length == 0 ? NO_CHILDREN : new PersistentComposite<?>[length] );
+	}
+}
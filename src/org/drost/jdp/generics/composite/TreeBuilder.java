@@ -0,0 +1,198 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles a whole {@code Composite} hierarchy in one pass. The structure is
+ * recorded first and applied by {@link #build()}, which presizes the child
+ * storage of every node to its exact number of children and attaches all
+ * children of a node with a single bulk operation.
+ *
+ * <pre>
+ * Person root = new TreeBuilder&lt;Person&gt;( new Person( "Mike" ) )
+ * 		.add( new Person( "Oliver" ) )
+ * 		.begin( new Person( "Emma" ) )
+ * 			.add( new Person( "Harry" ) )
+ * 		.end( )
+ * 		.build( );
+ * </pre>
+ *
+ * A builder is meant to be used once and is not thread safe.
+ *
+ * @param <T>
+ *            The type of the nodes.
+ */
+public class TreeBuilder<T extends Composite<T>>
+{
+	/**
+	 * The recorded nodes in pre-order, starting with the root.
+	 */
+	private Object[] nodes;
+
+	/**
+	 * The index of the parent of each recorded node.
+	 */
+	private int[] parents;
+
+	private int size;
+
+	/**
+	 * The index of the node new children are added to.
+	 */
+	private int current;
+
+	/**
+	 * Creates a builder for the hierarchy below the specified root.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 */
+	public TreeBuilder( T root )
+	{
+		this( root, 16 );
+	}
+
+	/**
+	 * Creates a builder for the hierarchy below the specified root, presized
+	 * for the expected number of nodes.
+	 *
+	 * @param root
+	 *            The root of the hierarchy.
+	 * @param expectedSize
+	 *            The expected number of nodes including the root.
+	 */
+	public TreeBuilder( T root, int expectedSize )
+	{
+		if( root == null )
+			throw new IllegalArgumentException( "Null argument. Cannot build hierarchy." );
+
+		int capacity = Math.max( expectedSize, 1 );
+		this.nodes = new Object[capacity];
+		this.parents = new int[capacity];
+		this.nodes[0] = root;
+		this.parents[0] = -1;
+		this.size = 1;
+		this.current = 0;
+	}
+
+	/**
+	 * Adds a child to the current node.
+	 *
+	 * @param child
+	 *            The child to add.
+	 * @return This builder instance.
+	 */
+	public TreeBuilder<T> add( T child )
+	{
+		record( child );
+		return this;
+	}
+
+	/**
+	 * Adds a child to the current node and makes it the current node, so that
+	 * the following calls add to the child until {@link #end()} is called.
+	 *
+	 * @param child
+	 *            The child to add.
+	 * @return This builder instance.
+	 */
+	public TreeBuilder<T> begin( T child )
+	{
+		current = record( child );
+		return this;
+	}
+
+	/**
+	 * Makes the parent of the current node the current node again.
+	 *
+	 * @return This builder instance.
+	 * @throws IllegalStateException
+	 *             if the current node is the root.
+	 */
+	public TreeBuilder<T> end( )
+	{
+		if( current == 0 )
+			throw new IllegalStateException( "The root cannot be ended." );
+
+		current = parents[current];
+		return this;
+	}
+
+	/**
+	 * Attaches all recorded nodes to their parents and returns the root. The
+	 * recorded children are appended to any children the nodes already have.
+	 *
+	 * @return the root of the hierarchy.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T build( )
+	{
+		// Count the children of each node and turn the counts into offsets.
+		int[] offsets = new int[size + 1];
+
+		for( int i = 1; i < size; i++ )
+			offsets[parents[i] + 1]++;
+
+		for( int i = 0; i < size; i++ )
+			offsets[i + 1] += offsets[i];
+
+		// Group the children by their parents, keeping their order.
+		Object[] grouped = new Object[size];
+		int[] next = Arrays.copyOf( offsets, size );
+
+		for( int i = 1; i < size; i++ )
+			grouped[next[parents[i]]++] = nodes[i];
+
+		List<Object> all = Arrays.asList( grouped );
+
+		for( int i = 0; i < size; i++ )
+		{
+			int count = offsets[i + 1] - offsets[i];
+
+			if( count > 0 )
+			{
+				T node = (T) nodes[i];
+				node.ensureChildCapacity( node.getChildCount( ) + count );
+				node.addChildren( (List<T>) (List<?>) all.subList( offsets[i], offsets[i + 1] ) );
+			}
+		}
+
+		return (T) nodes[0];
+	}
+
+	private int record( T child )
+	{
+		if( child == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add child." );
+
+		if( size == nodes.length )
+		{
+			nodes = Arrays.copyOf( nodes, size * 2 );
+			parents = Arrays.copyOf( parents, size * 2 );
+		}
+
+		nodes[size] = child;
+		parents[size] = current;
+		return size++;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+/**
+ * The result of a {@link CompositeVisitor} callback controlling how a
+ * {@link CompositeWalker} continues.
+ */
+public enum VisitResult
+{
+	/**
+	 * Continue with the children of the node or with the next node.
+	 */
+	CONTINUE,
+
+	/**
+	 * Continue without visiting the children of the node. Only meaningful
+	 * when returned by {@link CompositeVisitor#enter(Object)}, in which case
+	 * {@link CompositeVisitor#leave(Object)} is not invoked for the node.
+	 */
+	SKIP_SUBTREE,
+
+	/**
+	 * Stop the whole walk immediately.
+	 */
+	TERMINATE
+}
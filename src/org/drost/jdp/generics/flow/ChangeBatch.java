@@ -0,0 +1,74 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.flow;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only batch of events delivered by a {@link ChangePublisher}. Besides
+ * the events it tells how many events have been dropped since the previous
+ * batch because the buffer of the subscriber was full. A subscriber receiving
+ * a batch with lost events no longer knows every change and should
+ * resynchronize with the source, for example by reading its whole state.
+ *
+ * @param <E>
+ *            The type of the events.
+ */
+public final class ChangeBatch<E extends ChangeEvent> extends AbstractList<E> implements RandomAccess
+{
+	private final Object[] events;
+
+	private final long lostCount;
+
+	ChangeBatch( List<E> events, long lostCount )
+	{
+		this.events = events.toArray( );
+		this.lostCount = lostCount;
+	}
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public E get( int index )
+	{
+		if( index < 0 || index >= events.length )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + events.length );
+
+		return (E) events[index];
+	}
+
+	@Override
+	public int size( )
+	{
+		return events.length;
+	}
+
+	/**
+	 * Returns the number of events that have been dropped since the previous
+	 * batch, since the buffer of the subscriber was full.
+	 *
+	 * @return the number of lost events, {@code 0} if none has been lost.
+	 */
+	public long getLostCount( )
+	{
+		return lostCount;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.flow;
+
+/**
+ * An event published by a {@link ChangePublisher}. Pending events with equal
+ * coalescing keys are merged, only the latest one is delivered, unless the
+ * latest one {@link #cancels(ChangeEvent) cancels} the pending one, in which
+ * case neither is delivered.
+ */
+public interface ChangeEvent
+{
+	/**
+	 * Returns the key identifying the changed item, for example the object
+	 * whose state has changed.
+	 *
+	 * @return the coalescing key or {@code null} if the event must never be
+	 *         merged with another one.
+	 */
+	Object getCoalescingKey( );
+
+	/**
+	 * Returns whether this event undoes the specified pending event with the
+	 * same coalescing key, so that a subscriber which has received neither of
+	 * them does not need to receive any.
+	 *
+	 * @param pending
+	 *            The pending event with the same coalescing key.
+	 * @return whether both events are dropped.
+	 */
+	boolean cancels( ChangeEvent pending );
+}
@@ -0,0 +1,454 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.flow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@code Flow.Publisher} of change events, delivered to each subscriber in
+ * batches. Sources call {@link #publish(ChangeEvent)} whenever something
+ * changes, which only buffers the event and never blocks or calls a
+ * subscriber on the publishing thread.
+ * <p>
+ * Each subscriber has its own bounded buffer of pending events. Pending
+ * events with the same {@link ChangeEvent#getCoalescingKey() coalescing key}
+ * are merged into the latest one, keeping the position of the first, or
+ * dropped together if the latest one {@link ChangeEvent#cancels(ChangeEvent)
+ * cancels} the pending one. As long
+ * as a subscriber has requested more batches, the pending events are handed
+ * to it on the executor in batches of at most {@code maxBatchSize} events, so
+ * a slow subscriber receives fewer, larger batches of coalesced events rather
+ * than every single change. Each requested item is one batch.
+ * </p>
+ * <p>
+ * Delivery is asynchronous, so a single bulk modification can outrun any
+ * subscriber regardless of its demand. If more distinct events pile up than
+ * the buffer of a subscriber holds, the oldest pending event is dropped and
+ * the subscription stays active. Each batch is a {@link ChangeBatch} that
+ * reports the {@link ChangeBatch#getLostCount() number of events} dropped
+ * since the previous batch, so that the subscriber knows when to
+ * resynchronize with the source. A larger capacity keeps bulk modifications
+ * from losing events. Events published without any subscriber are dropped
+ * immediately.
+ * </p>
+ *
+ * @param <E>
+ *            The type of the events.
+ */
+public class ChangePublisher<E extends ChangeEvent> implements Flow.Publisher<List<E>>, AutoCloseable
+{
+	private final Executor executor;
+
+	private final int capacity;
+
+	private final int maxBatchSize;
+
+	private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<ChangeSubscription>( );
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a publisher delivering on the common {@code ForkJoinPool} with
+	 * a buffer of {@link Flow#defaultBufferSize()} events per subscriber.
+	 */
+	public ChangePublisher( )
+	{
+		this( ForkJoinPool.commonPool( ), Flow.defaultBufferSize( ), Flow.defaultBufferSize( ) );
+	}
+
+	/**
+	 * Creates a publisher.
+	 *
+	 * @param executor
+	 *            The executor delivering the events.
+	 * @param capacity
+	 *            The maximum number of pending events per subscriber.
+	 * @param maxBatchSize
+	 *            The maximum number of events per batch.
+	 */
+	public ChangePublisher( Executor executor, int capacity, int maxBatchSize )
+	{
+		if( executor == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create publisher." );
+		if( capacity < 1 )
+			throw new IllegalArgumentException( "Invalid capacity: " + capacity );
+		if( maxBatchSize < 1 )
+			throw new IllegalArgumentException( "Invalid batch size: " + maxBatchSize );
+
+		this.executor = executor;
+		this.capacity = capacity;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Subscribes a subscriber, which receives the events published from now
+	 * on. A subscriber subscribing to a closed publisher is completed
+	 * immediately.
+	 *
+	 * @throws NullPointerException
+	 *             if the subscriber is {@code null}, as required by
+	 *             {@code Flow}.
+	 */
+	@Override
+	public void subscribe( Flow.Subscriber<? super List<E>> subscriber )
+	{
+		if( subscriber == null )
+			throw new NullPointerException( "Null argument. Cannot subscribe." );
+
+		ChangeSubscription subscription = new ChangeSubscription( subscriber );
+		boolean duplicate = false;
+
+		for( ChangeSubscription other : subscriptions )
+			duplicate |= other.subscriber == subscriber;
+
+		subscriber.onSubscribe( subscription );
+
+		if( duplicate )
+		{
+			subscription.fail( new IllegalStateException( "Duplicate subscription." ) );
+			return;
+		}
+
+		subscriptions.add( subscription );
+
+		if( closed )
+			subscription.complete( );
+	}
+
+	/**
+	 * Buffers an event for all current subscribers. Has no effect once the
+	 * publisher has been closed.
+	 *
+	 * @param event
+	 *            The event to publish.
+	 */
+	public void publish( E event )
+	{
+		if( event == null )
+			throw new IllegalArgumentException( "Null argument. Cannot publish event." );
+
+		if( closed )
+			return;
+
+		for( ChangeSubscription subscription : subscriptions )
+			subscription.offer( event );
+	}
+
+	/**
+	 * Returns whether there is any subscriber, so that sources may skip
+	 * creating events nobody receives.
+	 *
+	 * @return whether there is any subscriber.
+	 */
+	public boolean hasSubscribers( )
+	{
+		return !subscriptions.isEmpty( );
+	}
+
+	public int getSubscriberCount( )
+	{
+		return subscriptions.size( );
+	}
+
+	public boolean isClosed( )
+	{
+		return closed;
+	}
+
+	/**
+	 * Stops accepting events and completes every subscriber once it has
+	 * received its pending events.
+	 */
+	@Override
+	public void close( )
+	{
+		closed = true;
+
+		for( ChangeSubscription subscription : subscriptions )
+			subscription.complete( );
+	}
+
+	/**
+	 * The buffer and the demand of a single subscriber. Signals are sent by a
+	 * single drain task at a time.
+	 */
+	private final class ChangeSubscription implements Flow.Subscription, Runnable
+	{
+		private final Flow.Subscriber<? super List<E>> subscriber;
+
+		private final ReentrantLock lock = new ReentrantLock( );
+
+		/**
+		 * The pending events mapped by their coalescing keys.
+		 */
+		private final Map<Object, E> pending = new LinkedHashMap<Object, E>( );
+
+		/**
+		 * Counts the requests to drain, only the first one schedules a task.
+		 */
+		private final AtomicInteger work = new AtomicInteger( );
+
+		private long requested;
+
+		/**
+		 * The number of events dropped since the previous batch.
+		 */
+		private long lost;
+
+		private boolean completed;
+
+		private boolean cancelled;
+
+		private Throwable error;
+
+		ChangeSubscription( Flow.Subscriber<? super List<E>> subscriber )
+		{
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request( long n )
+		{
+			lock.lock( );
+			try
+			{
+				if( n <= 0 )
+					error = new IllegalArgumentException( "Non-positive request: " + n );
+				else
+					requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			schedule( );
+		}
+
+		@Override
+		public void cancel( )
+		{
+			lock.lock( );
+			try
+			{
+				cancelled = true;
+				pending.clear( );
+				lost = 0;
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			subscriptions.remove( this );
+		}
+
+		void offer( E event )
+		{
+			boolean ready;
+
+			lock.lock( );
+			try
+			{
+				if( cancelled || completed || error != null )
+					return;
+
+				Object key = event.getCoalescingKey( );
+
+				if( key == null )
+					key = new Object( );
+
+				if( pending.size( ) >= capacity && !pending.containsKey( key ) )
+				{
+					// Make room by dropping the oldest event.
+					Iterator<E> it = pending.values( ).iterator( );
+					it.next( );
+					it.remove( );
+					lost++;
+				}
+
+				E previous = pending.put( key, event );
+
+				if( previous != null && event.cancels( previous ) )
+					pending.remove( key );
+
+				ready = requested > 0 || error != null;
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			if( ready )
+				schedule( );
+		}
+
+		void complete( )
+		{
+			lock.lock( );
+			try
+			{
+				completed = true;
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			schedule( );
+		}
+
+		void fail( Throwable failure )
+		{
+			lock.lock( );
+			try
+			{
+				error = failure;
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			schedule( );
+		}
+
+		private void schedule( )
+		{
+			if( work.getAndIncrement( ) != 0 )
+				return;
+
+			try
+			{
+				executor.execute( this );
+			}
+			catch ( RejectedExecutionException e )
+			{
+				cancel( );
+				subscriber.onError( e );
+			}
+		}
+
+		/**
+		 * Delivers batches while there is demand, then completes or fails the
+		 * subscriber if necessary.
+		 */
+		@Override
+		public void run( )
+		{
+			int missed = 1;
+
+			do
+			{
+				while( true )
+				{
+					List<E> batch = null;
+					Throwable failure = null;
+					boolean done = false;
+
+					lock.lock( );
+					try
+					{
+						if( cancelled )
+							return;
+
+						if( error != null )
+						{
+							failure = error;
+							cancelled = true;
+						}
+						else if( requested > 0 && !pending.isEmpty( ) )
+						{
+							batch = takeBatch( );
+
+							if( requested != Long.MAX_VALUE )
+								requested--;
+						}
+						else if( completed && pending.isEmpty( ) )
+						{
+							done = true;
+							cancelled = true;
+						}
+					}
+					finally
+					{
+						lock.unlock( );
+					}
+
+					if( failure != null || done )
+					{
+						subscriptions.remove( this );
+
+						if( failure != null )
+							subscriber.onError( failure );
+						else
+							subscriber.onComplete( );
+
+						return;
+					}
+
+					if( batch == null )
+						break;
+
+					try
+					{
+						subscriber.onNext( batch );
+					}
+					catch ( Throwable e )
+					{
+						cancel( );
+						subscriber.onError( e );
+						return;
+					}
+				}
+
+				missed = work.addAndGet( -missed );
+			}
+			while( missed != 0 );
+		}
+
+		private ChangeBatch<E> takeBatch( )
+		{
+			List<E> batch = new ArrayList<E>( Math.min( pending.size( ), maxBatchSize ) );
+			Iterator<E> it = pending.values( ).iterator( );
+
+			while( it.hasNext( ) && batch.size( ) < maxBatchSize )
+			{
+				batch.add( it.next( ) );
+				it.remove( );
+			}
+
+			ChangeBatch<E> result = new ChangeBatch<E>( batch, lost );
+			lost = 0;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,462 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@code Caretaker} keeping only the most recent mementos as live objects
+ * and archiving older ones outside of the heap. Archived mementos are
+ * serialized, grouped into blocks of {@code blockSize} mementos and
+ * compressed. The blocks are held in direct buffers or, if an archive file is
+ * given, appended to that file and memory-mapped, so they neither count
+ * towards the heap nor are scanned by the garbage collector.
+ * <p>
+ * Requesting an archived memento decompresses only the block holding it. The
+ * most recently decompressed block is cached, so replaying consecutive
+ * mementos decompresses each block once. The mementos returned for archived
+ * positions are new instances with deserialized states and the versions and
+ * timestamps of the archived mementos.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class ArchivingCaretaker<T> extends Caretaker<T> implements Closeable
+{
+	/**
+	 * The size of the table entry of each memento in a block, the end offset
+	 * of its state, its version and its timestamp.
+	 */
+	private static final int ENTRY_SIZE = 20;
+
+	private final StateSerializer<T> serializer;
+
+	private final int liveCount;
+
+	private final int blockSize;
+
+	/**
+	 * The archive file or {@code null} to use direct buffers.
+	 */
+	private final FileChannel file;
+
+	/**
+	 * The compressed blocks, each starting with the uncompressed length.
+	 */
+	private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>( );
+
+	/**
+	 * The mementos that have not been archived yet, starting with the memento
+	 * at position {@code blocks.size() * blockSize}.
+	 */
+	private final List<Memento<T>> live = new ArrayList<Memento<T>>( );
+
+	private final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+
+	private final Inflater inflater = new Inflater( );
+
+	private ByteBuffer scratch = ByteBuffer.allocate( 1024 );
+
+	private long archivedBytes;
+
+	private int cachedBlock = -1;
+
+	private ByteBuffer cachedData;
+
+	/**
+	 * Creates a caretaker archiving into direct buffers.
+	 *
+	 * @param serializer
+	 *            The serializer of the states.
+	 * @param liveCount
+	 *            The minimum number of recent mementos kept as live objects.
+	 * @param blockSize
+	 *            The number of mementos compressed together.
+	 */
+	public ArchivingCaretaker( StateSerializer<T> serializer, int liveCount, int blockSize )
+	{
+		if( serializer == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create caretaker." );
+		if( liveCount < 0 || blockSize < 1 )
+			throw new IllegalArgumentException( "Invalid bounds: " + liveCount + ", " + blockSize );
+
+		this.serializer = serializer;
+		this.liveCount = liveCount;
+		this.blockSize = blockSize;
+		this.file = null;
+	}
+
+	/**
+	 * Creates a caretaker archiving into a memory-mapped file. An existing
+	 * file is replaced. The file is only a swap space for this caretaker and
+	 * cannot be reopened later.
+	 *
+	 * @param serializer
+	 *            The serializer of the states.
+	 * @param liveCount
+	 *            The minimum number of recent mementos kept as live objects.
+	 * @param blockSize
+	 *            The number of mementos compressed together.
+	 * @param archiveFile
+	 *            The file to write the blocks to.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public ArchivingCaretaker( StateSerializer<T> serializer, int liveCount, int blockSize, Path archiveFile )
+			throws IOException
+	{
+		if( serializer == null || archiveFile == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create caretaker." );
+		if( liveCount < 0 || blockSize < 1 )
+			throw new IllegalArgumentException( "Invalid bounds: " + liveCount + ", " + blockSize );
+
+		this.serializer = serializer;
+		this.liveCount = liveCount;
+		this.blockSize = blockSize;
+		this.file = FileChannel.open( archiveFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+	}
+
+	/**
+	 * Adds a memento and archives the oldest live mementos in a new block as
+	 * soon as enough of them exceed the live count.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the memento is {@code null}.
+	 * @throws UncheckedIOException
+	 *             if archiving fails.
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		live.add( m );
+
+		if( live.size( ) >= liveCount + blockSize )
+		{
+			List<Memento<T>> archived = live.subList( 0, blockSize );
+			blocks.add( store( compress( archived ), -1 ) );
+			archived.clear( );
+		}
+
+		return true;
+	}
+
+	@Override
+	public void clearAll( )
+	{
+		blocks.clear( );
+		live.clear( );
+		archivedBytes = 0;
+		invalidate( );
+
+		if( file != null )
+		{
+			try
+			{
+				file.truncate( 0 );
+			}
+			catch ( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+		}
+	}
+
+	/**
+	 * Returns the memento at the specified position, decompressing its block
+	 * if it has been archived.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the archived state cannot be read.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		int archived = getArchivedCount( );
+
+		if( index >= archived )
+			return live.get( index - archived );
+		if( index < 0 )
+			throw new IndexOutOfBoundsException( "Index: " + index );
+
+		return read( decompress( index / blockSize ), index % blockSize );
+	}
+
+	/**
+	 * Replaces the memento at the specified position. Replacing an archived
+	 * memento recompresses its whole block.
+	 */
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		int archived = getArchivedCount( );
+
+		if( index >= archived )
+			return live.set( index - archived, m );
+
+		Memento<T> previous = getMemento( index );
+		int block = index / blockSize;
+
+		List<Memento<T>> mementos = new ArrayList<Memento<T>>( blockSize );
+		for( int i = 0; i < blockSize; i++ )
+			mementos.add( i == index % blockSize ? m : getMemento( block * blockSize + i ) );
+
+		archivedBytes -= blocks.get( block ).capacity( );
+		blocks.set( block, store( compress( mementos ), block ) );
+		invalidate( );
+
+		return previous;
+	}
+
+	@Override
+	public int getMementoCount( )
+	{
+		return getArchivedCount( ) + live.size( );
+	}
+
+	/**
+	 * Returns the number of mementos that have been archived.
+	 *
+	 * @return the number of archived mementos.
+	 */
+	public int getArchivedCount( )
+	{
+		return blocks.size( ) * blockSize;
+	}
+
+	/**
+	 * Returns the compressed size of all archived mementos.
+	 *
+	 * @return the compressed size of the archive in bytes.
+	 */
+	public long getArchivedBytes( )
+	{
+		return archivedBytes;
+	}
+
+	/**
+	 * Closes the archive file, if any. The archived mementos are not
+	 * accessible afterwards.
+	 */
+	@Override
+	public void close( ) throws IOException
+	{
+		deflater.end( );
+		inflater.end( );
+
+		if( file != null )
+			file.close( );
+	}
+
+	/**
+	 * Serializes the specified mementos into one block and compresses it. A
+	 * block consists of a table holding the end offset of the state, the
+	 * version and the timestamp of each memento followed by the states.
+	 */
+	private byte[] compress( List<Memento<T>> mementos )
+	{
+		int count = mementos.size( );
+		byte[][] states = new byte[count][];
+		int length = ENTRY_SIZE * count;
+
+		for( int i = 0; i < count; i++ )
+		{
+			states[i] = write( mementos.get( i ).getState( ) );
+			length += states[i].length;
+		}
+
+		ByteBuffer raw = ByteBuffer.allocate( length );
+		int offset = 0;
+
+		for( int i = 0; i < count; i++ )
+		{
+			offset += states[i].length;
+			raw.putInt( offset ).putLong( mementos.get( i ).getVersion( ) ).putLong( mementos.get( i ).getTimestamp( ) );
+		}
+		for( int i = 0; i < count; i++ )
+			raw.put( states[i] );
+
+		deflater.reset( );
+		deflater.setInput( raw.array( ) );
+		deflater.finish( );
+
+		byte[] compressed = new byte[4 + Math.max( 64, length / 2 )];
+		ByteBuffer.wrap( compressed ).putInt( length );
+		int size = 4;
+
+		while( !deflater.finished( ) )
+		{
+			if( size == compressed.length )
+				compressed = Arrays.copyOf( compressed, compressed.length * 2 );
+
+			size += deflater.deflate( compressed, size, compressed.length - size );
+		}
+
+		return Arrays.copyOf( compressed, size );
+	}
+
+	/**
+	 * Moves a compressed block out of the heap.
+	 */
+	private ByteBuffer store( byte[] compressed, int replaced )
+	{
+		archivedBytes += compressed.length;
+
+		if( file == null )
+		{
+			ByteBuffer block = ByteBuffer.allocateDirect( compressed.length );
+			block.put( compressed ).flip( );
+			return block;
+		}
+
+		try
+		{
+			// Replaced blocks are appended as well, the file is never rewritten.
+			long position = file.size( );
+			ByteBuffer source = ByteBuffer.wrap( compressed );
+
+			while( source.hasRemaining( ) )
+				file.write( source, position + source.position( ) );
+
+			return file.map( FileChannel.MapMode.READ_ONLY, position, compressed.length );
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	private ByteBuffer decompress( int block )
+	{
+		if( block == cachedBlock )
+			return cachedData;
+
+		ByteBuffer compressed = blocks.get( block ).duplicate( );
+		byte[] data = new byte[compressed.getInt( )];
+
+		inflater.reset( );
+		inflater.setInput( compressed );
+
+		try
+		{
+			int size = 0;
+			while( size < data.length && !inflater.finished( ) )
+			{
+				int inflated = inflater.inflate( data, size, data.length - size );
+
+				// A truncated block leaves the inflater waiting for more input.
+				if( inflated == 0 && ( inflater.needsInput( ) || inflater.needsDictionary( ) ) )
+					throw new StreamCorruptedException( "Truncated archive block " + block );
+
+				size += inflated;
+			}
+
+			if( size < data.length )
+				throw new StreamCorruptedException( "Incomplete archive block " + block + ": " + size + " of "
+						+ data.length + " bytes" );
+		}
+		catch ( DataFormatException e )
+		{
+			throw new UncheckedIOException( new IOException( "Corrupted archive block " + block, e ) );
+		}
+		catch ( StreamCorruptedException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+
+		cachedBlock = block;
+		cachedData = ByteBuffer.wrap( data );
+		return cachedData;
+	}
+
+	private void invalidate( )
+	{
+		cachedBlock = -1;
+		cachedData = null;
+	}
+
+	private byte[] write( T state )
+	{
+		while( true )
+		{
+			scratch.clear( );
+			try
+			{
+				serializer.write( state, scratch );
+				break;
+			}
+			catch ( BufferOverflowException e )
+			{
+				scratch = ByteBuffer.allocate( scratch.capacity( ) * 2 );
+			}
+			catch ( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		byte[] bytes = new byte[scratch.position( )];
+		scratch.flip( );
+		scratch.get( bytes );
+		return bytes;
+	}
+
+	private Memento<T> read( ByteBuffer data, int entry )
+	{
+		int table = ENTRY_SIZE * blockSize;
+		int start = table + ( entry == 0 ? 0 : data.getInt( ENTRY_SIZE * ( entry - 1 ) ) );
+		int end = table + data.getInt( ENTRY_SIZE * entry );
+		long version = data.getLong( ENTRY_SIZE * entry + 4 );
+		long timestamp = data.getLong( ENTRY_SIZE * entry + 12 );
+
+		ByteBuffer in = data.duplicate( );
+		in.limit( end ).position( start );
+
+		try
+		{
+			return new Memento<T>( serializer.read( in.slice( ).asReadOnlyBuffer( ) ), version, timestamp );
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+}
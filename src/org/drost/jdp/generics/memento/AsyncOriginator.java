@@ -0,0 +1,383 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
+
+/**
+ * An {@code Originator} that takes snapshots without blocking the calling
+ * thread. {@link #saveStateToMementoAsync()} only marks the current state as
+ * shared, as in the copy-on-write mode of {@code Originator}, and leaves the
+ * remaining work to a background executor: creating the memento, adding it
+ * to a caretaker, which may serialize, compress or persist it, and preparing
+ * a copy of the state for the next modification. If that copy is ready by
+ * the time {@link #getStateForUpdate()} is called it is used instead of
+ * copying the state on the calling thread.
+ * <p>
+ * Snapshots requested while a previous request has not been started yet are
+ * coalesced: they share the same future, whose memento holds the state and
+ * the version of the latest request. The background tasks run one after another
+ * in the order they have been requested, so the caretaker receives the
+ * mementos in order and is never accessed concurrently by this originator.
+ * </p>
+ * <p>
+ * Like in the copy-on-write mode the state must only be modified through
+ * {@link #getStateForUpdate()}. All public methods of this class are thread
+ * safe, the state itself is not guarded once it has been handed out.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class AsyncOriginator<T> extends Originator<T>
+{
+	private final StateCopier<T> copier;
+
+	private final Executor executor;
+
+	private final Caretaker<T> caretaker;
+
+	/**
+	 * Guards all state. A lock rather than a monitor, so that copying the
+	 * state while holding it does not pin the carrier of a virtual thread.
+	 */
+	private final ReentrantLock lock = new ReentrantLock( );
+
+	/**
+	 * The future of the snapshot that has been requested but not started.
+	 */
+	private CompletableFuture<Memento<T>> pending;
+
+	/**
+	 * The memento of the latest request, sharing the state.
+	 */
+	private Memento<T> requested;
+
+	/**
+	 * Completes after the most recently scheduled background task.
+	 */
+	private CompletableFuture<Void> tail = CompletableFuture.completedFuture( null );
+
+	/**
+	 * A copy of {@link #spareOf} prepared by a background task.
+	 */
+	private T spare;
+
+	private T spareOf;
+
+	/**
+	 * Creates an originator taking snapshots on the specified executor.
+	 *
+	 * @param copier
+	 *            The copier of the state.
+	 * @param executor
+	 *            The executor running the background tasks.
+	 * @param caretaker
+	 *            The caretaker each memento is added to in the background or
+	 *            {@code null} to only complete the futures.
+	 */
+	public AsyncOriginator( StateCopier<T> copier, Executor executor, Caretaker<T> caretaker )
+	{
+		super( copier, true );
+
+		if( executor == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create originator." );
+
+		this.copier = copier;
+		this.executor = executor;
+		this.caretaker = caretaker;
+	}
+
+	/**
+	 * Requests a snapshot of the current state, which is taken in the
+	 * background.
+	 *
+	 * @return a future completed with the memento once it has been added to
+	 *         the caretaker, or exceptionally if that fails.
+	 */
+	public CompletableFuture<Memento<T>> saveStateToMementoAsync( )
+	{
+		lock.lock( );
+		try
+		{
+			// Marks the state as shared, so the memento may refer to it.
+			requested = super.saveStateToMemento( );
+
+			if( pending != null )
+				return pending;
+
+			final CompletableFuture<Memento<T>> future = new CompletableFuture<Memento<T>>( );
+			pending = future;
+
+			CompletableFuture<Void> task = tail.thenRunAsync( new Runnable( )
+			{
+				@Override
+				public void run( )
+				{
+					snapshot( future );
+				}
+			}, executor );
+
+			// Keep the chain alive if the executor rejects the task.
+			tail = task.handle( new BiFunction<Void, Throwable, Void>( )
+			{
+				@Override
+				public Void apply( Void result, Throwable failure )
+				{
+					if( failure != null )
+						rejected( future, failure );
+					return null;
+				}
+			} );
+
+			return future;
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	/**
+	 * Returns a future completed after all snapshots requested so far.
+	 *
+	 * @return a future completed after all requested snapshots.
+	 */
+	public CompletableFuture<Void> awaitSnapshots( )
+	{
+		lock.lock( );
+		try
+		{
+			return tail;
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public void setState( T state )
+	{
+		lock.lock( );
+		try
+		{
+			super.setState( state );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public T getState( )
+	{
+		lock.lock( );
+		try
+		{
+			return super.getState( );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	/**
+	 * Returns the current state in order to modify it. If the state is shared
+	 * with a memento and a background task has already prepared a copy, that
+	 * copy becomes the current state, otherwise the state is copied on the
+	 * calling thread.
+	 */
+	@Override
+	public T getStateForUpdate( )
+	{
+		lock.lock( );
+		try
+		{
+			if( spare != null && spareOf == super.getState( ) )
+				replaceState( spare );
+
+			spare = null;
+			spareOf = null;
+			return super.getStateForUpdate( );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public Memento<T> saveStateToMemento( )
+	{
+		lock.lock( );
+		try
+		{
+			return super.saveStateToMemento( );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public void getStateFromMemento( Memento<T> m )
+	{
+		lock.lock( );
+		try
+		{
+			super.getStateFromMemento( m );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public long getVersion( )
+	{
+		lock.lock( );
+		try
+		{
+			return super.getVersion( );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public void setSizeEstimator( ToLongFunction<? super T> sizeEstimator )
+	{
+		lock.lock( );
+		try
+		{
+			super.setSizeEstimator( sizeEstimator );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public void setChangePublisher( ChangePublisher<? super StateChange<T>> publisher )
+	{
+		lock.lock( );
+		try
+		{
+			super.setChangePublisher( publisher );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	@Override
+	public ChangePublisher<? super StateChange<T>> getChangePublisher( )
+	{
+		lock.lock( );
+		try
+		{
+			return super.getChangePublisher( );
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+	}
+
+	private void rejected( CompletableFuture<Memento<T>> future, Throwable failure )
+	{
+		lock.lock( );
+		try
+		{
+			if( pending == future )
+				pending = null;
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+
+		future.completeExceptionally( failure );
+	}
+
+	/**
+	 * Takes the requested snapshot in the background.
+	 */
+	private void snapshot( CompletableFuture<Memento<T>> future )
+	{
+		Memento<T> m;
+
+		lock.lock( );
+		try
+		{
+			m = requested;
+			pending = null;
+		}
+		finally
+		{
+			lock.unlock( );
+		}
+
+		try
+		{
+			// The captured state is shared, so it is not modified anymore.
+			T captured = m.getState( );
+			T copy = captured != null ? copier.copy( captured ) : null;
+
+			lock.lock( );
+			try
+			{
+				if( copy != null && super.getState( ) == captured )
+				{
+					spare = copy;
+					spareOf = captured;
+				}
+			}
+			finally
+			{
+				lock.unlock( );
+			}
+
+			if( caretaker != null )
+				caretaker.addMemento( m );
+
+			future.complete( m );
+		}
+		catch ( RuntimeException e )
+		{
+			future.completeExceptionally( e );
+		}
+	}
+}
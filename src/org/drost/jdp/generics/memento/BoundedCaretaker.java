@@ -0,0 +1,342 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@code Caretaker} with a bounded history. The mementos are stored in a
+ * fixed capacity ring buffer, so adding, undoing and redoing take constant
+ * time. Once the history exceeds the maximum number of mementos or,
+ * optionally, a memory budget the oldest mementos are evicted.
+ * <p>
+ * Besides positional access this caretaker keeps a cursor to the current
+ * memento. {@link #undo()} and {@link #redo()} move the cursor, while adding a
+ * memento after undoing discards all mementos that could have been redone,
+ * like the undo history of common editors.
+ * </p>
+ *
+ * <pre>
+ * BoundedCaretaker&lt;Document&gt; history = new BoundedCaretaker&lt;Document&gt;( 100 );
+ * history.addMemento( originator.saveStateToMemento( ) );
+ * ...
+ * if( history.canUndo( ) )
+ * 	originator.getStateFromMemento( history.undo( ) );
+ * </pre>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class BoundedCaretaker<T> extends Caretaker<T>
+{
+	private final Memento<?>[] ring;
+
+	private final long[] sizes;
+
+	private final long maxBytes;
+
+	private final ToLongFunction<? super T> sizeEstimator;
+
+	/**
+	 * The ring position of the oldest memento.
+	 */
+	private int head;
+
+	private int size;
+
+	/**
+	 * The index of the current memento relative to the oldest one, or
+	 * {@code -1} if the history is empty.
+	 */
+	private int cursor = -1;
+
+	private long bytes;
+
+	private long evictedCount;
+
+	private long evictedBytes;
+
+	/**
+	 * Creates a caretaker keeping at most the specified number of mementos.
+	 *
+	 * @param maxCount
+	 *            The maximum number of mementos.
+	 */
+	public BoundedCaretaker( int maxCount )
+	{
+		this( maxCount, Long.MAX_VALUE, null );
+	}
+
+	/**
+	 * Creates a caretaker keeping at most the specified number of mementos
+	 * and at most the specified number of estimated bytes. The newest memento
+	 * is always kept, even if it exceeds the budget on its own.
+	 *
+	 * @param maxCount
+	 *            The maximum number of mementos.
+	 * @param maxBytes
+	 *            The maximum sum of the estimated memento sizes.
+	 * @param sizeEstimator
+	 *            Estimates the size of a state in bytes or {@code null} to
+	 *            disable the memory budget.
+	 */
+	public BoundedCaretaker( int maxCount, long maxBytes, ToLongFunction<? super T> sizeEstimator )
+	{
+		if( maxCount < 1 )
+			throw new IllegalArgumentException( "Invalid capacity: " + maxCount );
+		if( maxBytes < 0 )
+			throw new IllegalArgumentException( "Invalid memory budget: " + maxBytes );
+
+		this.ring = new Memento<?>[maxCount];
+		this.sizes = new long[maxCount];
+		this.maxBytes = maxBytes;
+		this.sizeEstimator = sizeEstimator;
+	}
+
+	/**
+	 * Adds a memento after the current one and makes it the current memento.
+	 * All mementos after the previous current one are discarded first, then
+	 * the oldest mementos are evicted while any bound is exceeded.
+	 *
+	 * @return always {@code true}.
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		// Discard the redo branch.
+		while( size > cursor + 1 )
+		{
+			size--;
+			release( slot( size ) );
+		}
+
+		if( size == ring.length )
+			evict( );
+
+		int slot = slot( size );
+		ring[slot] = m;
+		sizes[slot] = estimate( m );
+		bytes += sizes[slot];
+		cursor = size++;
+
+		while( bytes > maxBytes && size > 1 )
+			evict( );
+
+		return true;
+	}
+
+	@Override
+	public void clearAll( )
+	{
+		while( size > 0 )
+		{
+			size--;
+			release( slot( size ) );
+		}
+
+		head = 0;
+		cursor = -1;
+	}
+
+	/**
+	 * Returns the memento at the specified position, where {@code 0} is the
+	 * oldest memento that has not been evicted.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		return get( slot( check( index ) ) );
+	}
+
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		int slot = slot( check( index ) );
+		Memento<T> previous = get( slot );
+
+		bytes -= sizes[slot];
+		ring[slot] = m;
+		sizes[slot] = estimate( m );
+		bytes += sizes[slot];
+
+		return previous;
+	}
+
+	@Override
+	public int getMementoCount( )
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the current memento or {@code null} if the history is empty.
+	 *
+	 * @return the current memento.
+	 */
+	public Memento<T> getCurrentMemento( )
+	{
+		return cursor < 0 ? null : get( slot( cursor ) );
+	}
+
+	/**
+	 * Returns the position of the current memento or {@code -1} if the
+	 * history is empty.
+	 *
+	 * @return the position of the current memento.
+	 */
+	public int getCursor( )
+	{
+		return cursor;
+	}
+
+	public boolean canUndo( )
+	{
+		return cursor > 0;
+	}
+
+	public boolean canRedo( )
+	{
+		return cursor < size - 1;
+	}
+
+	/**
+	 * Moves the cursor to the previous memento and returns it.
+	 *
+	 * @return the previous memento.
+	 * @throws IllegalStateException
+	 *             if there is nothing to undo.
+	 */
+	public Memento<T> undo( )
+	{
+		if( !canUndo( ) )
+			throw new IllegalStateException( "Nothing to undo." );
+
+		return get( slot( --cursor ) );
+	}
+
+	/**
+	 * Moves the cursor to the next memento and returns it.
+	 *
+	 * @return the next memento.
+	 * @throws IllegalStateException
+	 *             if there is nothing to redo.
+	 */
+	public Memento<T> redo( )
+	{
+		if( !canRedo( ) )
+			throw new IllegalStateException( "Nothing to redo." );
+
+		return get( slot( ++cursor ) );
+	}
+
+	public int getMaxCount( )
+	{
+		return ring.length;
+	}
+
+	public long getMaxBytes( )
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the sum of the estimated sizes of all mementos in the history,
+	 * which is always {@code 0} without a size estimator.
+	 *
+	 * @return the estimated size of the history in bytes.
+	 */
+	public long getEstimatedBytes( )
+	{
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of mementos evicted because a bound was exceeded.
+	 * Mementos discarded by adding a memento after undoing are not counted.
+	 *
+	 * @return the number of evicted mementos.
+	 */
+	public long getEvictedCount( )
+	{
+		return evictedCount;
+	}
+
+	/**
+	 * Returns the sum of the estimated sizes of all evicted mementos.
+	 *
+	 * @return the estimated size of all evicted mementos in bytes.
+	 */
+	public long getEvictedBytes( )
+	{
+		return evictedBytes;
+	}
+
+	/**
+	 * Removes the oldest memento.
+	 */
+	private void evict( )
+	{
+		evictedCount++;
+		evictedBytes += sizes[head];
+		release( head );
+
+		head = ( head + 1 ) % ring.length;
+		size--;
+		cursor--;
+	}
+
+	private void release( int slot )
+	{
+		bytes -= sizes[slot];
+		ring[slot] = null;
+		sizes[slot] = 0;
+	}
+
+	private long estimate( Memento<T> m )
+	{
+		return sizeEstimator != null ? sizeEstimator.applyAsLong( m.getState( ) ) : 0;
+	}
+
+	private int check( int index )
+	{
+		if( index < 0 || index >= size )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+
+		return index;
+	}
+
+	private int slot( int index )
+	{
+		int slot = head + index;
+		return slot < ring.length ? slot : slot - ring.length;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private Memento<T> get( int slot )
+	{
+		return (Memento<T>) ring[slot];
+	}
+}
@@ -0,0 +1,477 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@code Caretaker} keeping a branching history, also known as an undo
+ * tree. Adding a memento after undoing does not discard the mementos that
+ * could have been redone, instead the new memento starts another branch
+ * below the current one. All branches share their common prefix, so the
+ * history grows with the number of distinct edits and not with the number
+ * of branches times their length.
+ * <p>
+ * Every node of the tree stores only the delta to its parent, computed by a
+ * pluggable {@link DeltaStrategy}, except for the nodes at every
+ * {@code checkpointInterval}-th depth, which store the full state. Each node
+ * knows its parent and its depth, so rebuilding a state walks up to the
+ * nearest checkpoint and applies at most {@code checkpointInterval - 1}
+ * deltas.
+ * </p>
+ * <p>
+ * The positional methods inherited from {@code Caretaker} address the
+ * current branch: the path from the root through the current memento down
+ * along the most recently visited children. {@link #undo()} and
+ * {@link #redo()} move along that branch, {@link #redo(int)},
+ * {@link #previousBranch()} and {@link #nextBranch()} switch between
+ * branches.
+ * </p>
+ * <p>
+ * Like for the {@link DeltaCaretaker} the states passed to this caretaker
+ * must not be modified afterwards and the returned mementos are rebuilt on
+ * every call.
+ * </p>
+ *
+ * <pre>
+ * BranchingCaretaker&lt;Document&gt; history = new BranchingCaretaker&lt;Document&gt;( strategy, 16 );
+ * history.addMemento( originator.saveStateToMemento( ) );
+ * ...
+ * originator.getStateFromMemento( history.undo( ) );
+ * history.addMemento( originator.saveStateToMemento( ) ); // starts a branch
+ * originator.getStateFromMemento( history.previousBranch( ) );
+ * </pre>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class BranchingCaretaker<T> extends Caretaker<T>
+{
+	private final DeltaStrategy<T, Object> strategy;
+
+	private final int checkpointInterval;
+
+	private Node root;
+
+	private Node current;
+
+	/**
+	 * The state of the current node, the base of the next delta.
+	 */
+	private T currentState;
+
+	private int nodeCount;
+
+	/**
+	 * Creates a caretaker storing a full checkpoint at every
+	 * {@code checkpointInterval}-th depth of the tree.
+	 *
+	 * @param strategy
+	 *            The strategy computing and applying deltas.
+	 * @param checkpointInterval
+	 *            The distance between two checkpoints on a path, {@code 1}
+	 *            stores only full states.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public <D> BranchingCaretaker( DeltaStrategy<T, D> strategy, int checkpointInterval )
+	{
+		if( strategy == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create caretaker." );
+		if( checkpointInterval < 1 )
+			throw new IllegalArgumentException( "Invalid checkpoint interval: " + checkpointInterval );
+
+		this.strategy = (DeltaStrategy<T, Object>) strategy;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Adds a memento as a new child of the current memento and makes it the
+	 * current memento. Existing children of the current memento are kept as
+	 * other branches.
+	 *
+	 * @return always {@code true}.
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		T state = m.getState( );
+		Node node;
+
+		if( current == null )
+		{
+			node = new Node( null, state );
+			root = node;
+		}
+		else
+		{
+			int depth = current.depth + 1;
+			node = new Node( current, isCheckpoint( depth ) ? state : strategy.diff( currentState, state ) );
+			current.addChild( node );
+		}
+
+		node.version = m.getVersion( );
+		node.timestamp = m.getTimestamp( );
+		nodeCount++;
+
+		current = node;
+		currentState = state;
+		return true;
+	}
+
+	@Override
+	public void clearAll( )
+	{
+		root = null;
+		current = null;
+		currentState = null;
+		nodeCount = 0;
+	}
+
+	/**
+	 * Rebuilds the memento at the specified depth of the current branch.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		return memento( nodeAt( index ) );
+	}
+
+	/**
+	 * Replaces the memento at the specified depth of the current branch. The
+	 * delta of the memento and the deltas of all of its children are
+	 * recomputed, so the states of all other mementos stay the same.
+	 */
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		Node node = nodeAt( index );
+		T previous = getState( node );
+		T state = m.getState( );
+
+		if( node.children != null )
+		{
+			for( Node child : node.children )
+			{
+				if( !isCheckpoint( child.depth ) )
+					child.entry = strategy.diff( state, getState( child ) );
+			}
+		}
+
+		node.entry = isCheckpoint( node.depth ) ? state : strategy.diff( getState( node.parent ), state );
+
+		if( node == current )
+			currentState = state;
+
+		Memento<T> replaced = new Memento<T>( previous, node.version, node.timestamp );
+		node.version = m.getVersion( );
+		node.timestamp = m.getTimestamp( );
+		return replaced;
+	}
+
+	/**
+	 * Returns the length of the current branch.
+	 */
+	@Override
+	public int getMementoCount( )
+	{
+		if( current == null )
+			return 0;
+
+		Node node = current;
+
+		while( node.preferred != null )
+			node = node.preferred;
+
+		return node.depth + 1;
+	}
+
+	/**
+	 * Returns the number of mementos in all branches of the tree.
+	 *
+	 * @return the number of mementos in the tree.
+	 */
+	public int getNodeCount( )
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the current memento or {@code null} if the history is empty.
+	 *
+	 * @return the current memento.
+	 */
+	public Memento<T> getCurrentMemento( )
+	{
+		return current == null ? null : new Memento<T>( currentState, current.version, current.timestamp );
+	}
+
+	/**
+	 * Returns the depth of the current memento, which is its position in the
+	 * current branch, or {@code -1} if the history is empty.
+	 *
+	 * @return the depth of the current memento.
+	 */
+	public int getCursor( )
+	{
+		return current == null ? -1 : current.depth;
+	}
+
+	/**
+	 * Returns the number of branches below the current memento, that is the
+	 * number of mementos that could be redone.
+	 *
+	 * @return the number of branches below the current memento.
+	 */
+	public int getBranchCount( )
+	{
+		return current == null || current.children == null ? 0 : current.children.size( );
+	}
+
+	public boolean canUndo( )
+	{
+		return current != null && current.parent != null;
+	}
+
+	public boolean canRedo( )
+	{
+		return current != null && current.preferred != null;
+	}
+
+	/**
+	 * Moves to the parent of the current memento and returns it. The current
+	 * memento stays the preferred branch to redo.
+	 *
+	 * @return the previous memento.
+	 * @throws IllegalStateException
+	 *             if there is nothing to undo.
+	 */
+	public Memento<T> undo( )
+	{
+		if( !canUndo( ) )
+			throw new IllegalStateException( "Nothing to undo." );
+
+		return moveTo( current.parent );
+	}
+
+	/**
+	 * Moves to the most recently visited child of the current memento and
+	 * returns it.
+	 *
+	 * @return the next memento.
+	 * @throws IllegalStateException
+	 *             if there is nothing to redo.
+	 */
+	public Memento<T> redo( )
+	{
+		if( !canRedo( ) )
+			throw new IllegalStateException( "Nothing to redo." );
+
+		return moveTo( current.preferred );
+	}
+
+	/**
+	 * Moves to the specified child of the current memento, in the order the
+	 * branches have been created, and returns it.
+	 *
+	 * @param branch
+	 *            The index of the branch.
+	 * @return the next memento in the specified branch.
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such branch.
+	 */
+	public Memento<T> redo( int branch )
+	{
+		int count = getBranchCount( );
+
+		if( branch < 0 || branch >= count )
+			throw new IndexOutOfBoundsException( "Branch: " + branch + ", Count: " + count );
+
+		return moveTo( current.children.get( branch ) );
+	}
+
+	/**
+	 * Moves to the sibling of the current memento that has been created
+	 * before it and returns it.
+	 *
+	 * @return the memento of the previous branch.
+	 * @throws IllegalStateException
+	 *             if there is no previous branch.
+	 */
+	public Memento<T> previousBranch( )
+	{
+		return moveTo( sibling( -1 ) );
+	}
+
+	/**
+	 * Moves to the sibling of the current memento that has been created
+	 * after it and returns it.
+	 *
+	 * @return the memento of the next branch.
+	 * @throws IllegalStateException
+	 *             if there is no next branch.
+	 */
+	public Memento<T> nextBranch( )
+	{
+		return moveTo( sibling( 1 ) );
+	}
+
+	public int getCheckpointInterval( )
+	{
+		return checkpointInterval;
+	}
+
+	private boolean isCheckpoint( int depth )
+	{
+		return depth % checkpointInterval == 0;
+	}
+
+	private Memento<T> memento( Node node )
+	{
+		return new Memento<T>( getState( node ), node.version, node.timestamp );
+	}
+
+	/**
+	 * Makes the specified node the current one and the preferred child of its
+	 * parent.
+	 */
+	private Memento<T> moveTo( Node node )
+	{
+		currentState = getState( node );
+		current = node;
+
+		if( node.parent != null )
+			node.parent.preferred = node;
+
+		return new Memento<T>( currentState, node.version, node.timestamp );
+	}
+
+	private Node sibling( int offset )
+	{
+		if( current == null || current.parent == null )
+			throw new IllegalStateException( "No other branch." );
+
+		List<Node> siblings = current.parent.children;
+		int index = siblings.indexOf( current ) + offset;
+
+		if( index < 0 || index >= siblings.size( ) )
+			throw new IllegalStateException( "No other branch." );
+
+		return siblings.get( index );
+	}
+
+	/**
+	 * Returns the node at the specified depth of the current branch.
+	 */
+	private Node nodeAt( int index )
+	{
+		int count = getMementoCount( );
+
+		if( index < 0 || index >= count )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + count );
+
+		Node node = current;
+
+		while( node.depth > index )
+			node = node.parent;
+		while( node.depth < index )
+			node = node.preferred;
+
+		return node;
+	}
+
+	/**
+	 * Rebuilds the state of the specified node from the nearest checkpoint
+	 * on its path to the root.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private T getState( Node node )
+	{
+		if( node == current )
+			return currentState;
+
+		int steps = node.depth % checkpointInterval;
+		Object[] deltas = new Object[steps];
+
+		for( int i = steps - 1; i >= 0; i-- )
+		{
+			deltas[i] = node.entry;
+			node = node.parent;
+		}
+
+		T state = (T) node.entry;
+
+		for( Object delta : deltas )
+			state = strategy.patch( state, delta );
+
+		return state;
+	}
+
+	/**
+	 * A memento in the tree.
+	 */
+	private static final class Node
+	{
+		final Node parent;
+
+		final int depth;
+
+		/**
+		 * The full state of a checkpoint or the delta to the parent.
+		 */
+		Object entry;
+
+		long version;
+
+		long timestamp;
+
+		/**
+		 * The children in creation order, {@code null} for a leaf.
+		 */
+		List<Node> children;
+
+		/**
+		 * The most recently visited child.
+		 */
+		Node preferred;
+
+		Node( Node parent, Object entry )
+		{
+			this.parent = parent;
+			this.depth = parent == null ? 0 : parent.depth + 1;
+			this.entry = entry;
+		}
+
+		void addChild( Node child )
+		{
+			if( children == null )
+				children = new ArrayList<Node>( 2 );
+
+			children.add( child );
+			preferred = child;
+		}
+	}
+}
@@ -59,4 +59,10 @@ public class Caretaker<T>
 	{
 		return mementos.set( index, m );
 	}
+	
+	
+	public int getMementoCount()
+	{
+		return mementos.size( );
+	}
 }
@@ -0,0 +1,358 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.drost.jdp.generics.composite.KeyedComposite;
+import org.drost.jdp.generics.composite.PersistentComposite;
+
+/**
+ * An {@code Originator} of a mutable {@code KeyedComposite} hierarchy whose
+ * mementos hold immutable {@link PersistentComposite} snapshots of it. Each
+ * snapshot only captures the nodes modified since the previous one, as told
+ * by their {@link KeyedComposite#getSubtreeVersion() subtree versions}, and
+ * shares all unmodified subtrees with the previous snapshot. The history of a
+ * large hierarchy therefore costs memory proportional to the modifications
+ * rather than to the size of the hierarchy.
+ * <p>
+ * The state of this originator is the snapshot of the current hierarchy:
+ * {@link #getState()} takes a snapshot and {@link #setState(PersistentComposite)}
+ * as well as {@link #getStateFromMemento(Memento)} rebuild the hierarchy from
+ * one. A rebuilt hierarchy shares all of its nodes with the snapshot it has
+ * been rebuilt from, so the next snapshot only captures what has been
+ * modified after restoring.
+ * </p>
+ * <p>
+ * Subclasses of {@code KeyedComposite} have to call
+ * {@code contentChanged()} whenever the content of a node changes, otherwise
+ * snapshots may miss that change.
+ * </p>
+ *
+ * @param <K>
+ *            The type of the child keys.
+ * @param <T>
+ *            The type of the nodes.
+ * @param <V>
+ *            The type of the captured node values.
+ */
+public class CompositeOriginator<K, T extends KeyedComposite<K, T>, V> extends Originator<PersistentComposite<V>>
+{
+	private final NodeSnapshotter<T, V> snapshotter;
+
+	private T root;
+
+	/**
+	 * The latest snapshot of each node of the hierarchy. Nodes that have been
+	 * removed from the hierarchy are swept once they make up half of the
+	 * entries.
+	 */
+	private Map<T, Entry<V>> entries = new IdentityHashMap<T, Entry<V>>( );
+
+	private int copyCount;
+
+	/**
+	 * Creates an originator capturing the nodes with the specified
+	 * snapshotter.
+	 *
+	 * @param snapshotter
+	 *            The snapshotter of the node contents.
+	 */
+	public CompositeOriginator( NodeSnapshotter<T, V> snapshotter )
+	{
+		if( snapshotter == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create originator." );
+
+		this.snapshotter = snapshotter;
+	}
+
+	/**
+	 * Returns the root of the current hierarchy.
+	 *
+	 * @return the root of the current hierarchy or {@code null}.
+	 */
+	public T getRoot( )
+	{
+		return root;
+	}
+
+	/**
+	 * Replaces the current hierarchy.
+	 *
+	 * @param root
+	 *            The root of the new hierarchy or {@code null}.
+	 */
+	public void setRoot( T root )
+	{
+		this.root = root;
+	}
+
+	/**
+	 * Returns the number of nodes captured by the latest snapshot, that is the
+	 * number of nodes modified since the snapshot before.
+	 *
+	 * @return the number of nodes captured by the latest snapshot.
+	 */
+	public int getCopyCount( )
+	{
+		return copyCount;
+	}
+
+	/**
+	 * Rebuilds the current hierarchy from the specified snapshot. The change
+	 * is published once the hierarchy has been rebuilt.
+	 */
+	@Override
+	public void setState( PersistentComposite<V> state )
+	{
+		entries = new IdentityHashMap<T, Entry<V>>( );
+		root = state != null ? restore( state ) : null;
+		super.setState( state );
+	}
+
+	/**
+	 * Takes a snapshot of the current hierarchy.
+	 */
+	@Override
+	public PersistentComposite<V> getState( )
+	{
+		return snapshot( );
+	}
+
+	/**
+	 * Takes a snapshot of the current hierarchy. Snapshots are immutable, so
+	 * this is the same as {@link #getState()}.
+	 */
+	@Override
+	public PersistentComposite<V> getStateForUpdate( )
+	{
+		return snapshot( );
+	}
+
+	/**
+	 * Takes a snapshot of the current hierarchy and stores it in a new
+	 * memento. Taking a snapshot does not change the hierarchy, so no change
+	 * is published.
+	 */
+	@Override
+	public Memento<PersistentComposite<V>> saveStateToMemento( )
+	{
+		replaceState( snapshot( ) );
+		return super.saveStateToMemento( );
+	}
+
+	/**
+	 * Rebuilds the current hierarchy from the snapshot of the memento.
+	 */
+	@Override
+	public void getStateFromMemento( Memento<PersistentComposite<V>> m )
+	{
+		setState( m.getState( ) );
+	}
+
+	private PersistentComposite<V> snapshot( )
+	{
+		copyCount = 0;
+
+		if( root == null )
+			return null;
+
+		Entry<V> entry = snapshot( root );
+
+		if( entries.size( ) > 2 * entry.size + 16 )
+			sweep( );
+
+		return entry.node;
+	}
+
+	/**
+	 * Returns the snapshot of the subtree of a node, reusing the latest one of
+	 * each node whose subtree has not been modified since. The subtree is
+	 * traversed bottom-up with an explicit stack, so that arbitrarily deep
+	 * hierarchies can be captured.
+	 */
+	private Entry<V> snapshot( T top )
+	{
+		Deque<T> stack = new ArrayDeque<T>( );
+		stack.push( top );
+
+		while( !stack.isEmpty( ) )
+		{
+			T node = stack.peek( );
+
+			if( isCurrent( node ) )
+			{
+				stack.pop( );
+				continue;
+			}
+
+			boolean ready = true;
+
+			for( T child : node.getChildren( ) )
+			{
+				if( !isCurrent( child ) )
+				{
+					stack.push( child );
+					ready = false;
+				}
+			}
+
+			if( ready )
+			{
+				stack.pop( );
+				capture( node );
+			}
+		}
+
+		return entries.get( top );
+	}
+
+	/**
+	 * Returns whether the latest snapshot of a node is up to date.
+	 */
+	private boolean isCurrent( T node )
+	{
+		Entry<V> entry = entries.get( node );
+		return entry != null && entry.version == node.getSubtreeVersion( );
+	}
+
+	/**
+	 * Captures a node whose children all have up to date snapshots.
+	 */
+	private void capture( T node )
+	{
+		List<T> children = node.getChildren( );
+		List<PersistentComposite<V>> copies = new ArrayList<PersistentComposite<V>>( children.size( ) );
+		int size = 1;
+
+		for( T child : children )
+		{
+			Entry<V> copy = entries.get( child );
+			copies.add( copy.node );
+			size += copy.size;
+		}
+
+		entries.put( node, new Entry<V>( PersistentComposite.of( snapshotter.capture( node ), copies ),
+				node.getSubtreeVersion( ), size ) );
+		copyCount++;
+	}
+
+	/**
+	 * Rebuilds the subtree of a snapshot, remembering the snapshot of each new
+	 * node. Each node is added to its parent once its own subtree is complete,
+	 * so that the remembered versions stay up to date, and the pending nodes
+	 * are kept on an explicit stack, so that arbitrarily deep snapshots can be
+	 * restored.
+	 */
+	private T restore( PersistentComposite<V> snapshot )
+	{
+		Deque<Restoration<T, V>> stack = new ArrayDeque<Restoration<T, V>>( );
+		stack.push( new Restoration<T, V>( snapshot, snapshotter.restore( snapshot.getValue( ) ) ) );
+
+		while( true )
+		{
+			Restoration<T, V> current = stack.peek( );
+
+			if( current.children.hasNext( ) )
+			{
+				PersistentComposite<V> child = current.children.next( );
+				stack.push( new Restoration<T, V>( child, snapshotter.restore( child.getValue( ) ) ) );
+				continue;
+			}
+
+			stack.pop( );
+			T node = current.node;
+			entries.put( node, new Entry<V>( current.snapshot, node.getSubtreeVersion( ), current.size ) );
+
+			Restoration<T, V> parent = stack.peek( );
+
+			if( parent == null )
+				return node;
+
+			parent.node.addChild( node );
+			parent.size += current.size;
+		}
+	}
+
+	/**
+	 * Drops the entries of nodes that are no longer part of the hierarchy.
+	 */
+	private void sweep( )
+	{
+		Map<T, Entry<V>> live = new IdentityHashMap<T, Entry<V>>( );
+		List<T> stack = new ArrayList<T>( );
+		stack.add( root );
+
+		while( !stack.isEmpty( ) )
+		{
+			T node = stack.remove( stack.size( ) - 1 );
+			live.put( node, entries.get( node ) );
+			stack.addAll( node.getChildren( ) );
+		}
+
+		entries = live;
+	}
+
+	/**
+	 * The snapshot of a subtree and the version it has been taken at.
+	 */
+	private static final class Entry<V>
+	{
+		final PersistentComposite<V> node;
+
+		final long version;
+
+		final int size;
+
+		Entry( PersistentComposite<V> node, long version, int size )
+		{
+			this.node = node;
+			this.version = version;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * A node being rebuilt from its snapshot while its children are restored.
+	 */
+	private static final class Restoration<T, V>
+	{
+		final PersistentComposite<V> snapshot;
+
+		final T node;
+
+		final Iterator<PersistentComposite<V>> children;
+
+		int size = 1;
+
+		Restoration( PersistentComposite<V> snapshot, T node )
+		{
+			this.snapshot = snapshot;
+			this.node = node;
+			this.children = snapshot.getChildren( ).iterator( );
+		}
+	}
+}
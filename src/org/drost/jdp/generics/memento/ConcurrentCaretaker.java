@@ -0,0 +1,242 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread safe {@code Caretaker} for several threads recording mementos at
+ * the same time. The mementos form an append-only log without any locks:
+ * each memento gets the next version number, which is its position in the
+ * log, by a single atomic increment and is then stored in its own slot.
+ * <p>
+ * A version is committed once its memento and the mementos of all lower
+ * versions are stored, which is tracked by a commit counter every producer
+ * helps to advance. Reading a committed version is wait-free, it only reads
+ * the commit counter and the slot.
+ * </p>
+ * <p>
+ * The log is stored in chunks of growing size, so it never needs to be
+ * copied while growing and allocating a new chunk does not block concurrent
+ * readers or producers.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class ConcurrentCaretaker<T> extends Caretaker<T>
+{
+	/**
+	 * The size of the first chunk as a power of two.
+	 */
+	private static final int FIRST_CHUNK_BITS = 5;
+
+	/**
+	 * The number of chunks, each twice as large as the previous one.
+	 */
+	private static final int CHUNK_COUNT = 31 - FIRST_CHUNK_BITS;
+
+	/**
+	 * The maximum number of versions, the total size of all chunks.
+	 */
+	private static final int MAX_VERSIONS = ( ( 1 << CHUNK_COUNT ) - 1 ) << FIRST_CHUNK_BITS;
+
+	private final AtomicReference<Log> log = new AtomicReference<Log>( new Log( ) );
+
+	/**
+	 * Appends a memento, which is committed as soon as all mementos with lower
+	 * versions are stored as well.
+	 *
+	 * @param m
+	 *            The memento to append.
+	 * @return the version of the memento.
+	 */
+	public int append( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		Log current = log.get( );
+		int version = current.reserved.getAndIncrement( );
+
+		if( version < 0 || version >= MAX_VERSIONS )
+			throw new IllegalStateException( "Too many mementos." );
+
+		current.chunk( version, true ).set( offset( version ), m );
+		current.commit( );
+
+		return version;
+	}
+
+	/**
+	 * Appends a memento.
+	 *
+	 * @return always {@code true}.
+	 * @see #append(Memento)
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		append( m );
+		return true;
+	}
+
+	/**
+	 * Discards all mementos and restarts the versions at {@code 0}. Mementos
+	 * appended concurrently may be discarded as well.
+	 */
+	@Override
+	public void clearAll( )
+	{
+		log.set( new Log( ) );
+	}
+
+	/**
+	 * Returns the memento with the specified version without blocking. Besides
+	 * all committed versions this includes any version whose memento has been
+	 * stored already, so a producer can always read the version returned by
+	 * {@link #append(Memento)}.
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if the memento of the version is not stored yet.
+	 */
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public Memento<T> getMemento( int version )
+	{
+		return (Memento<T>) log.get( ).slot( version ).get( offset( version ) );
+	}
+
+	/**
+	 * Atomically replaces the memento with the specified stored version.
+	 */
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public Memento<T> overwriteMemento( int version, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		return (Memento<T>) log.get( ).slot( version ).getAndSet( offset( version ), m );
+	}
+
+	/**
+	 * Returns the number of committed versions. All versions below this
+	 * number can be read.
+	 */
+	@Override
+	public int getMementoCount( )
+	{
+		return log.get( ).committed.get( );
+	}
+
+	/**
+	 * Returns the index of the chunk holding the specified version.
+	 */
+	private static int chunkIndex( int version )
+	{
+		return 31 - Integer.numberOfLeadingZeros( ( version >>> FIRST_CHUNK_BITS ) + 1 );
+	}
+
+	/**
+	 * Returns the position of the specified version within its chunk.
+	 */
+	private static int offset( int version )
+	{
+		int chunk = chunkIndex( version );
+		return version - ( ( ( 1 << chunk ) - 1 ) << FIRST_CHUNK_BITS );
+	}
+
+	/**
+	 * The chunks and counters of a log, replaced as a whole when cleared.
+	 */
+	private static final class Log
+	{
+		final AtomicReferenceArray<AtomicReferenceArray<Memento<?>>> chunks = new AtomicReferenceArray<AtomicReferenceArray<Memento<?>>>(
+				CHUNK_COUNT );
+
+		/**
+		 * The next version to hand out.
+		 */
+		final AtomicInteger reserved = new AtomicInteger( );
+
+		/**
+		 * The number of versions stored without gaps.
+		 */
+		final AtomicInteger committed = new AtomicInteger( );
+
+		AtomicReferenceArray<Memento<?>> chunk( int version, boolean create )
+		{
+			int index = chunkIndex( version );
+			AtomicReferenceArray<Memento<?>> chunk = chunks.get( index );
+
+			if( chunk == null && create )
+			{
+				chunks.compareAndSet( index, null, new AtomicReferenceArray<Memento<?>>( 1 << ( index + FIRST_CHUNK_BITS ) ) );
+				chunk = chunks.get( index );
+			}
+
+			return chunk;
+		}
+
+		/**
+		 * Returns the chunk holding the stored memento of the specified
+		 * version.
+		 */
+		AtomicReferenceArray<Memento<?>> slot( int version )
+		{
+			if( version >= 0 && version < committed.get( ) )
+				return chunk( version, false );
+
+			AtomicReferenceArray<Memento<?>> chunk = version >= 0 && version < reserved.get( ) ? chunk( version, false )
+					: null;
+
+			if( chunk == null || chunk.get( offset( version ) ) == null )
+				throw new IndexOutOfBoundsException( "Version: " + version + ", Committed: " + committed.get( ) );
+
+			return chunk;
+		}
+
+		/**
+		 * Advances the commit counter over all stored versions. Whichever
+		 * producer stores the memento closing a gap moves the counter past
+		 * all versions stored meanwhile by other producers.
+		 */
+		void commit( )
+		{
+			while( true )
+			{
+				int c = committed.get( );
+
+				if( c >= reserved.get( ) )
+					return;
+
+				AtomicReferenceArray<Memento<?>> chunk = chunks.get( chunkIndex( c ) );
+
+				if( chunk == null || chunk.get( offset( c ) ) == null )
+					return;
+
+				committed.compareAndSet( c, c + 1 );
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@code Caretaker} storing most mementos as deltas instead of full states.
+ * Every {@code checkpointInterval}-th memento is kept as a full checkpoint,
+ * all others only as the delta to their predecessor computed by a pluggable
+ * {@link DeltaStrategy}. Requesting a memento rebuilds its state from the
+ * nearest checkpoint, applying at most {@code checkpointInterval - 1}
+ * deltas, so the memory of the history grows with the amount of change
+ * rather than with the size of the states.
+ * <p>
+ * Without a {@link StateCopier} the checkpoints and the latest state are kept
+ * by reference and the mementos of those states refer to them as well, so
+ * neither the states passed to this caretaker nor the states of its mementos
+ * must be modified afterwards, since that would silently corrupt the deltas
+ * computed from them. With a copier the caretaker keeps private copies
+ * instead. The mementos returned by {@link #getMemento(int)} are rebuilt on
+ * every call.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class DeltaCaretaker<T> extends Caretaker<T>
+{
+	private final DeltaStrategy<T, Object> strategy;
+
+	private final int checkpointInterval;
+
+	/**
+	 * Copies the states kept by this caretaker or {@code null} to keep them by
+	 * reference.
+	 */
+	private final StateCopier<T> copier;
+
+	/**
+	 * The full states of the checkpoints and the deltas of all other
+	 * mementos.
+	 */
+	private final List<Object> entries = new ArrayList<Object>( );
+
+	/**
+	 * The versions and timestamps of the mementos, by position.
+	 */
+	private long[] versions = new long[16];
+
+	private long[] timestamps = new long[16];
+
+	/**
+	 * The state of the newest memento, the base of the next delta.
+	 */
+	private T latest;
+
+	/**
+	 * Creates a caretaker storing a full checkpoint every
+	 * {@code checkpointInterval} mementos.
+	 *
+	 * @param strategy
+	 *            The strategy computing and applying deltas.
+	 * @param checkpointInterval
+	 *            The distance between two checkpoints, {@code 1} stores only
+	 *            full states.
+	 */
+	public <D> DeltaCaretaker( DeltaStrategy<T, D> strategy, int checkpointInterval )
+	{
+		this( strategy, checkpointInterval, null );
+	}
+
+	/**
+	 * Creates a caretaker storing a full checkpoint every
+	 * {@code checkpointInterval} mementos and keeping private copies of the
+	 * states, so that they may be modified by their owners.
+	 *
+	 * @param strategy
+	 *            The strategy computing and applying deltas.
+	 * @param checkpointInterval
+	 *            The distance between two checkpoints, {@code 1} stores only
+	 *            full states.
+	 * @param copier
+	 *            The copier of the states or {@code null} to keep the states
+	 *            by reference.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public <D> DeltaCaretaker( DeltaStrategy<T, D> strategy, int checkpointInterval, StateCopier<T> copier )
+	{
+		if( strategy == null )
+			throw new IllegalArgumentException( "Null argument. Cannot create caretaker." );
+		if( checkpointInterval < 1 )
+			throw new IllegalArgumentException( "Invalid checkpoint interval: " + checkpointInterval );
+
+		this.strategy = (DeltaStrategy<T, Object>) strategy;
+		this.checkpointInterval = checkpointInterval;
+		this.copier = copier;
+	}
+
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		T state = copy( m.getState( ) );
+		int index = entries.size( );
+
+		entries.add( isCheckpoint( index ) ? state : strategy.diff( latest, state ) );
+		latest = state;
+
+		if( index == versions.length )
+		{
+			versions = Arrays.copyOf( versions, index * 2 );
+			timestamps = Arrays.copyOf( timestamps, index * 2 );
+		}
+
+		versions[index] = m.getVersion( );
+		timestamps[index] = m.getTimestamp( );
+		return true;
+	}
+
+	@Override
+	public void clearAll( )
+	{
+		entries.clear( );
+		latest = null;
+	}
+
+	/**
+	 * Rebuilds the memento at the specified position from the nearest
+	 * checkpoint.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		return new Memento<T>( copy( getState( index ) ), versions[index], timestamps[index] );
+	}
+
+	/**
+	 * Replaces the memento at the specified position. The deltas of the
+	 * memento and of its successor are recomputed, so this needs to rebuild
+	 * both states.
+	 */
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		T previous = getState( index );
+		T state = copy( m.getState( ) );
+
+		if( index + 1 < entries.size( ) && !isCheckpoint( index + 1 ) )
+		{
+			T next = getState( index + 1 );
+			entries.set( index + 1, strategy.diff( state, next ) );
+		}
+
+		entries.set( index, isCheckpoint( index ) ? state : strategy.diff( getState( index - 1 ), state ) );
+
+		if( index == entries.size( ) - 1 )
+			latest = state;
+
+		Memento<T> replaced = new Memento<T>( previous, versions[index], timestamps[index] );
+		versions[index] = m.getVersion( );
+		timestamps[index] = m.getTimestamp( );
+		return replaced;
+	}
+
+	@Override
+	public int getMementoCount( )
+	{
+		return entries.size( );
+	}
+
+	public int getCheckpointInterval( )
+	{
+		return checkpointInterval;
+	}
+
+	/**
+	 * Rebuilds the state at the specified position.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private T getState( int index )
+	{
+		if( index < 0 || index >= entries.size( ) )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + entries.size( ) );
+
+		if( index == entries.size( ) - 1 )
+			return latest;
+
+		int checkpoint = index - index % checkpointInterval;
+		T state = (T) entries.get( checkpoint );
+
+		for( int i = checkpoint + 1; i <= index; i++ )
+			state = strategy.patch( state, entries.get( i ) );
+
+		return state;
+	}
+
+	/**
+	 * Returns a private copy of the state if there is a copier.
+	 */
+	private T copy( T state )
+	{
+		return copier != null && state != null ? copier.copy( state ) : state;
+	}
+
+	private boolean isCheckpoint( int index )
+	{
+		return index % checkpointInterval == 0;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+/**
+ * Computes the difference between two states and applies it again. Used by
+ * a {@link DeltaCaretaker} to store a history as compact deltas.
+ *
+ * @param <T>
+ *            The type of the states.
+ * @param <D>
+ *            The type of the deltas.
+ */
+public interface DeltaStrategy<T, D>
+{
+	/**
+	 * Computes the delta that turns one state into another.
+	 *
+	 * @param from
+	 *            The older state.
+	 * @param to
+	 *            The newer state.
+	 * @return the delta, which must not refer to mutable parts of either
+	 *         state.
+	 */
+	D diff( T from, T to );
+
+	/**
+	 * Applies a delta computed by {@link #diff(Object, Object)} to a state.
+	 * The base state must not be modified, since it may be the state of a
+	 * stored checkpoint.
+	 *
+	 * @param base
+	 *            The older state.
+	 * @param delta
+	 *            The delta to apply.
+	 * @return the newer state.
+	 */
+	T patch( T base, D delta );
+}
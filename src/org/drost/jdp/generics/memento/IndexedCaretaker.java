@@ -0,0 +1,391 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.Arrays;
+
+/**
+ * A {@code Caretaker} that finds mementos by their version and by their
+ * creation time. The versions and timestamps of the stored mementos are kept
+ * in primitive {@code long} arrays in the order the mementos have been added,
+ * so looking up the memento that was current at a given time is a binary
+ * search in {@code O(log n)} without touching the mementos themselves.
+ * <p>
+ * The mementos must be added with increasing versions, which holds for all
+ * mementos of a single {@code Originator}. Timestamps are not required to
+ * increase, since the wall clock may be set back: a memento whose timestamp
+ * is older than that of its predecessor is indexed with the timestamp of the
+ * predecessor, so it is current from the same time on.
+ * Since those versions are consecutive a version is found in constant time
+ * by its distance to the oldest stored version, even after the oldest
+ * mementos have been evicted. If versions are missing, for example because
+ * not every memento has been added, the lookup falls back to a binary search.
+ * </p>
+ *
+ * <pre>
+ * IndexedCaretaker&lt;Document&gt; history = new IndexedCaretaker&lt;Document&gt;( 1000 );
+ * history.addMemento( originator.saveStateToMemento( ) );
+ * ...
+ * originator.getStateFromMemento( history.getMementoAt( yesterday ) );
+ * </pre>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class IndexedCaretaker<T> extends Caretaker<T>
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int maxCount;
+
+	private Memento<?>[] mementos = new Memento<?>[INITIAL_CAPACITY];
+
+	private long[] versions = new long[INITIAL_CAPACITY];
+
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The array position of the oldest memento.
+	 */
+	private int start;
+
+	/**
+	 * The array position after the newest memento.
+	 */
+	private int end;
+
+	private long evictedCount;
+
+	/**
+	 * Creates a caretaker without a bound on the number of mementos.
+	 */
+	public IndexedCaretaker( )
+	{
+		this( Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Creates a caretaker keeping at most the specified number of mementos.
+	 * Once the bound is reached the oldest memento is evicted for every new
+	 * one.
+	 *
+	 * @param maxCount
+	 *            The maximum number of mementos.
+	 */
+	public IndexedCaretaker( int maxCount )
+	{
+		if( maxCount < 1 )
+			throw new IllegalArgumentException( "Invalid capacity: " + maxCount );
+
+		this.maxCount = maxCount;
+	}
+
+	/**
+	 * Adds a memento after the newest one, evicting the oldest memento if the
+	 * maximum number of mementos is reached.
+	 *
+	 * @return always {@code true}.
+	 * @throws IllegalArgumentException
+	 *             if the memento is {@code null}, not versioned, or its
+	 *             version is older than the newest memento.
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		checkOrder( end, m );
+
+		if( end - start == maxCount )
+			evictOldest( 1 );
+
+		if( end == mementos.length )
+			ensureCapacity( );
+
+		mementos[end] = m;
+		versions[end] = m.getVersion( );
+		timestamps[end] = indexedTimestamp( end, m );
+		end++;
+		return true;
+	}
+
+	@Override
+	public void clearAll( )
+	{
+		Arrays.fill( mementos, start, end, null );
+		start = 0;
+		end = 0;
+	}
+
+	/**
+	 * Returns the memento at the specified position, where {@code 0} is the
+	 * oldest memento that has not been evicted.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		return memento( start + checkIndex( index ) );
+	}
+
+	/**
+	 * Replaces the memento at the specified position. The replacement must
+	 * keep the order of the versions, its timestamp is indexed within the
+	 * timestamps of its neighbours.
+	 */
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		int position = start + checkIndex( index );
+		checkOrder( position, m );
+
+		Memento<T> previous = memento( position );
+		mementos[position] = m;
+		versions[position] = m.getVersion( );
+		timestamps[position] = indexedTimestamp( position, m );
+		return previous;
+	}
+
+	@Override
+	public int getMementoCount( )
+	{
+		return end - start;
+	}
+
+	/**
+	 * Returns the memento with the specified version.
+	 *
+	 * @param version
+	 *            The version of the memento.
+	 * @return the memento with the specified version or {@code null} if there
+	 *         is no such memento, for example because it has been evicted.
+	 */
+	public Memento<T> getMementoByVersion( long version )
+	{
+		int position = positionOf( version );
+		return position >= 0 ? memento( position ) : null;
+	}
+
+	/**
+	 * Returns the newest memento created at or before the specified time,
+	 * that is the memento that was current at that time.
+	 *
+	 * @param timestamp
+	 *            The time in milliseconds since the epoch.
+	 * @return the newest memento created at or before the specified time or
+	 *         {@code null} if all stored mementos are newer.
+	 */
+	public Memento<T> getMementoAt( long timestamp )
+	{
+		int position = floor( timestamp );
+		return position >= start ? memento( position ) : null;
+	}
+
+	/**
+	 * Returns the position of the memento with the specified version, where
+	 * {@code 0} is the oldest memento that has not been evicted.
+	 *
+	 * @param version
+	 *            The version of the memento.
+	 * @return the position of the memento or {@code -1} if there is no such
+	 *         memento.
+	 */
+	public int indexOfVersion( long version )
+	{
+		int position = positionOf( version );
+		return position >= 0 ? position - start : -1;
+	}
+
+	/**
+	 * Evicts the specified number of the oldest mementos, or all mementos if
+	 * there are fewer.
+	 *
+	 * @param count
+	 *            The number of mementos to evict.
+	 * @return the number of evicted mementos.
+	 */
+	public int evictOldest( int count )
+	{
+		if( count < 0 )
+			throw new IllegalArgumentException( "Negative count: " + count );
+
+		int n = Math.min( count, end - start );
+		Arrays.fill( mementos, start, start + n, null );
+		start += n;
+		evictedCount += n;
+
+		if( start == end )
+		{
+			start = 0;
+			end = 0;
+		}
+
+		return n;
+	}
+
+	/**
+	 * Evicts all mementos older than the one that was current at the specified
+	 * time, so that {@link #getMementoAt(long)} still resolves every time from
+	 * the specified one on.
+	 *
+	 * @param timestamp
+	 *            The time in milliseconds since the epoch.
+	 * @return the number of evicted mementos.
+	 */
+	public int evictBefore( long timestamp )
+	{
+		int position = floor( timestamp );
+		return position > start ? evictOldest( position - start ) : 0;
+	}
+
+	/**
+	 * Returns the number of mementos evicted so far.
+	 *
+	 * @return the number of mementos evicted so far.
+	 */
+	public long getEvictedCount( )
+	{
+		return evictedCount;
+	}
+
+	public int getMaxCount( )
+	{
+		return maxCount;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private Memento<T> memento( int position )
+	{
+		return (Memento<T>) mementos[position];
+	}
+
+	private int checkIndex( int index )
+	{
+		if( index < 0 || index >= end - start )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + ( end - start ) );
+
+		return index;
+	}
+
+	/**
+	 * Checks that the memento fits between its neighbours of the specified
+	 * array position.
+	 */
+	private void checkOrder( int position, Memento<T> m )
+	{
+		if( m.getVersion( ) == Memento.NO_VERSION )
+			throw new IllegalArgumentException( "Unversioned memento." );
+
+		if( position > start && m.getVersion( ) <= versions[position - 1] )
+			throw new IllegalArgumentException( "The memento is older than its predecessor: " + m.getVersion( ) );
+
+		if( position + 1 < end && m.getVersion( ) >= versions[position + 1] )
+			throw new IllegalArgumentException( "The memento is newer than its successor: " + m.getVersion( ) );
+	}
+
+	/**
+	 * Returns the timestamp of the memento limited to the timestamps of its
+	 * neighbours of the specified array position, which keeps the indexed
+	 * timestamps sorted for the binary search.
+	 */
+	private long indexedTimestamp( int position, Memento<T> m )
+	{
+		long timestamp = m.getTimestamp( );
+
+		if( position > start )
+			timestamp = Math.max( timestamp, timestamps[position - 1] );
+		if( position + 1 < end )
+			timestamp = Math.min( timestamp, timestamps[position + 1] );
+
+		return timestamp;
+	}
+
+	/**
+	 * Returns the array position of the specified version or {@code -1}.
+	 */
+	private int positionOf( long version )
+	{
+		if( start == end )
+			return -1;
+
+		// Consecutive versions are found directly by their distance.
+		long distance = version - versions[start];
+
+		if( distance >= 0 && distance < end - start && versions[start + (int) distance] == version )
+			return start + (int) distance;
+
+		int position = Arrays.binarySearch( versions, start, end, version );
+		return position >= 0 ? position : -1;
+	}
+
+	/**
+	 * Returns the array position of the newest memento created at or before
+	 * the specified time, or {@code start - 1}.
+	 */
+	private int floor( long timestamp )
+	{
+		// The timestamps may repeat, so search the first greater one.
+		int low = start;
+		int high = end;
+
+		while( low < high )
+		{
+			int mid = ( low + high ) >>> 1;
+
+			if( timestamps[mid] <= timestamp )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low - 1;
+	}
+
+	/**
+	 * Makes room for a new memento at the end, either by moving the mementos
+	 * to the front if at least half of the arrays is unused or by doubling
+	 * the arrays.
+	 */
+	private void ensureCapacity( )
+	{
+		int size = end - start;
+		int capacity = size < mementos.length / 2 ? mementos.length : mementos.length * 2;
+
+		if( capacity == mementos.length )
+		{
+			System.arraycopy( mementos, start, mementos, 0, size );
+			System.arraycopy( versions, start, versions, 0, size );
+			System.arraycopy( timestamps, start, timestamps, 0, size );
+			Arrays.fill( mementos, size, end, null );
+		}
+		else
+		{
+			mementos = Arrays.copyOfRange( mementos, start, start + capacity );
+			versions = Arrays.copyOfRange( versions, start, start + capacity );
+			timestamps = Arrays.copyOfRange( timestamps, start, start + capacity );
+		}
+
+		start = 0;
+		end = size;
+	}
+}
@@ -0,0 +1,660 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A {@code Caretaker} persisting its mementos in an append-only journal, so
+ * that the history survives restarts and crashes of the process.
+ * <p>
+ * The journal is a directory of segment files, each a sequence of records
+ * consisting of the length, a CRC32 checksum, the position of the memento,
+ * its version and timestamp and the serialized state. Records are collected
+ * in a buffer and forced to disk together once every {@code syncInterval}
+ * mementos (group commit), so recording mementos at a high rate does not wait
+ * for the disk on every call.
+ * Mementos that have not been synced yet may be lost by a crash, call
+ * {@link #sync()} to make them durable immediately.
+ * </p>
+ * <p>
+ * Every {@code checkpointInterval} mementos the positions of all records are
+ * written to an index file together with the journal position up to which
+ * the index is complete. On startup the index is memory-mapped and only the
+ * records written after the last checkpoint are scanned, so the recovery time
+ * depends on the checkpoint interval instead of the length of the history. A
+ * record torn by a crash is detected by its checksum and discarded together
+ * with everything after it.
+ * </p>
+ *
+ * @param <T>
+ *            The generic type parameter.
+ */
+public class JournalCaretaker<T> extends Caretaker<T> implements Closeable
+{
+	/**
+	 * The magic number at the start of the index file.
+	 */
+	private static final int MAGIC = 0x4A44504A;
+
+	private static final int VERSION = 2;
+
+	private static final int INDEX_HEADER = 32;
+
+	/**
+	 * The size of a record header, the length and the checksum.
+	 */
+	private static final int RECORD_HEADER = 8;
+
+	/**
+	 * The size of the checksummed fields preceding the state, the position,
+	 * the version and the timestamp of the memento.
+	 */
+	private static final int RECORD_FIELDS = 20;
+
+	/**
+	 * The number of bits of a journal position used for the segment offset.
+	 */
+	private static final int OFFSET_BITS = 40;
+
+	private static final long OFFSET_MASK = ( 1L << OFFSET_BITS ) - 1;
+
+	private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+	private static final String INDEX_FILE = "journal.idx";
+
+	private final Path directory;
+
+	private final StateSerializer<T> serializer;
+
+	private final int syncInterval;
+
+	private final int checkpointInterval;
+
+	private final long maxSegmentBytes;
+
+	private final List<FileChannel> segments = new ArrayList<FileChannel>( );
+
+	private final FileChannel index;
+
+	/**
+	 * The journal position of the newest record of each memento.
+	 */
+	private long[] positions = new long[64];
+
+	private int count;
+
+	/**
+	 * The records that have not been written to the current segment yet.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( 64 * 1024 );
+
+	private ByteBuffer scratch = ByteBuffer.allocate( 1024 );
+
+	private final CRC32 crc = new CRC32( );
+
+	/**
+	 * The end of the current segment including the buffered records.
+	 */
+	private long writeOffset;
+
+	/**
+	 * The end of the current segment excluding the buffered records.
+	 */
+	private long flushedOffset;
+
+	private int unsynced;
+
+	private int sinceCheckpoint;
+
+	/**
+	 * The lowest position that changed since the last checkpoint.
+	 */
+	private int dirtyFrom;
+
+	/**
+	 * Opens or creates a journal in the specified directory, syncing every
+	 * 64 mementos and writing a checkpoint every 4096 mementos.
+	 *
+	 * @see #JournalCaretaker(Path, StateSerializer, int, int, long)
+	 */
+	public JournalCaretaker( Path directory, StateSerializer<T> serializer ) throws IOException
+	{
+		this( directory, serializer, 64, 4096, DEFAULT_SEGMENT_BYTES );
+	}
+
+	/**
+	 * Opens or creates a journal in the specified directory. An existing
+	 * journal is recovered, so that {@link #getMementoCount()} and
+	 * {@link #getMemento(int)} reflect all mementos synced before the previous
+	 * process terminated.
+	 *
+	 * @param directory
+	 *            The directory holding the journal.
+	 * @param serializer
+	 *            The serializer of the states.
+	 * @param syncInterval
+	 *            The number of mementos forced to disk together.
+	 * @param checkpointInterval
+	 *            The number of mementos between two checkpoints of the index.
+	 * @param maxSegmentBytes
+	 *            The size from which on a new segment file is started.
+	 * @throws IOException
+	 *             if the journal cannot be opened or recovered.
+	 */
+	public JournalCaretaker( Path directory, StateSerializer<T> serializer, int syncInterval, int checkpointInterval,
+			long maxSegmentBytes ) throws IOException
+	{
+		if( directory == null || serializer == null )
+			throw new IllegalArgumentException( "Null argument. Cannot open journal." );
+		if( syncInterval < 1 || checkpointInterval < 1 || maxSegmentBytes < 1 || maxSegmentBytes > OFFSET_MASK )
+			throw new IllegalArgumentException( "Invalid journal configuration." );
+
+		this.directory = directory;
+		this.serializer = serializer;
+		this.syncInterval = syncInterval;
+		this.checkpointInterval = checkpointInterval;
+		this.maxSegmentBytes = maxSegmentBytes;
+
+		Files.createDirectories( directory );
+		this.index = FileChannel.open( directory.resolve( INDEX_FILE ), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+		recover( );
+	}
+
+	/**
+	 * Appends a memento to the journal. The memento is durable after the next
+	 * sync, which happens automatically every {@code syncInterval} mementos.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the memento is {@code null}.
+	 * @throws UncheckedIOException
+	 *             if writing the journal fails.
+	 */
+	@Override
+	public boolean addMemento( Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot add memento." );
+
+		try
+		{
+			long position = append( count, m );
+
+			if( count == positions.length )
+				positions = Arrays.copyOf( positions, count * 2 );
+
+			positions[count++] = position;
+			committed( );
+			return true;
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Deletes the whole journal from disk.
+	 *
+	 * @throws UncheckedIOException
+	 *             if deleting the journal fails.
+	 */
+	@Override
+	public void clearAll( )
+	{
+		try
+		{
+			for( int i = 0; i < segments.size( ); i++ )
+			{
+				segments.get( i ).close( );
+				Files.delete( segment( i ) );
+			}
+
+			segments.clear( );
+			buffer.clear( );
+			count = 0;
+			dirtyFrom = 0;
+			unsynced = 0;
+			sinceCheckpoint = 0;
+
+			openSegment( 0 );
+			index.truncate( 0 );
+			writeCheckpoint( );
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Reads the memento at the specified position from the journal.
+	 *
+	 * @throws UncheckedIOException
+	 *             if reading the journal fails.
+	 */
+	@Override
+	public Memento<T> getMemento( int index )
+	{
+		if( index < 0 || index >= count )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + count );
+
+		try
+		{
+			return read( positions[index] );
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Appends a new record for the memento at the specified position, which
+	 * supersedes the previous record on recovery.
+	 *
+	 * @throws UncheckedIOException
+	 *             if reading or writing the journal fails.
+	 */
+	@Override
+	public Memento<T> overwriteMemento( int index, Memento<T> m )
+	{
+		if( m == null )
+			throw new IllegalArgumentException( "Null argument. Cannot overwrite memento." );
+
+		Memento<T> previous = getMemento( index );
+
+		try
+		{
+			positions[index] = append( index, m );
+			dirtyFrom = Math.min( dirtyFrom, index );
+			committed( );
+		}
+		catch ( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+
+		return previous;
+	}
+
+	@Override
+	public int getMementoCount( )
+	{
+		return count;
+	}
+
+	/**
+	 * Writes all buffered records and forces them to disk.
+	 *
+	 * @throws IOException
+	 *             if writing the journal fails.
+	 */
+	public void sync( ) throws IOException
+	{
+		flush( );
+		current( ).force( false );
+		unsynced = 0;
+	}
+
+	/**
+	 * Syncs the journal and writes all positions changed since the last
+	 * checkpoint to the index, so that a recovery does not need to scan the
+	 * journal written so far.
+	 *
+	 * @throws IOException
+	 *             if writing the journal or the index fails.
+	 */
+	public void checkpoint( ) throws IOException
+	{
+		sync( );
+
+		if( dirtyFrom < count )
+		{
+			ByteBuffer entries = ByteBuffer.allocate( 8 * ( count - dirtyFrom ) );
+			entries.asLongBuffer( ).put( positions, dirtyFrom, count - dirtyFrom );
+
+			long offset = INDEX_HEADER + 8L * dirtyFrom;
+			while( entries.hasRemaining( ) )
+				index.write( entries, offset + entries.position( ) );
+		}
+
+		index.force( false );
+		writeCheckpoint( );
+
+		dirtyFrom = count;
+		sinceCheckpoint = 0;
+	}
+
+	/**
+	 * Writes a checkpoint and closes all files.
+	 */
+	@Override
+	public void close( ) throws IOException
+	{
+		try
+		{
+			checkpoint( );
+		}
+		finally
+		{
+			for( FileChannel channel : segments )
+				channel.close( );
+
+			index.close( );
+		}
+	}
+
+	/**
+	 * Syncs and checkpoints once enough mementos have been recorded.
+	 */
+	private void committed( ) throws IOException
+	{
+		if( ++sinceCheckpoint >= checkpointInterval )
+			checkpoint( );
+		else if( ++unsynced >= syncInterval )
+			sync( );
+	}
+
+	/**
+	 * Appends a record to the journal and returns its position.
+	 */
+	private long append( int mementoIndex, Memento<T> m ) throws IOException
+	{
+		ByteBuffer payload = serialize( m.getState( ) );
+		int length = RECORD_FIELDS + payload.remaining( );
+		int total = RECORD_HEADER + length;
+
+		if( writeOffset > 0 && writeOffset + total > maxSegmentBytes )
+		{
+			sync( );
+			openSegment( segments.size( ) );
+		}
+
+		crc.reset( );
+		ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER + RECORD_FIELDS );
+		header.putInt( RECORD_HEADER, mementoIndex ).putLong( RECORD_HEADER + 4, m.getVersion( ) )
+				.putLong( RECORD_HEADER + 12, m.getTimestamp( ) );
+		crc.update( header.array( ), RECORD_HEADER, RECORD_FIELDS );
+		crc.update( payload.duplicate( ) );
+
+		header.putInt( 0, length ).putInt( 4, (int) crc.getValue( ) );
+
+		if( buffer.remaining( ) < total )
+			flush( );
+
+		long position = ( (long) ( segments.size( ) - 1 ) << OFFSET_BITS ) | writeOffset;
+
+		if( total <= buffer.capacity( ) )
+		{
+			buffer.put( header ).put( payload );
+		}
+		else
+		{
+			write( header, writeOffset );
+			write( payload, writeOffset + header.capacity( ) );
+			flushedOffset += total;
+		}
+
+		writeOffset += total;
+		return position;
+	}
+
+	private ByteBuffer serialize( T state ) throws IOException
+	{
+		while( true )
+		{
+			scratch.clear( );
+			try
+			{
+				serializer.write( state, scratch );
+				break;
+			}
+			catch ( BufferOverflowException e )
+			{
+				scratch = ByteBuffer.allocate( scratch.capacity( ) * 2 );
+			}
+		}
+
+		scratch.flip( );
+		return scratch;
+	}
+
+	private Memento<T> read( long position ) throws IOException
+	{
+		int segment = (int) ( position >>> OFFSET_BITS );
+		long offset = position & OFFSET_MASK;
+
+		if( segment == segments.size( ) - 1 && offset >= flushedOffset )
+			flush( );
+
+		FileChannel channel = segments.get( segment );
+		ByteBuffer header = readFully( channel, offset, RECORD_HEADER );
+		ByteBuffer body = readFully( channel, offset + RECORD_HEADER, header.getInt( 0 ) );
+
+		long version = body.getLong( 4 );
+		long timestamp = body.getLong( 12 );
+
+		body.position( RECORD_FIELDS );
+		return new Memento<T>( serializer.read( body.slice( ).asReadOnlyBuffer( ) ), version, timestamp );
+	}
+
+	/**
+	 * Writes the buffered records to the current segment.
+	 */
+	private void flush( ) throws IOException
+	{
+		buffer.flip( );
+		write( buffer, flushedOffset );
+		buffer.clear( );
+		flushedOffset = writeOffset;
+	}
+
+	private void write( ByteBuffer source, long offset ) throws IOException
+	{
+		FileChannel channel = current( );
+		long position = offset;
+
+		while( source.hasRemaining( ) )
+			position += channel.write( source, position );
+	}
+
+	private void writeCheckpoint( ) throws IOException
+	{
+		long position = ( (long) ( segments.size( ) - 1 ) << OFFSET_BITS ) | writeOffset;
+
+		ByteBuffer header = ByteBuffer.allocate( INDEX_HEADER );
+		header.putInt( MAGIC ).putInt( VERSION ).putLong( count ).putLong( position ).flip( );
+
+		while( header.hasRemaining( ) )
+			index.write( header, header.position( ) );
+
+		index.force( false );
+	}
+
+	/**
+	 * Restores the positions from the index and the records written after
+	 * the last checkpoint.
+	 */
+	private void recover( ) throws IOException
+	{
+		int segmentCount = 0;
+		while( Files.exists( segment( segmentCount ) ) )
+			segmentCount++;
+
+		for( int i = 0; i < segmentCount; i++ )
+			segments.add( FileChannel.open( segment( i ), StandardOpenOption.READ, StandardOpenOption.WRITE ) );
+
+		if( segmentCount == 0 )
+		{
+			clearAll( );
+			return;
+		}
+
+		if( index.size( ) < INDEX_HEADER )
+		{
+			// Crashed before the first checkpoint, scan the whole journal.
+			scan( 0, 0 );
+			return;
+		}
+
+		MappedByteBuffer mapped = index.map( FileChannel.MapMode.READ_ONLY, 0, index.size( ) );
+
+		if( mapped.getInt( 0 ) != MAGIC || mapped.getInt( 4 ) != VERSION )
+			throw new StreamCorruptedException( "Invalid journal index: " + directory );
+
+		count = (int) mapped.getLong( 8 );
+		long checkpoint = mapped.getLong( 16 );
+
+		if( INDEX_HEADER + 8L * count > index.size( ) )
+			throw new StreamCorruptedException( "Truncated journal index: " + directory );
+
+		positions = new long[Math.max( 64, count )];
+		mapped.position( INDEX_HEADER );
+		LongBuffer entries = mapped.slice( ).asLongBuffer( );
+		entries.get( positions, 0, count );
+
+		dirtyFrom = count;
+		scan( (int) ( checkpoint >>> OFFSET_BITS ), checkpoint & OFFSET_MASK );
+	}
+
+	/**
+	 * Scans the records from the specified position on, stopping at the first
+	 * incomplete or corrupted record, which is truncated.
+	 */
+	private void scan( int segment, long offset ) throws IOException
+	{
+		for( int s = segment; s < segments.size( ); s++ )
+		{
+			FileChannel channel = segments.get( s );
+			long size = channel.size( );
+			long position = s == segment ? offset : 0;
+
+			while( position < size )
+			{
+				int mementoIndex = validate( channel, position, size );
+
+				if( mementoIndex < 0 || mementoIndex > count )
+				{
+					// A torn write, drop it and everything after it.
+					channel.truncate( position );
+					channel.force( true );
+
+					while( segments.size( ) > s + 1 )
+					{
+						segments.remove( segments.size( ) - 1 ).close( );
+						Files.delete( segment( segments.size( ) ) );
+					}
+
+					size = position;
+					break;
+				}
+
+				if( mementoIndex == count )
+				{
+					if( count == positions.length )
+						positions = Arrays.copyOf( positions, count * 2 );
+					count++;
+				}
+
+				positions[mementoIndex] = ( (long) s << OFFSET_BITS ) | position;
+				dirtyFrom = Math.min( dirtyFrom, mementoIndex );
+				position += RECORD_HEADER + readFully( channel, position, 4 ).getInt( 0 );
+			}
+
+			writeOffset = size;
+			flushedOffset = size;
+		}
+	}
+
+	/**
+	 * Returns the memento index of the record at the specified position or
+	 * {@code -1} if the record is incomplete or corrupted.
+	 */
+	private int validate( FileChannel channel, long position, long size ) throws IOException
+	{
+		if( position + RECORD_HEADER + RECORD_FIELDS > size )
+			return -1;
+
+		ByteBuffer header = readFully( channel, position, RECORD_HEADER );
+		int length = header.getInt( 0 );
+
+		if( length < RECORD_FIELDS || position + RECORD_HEADER + length > size )
+			return -1;
+
+		ByteBuffer body = readFully( channel, position + RECORD_HEADER, length );
+		crc.reset( );
+		crc.update( body.duplicate( ) );
+
+		if( (int) crc.getValue( ) != header.getInt( 4 ) )
+			return -1;
+
+		return body.getInt( 0 );
+	}
+
+	private static ByteBuffer readFully( FileChannel channel, long position, int length ) throws IOException
+	{
+		ByteBuffer target = ByteBuffer.allocate( length );
+
+		while( target.hasRemaining( ) )
+		{
+			if( channel.read( target, position + target.position( ) ) < 0 )
+				throw new StreamCorruptedException( "Unexpected end of journal." );
+		}
+
+		target.flip( );
+		return target;
+	}
+
+	private void openSegment( int number ) throws IOException
+	{
+		segments.add( FileChannel.open( segment( number ), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE ) );
+		writeOffset = 0;
+		flushedOffset = 0;
+	}
+
+	private FileChannel current( )
+	{
+		return segments.get( segments.size( ) - 1 );
+	}
+
+	private Path segment( int number )
+	{
+		return directory.resolve( String.format( "journal-%08d.log", number ) );
+	}
+}
@@ -31,15 +31,53 @@ package org.drost.jdp.generics.memento;
  */
 public class Memento<T>
 {
+	/**
+	 * The version of mementos that have not been versioned by an
+	 * {@code Originator}.
+	 */
+	public static final long NO_VERSION = -1;
+
 	private final T state;
-	
+
+	private final long version;
+
+	private final long timestamp;
+
 	public Memento(T state)
+	{
+		this( state, NO_VERSION, System.currentTimeMillis( ) );
+	}
+
+	/**
+	 * Creates a memento with the specified version and creation time.
+	 * 
+	 * @param state
+	 *            The stored state.
+	 * @param version
+	 *            The version of the state, increasing with every memento of
+	 *            the same {@code Originator}.
+	 * @param timestamp
+	 *            The creation time in milliseconds since the epoch.
+	 */
+	public Memento(T state, long version, long timestamp)
 	{
 		this.state = state;
+		this.version = version;
+		this.timestamp = timestamp;
 	}
 	
 	public T getState()
 	{
 		return state;
 	}
+	
+	public long getVersion()
+	{
+		return version;
+	}
+	
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
 }
@@ -0,0 +1,63 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event covering {@link Originator#saveStateToMemento()}.
+ * The event is disabled by default, enable
+ * {@code org.drost.jdp.generics.MementoSnapshot} in the recording settings to
+ * record it.
+ */
+@Name( "org.drost.jdp.generics.MementoSnapshot" )
+@Label( "Memento Snapshot" )
+@Description( "A memento created by an originator" )
+@Category( { "JDP Generics", "Memento" } )
+@Enabled( false )
+@StackTrace( false )
+final class MementoSnapshotEvent extends jdk.jfr.Event
+{
+	@Label( "State Class" )
+	Class<?> stateClass;
+
+	@Label( "Version" )
+	long version;
+
+	@Label( "Mode" )
+	@Description( "How the state is captured: reference, copy or copy-on-write" )
+	String mode;
+
+	@Label( "Estimated Size" )
+	@Description( "The size reported by the size estimator of the originator, -1 without one" )
+	@DataAmount
+	long estimatedSize;
+
+	@Label( "Copy Time" )
+	@Timespan( Timespan.NANOSECONDS )
+	long copyTime;
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+/**
+ * Converts the content of a single node of a hierarchy into an immutable value
+ * and back, so that a {@link CompositeOriginator} can snapshot and restore
+ * hierarchies node by node. The children of a node are handled by the
+ * originator and must be neither captured nor restored.
+ *
+ * @param <T>
+ *            The type of the nodes.
+ * @param <V>
+ *            The type of the captured values.
+ */
+public interface NodeSnapshotter<T, V>
+{
+	/**
+	 * Captures the content of a node, including its key.
+	 *
+	 * @param node
+	 *            The node to capture.
+	 * @return an immutable value holding the content of the node.
+	 */
+	V capture( T node );
+
+	/**
+	 * Creates a node without children from a captured value.
+	 *
+	 * @param value
+	 *            The captured value.
+	 * @return the new node.
+	 */
+	T restore( V value );
+}
@@ -19,6 +19,10 @@
  */
 package org.drost.jdp.generics.memento;
 
+import java.util.function.ToLongFunction;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
+
 /**
  * This class contains the relevant internal state the {@code Caretaker} is
  * working on. It basically creates and stores states to {@code Memento}
@@ -34,23 +38,266 @@ public class Originator<T>
 {
 	private T state;
 
+	/**
+	 * Creates independent copies of the state or {@code null} if mementos
+	 * share the state by reference.
+	 */
+	private final StateCopier<T> copier;
+
+	private final boolean copyOnWrite;
+
+	/**
+	 * Whether the current state is shared with a memento and needs to be
+	 * copied before it is modified.
+	 */
+	private boolean shared;
+
+	/**
+	 * The version of the most recent memento.
+	 */
+	private long version;
+
+	/**
+	 * The timestamp of the most recent memento. Timestamps never decrease,
+	 * even if the wall clock is set back.
+	 */
+	private long timestamp;
+
+	/**
+	 * Estimates the size of a state for flight recorder events or
+	 * {@code null}.
+	 */
+	private ToLongFunction<? super T> sizeEstimator;
+
+	/**
+	 * Publishes the state changes or {@code null}.
+	 */
+	private ChangePublisher<? super StateChange<T>> publisher;
+
+	/**
+	 * Creates an originator whose mementos refer to the very same state
+	 * object. This is sufficient for immutable states.
+	 */
+	public Originator( )
+	{
+		this( null, false );
+	}
+
+	/**
+	 * Creates an originator copying its state with the specified copier.
+	 * <p>
+	 * Without copy-on-write each memento is created from a copy of the state
+	 * and each restored memento is copied again, so neither the mementos nor
+	 * the originator are affected by modifications of the other one.
+	 * </p>
+	 * <p>
+	 * With copy-on-write mementos and the originator share the state until it
+	 * is about to be modified, which has to be announced by
+	 * {@link #getStateForUpdate()}. Only then a single copy is created, so
+	 * snapshots that are never followed by a modification cost nothing.
+	 * </p>
+	 *
+	 * @param copier
+	 *            The copier of the state.
+	 * @param copyOnWrite
+	 *            Whether to defer the copy until the state is modified.
+	 */
+	public Originator( StateCopier<T> copier, boolean copyOnWrite )
+	{
+		if( copyOnWrite && copier == null )
+			throw new IllegalArgumentException( "Null argument. Copy-on-write requires a copier." );
+
+		this.copier = copier;
+		this.copyOnWrite = copyOnWrite;
+	}
+
 	public void setState( T state )
 	{
 		this.state = state;
+		this.shared = false;
+		stateChanged( );
 	}
 
+	/**
+	 * Replaces the state by an equal copy without publishing a change.
+	 */
+	void replaceState( T copy )
+	{
+		this.state = copy;
+		this.shared = false;
+	}
+
+	/**
+	 * Returns the current state. In copy-on-write mode the returned state may
+	 * be shared with mementos and must not be modified, use
+	 * {@link #getStateForUpdate()} instead.
+	 */
 	public T getState( )
 	{
 		return state;
 	}
 
+	/**
+	 * Returns the current state in order to modify it. In copy-on-write mode
+	 * the state is copied first if it is shared with a memento, otherwise this
+	 * is the same as {@link #getState()}.
+	 *
+	 * @return the current state, safe to modify.
+	 */
+	public T getStateForUpdate( )
+	{
+		if( shared )
+		{
+			state = copier.copy( state );
+			shared = false;
+		}
+
+		return state;
+	}
+
+	/**
+	 * Creates a memento of the current state, versioned with the next version
+	 * of this originator and the current time.
+	 */
 	public Memento<T> saveStateToMemento( )
 	{
-		return new Memento<T>( state );
+		MementoSnapshotEvent event = new MementoSnapshotEvent( );
+
+		if( event.isEnabled( ) )
+			return recordSnapshot( event );
+
+		return newMemento( snapshot( ) );
 	}
 
 	public void getStateFromMemento( Memento<T> m )
 	{
-		state = m.getState( );
+		T restored = m.getState( );
+
+		if( copier == null || restored == null )
+		{
+			state = restored;
+			shared = false;
+		}
+		else if( copyOnWrite )
+		{
+			state = restored;
+			shared = true;
+		}
+		else
+		{
+			state = copier.copy( restored );
+			shared = false;
+		}
+
+		stateChanged( );
+	}
+
+	/**
+	 * Returns the version of the most recent memento or {@code 0} if no
+	 * memento has been created yet.
+	 *
+	 * @return the version of the most recent memento.
+	 */
+	public long getVersion( )
+	{
+		return version;
+	}
+
+	/**
+	 * Sets the estimator reporting the size of the captured states in
+	 * {@code MementoSnapshot} flight recorder events. It is only invoked while
+	 * that event is enabled.
+	 *
+	 * @param sizeEstimator
+	 *            Estimates the size of a state in bytes or {@code null} to
+	 *            report no size.
+	 */
+	public void setSizeEstimator( ToLongFunction<? super T> sizeEstimator )
+	{
+		this.sizeEstimator = sizeEstimator;
+	}
+
+	/**
+	 * Publishes each new state set by {@link #setState(Object)} or restored by
+	 * {@link #getStateFromMemento(Memento)} to the specified publisher, so that
+	 * consumers can react to changes instead of polling. Modifications of the
+	 * state object itself are not detected.
+	 *
+	 * @param publisher
+	 *            The publisher of the state changes or {@code null} to stop
+	 *            publishing.
+	 */
+	public void setChangePublisher( ChangePublisher<? super StateChange<T>> publisher )
+	{
+		this.publisher = publisher;
+	}
+
+	public ChangePublisher<? super StateChange<T>> getChangePublisher( )
+	{
+		return publisher;
+	}
+
+	private void stateChanged( )
+	{
+		ChangePublisher<? super StateChange<T>> publisher = this.publisher;
+
+		if( publisher != null && publisher.hasSubscribers( ) )
+			publisher.publish( new StateChange<T>( this, state ) );
+	}
+
+	/**
+	 * Returns the state to store in a new memento.
+	 */
+	private T snapshot( )
+	{
+		if( copier == null || state == null )
+			return state;
+
+		if( copyOnWrite )
+		{
+			shared = true;
+			return state;
+		}
+
+		return copier.copy( state );
+	}
+
+	private Memento<T> recordSnapshot( MementoSnapshotEvent event )
+	{
+		event.begin( );
+
+		long start = System.nanoTime( );
+		T snapshot = snapshot( );
+		long copyTime = System.nanoTime( ) - start;
+
+		Memento<T> m = newMemento( snapshot );
+		event.end( );
+
+		if( event.shouldCommit( ) )
+		{
+			event.stateClass = snapshot != null ? snapshot.getClass( ) : null;
+			event.version = m.getVersion( );
+			event.mode = copier == null ? "reference" : copyOnWrite ? "copy-on-write" : "copy";
+			event.estimatedSize = sizeEstimator != null && snapshot != null ? sizeEstimator.applyAsLong( snapshot ) : -1;
+			event.copyTime = copyTime;
+			event.commit( );
+		}
+
+		return m;
+	}
+
+	private Memento<T> newMemento( T state )
+	{
+		timestamp = Math.max( timestamp, currentTimeMillis( ) );
+		return new Memento<T>( state, ++version, timestamp );
+	}
+
+	/**
+	 * Returns the current wall clock time, replaced by tests to simulate a
+	 * clock that is set back.
+	 */
+	long currentTimeMillis( )
+	{
+		return System.currentTimeMillis( );
 	}
 }
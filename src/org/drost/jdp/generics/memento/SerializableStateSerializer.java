@@ -0,0 +1,72 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link StateSerializer} using Java serialization, which works for any
+ * {@code Serializable} state without further configuration.
+ *
+ * @param <T>
+ *            The type of the states.
+ */
+public class SerializableStateSerializer<T extends Serializable> implements StateSerializer<T>
+{
+	@Override
+	public void write( T state, ByteBuffer out ) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+		ObjectOutputStream stream = new ObjectOutputStream( bytes );
+		stream.writeObject( state );
+		stream.close( );
+
+		out.put( bytes.toByteArray( ) );
+	}
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public T read( ByteBuffer in ) throws IOException
+	{
+		byte[] bytes = new byte[in.remaining( )];
+		in.get( bytes );
+
+		ObjectInputStream stream = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
+		try
+		{
+			return (T) stream.readObject( );
+		}
+		catch ( ClassNotFoundException e )
+		{
+			throw new StreamCorruptedException( "Unknown class: " + e.getMessage( ) );
+		}
+		finally
+		{
+			stream.close( );
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Checkpoints several {@code Originator} instances together and rolls them
+ * back together. Instead of taking a memento of every originator up front
+ * the transaction takes it right before an originator is modified for the
+ * first time, which has to be announced through
+ * {@link #getStateForUpdate(Originator)}, {@link #setState(Originator, Object)}
+ * or {@link #snapshot(Originator)}. Originators that are only read inside the
+ * transaction cost nothing, while the mementos of all modified ones still
+ * hold their states from before the transaction.
+ * <p>
+ * {@link #rollback()} restores all modified originators from their mementos,
+ * {@link #commit()} releases all mementos at once. Closing a transaction that
+ * has neither been committed nor rolled back rolls it back, so a transaction
+ * used in a {@code try}-with-resources statement is undone by any exception:
+ * </p>
+ *
+ * <pre>
+ * try( SnapshotTransaction tx = new SnapshotTransaction( ) )
+ * {
+ * 	tx.getStateForUpdate( account ).withdraw( amount );
+ * 	tx.getStateForUpdate( ledger ).record( amount );
+ * 	tx.commit( );
+ * }
+ * </pre>
+ * <p>
+ * The rollback can only undo modifications made after the memento has been
+ * taken. With copy-on-write originators taking a memento is cheap and the
+ * state is copied only when it is actually modified. Originators sharing
+ * their state by reference have to be modified through
+ * {@link #setState(Originator, Object)}. A transaction is meant to be used
+ * by a single thread.
+ * </p>
+ */
+public class SnapshotTransaction implements AutoCloseable
+{
+	/**
+	 * The number of originators up to which a linear search is faster than a
+	 * map.
+	 */
+	private static final int INDEX_THRESHOLD = 8;
+
+	private Originator<?>[] originators = new Originator<?>[4];
+
+	private Memento<?>[] mementos = new Memento<?>[4];
+
+	private int size;
+
+	/**
+	 * The positions of the originators, only created for large transactions.
+	 */
+	private Map<Originator<?>, Integer> index;
+
+	private boolean active = true;
+
+	/**
+	 * Takes a memento of the specified originator if this transaction has not
+	 * taken one yet.
+	 *
+	 * @param originator
+	 *            The originator about to be modified.
+	 * @return whether a memento has been taken.
+	 * @throws IllegalStateException
+	 *             if the transaction has already been committed or rolled
+	 *             back.
+	 */
+	public boolean snapshot( Originator<?> originator )
+	{
+		if( originator == null )
+			throw new IllegalArgumentException( "Null argument. Cannot take snapshot." );
+		if( !active )
+			throw new IllegalStateException( "The transaction has already been finished." );
+
+		if( contains( originator ) )
+			return false;
+
+		if( size == originators.length )
+		{
+			originators = Arrays.copyOf( originators, size * 2 );
+			mementos = Arrays.copyOf( mementos, size * 2 );
+		}
+
+		originators[size] = originator;
+		mementos[size] = originator.saveStateToMemento( );
+
+		if( index != null )
+			index.put( originator, size );
+		else if( size == INDEX_THRESHOLD )
+			createIndex( );
+
+		size++;
+		return true;
+	}
+
+	/**
+	 * Takes a memento of the originator if necessary and returns its state in
+	 * order to modify it.
+	 *
+	 * @param originator
+	 *            The originator to modify.
+	 * @return the state of the originator, safe to modify.
+	 * @see Originator#getStateForUpdate()
+	 */
+	public <T> T getStateForUpdate( Originator<T> originator )
+	{
+		snapshot( originator );
+		return originator.getStateForUpdate( );
+	}
+
+	/**
+	 * Takes a memento of the originator if necessary and replaces its state.
+	 *
+	 * @param originator
+	 *            The originator to modify.
+	 * @param state
+	 *            The new state.
+	 */
+	public <T> void setState( Originator<T> originator, T state )
+	{
+		snapshot( originator );
+		originator.setState( state );
+	}
+
+	/**
+	 * Returns whether this transaction has taken a memento of the specified
+	 * originator.
+	 *
+	 * @param originator
+	 *            The originator.
+	 * @return whether the originator has been modified in this transaction.
+	 */
+	public boolean contains( Originator<?> originator )
+	{
+		if( index != null )
+			return index.containsKey( originator );
+
+		for( int i = 0; i < size; i++ )
+			if( originators[i] == originator )
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Returns the number of mementos taken by this transaction.
+	 *
+	 * @return the number of modified originators.
+	 */
+	public int getSnapshotCount( )
+	{
+		return size;
+	}
+
+	/**
+	 * Returns whether this transaction has neither been committed nor rolled
+	 * back.
+	 *
+	 * @return whether this transaction is active.
+	 */
+	public boolean isActive( )
+	{
+		return active;
+	}
+
+	/**
+	 * Keeps all modifications and releases all mementos.
+	 *
+	 * @throws IllegalStateException
+	 *             if the transaction has already been committed or rolled
+	 *             back.
+	 */
+	public void commit( )
+	{
+		if( !active )
+			throw new IllegalStateException( "The transaction has already been finished." );
+
+		release( );
+	}
+
+	/**
+	 * Restores all modified originators from their mementos, the most
+	 * recently modified first, and releases all mementos. If restoring an
+	 * originator fails the remaining ones are restored anyway and the first
+	 * failure is rethrown.
+	 *
+	 * @throws IllegalStateException
+	 *             if the transaction has already been committed or rolled
+	 *             back.
+	 */
+	public void rollback( )
+	{
+		if( !active )
+			throw new IllegalStateException( "The transaction has already been finished." );
+
+		RuntimeException failure = null;
+
+		for( int i = size - 1; i >= 0; i-- )
+		{
+			try
+			{
+				restore( originators[i], mementos[i] );
+			}
+			catch ( RuntimeException e )
+			{
+				if( failure == null )
+					failure = e;
+				else
+					failure.addSuppressed( e );
+			}
+		}
+
+		release( );
+
+		if( failure != null )
+			throw failure;
+	}
+
+	/**
+	 * Rolls this transaction back unless it has been committed or rolled back
+	 * already.
+	 */
+	@Override
+	public void close( )
+	{
+		if( active )
+			rollback( );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static <T> void restore( Originator<T> originator, Memento<?> memento )
+	{
+		originator.getStateFromMemento( (Memento<T>) memento );
+	}
+
+	private void createIndex( )
+	{
+		index = new IdentityHashMap<Originator<?>, Integer>( INDEX_THRESHOLD * 4 );
+
+		for( int i = 0; i <= size; i++ )
+			index.put( originators[i], i );
+	}
+
+	private void release( )
+	{
+		originators = null;
+		mementos = null;
+		index = null;
+		size = 0;
+		active = false;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import org.drost.jdp.generics.flow.ChangeEvent;
+
+/**
+ * The new state of an {@code Originator}, see
+ * {@link Originator#setChangePublisher(org.drost.jdp.generics.flow.ChangePublisher)}.
+ * Pending changes of the same originator coalesce, so only its latest state
+ * is delivered.
+ *
+ * @param <T>
+ *            The type of the state.
+ */
+public final class StateChange<T> implements ChangeEvent
+{
+	private final Originator<T> originator;
+
+	private final T state;
+
+	StateChange( Originator<T> originator, T state )
+	{
+		this.originator = originator;
+		this.state = state;
+	}
+
+	public Originator<T> getOriginator( )
+	{
+		return originator;
+	}
+
+	/**
+	 * Returns the state the originator has been set to. In copy-on-write mode
+	 * the state may be shared with mementos and must not be modified.
+	 *
+	 * @return the new state.
+	 */
+	public T getState( )
+	{
+		return state;
+	}
+
+	@Override
+	public Object getCoalescingKey( )
+	{
+		return originator;
+	}
+
+	/**
+	 * A new state never cancels a pending one, even if they are equal, since
+	 * the subscriber may have received a different state in between.
+	 */
+	@Override
+	public boolean cancels( ChangeEvent pending )
+	{
+		return false;
+	}
+}
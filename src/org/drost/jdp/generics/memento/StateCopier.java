@@ -0,0 +1,44 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+/**
+ * Creates independent copies of states, so that a {@code Memento} is not
+ * affected by later modifications of the state it has been created from.
+ * Common implementations are provided by {@link StateCopiers}.
+ *
+ * @param <T>
+ *            The type of the states.
+ *
+ * @see Originator#Originator(StateCopier, boolean)
+ */
+public interface StateCopier<T>
+{
+	/**
+	 * Returns a copy of the specified state.
+	 *
+	 * @param state
+	 *            The state to copy, never {@code null}.
+	 * @return the copy.
+	 * @throws IllegalStateException
+	 *             if the state cannot be copied.
+	 */
+	T copy( T state );
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.drost.jdp.generics.reflect.ClassMetadata;
+
+/**
+ * Provides the common {@link StateCopier} implementations. All reflective
+ * lookups are done once per class and cached, so copying a state only costs
+ * the actual invocation.
+ * <p>
+ * This class cannot be instantiated.
+ * </p>
+ */
+public final class StateCopiers
+{
+	/**
+	 * The public {@code clone()} method of each class.
+	 */
+	private static final ClassValue<Method> CLONE_METHODS = new ClassValue<Method>( )
+	{
+		@Override
+		protected Method computeValue( Class<?> type )
+		{
+			try
+			{
+				Method method = type.getMethod( "clone" );
+				method.setAccessible( true );
+				return method;
+			}
+			catch ( NoSuchMethodException e )
+			{
+				throw new IllegalStateException( "The class does not provide a public clone method: " + type.getName( ), e );
+			}
+		}
+	};
+
+	/**
+	 * The copy constructor of each class. A constructor consuming exactly the
+	 * class is preferred, otherwise the one with the most specific parameter
+	 * type the class is assignable to, such as a super class or an interface.
+	 */
+	private static final ClassValue<Constructor<?>> COPY_CONSTRUCTORS = new ClassValue<Constructor<?>>( )
+	{
+		@Override
+		protected Constructor<?> computeValue( Class<?> type )
+		{
+			Constructor<?> best = null;
+
+			for( Constructor<?> ctor : type.getDeclaredConstructors( ) )
+			{
+				Class<?>[] parameters = ctor.getParameterTypes( );
+
+				if( parameters.length != 1 || !parameters[0].isAssignableFrom( type ) )
+					continue;
+
+				if( parameters[0] == type )
+				{
+					best = ctor;
+					break;
+				}
+
+				if( best == null || best.getParameterTypes( )[0].isAssignableFrom( parameters[0] ) )
+					best = ctor;
+			}
+
+			if( best == null )
+				throw new IllegalStateException( "The class does not provide a copy constructor: " + type.getName( ) );
+
+			best.setAccessible( true );
+			return best;
+		}
+	};
+
+	/**
+	 * Restricted instantiation.
+	 */
+	private StateCopiers( )
+	{
+		assert false : "Uninstantiable class: " + this.getClass( ).getName( );
+	}
+
+	/**
+	 * Returns a copier invoking the public {@code clone()} method of the
+	 * states.
+	 *
+	 * @return a copier invoking {@code clone()}.
+	 */
+	public static <T extends Cloneable> StateCopier<T> cloning( )
+	{
+		return new StateCopier<T>( )
+		{
+			@Override
+			@SuppressWarnings( "unchecked" )
+			public T copy( T state )
+			{
+				return (T) invoke( CLONE_METHODS.get( state.getClass( ) ), state );
+			}
+		};
+	}
+
+	/**
+	 * Returns a copier invoking the copy constructor of the states, that is a
+	 * constructor consuming a single instance of the same class.
+	 *
+	 * @return a copier invoking the copy constructor.
+	 */
+	public static <T> StateCopier<T> copyConstructor( )
+	{
+		return new StateCopier<T>( )
+		{
+			@Override
+			@SuppressWarnings( "unchecked" )
+			public T copy( T state )
+			{
+				return (T) create( COPY_CONSTRUCTORS.get( state.getClass( ) ), state );
+			}
+		};
+	}
+
+	/**
+	 * Returns a copier serializing and deserializing the states, which
+	 * creates a deep copy of any {@code Serializable} object graph.
+	 *
+	 * @return a copier using Java serialization.
+	 */
+	public static <T extends Serializable> StateCopier<T> serializing( )
+	{
+		return new StateCopier<T>( )
+		{
+			@Override
+			@SuppressWarnings( "unchecked" )
+			public T copy( T state )
+			{
+				try
+				{
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+					ObjectOutputStream out = new ObjectOutputStream( bytes );
+					out.writeObject( state );
+					out.close( );
+
+					ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray( ) ) );
+					return (T) in.readObject( );
+				}
+				catch ( IOException | ClassNotFoundException e )
+				{
+					throw new IllegalStateException( "Cannot copy state by serialization.", e );
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a copier creating a new instance by the default constructor and
+	 * copying all instance fields, including inherited ones. The copier is
+	 * reflective, not generated: the constructor and the fields are resolved
+	 * once per class by {@link ClassMetadata}, and each copy reads and writes
+	 * every field through {@link Field#get(Object)} and
+	 * {@link Field#set(Object, Object)}.
+	 * <p>
+	 * The copy is shallow, fields referring to other objects refer to the same
+	 * objects in the copy. States holding mutable objects need a copier of
+	 * their own, for example {@link #serializing()}.
+	 * </p>
+	 *
+	 * @return a reflective copier copying field by field.
+	 */
+	public static <T> StateCopier<T> fieldByField( )
+	{
+		return new StateCopier<T>( )
+		{
+			@Override
+			@SuppressWarnings( "unchecked" )
+			public T copy( T state )
+			{
+				return (T) copyFields( ClassMetadata.of( state.getClass( ) ), state );
+			}
+		};
+	}
+
+	private static Object invoke( Method method, Object target )
+	{
+		try
+		{
+			return method.invoke( target );
+		}
+		catch ( IllegalAccessException | InvocationTargetException e )
+		{
+			throw new IllegalStateException( "Cannot copy state.", e );
+		}
+	}
+
+	private static Object create( Constructor<?> ctor, Object... args )
+	{
+		try
+		{
+			return ctor.newInstance( args );
+		}
+		catch ( InstantiationException | IllegalAccessException | InvocationTargetException e )
+		{
+			throw new IllegalStateException( "Cannot copy state.", e );
+		}
+	}
+
+	/**
+	 * Creates a new instance by the default constructor and copies all
+	 * instance fields, as resolved once per class by the metadata.
+	 */
+	private static Object copyFields( ClassMetadata<?> metadata, Object state )
+	{
+		if( !metadata.hasDefaultConstructor( ) )
+			throw new IllegalStateException( "The class does not provide a default constructor: "
+					+ metadata.getType( ).getName( ) );
+
+		try
+		{
+			Object copy = metadata.newInstance( );
+
+			for( Field field : metadata.getInstanceFields( ) )
+				field.set( copy, field.get( state ) );
+
+			return copy;
+		}
+		catch ( InstantiationException | IllegalAccessException | InvocationTargetException e )
+		{
+			throw new IllegalStateException( "Cannot copy state.", e );
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts states from and to bytes, so that mementos can be stored outside
+ * of the heap or on disk.
+ *
+ * @param <T>
+ *            The type of the states.
+ *
+ * @see SerializableStateSerializer
+ */
+public interface StateSerializer<T>
+{
+	/**
+	 * Writes a state to the specified buffer. If the buffer is too small a
+	 * {@link java.nio.BufferOverflowException} may be thrown, in which case
+	 * the caller retries with a larger buffer.
+	 *
+	 * @param state
+	 *            The state to write.
+	 * @param out
+	 *            The buffer to write the state to.
+	 * @throws IOException
+	 *             if the state cannot be written.
+	 */
+	void write( T state, ByteBuffer out ) throws IOException;
+
+	/**
+	 * Reads a state.
+	 *
+	 * @param in
+	 *            A buffer holding exactly the bytes written by
+	 *            {@link #write(Object, ByteBuffer)}.
+	 * @return the state.
+	 * @throws IOException
+	 *             if the state cannot be read.
+	 */
+	T read( ByteBuffer in ) throws IOException;
+}
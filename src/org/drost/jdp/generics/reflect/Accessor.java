@@ -0,0 +1,76 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates instances of a class and invokes its setters without reflection.
+ * Implementations are generated at compile time for every class annotated
+ * with {@link GenerateAccessor} and are found by {@link ClassMetadata} through
+ * their name, which is the binary name of the class followed by
+ * {@link #SUFFIX}.
+ *
+ * @param <T>
+ *            The type of the accessed class.
+ */
+public interface Accessor<T>
+{
+	/**
+	 * The suffix appended to the binary class name to get the name of the
+	 * generated accessor.
+	 */
+	String SUFFIX = "$$Accessor";
+
+	/**
+	 * Returns whether the default constructor of the class can be invoked
+	 * by the accessor, which is not the case if it is private.
+	 *
+	 * @return whether {@link #newInstance()} is supported.
+	 */
+	boolean isInstantiable( );
+
+	/**
+	 * Creates a new instance with the default constructor.
+	 *
+	 * @return the new instance.
+	 * @throws InvocationTargetException
+	 *             if the constructor throws an exception.
+	 * @throws UnsupportedOperationException
+	 *             if the accessor cannot invoke the default constructor.
+	 */
+	T newInstance( ) throws InvocationTargetException;
+
+	/**
+	 * Invokes the single argument setter with the specified method name that
+	 * accepts the specified value.
+	 *
+	 * @param instance
+	 *            The instance to modify.
+	 * @param name
+	 *            The name of the setter method, for example {@code setName}.
+	 * @param value
+	 *            The argument.
+	 * @return whether a matching setter has been invoked.
+	 * @throws InvocationTargetException
+	 *             if the setter throws an exception.
+	 */
+	boolean set( T instance, String name, Object value ) throws InvocationTargetException;
+}
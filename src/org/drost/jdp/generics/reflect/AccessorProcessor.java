@@ -0,0 +1,393 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates an {@link Accessor} for every class annotated with
+ * {@link GenerateAccessor} and a {@code reflect-config.json} for GraalVM
+ * native images listing those classes. The accessor invokes the default
+ * constructor and the single argument setters of the class directly, so that
+ * {@link ClassMetadata} does not need to scan the class at runtime. The
+ * configuration keeps the constructors, public methods and fields of the
+ * classes available for the reflective fallback inside native images.
+ * <p>
+ * The processor is registered as a service, so it runs whenever this library
+ * is on the class path of {@code javac}.
+ * </p>
+ */
+@SupportedAnnotationTypes( "org.drost.jdp.generics.reflect.GenerateAccessor" )
+public class AccessorProcessor extends AbstractProcessor
+{
+	/**
+	 * The location of the generated native image configuration.
+	 */
+	public static final String REFLECT_CONFIG = "META-INF/native-image/org.drost.jdp.generics/reflect-config.json";
+
+	/**
+	 * The configuration entries of all processed classes by their binary
+	 * name, collected over all rounds.
+	 */
+	private final Map<String, String> entries = new LinkedHashMap<String, String>( );
+
+	@Override
+	public SourceVersion getSupportedSourceVersion( )
+	{
+		return SourceVersion.latestSupported( );
+	}
+
+	@Override
+	public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv )
+	{
+		for( Element element : roundEnv.getElementsAnnotatedWith( GenerateAccessor.class ) )
+		{
+			if( element.getKind( ) != ElementKind.CLASS )
+			{
+				error( element, "@GenerateAccessor is only supported on classes." );
+				continue;
+			}
+
+			TypeElement type = (TypeElement) element;
+
+			if( !isAccessible( type ) )
+			{
+				error( element, "@GenerateAccessor requires a class that is not private." );
+				continue;
+			}
+
+			try
+			{
+				generate( type );
+			}
+			catch ( IOException e )
+			{
+				error( element, "Cannot generate the accessor: " + e.getMessage( ) );
+			}
+		}
+
+		if( roundEnv.processingOver( ) && !entries.isEmpty( ) )
+			writeConfig( );
+
+		return true;
+	}
+
+	/**
+	 * Generates the accessor source of the specified class and collects its
+	 * configuration entries.
+	 */
+	private void generate( TypeElement type ) throws IOException
+	{
+		String packageName = getPackage( type ).getQualifiedName( ).toString( );
+		String binaryName = processingEnv.getElementUtils( ).getBinaryName( type ).toString( );
+		String simpleName = ( packageName.isEmpty( ) ? binaryName : binaryName.substring( packageName.length( ) + 1 ) )
+				+ Accessor.SUFFIX;
+		String typeName = processingEnv.getTypeUtils( ).erasure( type.asType( ) ).toString( );
+
+		DeclaredType owner = (DeclaredType) type.asType( );
+		boolean instantiable = isInstantiable( type );
+		Map<String, List<ExecutableElement>> setters = getSetters( owner, type );
+
+		StringBuilder out = new StringBuilder( );
+
+		if( !packageName.isEmpty( ) )
+			out.append( "package " ).append( packageName ).append( ";\n\n" );
+
+		out.append( "// Generated by " ).append( AccessorProcessor.class.getName( ) ).append( ", do not edit.\n" );
+		out.append( "@SuppressWarnings( { \"rawtypes\", \"unchecked\" } )\n" );
+		out.append( "public final class " ).append( simpleName ).append( " implements " ).append( Accessor.class.getName( ) )
+				.append( "<" ).append( typeName ).append( ">\n{\n" );
+
+		out.append( "\t@Override\n\tpublic boolean isInstantiable( )\n\t{\n\t\treturn " ).append( instantiable ).append( ";\n\t}\n\n" );
+
+		out.append( "\t@Override\n\tpublic " ).append( typeName ).append( " newInstance( ) throws java.lang.reflect.InvocationTargetException\n\t{\n" );
+		if( instantiable )
+		{
+			out.append( "\t\ttry\n\t\t{\n\t\t\treturn new " ).append( typeName ).append( "( );\n\t\t}\n" );
+			out.append( "\t\tcatch ( Exception e )\n\t\t{\n\t\t\tthrow new java.lang.reflect.InvocationTargetException( e );\n\t\t}\n" );
+		}
+		else
+		{
+			out.append( "\t\tthrow new UnsupportedOperationException( \"The default constructor is not accessible.\" );\n" );
+		}
+		out.append( "\t}\n\n" );
+
+		out.append( "\t@Override\n\tpublic boolean set( " ).append( typeName )
+				.append( " instance, String name, Object value ) throws java.lang.reflect.InvocationTargetException\n\t{\n" );
+		out.append( "\t\ttry\n\t\t{\n\t\t\tswitch ( name )\n\t\t\t{\n" );
+
+		for( Map.Entry<String, List<ExecutableElement>> entry : setters.entrySet( ) )
+		{
+			out.append( "\t\t\tcase \"" ).append( entry.getKey( ) ).append( "\":\n" );
+
+			boolean accepted = false;
+
+			for( ExecutableElement setter : entry.getValue( ) )
+			{
+				TypeMirror parameter = parameter( owner, setter );
+				String checked = referenceName( parameter );
+
+				// Any value is accepted, so the remaining overloads are
+				// unreachable and no cast is needed.
+				if( checked.equals( Object.class.getName( ) ) )
+				{
+					out.append( "\t\t\t\tinstance." ).append( entry.getKey( ) ).append( "( value );\n" );
+					out.append( "\t\t\t\treturn true;\n" );
+					accepted = true;
+					break;
+				}
+
+				out.append( "\t\t\t\tif( " );
+				if( !parameter.getKind( ).isPrimitive( ) )
+					out.append( "value == null || " );
+				out.append( "value instanceof " ).append( checked ).append( " )\n\t\t\t\t{\n" );
+				out.append( "\t\t\t\t\tinstance." ).append( entry.getKey( ) ).append( "( (" ).append( checked ).append( ") value );\n" );
+				out.append( "\t\t\t\t\treturn true;\n\t\t\t\t}\n" );
+			}
+
+			if( !accepted )
+				out.append( "\t\t\t\treturn false;\n" );
+		}
+
+		out.append( "\t\t\tdefault:\n\t\t\t\treturn false;\n\t\t\t}\n\t\t}\n" );
+		out.append( "\t\tcatch ( Exception e )\n\t\t{\n\t\t\tthrow new java.lang.reflect.InvocationTargetException( e );\n\t\t}\n" );
+		out.append( "\t}\n}\n" );
+
+		String qualifiedName = packageName.isEmpty( ) ? simpleName : packageName + "." + simpleName;
+		Writer writer = processingEnv.getFiler( ).createSourceFile( qualifiedName, type ).openWriter( );
+		try
+		{
+			writer.write( out.toString( ) );
+		}
+		finally
+		{
+			writer.close( );
+		}
+
+		// The class, the super classes whose fields are scanned and the
+		// accessor itself.
+		entries.put( binaryName, "{ \"name\" : \"" + binaryName + "\", \"allDeclaredConstructors\" : true, "
+				+ "\"allPublicMethods\" : true, \"allDeclaredFields\" : true }" );
+
+		for( TypeElement superType = superclass( type ); superType != null; superType = superclass( superType ) )
+		{
+			String name = processingEnv.getElementUtils( ).getBinaryName( superType ).toString( );
+
+			if( !entries.containsKey( name ) )
+				entries.put( name, "{ \"name\" : \"" + name + "\", \"allDeclaredFields\" : true }" );
+		}
+
+		entries.put( binaryName + Accessor.SUFFIX, "{ \"name\" : \"" + binaryName + Accessor.SUFFIX
+				+ "\", \"methods\" : [ { \"name\" : \"<init>\", \"parameterTypes\" : [ ] } ] }" );
+	}
+
+	private void writeConfig( )
+	{
+		StringBuilder out = new StringBuilder( "[\n" );
+		int i = 0;
+
+		for( String entry : entries.values( ) )
+			out.append( "  " ).append( entry ).append( ++i < entries.size( ) ? ",\n" : "\n" );
+
+		out.append( "]\n" );
+
+		try
+		{
+			FileObject file = processingEnv.getFiler( ).createResource( StandardLocation.CLASS_OUTPUT, "", REFLECT_CONFIG );
+			Writer writer = file.openWriter( );
+			try
+			{
+				writer.write( out.toString( ) );
+			}
+			finally
+			{
+				writer.close( );
+			}
+		}
+		catch ( IOException e )
+		{
+			processingEnv.getMessager( ).printMessage( Diagnostic.Kind.ERROR, "Cannot write " + REFLECT_CONFIG + ": " + e.getMessage( ) );
+		}
+	}
+
+	/**
+	 * Returns the public single argument setters of the class including the
+	 * inherited ones, mapped by their name. The overloads are ordered so that
+	 * more specific parameter types are checked first.
+	 */
+	private Map<String, List<ExecutableElement>> getSetters( DeclaredType owner, TypeElement type )
+	{
+		Map<String, List<ExecutableElement>> setters = new LinkedHashMap<String, List<ExecutableElement>>( );
+
+		for( ExecutableElement method : ElementFilter.methodsIn( processingEnv.getElementUtils( ).getAllMembers( type ) ) )
+		{
+			String name = method.getSimpleName( ).toString( );
+
+			if( name.length( ) <= 3 || !name.startsWith( "set" ) || method.getParameters( ).size( ) != 1
+					|| !method.getModifiers( ).contains( Modifier.PUBLIC ) || method.getModifiers( ).contains( Modifier.STATIC ) )
+				continue;
+
+			List<ExecutableElement> overloads = setters.get( name );
+			if( overloads == null )
+			{
+				overloads = new ArrayList<ExecutableElement>( 1 );
+				setters.put( name, overloads );
+			}
+
+			TypeMirror parameter = parameterType( owner, method );
+			int index = 0;
+
+			while( index < overloads.size( )
+					&& !processingEnv.getTypeUtils( ).isSubtype( parameter, parameterType( owner, overloads.get( index ) ) ) )
+				index++;
+
+			overloads.add( index, method );
+		}
+
+		return setters;
+	}
+
+	/**
+	 * Returns the parameter type of a setter as seen from the annotated class,
+	 * so that the type variables of a generic super class are replaced by the
+	 * type arguments the class binds them to.
+	 */
+	private TypeMirror parameter( DeclaredType owner, ExecutableElement method )
+	{
+		ExecutableType member = (ExecutableType) processingEnv.getTypeUtils( ).asMemberOf( owner, method );
+		return member.getParameterTypes( ).get( 0 );
+	}
+
+	/**
+	 * Returns the erased parameter type of a setter as seen from the annotated
+	 * class, primitive types are compared by their wrappers like in
+	 * {@code ClassMetadata}.
+	 */
+	private TypeMirror parameterType( DeclaredType owner, ExecutableElement method )
+	{
+		TypeMirror type = parameter( owner, method );
+
+		if( type.getKind( ).isPrimitive( ) )
+			return processingEnv.getTypeUtils( ).boxedClass( (PrimitiveType) type ).asType( );
+
+		return processingEnv.getTypeUtils( ).erasure( type );
+	}
+
+	/**
+	 * Returns the name of the reference type a value has to be an instance of
+	 * to be passed as a parameter of the specified type. Only a primitive
+	 * parameter itself is boxed, arrays of primitives are reference types
+	 * already.
+	 */
+	private String referenceName( TypeMirror type )
+	{
+		if( type.getKind( ).isPrimitive( ) )
+			return processingEnv.getTypeUtils( ).boxedClass( (PrimitiveType) type ).getQualifiedName( ).toString( );
+
+		return processingEnv.getTypeUtils( ).erasure( type ).toString( );
+	}
+
+	/**
+	 * Returns whether the generated accessor can invoke the default
+	 * constructor of the class.
+	 */
+	private static boolean isInstantiable( TypeElement type )
+	{
+		if( type.getModifiers( ).contains( Modifier.ABSTRACT ) )
+			return false;
+
+		for( TypeElement t = type; t.getNestingKind( ) == NestingKind.MEMBER; t = (TypeElement) t.getEnclosingElement( ) )
+			if( !t.getModifiers( ).contains( Modifier.STATIC ) )
+				return false;
+
+		for( ExecutableElement ctor : ElementFilter.constructorsIn( type.getEnclosedElements( ) ) )
+			if( ctor.getParameters( ).isEmpty( ) )
+				return !ctor.getModifiers( ).contains( Modifier.PRIVATE );
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the class and all enclosing classes are accessible from
+	 * their package.
+	 */
+	private static boolean isAccessible( TypeElement type )
+	{
+		if( type.getNestingKind( ) == NestingKind.LOCAL || type.getNestingKind( ) == NestingKind.ANONYMOUS )
+			return false;
+
+		for( Element e = type; e instanceof TypeElement; e = e.getEnclosingElement( ) )
+			if( e.getModifiers( ).contains( Modifier.PRIVATE ) )
+				return false;
+
+		return true;
+	}
+
+	private static TypeElement superclass( TypeElement type )
+	{
+		TypeMirror superclass = type.getSuperclass( );
+
+		if( superclass.getKind( ) != TypeKind.DECLARED )
+			return null;
+
+		TypeElement element = (TypeElement) ( (DeclaredType) superclass ).asElement( );
+		return element.getQualifiedName( ).contentEquals( "java.lang.Object" ) ? null : element;
+	}
+
+	private static PackageElement getPackage( Element element )
+	{
+		while( !( element instanceof PackageElement ) )
+			element = element.getEnclosingElement( );
+
+		return (PackageElement) element;
+	}
+
+	private void error( Element element, String message )
+	{
+		processingEnv.getMessager( ).printMessage( Diagnostic.Kind.ERROR, message, element );
+	}
+}
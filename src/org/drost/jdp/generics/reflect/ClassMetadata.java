@@ -0,0 +1,567 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The reflective information the generic patterns need about a class: the
+ * default constructor, the setter methods and the fields. Scanning a class
+ * with reflection and making its members accessible is expensive, so the
+ * metadata of each class is computed once on first use and cached in a
+ * {@code ClassValue}. Reading the cache needs no locking and the cached
+ * metadata is discarded together with its class when the class loader is
+ * unloaded.
+ * <p>
+ * Classes annotated with {@link GenerateAccessor} get an {@link Accessor}
+ * generated at compile time. If it is present, creating instances and
+ * invoking single argument setters use it directly and the class is only
+ * scanned with reflection once the reflective members are requested.
+ * </p>
+ * <p>
+ * The metadata can be shared by any number of threads.
+ * </p>
+ *
+ * <pre>
+ * ClassMetadata&lt;Person&gt; metadata = ClassMetadata.of( Person.class );
+ * Person p = metadata.newInstance( );
+ * metadata.findSetter( "setName", "Mike" ).invoke( p, "Mike" );
+ * </pre>
+ *
+ * @param <T>
+ *            The type of the described class.
+ */
+public final class ClassMetadata<T>
+{
+	private static final ClassValue<ClassMetadata<?>> METADATA = new ClassValue<ClassMetadata<?>>( )
+	{
+		@Override
+		protected ClassMetadata<?> computeValue( Class<?> type )
+		{
+			return create( type );
+		}
+	};
+
+	private static final List<Method> NO_METHODS = Collections.emptyList( );
+
+	private static final Class<?>[] PRIMITIVES = { boolean.class, byte.class, char.class, short.class, int.class,
+			long.class, float.class, double.class, void.class };
+
+	private static final Class<?>[] WRAPPERS = { Boolean.class, Byte.class, Character.class, Short.class,
+			Integer.class, Long.class, Float.class, Double.class, Void.class };
+
+	private final Class<T> type;
+
+	/**
+	 * The generated accessor or {@code null} if there is none.
+	 */
+	private final Accessor<T> accessor;
+
+	/**
+	 * The reflective members, {@code null} until they are first needed. Since
+	 * they are immutable a race only computes them twice.
+	 */
+	private volatile Members<T> members;
+
+	private ClassMetadata( Class<T> type )
+	{
+		this.type = type;
+		this.accessor = loadAccessor( type );
+	}
+
+	/**
+	 * Returns the metadata of the specified class, computing it on the first
+	 * call for that class.
+	 *
+	 * @param type
+	 *            The class.
+	 * @return the metadata of the class.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static <T> ClassMetadata<T> of( Class<T> type )
+	{
+		if( type == null )
+			throw new IllegalArgumentException( "Null argument. Cannot resolve metadata." );
+
+		return (ClassMetadata<T>) METADATA.get( type );
+	}
+
+	public Class<T> getType( )
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the accessor generated for the class.
+	 *
+	 * @return the generated accessor or {@code null} if the class has not been
+	 *         annotated with {@link GenerateAccessor}.
+	 */
+	public Accessor<T> getAccessor( )
+	{
+		return accessor;
+	}
+
+	/**
+	 * Returns whether the class provides a usable constructor without any
+	 * arguments.
+	 *
+	 * @return whether {@link #newInstance()} can create instances.
+	 */
+	public boolean hasDefaultConstructor( )
+	{
+		return ( accessor != null && accessor.isInstantiable( ) ) || members( ).constructor != null;
+	}
+
+	/**
+	 * Returns the handle of the default constructor, which takes no
+	 * arguments and returns a new instance.
+	 *
+	 * @return the handle of the default constructor or {@code null} if there
+	 *         is no usable one.
+	 */
+	public MethodHandle getDefaultConstructor( )
+	{
+		return members( ).constructor;
+	}
+
+	/**
+	 * Creates a new instance with the default constructor.
+	 *
+	 * @return the new instance.
+	 * @throws InstantiationException
+	 *             if the class has no usable default constructor.
+	 * @throws InvocationTargetException
+	 *             if the constructor throws an exception.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T newInstance( ) throws InstantiationException, InvocationTargetException
+	{
+		if( accessor != null && accessor.isInstantiable( ) )
+			return accessor.newInstance( );
+
+		Members<T> members = members( );
+
+		if( members.constructor == null )
+			throw new InstantiationException( members.constructorProblem );
+
+		try
+		{
+			return (T) members.constructor.invoke( );
+		}
+		catch ( Error e )
+		{
+			throw e;
+		}
+		catch ( Throwable e )
+		{
+			throw new InvocationTargetException( e );
+		}
+	}
+
+	/**
+	 * Returns all public setters with the specified method name, for example
+	 * {@code setName}.
+	 *
+	 * @param name
+	 *            The name of the setter method.
+	 * @return the overloads of the setter, an empty list if there is none.
+	 */
+	public List<Method> getSetters( String name )
+	{
+		List<Method> overloads = members( ).setters.get( name );
+		return overloads != null ? overloads : NO_METHODS;
+	}
+
+	/**
+	 * Returns all public setters of the specified property, for example
+	 * {@code name} for the setter {@code setName}.
+	 *
+	 * @param property
+	 *            The name of the property.
+	 * @return the overloads of the setter, an empty list if there is none.
+	 */
+	public List<Method> getPropertySetters( String property )
+	{
+		List<Method> overloads = members( ).properties.get( property );
+		return overloads != null ? overloads : NO_METHODS;
+	}
+
+	/**
+	 * Returns the names of all properties having a public setter.
+	 *
+	 * @return the names of all properties having a public setter.
+	 */
+	public Set<String> getPropertyNames( )
+	{
+		return Collections.unmodifiableSet( members( ).properties.keySet( ) );
+	}
+
+	/**
+	 * Returns the most specific setter with the specified method name that
+	 * accepts the specified arguments, like the generated accessor does.
+	 * Wrapper objects are accepted for primitive parameters and {@code null}
+	 * for all others.
+	 *
+	 * @param name
+	 *            The name of the setter method.
+	 * @param values
+	 *            The arguments.
+	 * @return the matching setter or {@code null} if there is none.
+	 */
+	public Method findSetter( String name, Object... values )
+	{
+		for( Method method : getSetters( name ) )
+			if( accepts( method, values ) )
+				return method;
+
+		return null;
+	}
+
+	/**
+	 * Invokes the setter with the specified method name that accepts the
+	 * specified argument, using the generated accessor if there is one.
+	 *
+	 * @param instance
+	 *            The instance to modify.
+	 * @param name
+	 *            The name of the setter method.
+	 * @param value
+	 *            The argument.
+	 * @return whether a matching setter has been invoked.
+	 * @throws IllegalAccessException
+	 *             if the setter is not accessible.
+	 * @throws InvocationTargetException
+	 *             if the setter throws an exception.
+	 */
+	public boolean set( T instance, String name, Object value ) throws IllegalAccessException, InvocationTargetException
+	{
+		if( accessor != null && accessor.set( instance, name, value ) )
+			return true;
+
+		Method method = findSetter( name, value );
+
+		if( method == null )
+			return false;
+
+		method.invoke( instance, value );
+		return true;
+	}
+
+	/**
+	 * Returns the accessible instance field with the specified name, declared
+	 * by the class or one of its super classes.
+	 *
+	 * @param name
+	 *            The name of the field.
+	 * @return the field or {@code null} if there is none.
+	 */
+	public Field getField( String name )
+	{
+		return members( ).fields.get( name );
+	}
+
+	/**
+	 * Returns all accessible instance fields mapped by their name.
+	 *
+	 * @return all accessible instance fields.
+	 */
+	public Map<String, Field> getFields( )
+	{
+		return members( ).fields;
+	}
+
+	/**
+	 * Returns all accessible instance fields of the class and its super
+	 * classes, including fields hidden by fields of the same name in sub
+	 * classes, so that they describe the complete state of an instance.
+	 *
+	 * @return all accessible instance fields.
+	 */
+	public List<Field> getInstanceFields( )
+	{
+		return members( ).instanceFields;
+	}
+
+	private Members<T> members( )
+	{
+		Members<T> m = members;
+
+		if( m == null )
+			members = m = new Members<T>( type );
+
+		return m;
+	}
+
+	/**
+	 * Loads the accessor generated for the specified class, if any.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static <T> Accessor<T> loadAccessor( Class<T> type )
+	{
+		try
+		{
+			Class<?> accessorClass = Class.forName( type.getName( ) + Accessor.SUFFIX, true, type.getClassLoader( ) );
+
+			if( !Accessor.class.isAssignableFrom( accessorClass ) )
+				return null;
+
+			return (Accessor<T>) accessorClass.getConstructor( ).newInstance( );
+		}
+		catch ( ClassNotFoundException e )
+		{
+			return null;
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			throw new IllegalStateException( "Cannot create the generated accessor of " + type.getName( ), e );
+		}
+	}
+
+	/**
+	 * Returns whether the method can be invoked with the specified arguments.
+	 */
+	private static boolean accepts( Method method, Object[] values )
+	{
+		Class<?>[] parameters = method.getParameterTypes( );
+
+		if( parameters.length != values.length )
+			return false;
+
+		for( int i = 0; i < parameters.length; i++ )
+		{
+			if( values[i] == null )
+			{
+				if( parameters[i].isPrimitive( ) )
+					return false;
+			}
+			else if( !wrap( parameters[i] ).isInstance( values[i] ) )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether each parameter of a method is a subtype of the
+	 * corresponding parameter of another method with the same number of
+	 * parameters, comparing primitive types by their wrappers.
+	 */
+	private static boolean isMoreSpecific( Method method, Method other )
+	{
+		Class<?>[] parameters = method.getParameterTypes( );
+		Class<?>[] others = other.getParameterTypes( );
+
+		if( parameters.length != others.length )
+			return false;
+
+		for( int i = 0; i < parameters.length; i++ )
+			if( !wrap( others[i] ).isAssignableFrom( wrap( parameters[i] ) ) )
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the wrapper class of a primitive type or the type itself.
+	 */
+	private static Class<?> wrap( Class<?> type )
+	{
+		if( type.isPrimitive( ) )
+		{
+			for( int i = 0; i < PRIMITIVES.length; i++ )
+				if( PRIMITIVES[i] == type )
+					return WRAPPERS[i];
+		}
+
+		return type;
+	}
+
+	/**
+	 * Suppresses the access checks of a member once, which fails for members
+	 * of modules that are not opened to this library.
+	 */
+	private static boolean makeAccessible( AccessibleObject member )
+	{
+		try
+		{
+			member.setAccessible( true );
+			return true;
+		}
+		catch ( RuntimeException e )
+		{
+			return false;
+		}
+	}
+
+	private static <T> ClassMetadata<T> create( Class<T> type )
+	{
+		return new ClassMetadata<T>( type );
+	}
+
+	/**
+	 * The members of a class resolved with reflection.
+	 */
+	private static final class Members<T>
+	{
+		/**
+		 * The handle of the default constructor or {@code null} if there is no
+		 * usable one.
+		 */
+		final MethodHandle constructor;
+
+		/**
+		 * Why there is no usable default constructor, {@code null} if there is
+		 * one.
+		 */
+		final String constructorProblem;
+
+		/**
+		 * The public setters mapped by their method name. The overloads are
+		 * ordered so that more specific parameter types are checked first.
+		 */
+		final Map<String, List<Method>> setters;
+
+		/**
+		 * The public setters mapped by their property name.
+		 */
+		final Map<String, List<Method>> properties;
+
+		/**
+		 * The accessible instance fields of the class and its super classes
+		 * mapped by their name. Fields of sub classes hide those of super
+		 * classes.
+		 */
+		final Map<String, Field> fields;
+
+		/**
+		 * All accessible instance fields, including hidden ones.
+		 */
+		final List<Field> instanceFields;
+
+		Members( Class<T> type )
+		{
+			MethodHandle handle = null;
+			String problem = null;
+
+			if( Modifier.isAbstract( type.getModifiers( ) ) )
+			{
+				problem = "The class is abstract: " + type.getName( );
+			}
+			else
+			{
+				try
+				{
+					Constructor<T> ctor = type.getDeclaredConstructor( );
+					makeAccessible( ctor );
+					handle = MethodHandles.lookup( ).unreflectConstructor( ctor );
+				}
+				catch ( NoSuchMethodException e )
+				{
+					problem = "The class does not provide a default constructor: " + type.getName( );
+				}
+				catch ( IllegalAccessException e )
+				{
+					problem = "The default constructor is not accessible: " + type.getName( );
+				}
+			}
+
+			this.constructor = handle;
+			this.constructorProblem = problem;
+
+			Map<String, List<Method>> setters = new HashMap<String, List<Method>>( );
+
+			for( Method method : type.getMethods( ) )
+			{
+				String name = method.getName( );
+
+				if( name.length( ) <= 3 || !name.startsWith( "set" ) || method.getParameterCount( ) == 0
+						|| Modifier.isStatic( method.getModifiers( ) ) )
+					continue;
+
+				makeAccessible( method );
+
+				List<Method> overloads = setters.get( name );
+				if( overloads == null )
+				{
+					overloads = new ArrayList<Method>( 1 );
+					setters.put( name, overloads );
+				}
+
+				int index = 0;
+
+				while( index < overloads.size( ) && !isMoreSpecific( method, overloads.get( index ) ) )
+					index++;
+
+				overloads.add( index, method );
+			}
+
+			Map<String, List<Method>> properties = new HashMap<String, List<Method>>( );
+
+			for( Map.Entry<String, List<Method>> entry : setters.entrySet( ) )
+			{
+				String name = entry.getKey( );
+				List<Method> overloads = Collections.unmodifiableList( entry.getValue( ) );
+
+				entry.setValue( overloads );
+				properties.put( Character.toLowerCase( name.charAt( 3 ) ) + name.substring( 4 ), overloads );
+			}
+
+			this.setters = setters;
+			this.properties = properties;
+
+			Map<String, Field> fields = new LinkedHashMap<String, Field>( );
+			List<Field> instanceFields = new ArrayList<Field>( );
+
+			for( Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass( ) )
+			{
+				for( Field field : c.getDeclaredFields( ) )
+				{
+					if( Modifier.isStatic( field.getModifiers( ) ) || !makeAccessible( field ) )
+						continue;
+
+					instanceFields.add( field );
+
+					if( !fields.containsKey( field.getName( ) ) )
+						fields.put( field.getName( ), field );
+				}
+			}
+
+			this.fields = Collections.unmodifiableMap( fields );
+			this.instanceFields = Collections.unmodifiableList( instanceFields );
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests an {@link Accessor} and native image reflection configuration for
+ * the annotated class at compile time. The {@link AccessorProcessor} generates
+ * the accessor next to the class and lists the class with its default
+ * constructor, setters and fields in
+ * {@code META-INF/native-image/org.drost.jdp.generics/reflect-config.json}, so
+ * that the {@code Builder} and the {@code Singleton} work without scanning the
+ * class at runtime and inside GraalVM native images.
+ *
+ * <pre>
+ * &#64;GenerateAccessor
+ * public class Person
+ * {
+ * 	public void setName( String name )
+ * 	{
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ */
+@Documented
+@Retention( RetentionPolicy.CLASS )
+@Target( ElementType.TYPE )
+public @interface GenerateAccessor
+{
+}
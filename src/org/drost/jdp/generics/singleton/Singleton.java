@@ -1,14 +1,28 @@
 package org.drost.jdp.generics.singleton;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.drost.jdp.generics.reflect.ClassMetadata;
 
 /**
  * This class provides a thread safe implementation of the singleton design
- * pattern by using a double checked synchronization. It can handle any class
- * type and stores multiple instances of different types.
+ * pattern. It can handle any class type and stores multiple instances of
+ * different types.
+ * <p>
+ * The first thread requesting an instance of a class registers a future for
+ * it and invokes the constructor without holding any lock or monitor, all
+ * other threads requesting the same class wait for that future. Waiting
+ * threads park rather than block on a monitor, so constructors performing
+ * I/O do not pin the carriers of virtual threads. Instances of different
+ * classes are created independently of each other.
+ * </p>
  * 
  * This class cannot be instantiated itself but provides the main method
  * {@code get()} to access the singleton instances.
@@ -20,35 +34,31 @@ import java.util.Set;
 public final class Singleton
 {
 	/**
-	 * Stores all singleton instances of different class types.
+	 * Stores the initializations of all singleton instances of different
+	 * class types.
 	 */
-	private static final HashMap<Class<?>, InstanceWrapper<?>> instanceMap = new HashMap<Class<?>, InstanceWrapper<?>>( );
+	private static final Map<Class<?>, Initialization> instanceMap = new ConcurrentHashMap<Class<?>, Initialization>( );
 
 	/**
-	 * Wraps the singleton instance for correctness. The performance of this
-	 * pattern is not necessarily better than the {@code volatile}
-	 * implementation.
-	 * 
-	 * @author Yannick Drost
-	 * @since 1.0
+	 * The future of a singleton instance, completed by the thread creating
+	 * it.
 	 */
-	private static final class InstanceWrapper<T>
+	private static final class Initialization extends CompletableFuture<Object>
 	{
 		/**
-		 * The singleton instance wrapped in this container class. Since it
-		 * stores a singleton this field has a {@code final} modifier.
+		 * The thread creating the instance.
 		 */
-		public final T instance;
+		final Thread owner = Thread.currentThread( );
 
 		/**
-		 * Create a new wrapper instance containing the generic singleton.
-		 * 
-		 * @param value
-		 *            The generic instance.
+		 * Returns the instance or {@code null} if it is still being created or
+		 * its creation has failed. Unlike {@code getNow} this never throws, a
+		 * failed initialization may still be reachable by threads that fetched
+		 * it before it was removed.
 		 */
-		public InstanceWrapper( final T value )
+		Object getInstance( )
 		{
-			this.instance = value;
+			return isDone( ) && !isCompletedExceptionally( ) ? join( ) : null;
 		}
 	}
 
@@ -65,8 +75,9 @@ public final class Singleton
 	 * no second instance might be created at the same time using multi-threaded
 	 * applications.
 	 * </p>
-	 * This method basically invokes the {@code Class.newInstance()} method thus
-	 * the class type parameter needs to implement a default constructor. Due to
+	 * This method basically invokes the default constructor resolved by
+	 * {@link ClassMetadata} thus the class type parameter needs to implement a
+	 * default constructor. Due to
 	 * the singleton design pattern creates and handles the only instance of
 	 * type {@code singletonClass} prevent any instantiation of the
 	 * {@code singletonClass} by hiding the default constructor. An example
@@ -89,6 +100,10 @@ public final class Singleton
 	 * 
 	 * While the class has not been instantiated yet, a new instance is created
 	 * (assuming there is a default constructor provided by the class argument).
+	 * Concurrent callers wait until it has been created. If the constructor
+	 * fails all of them receive its exception and the next call tries again.
+	 * A constructor requesting its own singleton causes an
+	 * {@code IllegalStateException}.
 	 * 
 	 * @param singletonClass
 	 *            The class to be created as a singleton instance.
@@ -101,50 +116,82 @@ public final class Singleton
 	 * @throws IllegalArgumentException
 	 *             if the parameter is {@code null}.
 	 * 
-	 * @see Constructor#newInstance()
-	 * @see <a href=
-	 *      "https://en.wikipedia.org/wiki/Double-checked_locking#Usage_in_Java">
-	 *      Double check synchronization</a>
+	 * @see ClassMetadata#newInstance()
 	 */
-	@SuppressWarnings( "unchecked" )
 	public static final <T> Object getInstance( Class<T> singletonClass )
 			throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException
 	{
 		if( singletonClass == null )
 			throw new IllegalArgumentException( "Null argument. Cannot instantiate singleton." );
 
-		InstanceWrapper<T> wrapper = (InstanceWrapper<T>) instanceMap.get( singletonClass );
+		Initialization initialization = instanceMap.get( singletonClass );
+
+		if( initialization != null )
+		{
+			Object instance = initialization.getInstance( );
+
+			if( instance != null )
+				return instance;
+		}
+
+		SingletonInitEvent event = new SingletonInitEvent( );
+		boolean recording = event.isEnabled( );
+		boolean created = false;
+		long requested = 0, acquired = 0, constructed = 0;
 
-		if( wrapper == null )
+		if( recording )
 		{
-			synchronized ( Singleton.class )
+			event.begin( );
+			requested = System.nanoTime( );
+		}
+
+		Object instance;
+
+		if( initialization == null )
+		{
+			Initialization own = new Initialization( );
+			initialization = instanceMap.putIfAbsent( singletonClass, own );
+
+			if( initialization == null )
 			{
-				if( instanceMap.get( singletonClass ) == null )
-				{
-					T instance = null;
+				initialization = own;
+				created = true;
+			}
+		}
 
-					Constructor<T>[] ctors = (Constructor<T>[]) singletonClass.getDeclaredConstructors( );
-					Constructor<T> ctor = null;
+		if( created )
+		{
+			if( recording )
+				acquired = requested;
 
-					for( int i = 0; i < ctors.length; i++ )
-					{
-						ctor = ctors[i];
-						if( ctor.getGenericParameterTypes( ).length == 0 )
-							break;
-					}
+			instance = create( singletonClass, initialization );
 
-					ctor.setAccessible( true );
-					instance = ctor.newInstance( );
-					ctor.setAccessible( false );
+			if( recording )
+				constructed = System.nanoTime( );
+		}
+		else
+		{
+			instance = await( singletonClass, initialization );
 
-					instanceMap.put( singletonClass, new InstanceWrapper<T>( instance ) );
-				}
+			if( recording )
+				acquired = System.nanoTime( );
+		}
+
+		if( recording )
+		{
+			event.end( );
 
-				wrapper = (InstanceWrapper<T>) instanceMap.get( singletonClass );
+			if( event.shouldCommit( ) )
+			{
+				event.singletonClass = singletonClass;
+				event.lockWait = acquired - requested;
+				event.created = created;
+				event.constructionTime = created ? constructed - acquired : 0;
+				event.commit( );
 			}
 		}
 
-		return wrapper.instance;
+		return instance;
 	}
 
 	/**
@@ -159,7 +206,8 @@ public final class Singleton
 		if( singletonClass == null )
 			return false;
 
-		return ( instanceMap.get( singletonClass ) != null );
+		Initialization initialization = instanceMap.get( singletonClass );
+		return initialization != null && initialization.getInstance( ) != null;
 	}
 
 	/**
@@ -171,6 +219,83 @@ public final class Singleton
 	 */
 	public static Set<Class<?>> getInstanceTypes( )
 	{
-		return instanceMap.keySet( );
+		Set<Class<?>> types = new HashSet<Class<?>>( );
+
+		for( Map.Entry<Class<?>, Initialization> entry : instanceMap.entrySet( ) )
+			if( entry.getValue( ).getInstance( ) != null )
+				types.add( entry.getKey( ) );
+
+		return Collections.unmodifiableSet( types );
+	}
+
+	/**
+	 * Creates the instance on the calling thread and completes its
+	 * initialization. If the constructor fails the initialization is removed
+	 * again, so that the next request tries again.
+	 */
+	private static Object create( Class<?> singletonClass, Initialization initialization )
+			throws InstantiationException, InvocationTargetException
+	{
+		try
+		{
+			Object instance = ClassMetadata.of( singletonClass ).newInstance( );
+			initialization.complete( instance );
+			return instance;
+		}
+		catch ( InstantiationException | InvocationTargetException | RuntimeException | Error e )
+		{
+			instanceMap.remove( singletonClass, initialization );
+			initialization.completeExceptionally( e );
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the instance created by another thread and rethrows its
+	 * failure.
+	 */
+	private static Object await( Class<?> singletonClass, Initialization initialization )
+			throws InstantiationException, InvocationTargetException
+	{
+		if( initialization.owner == Thread.currentThread( ) )
+			throw new IllegalStateException( "Recursive instantiation of singleton " + singletonClass.getName( ) );
+
+		boolean interrupted = false;
+
+		try
+		{
+			while( true )
+			{
+				try
+				{
+					return initialization.get( );
+				}
+				catch ( InterruptedException e )
+				{
+					// The instance is created anyway, so keep waiting for it.
+					interrupted = true;
+				}
+				catch ( ExecutionException e )
+				{
+					Throwable cause = e.getCause( );
+
+					if( cause instanceof InstantiationException )
+						throw (InstantiationException) cause;
+					if( cause instanceof InvocationTargetException )
+						throw (InvocationTargetException) cause;
+					if( cause instanceof RuntimeException )
+						throw (RuntimeException) cause;
+					if( cause instanceof Error )
+						throw (Error) cause;
+
+					throw new IllegalStateException( cause );
+				}
+			}
+		}
+		finally
+		{
+			if( interrupted )
+				Thread.currentThread( ).interrupt( );
+		}
 	}
 }
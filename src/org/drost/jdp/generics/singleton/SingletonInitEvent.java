@@ -0,0 +1,59 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.singleton;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event covering a call of
+ * {@link Singleton#getInstance(Class)} that did not find a completed
+ * instance. The event is disabled by default, enable
+ * {@code org.drost.jdp.generics.SingletonInit} in the recording settings to
+ * record it.
+ */
+@Name( "org.drost.jdp.generics.SingletonInit" )
+@Label( "Singleton Initialization" )
+@Description( "The initialization of a generic singleton" )
+@Category( { "JDP Generics", "Singleton" } )
+@Enabled( false )
+final class SingletonInitEvent extends jdk.jfr.Event
+{
+	@Label( "Singleton Class" )
+	Class<?> singletonClass;
+
+	@Label( "Lock Wait" )
+	@Description( "The time spent waiting for another thread creating the instance" )
+	@Timespan( Timespan.NANOSECONDS )
+	long lockWait;
+
+	@Label( "Construction Time" )
+	@Timespan( Timespan.NANOSECONDS )
+	long constructionTime;
+
+	@Label( "Created" )
+	@Description( "Whether this call created the instance, otherwise it waited for another thread creating it" )
+	boolean created;
+}
@@ -21,6 +21,13 @@ package org.drost.jdp.generics.builder;
 
 import java.io.InvalidClassException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.drost.jdp.generics.builder.Builder;
 import org.junit.Test;
@@ -86,6 +93,75 @@ public class BuilderTest
 		assertEquals( p.name, "Mike" );
 	}
 
+	/**
+	 * Sets a property by invoking {@link Builder#set(String, Object...)} with
+	 * the member name instead of the setter name.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSetMemberName( ) throws Exception
+	{
+		Person p = new Builder<Person>( Person.class ).set( "age", 35 ).set( "name", "Mike" ).build( );
+
+		assertEquals( p.age, 35 );
+		assertEquals( p.name, "Mike" );
+	}
+
+	/**
+	 * Never writes a class member directly if it has no setter method.
+	 * 
+	 * @throws Exception
+	 */
+	@Test( expected = NoSuchMethodException.class )
+	public void testNoSetter( ) throws Exception
+	{
+		new Builder<Person>( Person.class ).set( "city", "Berlin" );
+	}
+
+	/**
+	 * Rejects a value the setter of that name does not accept.
+	 * 
+	 * @throws Exception
+	 */
+	@Test( expected = NoSuchMethodException.class )
+	public void testSetterNotBypassed( ) throws Exception
+	{
+		new Builder<Person>( Person.class ).set( "name", 5 );
+	}
+
+	/**
+	 * Records a flight recorder event for a builder.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBuildEvent( ) throws Exception
+	{
+		Recording recording = new Recording( );
+		recording.enable( "org.drost.jdp.generics.BuilderBuild" );
+		recording.start( );
+
+		new Builder<Person>( Person.class ).set( "age", 35 ).set( "name", "Mike" ).build( );
+
+		recording.stop( );
+		Path file = Files.createTempFile( "builder", ".jfr" );
+
+		try
+		{
+			recording.dump( file );
+			List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+
+			assertEquals( 1, events.size( ) );
+			assertEquals( 2, events.get( 0 ).getInt( "setterCount" ) );
+		}
+		finally
+		{
+			recording.close( );
+			Files.delete( file );
+		}
+	}
+
 	/**
 	 * The Builder pattern does not work with this class definition.
 	 * 
@@ -114,6 +190,8 @@ public class BuilderTest
 
 		String name;
 
+		String city;
+
 		public void setAge( int age )
 		{
 			this.age = age;
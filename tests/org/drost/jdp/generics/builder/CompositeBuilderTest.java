@@ -0,0 +1,195 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.drost.jdp.generics.composite.Composite;
+import org.junit.Test;
+
+public class CompositeBuilderTest
+{
+	@Test
+	public void testBuild( ) throws Exception
+	{
+		CompositeBuilder<Item> description = new CompositeBuilder<Item>( Folder.class ).set( "name", "root" )
+				.add( new CompositeBuilder<Item>( File.class ).set( "name", "a.txt" ).set( "size", 12 ) )
+				.add( new CompositeBuilder<Item>( Folder.class ).set( "setName", "docs" )
+						.add( new CompositeBuilder<Item>( File.class ).set( "name", "b.txt" ) ) );
+
+		Item root = description.build( );
+
+		assertTrue( root instanceof Folder );
+		assertEquals( "root", root.name );
+		assertEquals( 2, root.getChildCount( ) );
+		assertEquals( "a.txt", root.getChildren( ).get( 0 ).name );
+		assertEquals( 12, ( (File) root.getChildren( ).get( 0 ) ).size );
+		assertEquals( "docs", root.getChildren( ).get( 1 ).name );
+		assertEquals( "b.txt", root.getChildren( ).get( 1 ).getChildren( ).get( 0 ).name );
+
+		// Every build creates new nodes.
+		assertNotSame( root, description.build( ) );
+	}
+
+	@Test
+	public void testBuildParallel( ) throws Exception
+	{
+		CompositeBuilder<Item> description = describe( 0, 5 );
+
+		Item sequential = description.build( );
+		Item parallel = description.buildParallel( );
+
+		assertEquals( 1 + 6 + 36 + 216 + 1296 + 7776, count( parallel ) );
+		assertEqualTrees( sequential, parallel );
+	}
+
+	@Test( expected = NoSuchMethodException.class )
+	public void testUnknownProperty( ) throws Exception
+	{
+		new CompositeBuilder<Item>( File.class ).set( "owner", "Mike" );
+	}
+
+	@Test( expected = InvocationTargetException.class )
+	public void testFailingSetter( ) throws Exception
+	{
+		CompositeBuilder<Item> description = describe( 0, 3 );
+		description.add( new CompositeBuilder<Item>( File.class ).set( "size", -1 ) );
+		description.buildParallel( );
+	}
+
+	@Test
+	public void testSharedDescription( ) throws Exception
+	{
+		CompositeBuilder<Item> file = new CompositeBuilder<Item>( File.class ).set( "name", "shared" );
+		CompositeBuilder<Item> folder = new CompositeBuilder<Item>( Folder.class ).add( file ).add( file );
+		Item root = new CompositeBuilder<Item>( Folder.class ).add( folder ).add( folder ).add( file ).build( );
+
+		assertEquals( 8, count( root ) );
+		assertNotSame( root.getChildren( ).get( 0 ), root.getChildren( ).get( 1 ) );
+	}
+
+	@Test
+	public void testIndirectCycle( ) throws Exception
+	{
+		CompositeBuilder<Item> a = new CompositeBuilder<Item>( Folder.class );
+		CompositeBuilder<Item> b = new CompositeBuilder<Item>( Folder.class );
+		a.add( new CompositeBuilder<Item>( File.class ) ).add( b );
+		b.add( a );
+
+		try
+		{
+			a.build( );
+			fail( );
+		}
+		catch ( IllegalStateException e )
+		{
+		}
+
+		try
+		{
+			b.buildParallel( );
+			fail( );
+		}
+		catch ( IllegalStateException e )
+		{
+		}
+	}
+
+	@Test
+	public void testDeepDescription( ) throws Exception
+	{
+		int depth = 100000;
+		CompositeBuilder<Item> description = new CompositeBuilder<Item>( File.class ).set( "name", "leaf" );
+
+		for( int i = 0; i < depth; i++ )
+			description = new CompositeBuilder<Item>( Folder.class ).add( description );
+
+		Item[] roots = { description.build( ), description.buildParallel( ) };
+
+		for( Item item : roots )
+		{
+			for( int i = 0; i < depth; i++ )
+				item = item.getChildren( ).get( 0 );
+
+			assertEquals( "leaf", item.name );
+			assertEquals( 0, item.getChildCount( ) );
+		}
+	}
+
+	private static CompositeBuilder<Item> describe( int index, int depth ) throws Exception
+	{
+		if( depth == 0 )
+			return new CompositeBuilder<Item>( File.class ).set( "name", "file " + index ).set( "size", index );
+
+		CompositeBuilder<Item> folder = new CompositeBuilder<Item>( Folder.class ).set( "name", "folder " + index );
+
+		for( int i = 0; i < 6; i++ )
+			folder.add( describe( i, depth - 1 ) );
+
+		return folder;
+	}
+
+	private static int count( Item item )
+	{
+		int count = 1;
+		for( Item child : item.getChildren( ) )
+			count += count( child );
+		return count;
+	}
+
+	private static void assertEqualTrees( Item expected, Item actual )
+	{
+		assertEquals( expected.getClass( ), actual.getClass( ) );
+		assertEquals( expected.name, actual.name );
+		assertEquals( expected.getChildCount( ), actual.getChildCount( ) );
+
+		for( int i = 0; i < expected.getChildCount( ); i++ )
+			assertEqualTrees( expected.getChildren( ).get( i ), actual.getChildren( ).get( i ) );
+	}
+
+	private static class Item extends Composite<Item>
+	{
+		String name;
+
+		public void setName( String name )
+		{
+			this.name = name;
+		}
+	}
+
+	private static class Folder extends Item
+	{
+	}
+
+	private static class File extends Item
+	{
+		int size;
+
+		public void setSize( int size )
+		{
+			if( size < 0 )
+				throw new IllegalArgumentException( "Negative size." );
+
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.builder;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class HydratorTest
+{
+	@Test
+	public void testCsv( )
+	{
+		String csv = "name,age,score,level,city,unknown\r\n"
+				+ "Mike,35,1.5,HIGH,Berlin,x\r\n"
+				+ "\"Doe, \"\"Jane\"\"\",,2,LOW,\"Multi\nLine\"\r\n"
+				+ "\r\n"
+				+ "Bob\n";
+
+		List<Person> persons = Hydrator.csv( Person.class ).stream( channel( csv ) ).collect( Collectors.<Person> toList( ) );
+
+		assertEquals( 3, persons.size( ) );
+		assertPerson( persons.get( 0 ), "Mike", 35, 1.5, Level.HIGH, "Berlin" );
+		assertPerson( persons.get( 1 ), "Doe, \"Jane\"", -1, 2.0, Level.LOW, "Multi\nLine" );
+		assertPerson( persons.get( 2 ), "Bob", -1, null, null, null );
+	}
+
+	@Test
+	public void testCsvDelimiter( )
+	{
+		Person p = Hydrator.csv( Person.class, ';' ).stream( channel( "age;name\n7;A,B" ) ).findFirst( ).get( );
+
+		assertPerson( p, "A,B", 7, null, null, null );
+	}
+
+	@Test
+	public void testJson( )
+	{
+		String json = "[ { \"name\": \"Mike \\\"M\\\" \\u00e4\\ud83d\\ude00\", \"age\": 35, \"score\": -1.5e1 },\n"
+				+ "{\"nested\": {\"a\": [1, \"}\"]}, \"level\": \"LOW\", \"score\": null, \"city\": \"Köln\"}, {} ]";
+
+		List<Person> persons = Hydrator.json( Person.class ).stream( channel( json ) ).collect( Collectors.<Person> toList( ) );
+
+		assertEquals( 3, persons.size( ) );
+		assertPerson( persons.get( 0 ), "Mike \"M\" ä😀", 35, -15.0, null, null );
+		assertPerson( persons.get( 1 ), null, -1, null, Level.LOW, "Köln" );
+		assertPerson( persons.get( 2 ), null, -1, null, null, null );
+	}
+
+	@Test
+	public void testJsonLines( )
+	{
+		String json = "{\"age\": 1}\n{\"age\": 2}\n{\"age\": 3}\n";
+
+		List<Person> persons = Hydrator.json( Person.class ).stream( channel( json ) ).collect( Collectors.<Person> toList( ) );
+
+		assertEquals( 3, persons.size( ) );
+		for( int i = 0; i < 3; i++ )
+			assertEquals( i + 1, persons.get( i ).age );
+	}
+
+	@Test( expected = UncheckedIOException.class )
+	public void testMalformedCsv( )
+	{
+		Hydrator.csv( Person.class ).stream( channel( "name\n\"open" ) ).count( );
+	}
+
+	@Test( expected = UncheckedIOException.class )
+	public void testMalformedJson( )
+	{
+		Hydrator.json( Person.class ).stream( channel( "[{\"age\" 1}]" ) ).count( );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidValue( )
+	{
+		Hydrator.csv( Person.class ).stream( channel( "age\nold" ) ).count( );
+	}
+
+	@Test
+	public void testParallel( ) throws Exception
+	{
+		testParallel( Hydrator.csv( Person.class ), "name,age\n", "", "Person %d,%d\n" );
+		testParallel( Hydrator.json( Person.class ), "[\n", "]\n", "{\"name\": \"Person %d\", \"age\": %d},\n" );
+	}
+
+	private void testParallel( Hydrator<Person> hydrator, String head, String tail, String format ) throws Exception
+	{
+		int count = 200000;
+		StringBuilder content = new StringBuilder( head );
+
+		for( int i = 0; i < count; i++ )
+			content.append( String.format( format, i, i ) );
+
+		content.append( tail );
+
+		Path file = Files.createTempFile( "hydrator", ".txt" );
+
+		try
+		{
+			Files.write( file, content.toString( ).getBytes( StandardCharsets.UTF_8 ) );
+			List<Person> persons;
+
+			try( Stream<Person> stream = hydrator.stream( file, true ) )
+			{
+				assertTrue( stream.isParallel( ) );
+				persons = stream.collect( Collectors.<Person> toList( ) );
+			}
+
+			assertEquals( count, persons.size( ) );
+
+			for( int i = 0; i < count; i++ )
+				assertPerson( persons.get( i ), "Person " + i, i, null, null, null );
+		}
+		finally
+		{
+			Files.delete( file );
+		}
+	}
+
+	private static ReadableByteChannel channel( String content )
+	{
+		return Channels.newChannel( new ByteArrayInputStream( content.getBytes( StandardCharsets.UTF_8 ) ) );
+	}
+
+	private static void assertPerson( Person p, String name, int age, Double score, Level level, String city )
+	{
+		assertEquals( name, p.name );
+		assertEquals( age, p.age );
+		assertEquals( score, p.score );
+		assertEquals( level, p.level );
+		assertEquals( city, p.city );
+	}
+
+	private enum Level
+	{
+		LOW, HIGH
+	}
+
+	private static class Person
+	{
+		int age = -1;
+
+		String name;
+
+		Double score;
+
+		Level level;
+
+		String city;
+
+		public void setAge( int age )
+		{
+			this.age = age;
+		}
+
+		public void setName( String name )
+		{
+			this.name = name;
+		}
+
+		public void setScore( Double score )
+		{
+			this.score = score;
+		}
+
+		public void setLevel( Level level )
+		{
+			this.level = level;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class CompositeCodecTest
+{
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	CompositeCodec<Person> codec = new CompositeCodec<Person>( new PersonSerializer( ) );
+
+	@Test
+	public void testRoundTrip( ) throws IOException
+	{
+		Person p = new Person( "Mike" );
+		Person child1 = new Person( "Oliver" );
+		Person child2 = new Person( "Emma" );
+		p.addChild( child1 );
+		p.addChild( child2 );
+		child2.addChild( new Person( "Harry" ) );
+
+		Person copy = codec.read( ByteBuffer.wrap( toBytes( p ) ) );
+
+		assertEquals( "Mike", copy.name );
+		assertEquals( 2, copy.getChildCount( ) );
+		assertEquals( "Oliver", copy.getChildren( ).get( 0 ).name );
+		assertEquals( "Emma", copy.getChildren( ).get( 1 ).name );
+		assertEquals( "Harry", copy.getChildren( ).get( 1 ).getChildren( ).get( 0 ).name );
+	}
+
+	@Test
+	public void testDeepHierarchy( ) throws IOException
+	{
+		Person root = new Person( "0" );
+		Person node = root;
+
+		for( int i = 1; i < 100000; i++ )
+		{
+			Person child = new Person( String.valueOf( i ) );
+			node.addChild( child );
+			node = child;
+		}
+
+		Person copy = codec.read( Channels.newChannel( new ByteArrayInputStream( toBytes( root ) ) ) );
+
+		int depth = 1;
+		while( copy.getChildCount( ) > 0 )
+		{
+			copy = copy.getChildren( ).get( 0 );
+			depth++;
+		}
+
+		assertEquals( 100000, depth );
+		assertEquals( "99999", copy.name );
+	}
+
+	@Test
+	public void testLargePayload( ) throws IOException
+	{
+		char[] chars = new char[200000];
+		java.util.Arrays.fill( chars, 'x' );
+
+		Person p = new Person( new String( chars ) );
+		p.addChild( new Person( "Emma" ) );
+
+		Person copy = codec.read( Channels.newChannel( new ByteArrayInputStream( toBytes( p ) ) ) );
+
+		assertEquals( p.name, copy.name );
+		assertEquals( "Emma", copy.getChildren( ).get( 0 ).name );
+	}
+
+	@Test
+	public void testMappedFile( ) throws IOException
+	{
+		Person p = new Person( "Mike" );
+		for( int i = 0; i < 1000; i++ )
+			p.addChild( new Person( "Child " + i ) );
+
+		Path file = Files.createTempFile( "composite", ".bin" );
+		try
+		{
+			codec.write( p, file );
+			Person copy = codec.read( file );
+
+			assertEquals( 1000, copy.getChildCount( ) );
+			assertEquals( "Child 999", copy.getChildren( ).get( 999 ).name );
+		}
+		finally
+		{
+			Files.delete( file );
+		}
+	}
+
+	@Test( expected = StreamCorruptedException.class )
+	public void testInvalidMagic( ) throws IOException
+	{
+		codec.read( ByteBuffer.wrap( new byte[] { 1, 2, 3, 4, 5, 6 } ) );
+	}
+
+	private byte[] toBytes( Person root ) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+		codec.write( root, Channels.newChannel( bytes ) );
+		return bytes.toByteArray( );
+	}
+
+	/**
+	 * This class extends the composite pattern.
+	 */
+	private static class Person extends Composite<Person>
+	{
+		private final String name;
+
+		public Person( String name )
+		{
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Writes the name of a person as UTF-8.
+	 */
+	private static class PersonSerializer implements NodeSerializer<Person>
+	{
+		@Override
+		public void write( Person node, ByteBuffer out )
+		{
+			out.put( node.name.getBytes( UTF8 ) );
+		}
+
+		@Override
+		public Person read( ByteBuffer in )
+		{
+			byte[] bytes = new byte[in.remaining( )];
+			in.get( bytes );
+			return new Person( new String( bytes, UTF8 ) );
+		}
+	}
+}
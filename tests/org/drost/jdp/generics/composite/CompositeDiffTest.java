@@ -0,0 +1,258 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.drost.jdp.generics.composite.CompositeDiff.Edit;
+import org.drost.jdp.generics.composite.CompositeDiff.Operation;
+import org.junit.Test;
+
+public class CompositeDiffTest
+{
+	@Test
+	public void testEqualHierarchies( )
+	{
+		Node live = node( "root", 0, node( "a", 1 ), node( "b", 2, node( "c", 3 ) ) );
+		Node loaded = node( "root", 0, node( "a", 1 ), node( "b", 2, node( "c", 3 ) ) );
+
+		assertEquals( live.getSubtreeHash( ), loaded.getSubtreeHash( ) );
+		assertTrue( CompositeDiff.diff( live, loaded ).isEmpty( ) );
+	}
+
+	@Test
+	public void testSync( )
+	{
+		Node live = node( "root", 0, node( "a", 1 ), node( "b", 2, node( "c", 3 ), node( "d", 4 ) ) );
+		Node loaded = node( "root", 0, node( "b", 2, node( "c", 5 ), node( "e", 6 ) ), node( "a", 1 ) );
+		String expected = render( loaded );
+		long hash = loaded.getSubtreeHash( );
+
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( live, loaded );
+
+		assertEquals( 1, count( diff, Operation.UPDATE ) );
+		assertEquals( 1, count( diff, Operation.DELETE ) );
+		assertEquals( 1, count( diff, Operation.INSERT ) );
+		assertEquals( 1, count( diff, Operation.MOVE ) );
+
+		Node c = live.findByPath( "/b/c" );
+		assertSame( live, diff.apply( ) );
+
+		assertEquals( expected, render( live ) );
+		assertEquals( hash, live.getSubtreeHash( ) );
+		assertSame( c, live.findByPath( "/b/c" ) );
+		assertNotNull( live.findByPath( "/b/e" ) );
+		assertNull( live.findByPath( "/b/d" ) );
+	}
+
+	@Test
+	public void testMinimalMoves( )
+	{
+		Node live = node( "root", 0, node( "a", 1 ), node( "b", 2 ), node( "c", 3 ), node( "d", 4 ) );
+		Node loaded = node( "root", 0, node( "b", 2 ), node( "c", 3 ), node( "d", 4 ), node( "a", 1 ) );
+		String expected = render( loaded );
+
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( live, loaded );
+
+		assertEquals( 1, diff.getEdits( ).size( ) );
+		Edit<Node> move = diff.getEdits( ).get( 0 );
+		assertEquals( Operation.MOVE, move.getOperation( ) );
+		assertEquals( "a", move.getNode( ).getKey( ) );
+		assertEquals( 3, move.getIndex( ) );
+
+		diff.apply( );
+		assertEquals( expected, render( live ) );
+	}
+
+	@Test
+	public void testMoveToOtherParent( )
+	{
+		Node live = node( "root", 0, node( "a", 1, node( "x", 7, node( "y", 8 ) ) ), node( "b", 2 ) );
+		Node loaded = node( "root", 0, node( "a", 1 ), node( "b", 2, node( "x", 7, node( "y", 8 ) ) ) );
+		String expected = render( loaded );
+		Node x = live.findByPath( "/a/x" );
+
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( live, loaded );
+
+		assertEquals( 1, diff.getEdits( ).size( ) );
+		assertEquals( Operation.MOVE, diff.getEdits( ).get( 0 ).getOperation( ) );
+
+		diff.apply( );
+		assertEquals( expected, render( live ) );
+		assertSame( x, live.findByPath( "/b/x" ) );
+	}
+
+	@Test
+	public void testSmallChange( )
+	{
+		Node live = tree( 4, 0 );
+		Node loaded = tree( 4, 0 );
+		loaded.findByPath( "/2/1/3/0" ).setValue( -1 );
+
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( live, loaded );
+
+		assertEquals( 1, diff.getEdits( ).size( ) );
+		assertEquals( "/2/1/3/0", diff.getEdits( ).get( 0 ).getNode( ).getPath( ) );
+
+		diff.apply( );
+		assertEquals( -1, live.findByPath( "/2/1/3/0" ).value );
+		assertTrue( CompositeDiff.diff( live, loaded ).isEmpty( ) );
+	}
+
+	@Test
+	public void testDeepHierarchies( )
+	{
+		Node live = chain( 100000 );
+		Node loaded = chain( 100000 );
+		Node leaf = loaded;
+
+		while( leaf.getChildCount( ) > 0 )
+			leaf = leaf.getChildren( ).get( 0 );
+
+		leaf.setValue( -1 );
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( live, loaded );
+
+		assertEquals( 1, diff.getEdits( ).size( ) );
+		assertEquals( Operation.UPDATE, diff.getEdits( ).get( 0 ).getOperation( ) );
+
+		diff.apply( );
+		assertTrue( CompositeDiff.diff( live, loaded ).isEmpty( ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testApplyTwice( )
+	{
+		CompositeDiff<String, Node> diff = CompositeDiff.diff( node( "root", 0 ), node( "root", 1 ) );
+		diff.apply( );
+		diff.apply( );
+	}
+
+	private static int count( CompositeDiff<String, Node> diff, Operation operation )
+	{
+		int count = 0;
+		for( Edit<Node> edit : diff.getEdits( ) )
+			if( edit.getOperation( ) == operation )
+				count++;
+		return count;
+	}
+
+	private static Node tree( int depth, int value )
+	{
+		Node node = new Node( String.valueOf( value ), value );
+
+		if( depth > 0 )
+			for( int i = 0; i < 5; i++ )
+				node.addChild( tree( depth - 1, i ) );
+
+		return node;
+	}
+
+	private static Node chain( int depth )
+	{
+		Node node = new Node( "n", 0 );
+
+		// Built bottom-up, so that adding a child does not walk the chain.
+		for( int i = 0; i < depth; i++ )
+		{
+			Node parent = new Node( "n", 0 );
+			parent.addChild( node );
+			node = parent;
+		}
+
+		return node;
+	}
+
+	private static Node node( String name, int value, Node... children )
+	{
+		Node node = new Node( name, value );
+
+		for( Node child : children )
+			node.addChild( child );
+
+		return node;
+	}
+
+	private static String render( Node node )
+	{
+		StringBuilder sb = new StringBuilder( node.getKey( ) ).append( '=' ).append( node.value );
+		List<Node> children = node.getChildren( );
+
+		if( !children.isEmpty( ) )
+		{
+			sb.append( '(' );
+			for( Node child : children )
+				sb.append( render( child ) ).append( ' ' );
+			sb.append( ')' );
+		}
+
+		return sb.toString( );
+	}
+
+	private static class Node extends KeyedComposite<String, Node>
+	{
+		private final String name;
+
+		private int value;
+
+		public Node( String name, int value )
+		{
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey( )
+		{
+			return name;
+		}
+
+		public void setValue( int value )
+		{
+			this.value = value;
+			contentChanged( );
+		}
+
+		@Override
+		protected int contentHash( )
+		{
+			return value;
+		}
+
+		@Override
+		protected boolean contentEquals( Node other )
+		{
+			return value == other.value;
+		}
+
+		@Override
+		protected void updateContent( Node source )
+		{
+			value = source.value;
+		}
+
+		@Override
+		public String toString( )
+		{
+			return getPath( );
+		}
+	}
+}
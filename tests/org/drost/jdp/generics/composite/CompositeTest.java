@@ -25,8 +25,14 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
 
 import org.drost.jdp.generics.composite.Composite;
+import org.drost.jdp.generics.flow.ChangeBatch;
+import org.drost.jdp.generics.flow.ChangePublisher;
 import org.junit.After;
 import org.junit.Before;
 
@@ -35,6 +41,15 @@ public class CompositeTest
 	Person p = new Person("Mike");
 	Person child1 = new Person("Oliver");
 	Person child2 = new Person("Emma");
+	
+	Executor direct = new Executor( )
+	{
+		@Override
+		public void execute( Runnable command )
+		{
+			command.run( );
+		}
+	};
 
 	@Before
 	public void setUp()
@@ -101,6 +116,207 @@ public class CompositeTest
 		assertEquals( 1, p.getChildCount( ) );
 		assertEquals( Arrays.asList( child1 ), p.getChildren( ) );
 	}
+	@Test
+	public void testAddChildren()
+	{
+		Person child3 = new Person("Harry");
+		
+		assertTrue( p.addChildren( Arrays.asList( child3, child1 ) ) );
+		assertEquals( Arrays.asList( child1, child2, child3, child1 ), p.getChildren( ) );
+	}
+	
+	@Test
+	public void testRemoveChildrenIf()
+	{
+		assertTrue( p.removeChildrenIf( new Predicate<Person>( )
+		{
+			@Override
+			public boolean test( Person child )
+			{
+				return child.name.startsWith( "O" );
+			}
+		} ) );
+		
+		assertEquals( Arrays.asList( child2 ), p.getChildren( ) );
+	}
+	
+	@Test
+	public void testClearChildren()
+	{
+		p.ensureChildCapacity( 100 );
+		p.clearChildren( );
+		
+		assertEquals( 0, p.getChildCount( ) );
+		assertFalse( p.removeAllChildren( ) );
+	}
+	
+	@Test
+	public void testChangePublisher()
+	{
+		ChangePublisher<CompositeChange<?>> publisher = new ChangePublisher<CompositeChange<?>>( direct, 16, 16 );
+		final List<CompositeChange<?>> changes = new ArrayList<CompositeChange<?>>( );
+		
+		publisher.subscribe( new Flow.Subscriber<List<CompositeChange<?>>>( )
+		{
+			@Override
+			public void onSubscribe( Flow.Subscription subscription )
+			{
+				subscription.request( Long.MAX_VALUE );
+			}
+
+			@Override
+			public void onNext( List<CompositeChange<?>> batch )
+			{
+				changes.addAll( batch );
+			}
+
+			@Override
+			public void onError( Throwable throwable )
+			{
+				fail( throwable.toString( ) );
+			}
+
+			@Override
+			public void onComplete( )
+			{
+			}
+		} );
+		
+		p.setChangePublisher( publisher );
+		assertSame( publisher, child1.getChangePublisher( ) );
+		
+		Person grandchild = new Person("Lina");
+		child1.addChild( grandchild );
+		p.removeChild( child2 );
+		
+		assertEquals( 2, changes.size( ) );
+		assertEquals( CompositeChange.Kind.ADDED, changes.get( 0 ).getKind( ) );
+		assertSame( child1, changes.get( 0 ).getParent( ) );
+		assertSame( grandchild, changes.get( 0 ).getChild( ) );
+		assertEquals( CompositeChange.Kind.REMOVED, changes.get( 1 ).getKind( ) );
+		assertSame( child2, changes.get( 1 ).getChild( ) );
+		
+		// Detached children are not observed anymore.
+		assertNull( child2.getChangePublisher( ) );
+		child2.addChild( new Person("Noah") );
+		assertEquals( 2, changes.size( ) );
+		
+		p.setChangePublisher( null );
+		child1.removeChild( grandchild );
+		assertEquals( 2, changes.size( ) );
+	}
+	
+	@Test
+	public void testCancelledChanges()
+	{
+		ChangePublisher<CompositeChange<?>> publisher = new ChangePublisher<CompositeChange<?>>( direct, 16, 16 );
+		final List<CompositeChange<?>> changes = new ArrayList<CompositeChange<?>>( );
+		final Flow.Subscription[] subscription = new Flow.Subscription[1];
+		
+		publisher.subscribe( new Flow.Subscriber<List<CompositeChange<?>>>( )
+		{
+			@Override
+			public void onSubscribe( Flow.Subscription s )
+			{
+				subscription[0] = s;
+			}
+
+			@Override
+			public void onNext( List<CompositeChange<?>> batch )
+			{
+				changes.addAll( batch );
+			}
+
+			@Override
+			public void onError( Throwable throwable )
+			{
+				fail( throwable.toString( ) );
+			}
+
+			@Override
+			public void onComplete( )
+			{
+			}
+		} );
+		
+		p.setChangePublisher( publisher );
+		
+		// Neither the temporary child nor the re-added child are reported.
+		Person temporary = new Person("Lina");
+		p.addChild( temporary );
+		p.removeChild( temporary );
+		p.removeChild( child1 );
+		p.addChild( child1 );
+		p.removeChild( child2 );
+		
+		subscription[0].request( Long.MAX_VALUE );
+		assertEquals( 1, changes.size( ) );
+		assertEquals( CompositeChange.Kind.REMOVED, changes.get( 0 ).getKind( ) );
+		assertSame( child2, changes.get( 0 ).getChild( ) );
+	}
+
+	@Test
+	public void testBulkChanges()
+	{
+		// Delivers only when the test drains the queue, like a busy pool.
+		final List<Runnable> queue = new ArrayList<Runnable>( );
+		Executor deferred = new Executor( )
+		{
+			@Override
+			public void execute( Runnable command )
+			{
+				queue.add( command );
+			}
+		};
+
+		ChangePublisher<CompositeChange<?>> publisher = new ChangePublisher<CompositeChange<?>>( deferred, 16, 16 );
+		final List<CompositeChange<?>> changes = new ArrayList<CompositeChange<?>>( );
+		final long[] lost = new long[1];
+
+		publisher.subscribe( new Flow.Subscriber<List<CompositeChange<?>>>( )
+		{
+			@Override
+			public void onSubscribe( Flow.Subscription s )
+			{
+				s.request( Long.MAX_VALUE );
+			}
+
+			@Override
+			public void onNext( List<CompositeChange<?>> batch )
+			{
+				changes.addAll( batch );
+				lost[0] += ( (ChangeBatch<CompositeChange<?>>) batch ).getLostCount( );
+			}
+
+			@Override
+			public void onError( Throwable throwable )
+			{
+				fail( throwable.toString( ) );
+			}
+
+			@Override
+			public void onComplete( )
+			{
+			}
+		} );
+
+		p.setChangePublisher( publisher );
+
+		List<Person> children = new ArrayList<Person>( );
+		for( int i = 0; i < 100; i++ )
+			children.add( new Person( "Child " + i ) );
+
+		p.addChildren( children );
+
+		while( !queue.isEmpty( ) )
+			queue.remove( 0 ).run( );
+
+		// The subscriber is told how many changes it missed and stays subscribed.
+		assertTrue( publisher.hasSubscribers( ) );
+		assertEquals( 16, changes.size( ) );
+		assertEquals( 100 - 16, lost[0] );
+		assertSame( children.get( 99 ), changes.get( 15 ).getChild( ) );
+	}
 	
 	
 	
@@ -0,0 +1,229 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompositeWalkerTest
+{
+	Person p = new Person( "Mike" );
+	Person child1 = new Person( "Oliver" );
+	Person child2 = new Person( "Emma" );
+	Person grandChild = new Person( "Harry" );
+
+	@Before
+	public void setUp( )
+	{
+		p.addChild( child1 );
+		p.addChild( child2 );
+		child1.addChild( grandChild );
+	}
+
+	@Test
+	public void testTraversalEvent( ) throws Exception
+	{
+		Recording recording = new Recording( );
+		recording.enable( "org.drost.jdp.generics.CompositeTraversal" );
+		recording.start( );
+
+		CompositeWalker.walk( p, new SimpleCompositeVisitor<Person>( ) );
+		CompositeWalker.walkParallel( p, new SimpleCompositeVisitor<Person>( ) );
+
+		recording.stop( );
+		Path file = Files.createTempFile( "traversal", ".jfr" );
+
+		try
+		{
+			recording.dump( file );
+			List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+
+			assertEquals( 2, events.size( ) );
+			assertEquals( 4, events.get( 0 ).getLong( "nodeCount" ) );
+			assertEquals( 4, events.get( 1 ).getLong( "nodeCount" ) );
+		}
+		finally
+		{
+			recording.close( );
+			Files.delete( file );
+		}
+	}
+
+	@Test
+	public void testWalkOrder( )
+	{
+		final List<String> events = new ArrayList<String>( );
+
+		VisitResult result = CompositeWalker.walk( p, new CompositeVisitor<Person>( )
+		{
+			@Override
+			public VisitResult enter( Person node )
+			{
+				events.add( "+" + node.name );
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult leave( Person node )
+			{
+				events.add( "-" + node.name );
+				return VisitResult.CONTINUE;
+			}
+		} );
+
+		assertEquals( VisitResult.CONTINUE, result );
+		assertEquals( Arrays.asList( "+Mike", "+Oliver", "+Harry", "-Harry", "-Oliver", "+Emma", "-Emma", "-Mike" ),
+				events );
+	}
+
+	@Test
+	public void testSkipSubtree( )
+	{
+		final List<String> entered = new ArrayList<String>( );
+
+		CompositeWalker.walk( p, new SimpleCompositeVisitor<Person>( )
+		{
+			@Override
+			public VisitResult enter( Person node )
+			{
+				entered.add( node.name );
+				return node == child1 ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+			}
+		} );
+
+		assertEquals( Arrays.asList( "Mike", "Oliver", "Emma" ), entered );
+	}
+
+	@Test
+	public void testFind( )
+	{
+		assertSame( grandChild, CompositeWalker.find( p, new Predicate<Person>( )
+		{
+			@Override
+			public boolean test( Person node )
+			{
+				return node.name.startsWith( "H" );
+			}
+		} ) );
+	}
+
+	@Test
+	public void testDeepHierarchy( )
+	{
+		Person node = grandChild;
+		for( int i = 0; i < 100000; i++ )
+		{
+			Person child = new Person( "Child " + i );
+			node.addChild( child );
+			node = child;
+		}
+
+		final AtomicInteger count = new AtomicInteger( );
+		CompositeWalker.walk( p, new SimpleCompositeVisitor<Person>( )
+		{
+			@Override
+			public VisitResult leave( Person node )
+			{
+				count.incrementAndGet( );
+				return VisitResult.CONTINUE;
+			}
+		} );
+
+		assertEquals( 100004, count.get( ) );
+	}
+
+	@Test
+	public void testWalkParallel( )
+	{
+		for( int i = 0; i < 1000; i++ )
+		{
+			Person child = new Person( "Child " + i );
+			child2.addChild( child );
+			for( int j = 0; j < 10; j++ )
+				child.addChild( new Person( "Grandchild " + j ) );
+		}
+
+		final AtomicInteger entered = new AtomicInteger( );
+		final AtomicInteger left = new AtomicInteger( );
+
+		VisitResult result = CompositeWalker.walkParallel( p, new CompositeVisitor<Person>( )
+		{
+			@Override
+			public VisitResult enter( Person node )
+			{
+				entered.incrementAndGet( );
+				return VisitResult.CONTINUE;
+			}
+
+			@Override
+			public VisitResult leave( Person node )
+			{
+				left.incrementAndGet( );
+				return VisitResult.CONTINUE;
+			}
+		} );
+
+		assertEquals( VisitResult.CONTINUE, result );
+		assertEquals( 11004, entered.get( ) );
+		assertEquals( 11004, left.get( ) );
+	}
+
+	@Test
+	public void testWalkParallelTerminate( )
+	{
+		VisitResult result = CompositeWalker.walkParallel( p, new SimpleCompositeVisitor<Person>( )
+		{
+			@Override
+			public VisitResult enter( Person node )
+			{
+				return node == grandChild ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+			}
+		} );
+
+		assertEquals( VisitResult.TERMINATE, result );
+	}
+
+	/**
+	 * This class extends the composite pattern.
+	 */
+	private static class Person extends Composite<Person>
+	{
+		private final String name;
+
+		public Person( String name )
+		{
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedCompositeTest
+{
+	Node root = new Node( "root" );
+	Node a = new Node( "a" );
+	Node b = new Node( "b" );
+	Node c = new Node( "c" );
+
+	@Before
+	public void setUp( )
+	{
+		root.addChild( a );
+		a.addChild( b );
+		b.addChild( c );
+	}
+
+	@Test
+	public void testGetChild( )
+	{
+		assertSame( a, root.getChild( "a" ) );
+		assertSame( b, a.getChild( "b" ) );
+		assertNull( root.getChild( "b" ) );
+	}
+
+	@Test
+	public void testFindByPath( )
+	{
+		assertEquals( "/a/b/c", c.getPath( ) );
+		assertSame( c, root.findByPath( "/a/b/c" ) );
+		assertSame( b, c.findByPath( "/a/b" ) );
+		assertSame( root, a.findByPath( "" ) );
+		assertNull( root.findByPath( "/a/c" ) );
+	}
+
+	@Test
+	public void testDuplicateKey( )
+	{
+		assertFalse( root.addChild( new Node( "a" ) ) );
+		assertEquals( 1, root.getChildCount( ) );
+	}
+
+	@Test
+	public void testRemoveChild( )
+	{
+		assertTrue( root.removeChild( a ) );
+
+		assertNull( root.findByPath( "/a" ) );
+		assertNull( root.findByPath( "/a/b/c" ) );
+		assertNull( a.getParent( ) );
+
+		// The removed subtree resolves paths from its own root.
+		assertEquals( "/b/c", c.getPath( ) );
+		assertSame( c, a.findByPath( "/b/c" ) );
+
+		assertFalse( root.removeChild( a ) );
+	}
+
+	@Test
+	public void testMoveSubtree( )
+	{
+		Node d = new Node( "d" );
+		root.addChild( d );
+
+		a.removeChild( b );
+		d.addChild( b );
+
+		assertSame( c, root.findByPath( "/d/b/c" ) );
+		assertNull( root.findByPath( "/a/b/c" ) );
+	}
+
+	@Test
+	public void testRemoveChildByIndex( )
+	{
+		Node d = new Node( "d" );
+		root.addChild( d );
+
+		assertSame( d, root.removeChild( 1 ) );
+		assertEquals( Arrays.asList( a ), root.getChildren( ) );
+		assertNull( root.findByPath( "/d" ) );
+	}
+
+	@Test
+	public void testRemoveAllChildren( )
+	{
+		root.removeAllChildren( );
+
+		assertEquals( 0, root.getChildCount( ) );
+		assertNull( root.findByPath( "/a/b" ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testCycle( )
+	{
+		c.addChild( root );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testReadOnlyChildren( )
+	{
+		root.getChildren( ).add( new Node( "x" ) );
+	}
+
+	@Test
+	public void testLiveChildren( )
+	{
+		List<Node> children = root.getChildren( );
+		Node d = new Node( "d" );
+		root.addChild( d );
+
+		assertSame( children, root.getChildren( ) );
+		assertEquals( Arrays.asList( a, d ), children );
+		assertSame( d, children.get( 1 ) );
+
+		root.removeChild( a );
+		assertEquals( Arrays.asList( d ), children );
+
+		// Replacing the children with the view itself keeps them.
+		root.setChildren( children );
+		assertEquals( Arrays.asList( d ), root.getChildren( ) );
+	}
+
+	@Test
+	public void testDeepPath( )
+	{
+		Node node = c;
+
+		for( int i = 0; i < 10000; i++ )
+		{
+			Node child = new Node( "n" );
+			node.addChild( child );
+			node = child;
+		}
+
+		String path = node.getPath( );
+		assertEquals( "/a/b/c".length( ) + 10000 * 2, path.length( ) );
+		assertSame( node, root.findByPath( path ) );
+
+		// Moving the chain is independent of its depth.
+		a.removeChild( b );
+		assertSame( node, b.findByPath( path.substring( "/a/b".length( ) ) ) );
+	}
+
+	@Test
+	public void testDeepSubtreeHash( )
+	{
+		Node first = new Node( "n" );
+		Node second = new Node( "n" );
+
+		for( int i = 0; i < 100000; i++ )
+		{
+			Node parent = new Node( "n" );
+			parent.addChild( first );
+			first = parent;
+
+			parent = new Node( "n" );
+			parent.addChild( second );
+			second = parent;
+		}
+
+		assertEquals( first.getSubtreeHash( ), second.getSubtreeHash( ) );
+
+		Node leaf = second;
+
+		while( leaf.getChildCount( ) > 0 )
+			leaf = leaf.getChildren( ).get( 0 );
+
+		leaf.addChild( new Node( "x" ) );
+		assertFalse( first.getSubtreeHash( ) == second.getSubtreeHash( ) );
+	}
+
+	@Test
+	public void testNonStringKeys( )
+	{
+		Numbered numbers = new Numbered( 0 );
+		Numbered one = new Numbered( 1 );
+		Numbered two = new Numbered( 2 );
+		numbers.addChild( one );
+		one.addChild( two );
+
+		assertEquals( "/1/2", two.getPath( ) );
+		assertSame( two, numbers.findByPath( "/1/2" ) );
+
+		numbers.removeChild( one );
+		assertNull( numbers.findByPath( "/1" ) );
+		assertSame( two, one.findByPath( "/2" ) );
+	}
+
+	/**
+	 * A keyed node identified by its name.
+	 */
+	private static class Node extends KeyedComposite<String, Node>
+	{
+		private final String name;
+
+		public Node( String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String getKey( )
+		{
+			return name;
+		}
+	}
+
+	/**
+	 * A keyed node identified by a number.
+	 */
+	private static class Numbered extends KeyedComposite<Integer, Numbered>
+	{
+		private final int number;
+
+		public Numbered( int number )
+		{
+			this.number = number;
+		}
+
+		@Override
+		public Integer getKey( )
+		{
+			return number;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
+import org.junit.Test;
+
+public class PersistentCompositeTest
+{
+	PersistentComposite<String> v1 = PersistentComposite.of( "root" )
+			.withChild( PersistentComposite.of( "a" ).withChild( PersistentComposite.of( "a1" ) ) )
+			.withChild( PersistentComposite.of( "b" ) );
+
+	@Test
+	public void testWithChild( )
+	{
+		PersistentComposite<String> v2 = v1.withChild( new int[] { 0, 0 }, PersistentComposite.of( "a1x" ) );
+
+		assertEquals( "a1x", v2.get( 0, 0, 0 ).getValue( ) );
+		assertEquals( 0, v1.get( 0, 0 ).getChildCount( ) );
+
+		// Only the path has been copied.
+		assertNotSame( v1.get( 0 ), v2.get( 0 ) );
+		assertSame( v1.get( 1 ), v2.get( 1 ) );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testChangePublisher( )
+	{
+		v1.setChangePublisher( new ChangePublisher<CompositeChange<?>>( ) );
+	}
+
+	@Test
+	public void testWithoutChild( )
+	{
+		PersistentComposite<String> v2 = v1.withoutChild( new int[] { 0 }, 0 );
+
+		assertEquals( 0, v2.get( 0 ).getChildCount( ) );
+		assertEquals( 1, v1.get( 0 ).getChildCount( ) );
+		assertSame( v1.get( 1 ), v2.get( 1 ) );
+
+		PersistentComposite<String> v3 = v2.withoutChild( v2.get( 1 ) );
+		assertEquals( 1, v3.getChildCount( ) );
+		assertSame( v3, v3.withoutChild( v1.get( 1 ) ) );
+	}
+
+	@Test
+	public void testWithValue( )
+	{
+		PersistentComposite<String> v2 = v1.withValue( new int[] { 1 }, "c" );
+
+		assertEquals( "c", v2.get( 1 ).getValue( ) );
+		assertEquals( "b", v1.get( 1 ).getValue( ) );
+		assertSame( v1.get( 0 ), v2.get( 0 ) );
+	}
+
+	@Test
+	public void testGetChildren( )
+	{
+		assertEquals( 2, v1.getChildren( ).size( ) );
+		assertSame( v1.get( 1 ), v1.getChildren( ).get( 1 ) );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testAddChild( )
+	{
+		v1.addChild( PersistentComposite.of( "c" ) );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testModifyChildren( )
+	{
+		v1.getChildren( ).clear( );
+	}
+}
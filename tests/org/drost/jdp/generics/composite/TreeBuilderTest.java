@@ -0,0 +1,83 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.composite;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TreeBuilderTest
+{
+	Person p = new Person( "Mike" );
+	Person child1 = new Person( "Oliver" );
+	Person child2 = new Person( "Emma" );
+	Person grandChild1 = new Person( "Harry" );
+	Person grandChild2 = new Person( "Ethan" );
+
+	@Test
+	public void testBuild( )
+	{
+		Person root = new TreeBuilder<Person>( p, 2 )
+				.begin( child1 )
+					.add( grandChild1 )
+				.end( )
+				.begin( child2 )
+					.add( grandChild2 )
+				.end( )
+				.build( );
+
+		assertSame( p, root );
+		assertEquals( Arrays.asList( child1, child2 ), p.getChildren( ) );
+		assertEquals( Arrays.asList( grandChild1 ), child1.getChildren( ) );
+		assertEquals( Arrays.asList( grandChild2 ), child2.getChildren( ) );
+		assertEquals( 0, grandChild1.getChildCount( ) );
+	}
+
+	@Test
+	public void testAppendToExistingChildren( )
+	{
+		p.addChild( child1 );
+
+		new TreeBuilder<Person>( p ).add( child2 ).build( );
+
+		assertEquals( Arrays.asList( child1, child2 ), p.getChildren( ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testEndRoot( )
+	{
+		new TreeBuilder<Person>( p ).end( );
+	}
+
+	/**
+	 * This class extends the composite pattern.
+	 */
+	private static class Person extends Composite<Person>
+	{
+		private final String name;
+
+		public Person( String name )
+		{
+			this.name = name;
+		}
+	}
+}
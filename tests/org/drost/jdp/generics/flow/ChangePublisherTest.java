@@ -0,0 +1,265 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.flow;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+public class ChangePublisherTest
+{
+	/**
+	 * Delivers on the calling thread, so the tests are deterministic.
+	 */
+	Executor direct = new Executor( )
+	{
+		@Override
+		public void execute( Runnable command )
+		{
+			command.run( );
+		}
+	};
+
+	ChangePublisher<Change> publisher = new ChangePublisher<Change>( direct, 4, 2 );
+
+	@Test
+	public void testDropWithoutSubscribers( )
+	{
+		assertFalse( publisher.hasSubscribers( ) );
+		publisher.publish( new Change( "a", 1 ) );
+
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+		r.subscription.request( 1 );
+
+		assertTrue( r.batches.isEmpty( ) );
+		assertEquals( 1, publisher.getSubscriberCount( ) );
+	}
+
+	@Test
+	public void testBatchingAndCoalescing( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+
+		publisher.publish( new Change( "a", 1 ) );
+		publisher.publish( new Change( "b", 1 ) );
+		publisher.publish( new Change( "a", 2 ) );
+		publisher.publish( new Change( null, 3 ) );
+
+		// Nothing is delivered without demand.
+		assertTrue( r.batches.isEmpty( ) );
+
+		r.subscription.request( 1 );
+		assertEquals( 1, r.batches.size( ) );
+		assertEquals( "a2 b1", r.describe( 0 ) );
+
+		r.subscription.request( 5 );
+		assertEquals( 2, r.batches.size( ) );
+		assertEquals( "null3", r.describe( 1 ) );
+
+		// Remaining demand delivers new events right away.
+		publisher.publish( new Change( "c", 4 ) );
+		assertEquals( 3, r.batches.size( ) );
+		assertEquals( "c4", r.describe( 2 ) );
+	}
+
+	@Test
+	public void testCancellation( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+
+		publisher.publish( new Change( "a", 1 ) );
+		publisher.publish( new Change( "b", 2 ) );
+		publisher.publish( new Change( "a", -1 ) );
+		r.subscription.request( 1 );
+
+		assertEquals( 1, r.batches.size( ) );
+		assertEquals( "b2", r.describe( 0 ) );
+	}
+
+	@Test
+	public void testOverflow( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+
+		for( int i = 0; i < 4; i++ )
+			publisher.publish( new Change( "k" + i, i ) );
+
+		// Coalesced events never overflow.
+		publisher.publish( new Change( "k0", 9 ) );
+		assertNull( r.error );
+
+		// The oldest event is dropped, the subscription stays active.
+		publisher.publish( new Change( "k4", 4 ) );
+		publisher.publish( new Change( "k5", 5 ) );
+		assertNull( r.error );
+		assertTrue( publisher.hasSubscribers( ) );
+
+		r.subscription.request( 2 );
+		assertEquals( "k22 k33", r.describe( 0 ) );
+		assertEquals( 2, ( (ChangeBatch<Change>) r.batches.get( 0 ) ).getLostCount( ) );
+		assertEquals( "k44 k55", r.describe( 1 ) );
+		assertEquals( 0, ( (ChangeBatch<Change>) r.batches.get( 1 ) ).getLostCount( ) );
+	}
+
+	@Test
+	public void testInvalidRequest( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+		r.subscription.request( 0 );
+
+		assertTrue( r.error instanceof IllegalArgumentException );
+		assertFalse( publisher.hasSubscribers( ) );
+	}
+
+	@Test
+	public void testClose( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+		publisher.publish( new Change( "a", 1 ) );
+		publisher.close( );
+
+		// Pending events are delivered before completion.
+		assertFalse( r.completed );
+		r.subscription.request( Long.MAX_VALUE );
+		assertEquals( "a1", r.describe( 0 ) );
+		assertTrue( r.completed );
+
+		publisher.publish( new Change( "b", 2 ) );
+		assertEquals( 1, r.batches.size( ) );
+
+		Recorder late = new Recorder( );
+		publisher.subscribe( late );
+		assertTrue( late.completed );
+	}
+
+	@Test
+	public void testFailingSubscriber( )
+	{
+		Recorder r = new Recorder( )
+		{
+			@Override
+			public void onNext( List<Change> batch )
+			{
+				throw new IllegalStateException( "Failing subscriber." );
+			}
+		};
+		publisher.subscribe( r );
+		r.subscription.request( 1 );
+		publisher.publish( new Change( "a", 1 ) );
+
+		assertTrue( r.error instanceof IllegalStateException );
+		assertFalse( publisher.hasSubscribers( ) );
+	}
+
+	@Test
+	public void testDuplicateSubscription( )
+	{
+		Recorder r = new Recorder( );
+		publisher.subscribe( r );
+		publisher.subscribe( r );
+
+		assertTrue( r.error instanceof IllegalStateException );
+		assertEquals( 1, publisher.getSubscriberCount( ) );
+	}
+
+	private static class Change implements ChangeEvent
+	{
+		private final String key;
+
+		private final int value;
+
+		Change( String key, int value )
+		{
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Object getCoalescingKey( )
+		{
+			return key;
+		}
+
+		/**
+		 * A negated value undoes the pending one.
+		 */
+		@Override
+		public boolean cancels( ChangeEvent pending )
+		{
+			return value != 0 && value == -( (Change) pending ).value;
+		}
+	}
+
+	private static class Recorder implements Flow.Subscriber<List<Change>>
+	{
+		Flow.Subscription subscription;
+
+		List<List<Change>> batches = new ArrayList<List<Change>>( );
+
+		Throwable error;
+
+		boolean completed;
+
+		@Override
+		public void onSubscribe( Flow.Subscription subscription )
+		{
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext( List<Change> batch )
+		{
+			batches.add( batch );
+		}
+
+		@Override
+		public void onError( Throwable throwable )
+		{
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete( )
+		{
+			completed = true;
+		}
+
+		String describe( int index )
+		{
+			StringBuilder sb = new StringBuilder( );
+
+			for( Change change : batches.get( index ) )
+				sb.append( sb.length( ) > 0 ? " " : "" ).append( change.key ).append( change.value );
+
+			return sb.toString( );
+		}
+	}
+}
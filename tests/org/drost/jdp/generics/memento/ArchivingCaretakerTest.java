@@ -0,0 +1,182 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class ArchivingCaretakerTest
+{
+	Originator<String> o = new Originator<String>( );
+
+	@Test
+	public void testArchive( ) throws IOException
+	{
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 5, 4 );
+
+		for( int i = 0; i < 20; i++ )
+			save( c, "State " + i );
+
+		assertEquals( 20, c.getMementoCount( ) );
+		assertEquals( 12, c.getArchivedCount( ) );
+		assertTrue( c.getArchivedBytes( ) > 0 );
+
+		for( int i = 0; i < 20; i++ )
+			assertEquals( "State " + i, c.getMemento( i ).getState( ) );
+
+		c.close( );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testAddNull( ) throws IOException
+	{
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 5, 4 );
+
+		try
+		{
+			c.addMemento( null );
+		}
+		finally
+		{
+			c.close( );
+		}
+	}
+
+	@Test
+	public void testVersions( ) throws IOException
+	{
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 2, 3 );
+		Memento<String> third = null;
+
+		for( int i = 0; i < 10; i++ )
+		{
+			save( c, "State " + i );
+			if( i == 2 )
+				third = c.getMemento( 2 );
+		}
+
+		assertEquals( 6, c.getArchivedCount( ) );
+		assertEquals( 3, c.getMemento( 2 ).getVersion( ) );
+		assertEquals( third.getTimestamp( ), c.getMemento( 2 ).getTimestamp( ) );
+
+		c.overwriteMemento( 4, new Memento<String>( "Other", 42, 1234 ) );
+		assertEquals( 42, c.getMemento( 4 ).getVersion( ) );
+		assertEquals( 1234, c.getMemento( 4 ).getTimestamp( ) );
+		assertEquals( 6, c.getMemento( 5 ).getVersion( ) );
+
+		c.close( );
+	}
+
+	@Test
+	public void testOverwriteArchived( ) throws IOException
+	{
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 2, 3 );
+
+		for( int i = 0; i < 10; i++ )
+			save( c, "State " + i );
+
+		assertEquals( "State 4", c.overwriteMemento( 4, new Memento<String>( "Other" ) ).getState( ) );
+		assertEquals( "State 3", c.getMemento( 3 ).getState( ) );
+		assertEquals( "Other", c.getMemento( 4 ).getState( ) );
+		assertEquals( "State 5", c.getMemento( 5 ).getState( ) );
+
+		c.close( );
+	}
+
+	@Test
+	public void testArchiveFile( ) throws IOException
+	{
+		Path file = Files.createTempFile( "mementos", ".bin" );
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 0, 10,
+				file );
+
+		try
+		{
+			for( int i = 0; i < 100; i++ )
+				save( c, "State " + i );
+
+			assertEquals( 100, c.getArchivedCount( ) );
+			assertEquals( c.getArchivedBytes( ), Files.size( file ) );
+			assertEquals( "State 42", c.getMemento( 42 ).getState( ) );
+
+			c.clearAll( );
+			assertEquals( 0, c.getMementoCount( ) );
+			assertEquals( 0, Files.size( file ) );
+		}
+		finally
+		{
+			c.close( );
+			Files.delete( file );
+		}
+	}
+
+	@Test
+	public void testTruncatedBlock( ) throws IOException
+	{
+		Path file = Files.createTempFile( "mementos", ".bin" );
+		ArchivingCaretaker<String> c = new ArchivingCaretaker<String>( new SerializableStateSerializer<String>( ), 0, 10,
+				file );
+
+		try
+		{
+			for( int i = 0; i < 10; i++ )
+				save( c, "State " + i );
+
+			// Behind the uncompressed length, a zlib header and a stored block
+			// announcing more bytes than the block holds.
+			try( FileChannel channel = FileChannel.open( file, StandardOpenOption.WRITE ) )
+			{
+				byte[] truncated = { 0x78, 0x01, 0x00, (byte) 0xff, (byte) 0xff, 0x00, 0x00 };
+				channel.write( ByteBuffer.wrap( truncated ), 4 );
+			}
+
+			try
+			{
+				c.getMemento( 0 );
+				fail( "Truncated block read." );
+			}
+			catch ( UncheckedIOException e )
+			{
+				assertTrue( e.getCause( ) instanceof StreamCorruptedException );
+			}
+		}
+		finally
+		{
+			c.close( );
+			Files.delete( file );
+		}
+	}
+
+	private void save( Caretaker<String> c, String state )
+	{
+		o.setState( state );
+		c.addMemento( o.saveStateToMemento( ) );
+	}
+}
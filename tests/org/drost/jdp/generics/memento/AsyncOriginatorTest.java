@@ -0,0 +1,159 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+public class AsyncOriginatorTest
+{
+	Caretaker<List<String>> c = new Caretaker<List<String>>( );
+
+	ManualExecutor executor = new ManualExecutor( );
+
+	AsyncOriginator<List<String>> o = new AsyncOriginator<List<String>>( new ListCopier( ), executor, c );
+
+	@Test
+	public void testSnapshot( ) throws Exception
+	{
+		o.setState( new ArrayList<String>( Arrays.asList( "a" ) ) );
+
+		CompletableFuture<Memento<List<String>>> future = o.saveStateToMementoAsync( );
+		assertFalse( future.isDone( ) );
+
+		executor.runAll( );
+		assertEquals( Arrays.asList( "a" ), future.get( ).getState( ) );
+		assertSame( future.get( ), c.getMemento( 0 ) );
+
+		// The copy prepared in the background is used for the update.
+		List<String> state = o.getState( );
+		o.getStateForUpdate( ).add( "b" );
+		assertNotSame( state, o.getState( ) );
+		assertEquals( Arrays.asList( "a" ), future.get( ).getState( ) );
+	}
+
+	@Test
+	public void testCoalesce( ) throws Exception
+	{
+		o.setState( new ArrayList<String>( Arrays.asList( "a" ) ) );
+		CompletableFuture<Memento<List<String>>> first = o.saveStateToMementoAsync( );
+
+		// Modifying before the snapshot ran copies on the calling thread.
+		o.getStateForUpdate( ).add( "b" );
+		CompletableFuture<Memento<List<String>>> second = o.saveStateToMementoAsync( );
+
+		assertSame( first, second );
+
+		executor.runAll( );
+		assertEquals( Arrays.asList( "a", "b" ), second.get( ).getState( ) );
+		assertEquals( 1, c.getMementoCount( ) );
+	}
+
+	@Test
+	public void testOrder( ) throws Exception
+	{
+		ExecutorService pool = Executors.newFixedThreadPool( 4 );
+		AsyncOriginator<List<String>> async = new AsyncOriginator<List<String>>( new ListCopier( ), pool, c );
+		async.setState( new ArrayList<String>( ) );
+
+		for( int i = 0; i < 100; i++ )
+		{
+			async.getStateForUpdate( ).add( String.valueOf( i ) );
+			async.saveStateToMementoAsync( );
+		}
+
+		async.awaitSnapshots( ).get( );
+		pool.shutdown( );
+
+		int previous = 0;
+		for( int i = 0; i < c.getMementoCount( ); i++ )
+		{
+			int size = c.getMemento( i ).getState( ).size( );
+			assertTrue( size > previous );
+			previous = size;
+		}
+		assertEquals( 100, previous );
+	}
+
+	@Test
+	public void testRejected( )
+	{
+		AsyncOriginator<List<String>> rejecting = new AsyncOriginator<List<String>>( new ListCopier( ), new Executor( )
+		{
+			@Override
+			public void execute( Runnable command )
+			{
+				throw new RejectedExecutionException( );
+			}
+		}, c );
+		rejecting.setState( new ArrayList<String>( ) );
+
+		assertTrue( rejecting.saveStateToMementoAsync( ).isCompletedExceptionally( ) );
+		assertTrue( rejecting.saveStateToMementoAsync( ).isCompletedExceptionally( ) );
+	}
+
+	/**
+	 * Runs the submitted tasks when asked to.
+	 */
+	private static class ManualExecutor implements Executor
+	{
+		private final List<Runnable> tasks = new ArrayList<Runnable>( );
+
+		@Override
+		public synchronized void execute( Runnable command )
+		{
+			tasks.add( command );
+		}
+
+		void runAll( )
+		{
+			while( true )
+			{
+				Runnable task;
+				synchronized ( this )
+				{
+					if( tasks.isEmpty( ) )
+						return;
+					task = tasks.remove( 0 );
+				}
+				task.run( );
+			}
+		}
+	}
+
+	private static class ListCopier implements StateCopier<List<String>>
+	{
+		@Override
+		public List<String> copy( List<String> state )
+		{
+			return new ArrayList<String>( state );
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.util.function.ToLongFunction;
+
+import org.junit.Test;
+
+public class BoundedCaretakerTest
+{
+	Originator<String> o = new Originator<String>( );
+
+	@Test
+	public void testUndoRedo( )
+	{
+		BoundedCaretaker<String> c = new BoundedCaretaker<String>( 10 );
+
+		save( c, "State A" );
+		save( c, "State B" );
+		save( c, "State C" );
+
+		assertTrue( c.canUndo( ) );
+		assertFalse( c.canRedo( ) );
+
+		o.getStateFromMemento( c.undo( ) );
+		assertEquals( "State B", o.getState( ) );
+
+		o.getStateFromMemento( c.undo( ) );
+		assertEquals( "State A", o.getState( ) );
+		assertFalse( c.canUndo( ) );
+
+		o.getStateFromMemento( c.redo( ) );
+		assertEquals( "State B", o.getState( ) );
+
+		// A new change discards the redo branch.
+		save( c, "State D" );
+		assertFalse( c.canRedo( ) );
+		assertEquals( 3, c.getMementoCount( ) );
+		assertEquals( "State D", c.getMemento( 2 ).getState( ) );
+		assertEquals( 0, c.getEvictedCount( ) );
+	}
+
+	@Test
+	public void testCountBound( )
+	{
+		BoundedCaretaker<String> c = new BoundedCaretaker<String>( 3 );
+
+		for( int i = 0; i < 10; i++ )
+			save( c, "State " + i );
+
+		assertEquals( 3, c.getMementoCount( ) );
+		assertEquals( 7, c.getEvictedCount( ) );
+		assertEquals( "State 7", c.getMemento( 0 ).getState( ) );
+		assertEquals( "State 9", c.getCurrentMemento( ).getState( ) );
+		assertEquals( "State 8", c.undo( ).getState( ) );
+	}
+
+	@Test
+	public void testMemoryBound( )
+	{
+		BoundedCaretaker<String> c = new BoundedCaretaker<String>( 100, 10, new ToLongFunction<String>( )
+		{
+			@Override
+			public long applyAsLong( String state )
+			{
+				return state.length( );
+			}
+		} );
+
+		save( c, "aaaa" );
+		save( c, "bbbb" );
+		assertEquals( 8, c.getEstimatedBytes( ) );
+
+		save( c, "cccc" );
+		assertEquals( 2, c.getMementoCount( ) );
+		assertEquals( 1, c.getEvictedCount( ) );
+		assertEquals( 4, c.getEvictedBytes( ) );
+		assertEquals( 8, c.getEstimatedBytes( ) );
+
+		// The newest memento is kept even if it exceeds the budget.
+		save( c, "dddddddddddd" );
+		assertEquals( 1, c.getMementoCount( ) );
+		assertEquals( 12, c.getEstimatedBytes( ) );
+	}
+
+	@Test
+	public void testClearAll( )
+	{
+		BoundedCaretaker<String> c = new BoundedCaretaker<String>( 2 );
+
+		save( c, "State A" );
+		save( c, "State B" );
+		save( c, "State C" );
+		c.clearAll( );
+
+		assertEquals( 0, c.getMementoCount( ) );
+		assertNull( c.getCurrentMemento( ) );
+
+		save( c, "State D" );
+		assertEquals( "State D", c.getMemento( 0 ).getState( ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testNothingToUndo( )
+	{
+		new BoundedCaretaker<String>( 2 ).undo( );
+	}
+
+	private void save( Caretaker<String> c, String state )
+	{
+		o.setState( state );
+		c.addMemento( o.saveStateToMemento( ) );
+	}
+}
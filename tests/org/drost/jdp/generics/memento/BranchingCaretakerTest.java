@@ -0,0 +1,144 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BranchingCaretakerTest
+{
+	Originator<String> o = new Originator<String>( );
+	BranchingCaretaker<String> c = new BranchingCaretaker<String>( new AppendStrategy( ), 3 );
+
+	@Test
+	public void testBranch( )
+	{
+		save( "a" );
+		save( "ab" );
+		save( "abc" );
+
+		assertEquals( "ab", c.undo( ).getState( ) );
+		save( "abx" );
+
+		// The redo branch has been kept.
+		assertEquals( 4, c.getNodeCount( ) );
+		assertEquals( 3, c.getMementoCount( ) );
+		assertEquals( "abx", c.getMemento( 2 ).getState( ) );
+
+		assertEquals( "abc", c.previousBranch( ).getState( ) );
+		assertEquals( "abx", c.nextBranch( ).getState( ) );
+
+		assertEquals( "ab", c.undo( ).getState( ) );
+		assertEquals( 2, c.getBranchCount( ) );
+		assertEquals( "abx", c.redo( ).getState( ) );
+
+		c.undo( );
+		assertEquals( "abc", c.redo( 0 ).getState( ) );
+		assertEquals( "abc", c.getMemento( 2 ).getState( ) );
+	}
+
+	@Test
+	public void testDeepBranches( )
+	{
+		for( int i = 0; i < 10; i++ )
+			save( "State " + i );
+
+		for( int i = 0; i < 5; i++ )
+			c.undo( );
+
+		for( int i = 0; i < 10; i++ )
+			save( "Other " + i );
+
+		assertEquals( 20, c.getNodeCount( ) );
+		assertEquals( 15, c.getMementoCount( ) );
+		assertEquals( "State 4", c.getMemento( 4 ).getState( ) );
+		assertEquals( "Other 9", c.getMemento( 14 ).getState( ) );
+
+		while( c.getCursor( ) > 4 )
+			c.undo( );
+
+		c.redo( 0 );
+		assertEquals( 10, c.getMementoCount( ) );
+
+		for( int i = 0; i < 10; i++ )
+			assertEquals( "State " + i, c.getMemento( i ).getState( ) );
+	}
+
+	@Test
+	public void testVersions( )
+	{
+		save( "a" );
+		save( "ab" );
+
+		assertEquals( 1, c.undo( ).getVersion( ) );
+		assertEquals( 2, c.redo( ).getVersion( ) );
+	}
+
+	@Test
+	public void testOverwriteMemento( )
+	{
+		save( "a" );
+		save( "ab" );
+		save( "abc" );
+		c.undo( );
+		c.undo( );
+
+		assertEquals( "ab", c.overwriteMemento( 1, new Memento<String>( "xy" ) ).getState( ) );
+		assertEquals( "a", c.getCurrentMemento( ).getState( ) );
+		assertEquals( "xy", c.redo( ).getState( ) );
+		assertEquals( "abc", c.redo( ).getState( ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testNothingToUndo( )
+	{
+		save( "a" );
+		c.undo( );
+	}
+
+	private void save( String state )
+	{
+		o.setState( state );
+		c.addMemento( o.saveStateToMemento( ) );
+	}
+
+	/**
+	 * Stores the length of the common prefix and the remaining suffix.
+	 */
+	private static class AppendStrategy implements DeltaStrategy<String, String[]>
+	{
+		@Override
+		public String[] diff( String from, String to )
+		{
+			int prefix = 0;
+			while( prefix < from.length( ) && prefix < to.length( ) && from.charAt( prefix ) == to.charAt( prefix ) )
+				prefix++;
+
+			return new String[] { String.valueOf( prefix ), to.substring( prefix ) };
+		}
+
+		@Override
+		public String patch( String base, String[] delta )
+		{
+			return base.substring( 0, Integer.parseInt( delta[0] ) ) + delta[1];
+		}
+	}
+}
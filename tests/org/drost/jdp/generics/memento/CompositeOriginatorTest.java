@@ -0,0 +1,241 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.drost.jdp.generics.composite.KeyedComposite;
+import org.drost.jdp.generics.composite.PersistentComposite;
+import org.drost.jdp.generics.flow.ChangePublisher;
+import org.junit.Test;
+
+public class CompositeOriginatorTest
+{
+	CompositeOriginator<String, Node, String> o = new CompositeOriginator<String, Node, String>( new NodeCopier( ) );
+
+	@Test
+	public void testStructuralSharing( )
+	{
+		o.setRoot( tree( 3, "root" ) );
+
+		Memento<PersistentComposite<String>> m1 = o.saveStateToMemento( );
+		assertEquals( 1 + 4 + 16 + 64, o.getCopyCount( ) );
+
+		// Nothing modified, the snapshot is reused.
+		Memento<PersistentComposite<String>> m2 = o.saveStateToMemento( );
+		assertEquals( 0, o.getCopyCount( ) );
+		assertSame( m1.getState( ), m2.getState( ) );
+
+		o.getRoot( ).findByPath( "/1/2/3" ).setText( "changed" );
+		Memento<PersistentComposite<String>> m3 = o.saveStateToMemento( );
+
+		// Only the path to the modified node is copied.
+		assertEquals( 4, o.getCopyCount( ) );
+		assertEquals( "3=changed", m3.getState( ).get( 1, 2, 3 ).getValue( ) );
+		assertEquals( "3=3", m1.getState( ).get( 1, 2, 3 ).getValue( ) );
+		assertSame( m1.getState( ).getChild( 0 ), m3.getState( ).getChild( 0 ) );
+		assertSame( m1.getState( ).get( 1, 2, 0 ), m3.getState( ).get( 1, 2, 0 ) );
+
+		o.getRoot( ).findByPath( "/2" ).removeChildByKey( "0" );
+		o.saveStateToMemento( );
+		assertEquals( 2, o.getCopyCount( ) );
+	}
+
+	@Test
+	public void testRestore( )
+	{
+		o.setRoot( tree( 2, "root" ) );
+		Memento<PersistentComposite<String>> m1 = o.saveStateToMemento( );
+
+		o.getRoot( ).findByPath( "/0/1" ).setText( "changed" );
+		o.getRoot( ).removeChildByKey( "3" );
+		o.saveStateToMemento( );
+
+		o.getStateFromMemento( m1 );
+
+		assertEquals( 4, o.getRoot( ).getChildCount( ) );
+		assertEquals( "1", o.getRoot( ).findByPath( "/0/1" ).text );
+
+		// The restored hierarchy shares all nodes with the snapshot.
+		assertSame( m1.getState( ), o.saveStateToMemento( ).getState( ) );
+		assertEquals( 0, o.getCopyCount( ) );
+
+		o.getRoot( ).findByPath( "/3/3" ).setText( "changed" );
+		assertSame( m1.getState( ).getChild( 0 ), o.saveStateToMemento( ).getState( ).getChild( 0 ) );
+		assertEquals( 3, o.getCopyCount( ) );
+	}
+
+	@Test
+	public void testDeepHierarchy( )
+	{
+		Node leaf = new Node( "n", "leaf" );
+		Node root = leaf;
+
+		// Built bottom-up, so that adding a child does not walk the chain.
+		for( int i = 0; i < 100000; i++ )
+		{
+			Node parent = new Node( "n", "" );
+			parent.addChild( root );
+			root = parent;
+		}
+
+		o.setRoot( root );
+		Memento<PersistentComposite<String>> m1 = o.saveStateToMemento( );
+		assertEquals( 100001, o.getCopyCount( ) );
+
+		leaf.setText( "changed" );
+		o.saveStateToMemento( );
+		o.getStateFromMemento( m1 );
+
+		Node node = o.getRoot( );
+
+		while( node.getChildCount( ) > 0 )
+			node = node.getChildren( ).get( 0 );
+
+		assertEquals( "leaf", node.text );
+		assertSame( m1.getState( ), o.saveStateToMemento( ).getState( ) );
+		assertEquals( 0, o.getCopyCount( ) );
+	}
+
+	@Test
+	public void testVersions( )
+	{
+		o.setRoot( tree( 1, "root" ) );
+		Memento<PersistentComposite<String>> m1 = o.saveStateToMemento( );
+		Memento<PersistentComposite<String>> m2 = o.saveStateToMemento( );
+
+		assertEquals( 1, m1.getVersion( ) );
+		assertEquals( 2, m2.getVersion( ) );
+	}
+
+	@Test
+	public void testChangePublisher( )
+	{
+		Executor direct = new Executor( )
+		{
+			@Override
+			public void execute( Runnable command )
+			{
+				command.run( );
+			}
+		};
+		ChangePublisher<StateChange<PersistentComposite<String>>> publisher = new ChangePublisher<StateChange<PersistentComposite<String>>>(
+				direct, 4, 4 );
+		final List<Node> roots = new ArrayList<Node>( );
+
+		publisher.subscribe( new Flow.Subscriber<List<StateChange<PersistentComposite<String>>>>( )
+		{
+			@Override
+			public void onSubscribe( Flow.Subscription subscription )
+			{
+				subscription.request( Long.MAX_VALUE );
+			}
+
+			@Override
+			public void onNext( List<StateChange<PersistentComposite<String>>> batch )
+			{
+				roots.add( o.getRoot( ) );
+			}
+
+			@Override
+			public void onError( Throwable throwable )
+			{
+				fail( throwable.toString( ) );
+			}
+
+			@Override
+			public void onComplete( )
+			{
+			}
+		} );
+
+		o.setChangePublisher( publisher );
+		o.setRoot( tree( 1, "root" ) );
+		Memento<PersistentComposite<String>> m = o.saveStateToMemento( );
+
+		// Taking a snapshot changes nothing.
+		assertTrue( roots.isEmpty( ) );
+
+		Node previous = o.getRoot( );
+		o.getStateFromMemento( m );
+
+		// Subscribers observe the rebuilt hierarchy.
+		assertEquals( 1, roots.size( ) );
+		assertNotSame( previous, roots.get( 0 ) );
+		assertSame( o.getRoot( ), roots.get( 0 ) );
+	}
+
+	private static Node tree( int depth, String key )
+	{
+		Node node = new Node( key, key );
+
+		if( depth > 0 )
+			for( int i = 0; i < 4; i++ )
+				node.addChild( tree( depth - 1, String.valueOf( i ) ) );
+
+		return node;
+	}
+
+	private static class NodeCopier implements NodeSnapshotter<Node, String>
+	{
+		@Override
+		public String capture( Node node )
+		{
+			return node.getKey( ) + "=" + node.text;
+		}
+
+		@Override
+		public Node restore( String value )
+		{
+			int separator = value.indexOf( '=' );
+			return new Node( value.substring( 0, separator ), value.substring( separator + 1 ) );
+		}
+	}
+
+	private static class Node extends KeyedComposite<String, Node>
+	{
+		private final String name;
+
+		private String text;
+
+		public Node( String name, String text )
+		{
+			this.name = name;
+			this.text = text;
+		}
+
+		@Override
+		public String getKey( )
+		{
+			return name;
+		}
+
+		public void setText( String text )
+		{
+			this.text = text;
+			contentChanged( );
+		}
+	}
+}
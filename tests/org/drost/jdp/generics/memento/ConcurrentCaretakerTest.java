@@ -0,0 +1,105 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class ConcurrentCaretakerTest
+{
+	ConcurrentCaretaker<String> c = new ConcurrentCaretaker<String>( );
+
+	@Test
+	public void testAppend( )
+	{
+		assertEquals( 0, c.append( new Memento<String>( "State A" ) ) );
+		assertEquals( 1, c.append( new Memento<String>( "State B" ) ) );
+
+		assertEquals( 2, c.getMementoCount( ) );
+		assertEquals( "State B", c.getMemento( 1 ).getState( ) );
+		assertEquals( "State A", c.overwriteMemento( 0, new Memento<String>( "Other" ) ).getState( ) );
+		assertEquals( "Other", c.getMemento( 0 ).getState( ) );
+	}
+
+	@Test( expected = IndexOutOfBoundsException.class )
+	public void testUncommittedVersion( )
+	{
+		c.append( new Memento<String>( "State A" ) );
+		c.getMemento( 1 );
+	}
+
+	@Test
+	public void testConcurrentProducers( ) throws Exception
+	{
+		final int threads = 8, perThread = 20000;
+		ExecutorService executor = Executors.newFixedThreadPool( threads );
+		List<Future<?>> futures = new ArrayList<Future<?>>( );
+
+		for( int t = 0; t < threads; t++ )
+		{
+			final int id = t;
+			futures.add( executor.submit( new Callable<Void>( )
+			{
+				@Override
+				public Void call( )
+				{
+					for( int i = 0; i < perThread; i++ )
+					{
+						int version = c.append( new Memento<String>( id + ":" + i ) );
+						assertEquals( id + ":" + i, c.getMemento( version ).getState( ) );
+					}
+					return null;
+				}
+			} ) );
+		}
+
+		for( Future<?> future : futures )
+			future.get( );
+		executor.shutdown( );
+
+		assertEquals( threads * perThread, c.getMementoCount( ) );
+
+		Set<String> states = new HashSet<String>( );
+		for( int i = 0; i < c.getMementoCount( ); i++ )
+			states.add( c.getMemento( i ).getState( ) );
+
+		assertEquals( threads * perThread, states.size( ) );
+	}
+
+	@Test
+	public void testClearAll( )
+	{
+		c.append( new Memento<String>( "State A" ) );
+		c.clearAll( );
+
+		assertEquals( 0, c.getMementoCount( ) );
+		assertEquals( 0, c.append( new Memento<String>( "State B" ) ) );
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DeltaCaretakerTest
+{
+	Originator<String> o = new Originator<String>( );
+	DeltaCaretaker<String> c = new DeltaCaretaker<String>( new AppendStrategy( ), 3 );
+
+	@Test
+	public void testRebuild( )
+	{
+		for( int i = 0; i < 10; i++ )
+			save( "State " + i );
+
+		assertEquals( 10, c.getMementoCount( ) );
+
+		for( int i = 0; i < 10; i++ )
+			assertEquals( "State " + i, c.getMemento( i ).getState( ) );
+
+		o.getStateFromMemento( c.getMemento( 4 ) );
+		assertEquals( "State 4", o.getState( ) );
+	}
+
+	@Test
+	public void testVersions( )
+	{
+		for( int i = 0; i < 5; i++ )
+			save( "State " + i );
+
+		assertEquals( 3, c.getMemento( 2 ).getVersion( ) );
+		assertEquals( 5, c.getMemento( 4 ).getVersion( ) );
+
+		Memento<String> replaced = c.overwriteMemento( 3, new Memento<String>( "Other", 42, 1234 ) );
+		assertEquals( 4, replaced.getVersion( ) );
+		assertEquals( 42, c.getMemento( 3 ).getVersion( ) );
+		assertEquals( 1234, c.getMemento( 3 ).getTimestamp( ) );
+	}
+
+	@Test
+	public void testOverwriteMemento( )
+	{
+		for( int i = 0; i < 6; i++ )
+			save( "State " + i );
+
+		assertEquals( "State 4", c.overwriteMemento( 4, new Memento<String>( "Other" ) ).getState( ) );
+
+		assertEquals( "State 3", c.getMemento( 3 ).getState( ) );
+		assertEquals( "Other", c.getMemento( 4 ).getState( ) );
+		assertEquals( "State 5", c.getMemento( 5 ).getState( ) );
+
+		c.overwriteMemento( 5, new Memento<String>( "Last" ) );
+		save( "Next" );
+		assertEquals( "Last", c.getMemento( 5 ).getState( ) );
+		assertEquals( "Next", c.getMemento( 6 ).getState( ) );
+	}
+
+	@Test
+	public void testClearAll( )
+	{
+		save( "State A" );
+		c.clearAll( );
+		save( "State B" );
+
+		assertEquals( 1, c.getMementoCount( ) );
+		assertEquals( "State B", c.getMemento( 0 ).getState( ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testAddNull( )
+	{
+		c.addMemento( null );
+	}
+
+	@Test
+	public void testPrivateCopies( )
+	{
+		DeltaCaretaker<StringBuilder> copying = new DeltaCaretaker<StringBuilder>( new BuilderStrategy( ), 2,
+				new StateCopier<StringBuilder>( )
+				{
+					@Override
+					public StringBuilder copy( StringBuilder state )
+					{
+						return new StringBuilder( state );
+					}
+				} );
+
+		StringBuilder state = new StringBuilder( "A" );
+		copying.addMemento( new Memento<StringBuilder>( state ) );
+		state.append( "B" );
+		copying.addMemento( new Memento<StringBuilder>( state ) );
+
+		// Neither the caller's state nor a returned state is the base of the next delta.
+		state.append( "C" );
+		copying.getMemento( 1 ).getState( ).append( "X" );
+		copying.addMemento( new Memento<StringBuilder>( state ) );
+
+		assertEquals( "A", copying.getMemento( 0 ).getState( ).toString( ) );
+		assertEquals( "AB", copying.getMemento( 1 ).getState( ).toString( ) );
+		assertEquals( "ABC", copying.getMemento( 2 ).getState( ).toString( ) );
+	}
+
+	private void save( String state )
+	{
+		o.setState( state );
+		c.addMemento( o.saveStateToMemento( ) );
+	}
+
+	/**
+	 * Stores the length of the common prefix and the remaining suffix.
+	 */
+	private static class AppendStrategy implements DeltaStrategy<String, String[]>
+	{
+		@Override
+		public String[] diff( String from, String to )
+		{
+			int prefix = 0;
+			while( prefix < from.length( ) && prefix < to.length( ) && from.charAt( prefix ) == to.charAt( prefix ) )
+				prefix++;
+
+			return new String[] { String.valueOf( prefix ), to.substring( prefix ) };
+		}
+
+		@Override
+		public String patch( String base, String[] delta )
+		{
+			return base.substring( 0, Integer.parseInt( delta[0] ) ) + delta[1];
+		}
+	}
+
+	private static class BuilderStrategy implements DeltaStrategy<StringBuilder, String[]>
+	{
+		private final AppendStrategy strings = new AppendStrategy( );
+
+		@Override
+		public String[] diff( StringBuilder from, StringBuilder to )
+		{
+			return strings.diff( from.toString( ), to.toString( ) );
+		}
+
+		@Override
+		public StringBuilder patch( StringBuilder base, String[] delta )
+		{
+			return new StringBuilder( strings.patch( base.toString( ), delta ) );
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IndexedCaretakerTest
+{
+	@Test
+	public void testOriginatorVersions( )
+	{
+		Originator<String> o = new Originator<String>( );
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		o.setState( "State A" );
+		c.addMemento( o.saveStateToMemento( ) );
+		o.setState( "State B" );
+		c.addMemento( o.saveStateToMemento( ) );
+
+		assertEquals( 2, o.getVersion( ) );
+		assertEquals( "State A", c.getMementoByVersion( 1 ).getState( ) );
+		assertEquals( "State B", c.getMementoByVersion( 2 ).getState( ) );
+		assertNull( c.getMementoByVersion( 3 ) );
+	}
+
+	@Test
+	public void testGetMementoAt( )
+	{
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		c.addMemento( memento( "State A", 1, 100 ) );
+		c.addMemento( memento( "State B", 2, 200 ) );
+		c.addMemento( memento( "State C", 3, 200 ) );
+		c.addMemento( memento( "State D", 4, 300 ) );
+
+		assertNull( c.getMementoAt( 99 ) );
+		assertEquals( "State A", c.getMementoAt( 100 ).getState( ) );
+		assertEquals( "State A", c.getMementoAt( 199 ).getState( ) );
+		assertEquals( "State C", c.getMementoAt( 200 ).getState( ) );
+		assertEquals( "State D", c.getMementoAt( Long.MAX_VALUE ).getState( ) );
+	}
+
+	@Test
+	public void testEviction( )
+	{
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( 50 );
+
+		for( int i = 1; i <= 1000; i++ )
+			c.addMemento( memento( "State " + i, i, i * 10 ) );
+
+		assertEquals( 50, c.getMementoCount( ) );
+		assertEquals( 950, c.getEvictedCount( ) );
+		assertNull( c.getMementoByVersion( 950 ) );
+		assertEquals( "State 951", c.getMementoByVersion( 951 ).getState( ) );
+		assertEquals( 49, c.indexOfVersion( 1000 ) );
+		assertNull( c.getMementoAt( 9505 ) );
+
+		assertEquals( 10, c.evictBefore( 9615 ) );
+		assertEquals( "State 961", c.getMemento( 0 ).getState( ) );
+		assertEquals( "State 961", c.getMementoAt( 9615 ).getState( ) );
+	}
+
+	@Test
+	public void testMissingVersions( )
+	{
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		for( int i = 0; i < 100; i += 3 )
+			c.addMemento( memento( "State " + i, i, i ) );
+
+		assertEquals( "State 30", c.getMementoByVersion( 30 ).getState( ) );
+		assertNull( c.getMementoByVersion( 31 ) );
+	}
+
+	@Test
+	public void testOverwriteMemento( )
+	{
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		c.addMemento( memento( "State A", 1, 100 ) );
+		c.addMemento( memento( "State B", 3, 300 ) );
+		c.overwriteMemento( 1, memento( "State C", 2, 200 ) );
+
+		assertEquals( "State C", c.getMementoByVersion( 2 ).getState( ) );
+		assertNull( c.getMementoByVersion( 3 ) );
+	}
+
+	@Test
+	public void testClockSetBack( )
+	{
+		final long[] clock = { 1000 };
+		Originator<String> o = new Originator<String>( )
+		{
+			@Override
+			long currentTimeMillis( )
+			{
+				return clock[0];
+			}
+		};
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		o.setState( "State A" );
+		c.addMemento( o.saveStateToMemento( ) );
+
+		// The originator never issues a timestamp older than its last one.
+		clock[0] = 500;
+		o.setState( "State B" );
+		Memento<String> m = o.saveStateToMemento( );
+		c.addMemento( m );
+		assertEquals( 1000, m.getTimestamp( ) );
+
+		// A regressing memento of another source is indexed at its predecessor's time.
+		c.addMemento( memento( "State C", 3, 700 ) );
+		c.addMemento( memento( "State D", 4, 1200 ) );
+
+		assertNull( c.getMementoAt( 999 ) );
+		assertEquals( "State C", c.getMementoAt( 1000 ).getState( ) );
+		assertEquals( "State D", c.getMementoAt( 1200 ).getState( ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testOutOfOrder( )
+	{
+		IndexedCaretaker<String> c = new IndexedCaretaker<String>( );
+
+		c.addMemento( memento( "State A", 2, 100 ) );
+		c.addMemento( memento( "State B", 1, 200 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testUnversioned( )
+	{
+		new IndexedCaretaker<String>( ).addMemento( new Memento<String>( "State A" ) );
+	}
+
+	private static Memento<String> memento( String state, long version, long timestamp )
+	{
+		return new Memento<String>( state, version, timestamp );
+	}
+}
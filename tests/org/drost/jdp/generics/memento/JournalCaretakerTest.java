@@ -0,0 +1,192 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalCaretakerTest
+{
+	Path directory;
+
+	Originator<String> o = new Originator<String>( );
+
+	@Before
+	public void setUp( ) throws IOException
+	{
+		directory = Files.createTempDirectory( "journal" );
+	}
+
+	@After
+	public void tearDown( ) throws IOException
+	{
+		DirectoryStream<Path> files = Files.newDirectoryStream( directory );
+		for( Path file : files )
+			Files.delete( file );
+		files.close( );
+
+		Files.delete( directory );
+	}
+
+	@Test
+	public void testReopen( ) throws IOException
+	{
+		JournalCaretaker<String> c = open( );
+		for( int i = 0; i < 100; i++ )
+			save( c, "State " + i );
+		c.overwriteMemento( 3, new Memento<String>( "Other" ) );
+
+		assertEquals( "State 42", c.getMemento( 42 ).getState( ) );
+		c.close( );
+
+		c = open( );
+		assertEquals( 100, c.getMementoCount( ) );
+		assertEquals( "Other", c.getMemento( 3 ).getState( ) );
+		assertEquals( "State 99", c.getMemento( 99 ).getState( ) );
+
+		save( c, "State 100" );
+		assertEquals( "State 100", c.getMemento( 100 ).getState( ) );
+		c.close( );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testAddNull( ) throws IOException
+	{
+		JournalCaretaker<String> c = open( );
+
+		try
+		{
+			c.addMemento( null );
+		}
+		finally
+		{
+			c.close( );
+		}
+	}
+
+	@Test
+	public void testVersions( ) throws IOException
+	{
+		JournalCaretaker<String> c = open( );
+		for( int i = 0; i < 10; i++ )
+			save( c, "State " + i );
+		c.overwriteMemento( 3, new Memento<String>( "Other", 42, 1234 ) );
+		c.close( );
+
+		c = open( );
+		assertEquals( 6, c.getMemento( 5 ).getVersion( ) );
+		assertEquals( 42, c.getMemento( 3 ).getVersion( ) );
+		assertEquals( 1234, c.getMemento( 3 ).getTimestamp( ) );
+
+		// Unversioned mementos are rejected by an IndexedCaretaker.
+		IndexedCaretaker<String> indexed = new IndexedCaretaker<String>( 100 );
+		for( int i = 4; i < 10; i++ )
+			indexed.addMemento( c.getMemento( i ) );
+
+		assertEquals( 6, indexed.getMementoCount( ) );
+		c.close( );
+	}
+
+	@Test
+	public void testRecoverAfterCheckpoint( ) throws IOException
+	{
+		JournalCaretaker<String> c = open( );
+		for( int i = 0; i < 25; i++ )
+			save( c, "State " + i );
+		c.overwriteMemento( 1, new Memento<String>( "Other" ) );
+		c.sync( );
+
+		// Simulate a crash: the last checkpoint was written after 20 mementos.
+		JournalCaretaker<String> recovered = open( );
+		assertEquals( 25, recovered.getMementoCount( ) );
+		assertEquals( "Other", recovered.getMemento( 1 ).getState( ) );
+		assertEquals( "State 24", recovered.getMemento( 24 ).getState( ) );
+
+		recovered.close( );
+		c.close( );
+	}
+
+	@Test
+	public void testTornRecord( ) throws IOException
+	{
+		JournalCaretaker<String> c = open( );
+		for( int i = 0; i < 5; i++ )
+			save( c, "State " + i );
+		c.sync( );
+
+		// Cut the last record in half.
+		Path segment = directory.resolve( "journal-00000000.log" );
+		RandomAccessFile raf = new RandomAccessFile( segment.toFile( ), "rw" );
+		raf.setLength( raf.length( ) - 5 );
+		raf.close( );
+
+		JournalCaretaker<String> recovered = open( );
+		assertEquals( 4, recovered.getMementoCount( ) );
+		assertEquals( "State 3", recovered.getMemento( 3 ).getState( ) );
+
+		save( recovered, "State 4" );
+		assertEquals( "State 4", recovered.getMemento( 4 ).getState( ) );
+
+		recovered.close( );
+		c.close( );
+	}
+
+	@Test
+	public void testSegments( ) throws IOException
+	{
+		JournalCaretaker<String> c = new JournalCaretaker<String>( directory, new SerializableStateSerializer<String>( ),
+				4, 1000, 256 );
+		for( int i = 0; i < 50; i++ )
+			save( c, "State " + i );
+
+		assertTrue( Files.exists( directory.resolve( "journal-00000002.log" ) ) );
+		assertEquals( "State 0", c.getMemento( 0 ).getState( ) );
+		c.close( );
+
+		c = open( );
+		assertEquals( 50, c.getMementoCount( ) );
+		assertEquals( "State 49", c.getMemento( 49 ).getState( ) );
+
+		c.clearAll( );
+		assertEquals( 0, c.getMementoCount( ) );
+		assertFalse( Files.exists( directory.resolve( "journal-00000001.log" ) ) );
+		c.close( );
+	}
+
+	private JournalCaretaker<String> open( ) throws IOException
+	{
+		return new JournalCaretaker<String>( directory, new SerializableStateSerializer<String>( ), 4, 10, 1 << 20 );
+	}
+
+	private void save( Caretaker<String> c, String state )
+	{
+		o.setState( state );
+		c.addMemento( o.saveStateToMemento( ) );
+	}
+}
@@ -19,6 +19,19 @@
  */
 package org.drost.jdp.generics.memento;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.ToLongFunction;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.drost.jdp.generics.flow.ChangePublisher;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -89,4 +102,100 @@ public class MementoTest
 		
 		assertEquals( o.getState( ), m1.getState( ));
 	}
+	
+	@Test
+	public void testSnapshotEvent() throws Exception
+	{
+		o.setState( stateA );
+		o.setSizeEstimator( new ToLongFunction<String>( )
+		{
+			@Override
+			public long applyAsLong( String state )
+			{
+				return state.length( ) * 2;
+			}
+		} );
+		
+		Recording recording = new Recording( );
+		recording.enable( "org.drost.jdp.generics.MementoSnapshot" );
+		recording.start( );
+		
+		o.saveStateToMemento( );
+		
+		recording.stop( );
+		Path file = Files.createTempFile( "snapshot", ".jfr" );
+		
+		try
+		{
+			recording.dump( file );
+			List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+			
+			assertEquals( 1, events.size( ) );
+			assertEquals( 14, events.get( 0 ).getLong( "estimatedSize" ) );
+			assertEquals( "reference", events.get( 0 ).getString( "mode" ) );
+		}
+		finally
+		{
+			recording.close( );
+			Files.delete( file );
+		}
+	}
+	
+	@Test
+	public void testChangePublisher()
+	{
+		Executor direct = new Executor( )
+		{
+			@Override
+			public void execute( Runnable command )
+			{
+				command.run( );
+			}
+		};
+		ChangePublisher<StateChange<String>> publisher = new ChangePublisher<StateChange<String>>( direct, 4, 4 );
+		final List<String> states = new ArrayList<String>( );
+		final Flow.Subscription[] subscription = new Flow.Subscription[1];
+		
+		publisher.subscribe( new Flow.Subscriber<List<StateChange<String>>>( )
+		{
+			@Override
+			public void onSubscribe( Flow.Subscription s )
+			{
+				subscription[0] = s;
+			}
+
+			@Override
+			public void onNext( List<StateChange<String>> batch )
+			{
+				for( StateChange<String> change : batch )
+					states.add( change.getState( ) );
+			}
+
+			@Override
+			public void onError( Throwable throwable )
+			{
+				fail( throwable.toString( ) );
+			}
+
+			@Override
+			public void onComplete( )
+			{
+			}
+		} );
+		
+		o.setChangePublisher( publisher );
+		o.setState( stateA );
+		Memento<String> m = o.saveStateToMemento( );
+		o.setState( stateB );
+		o.setState( stateC );
+		
+		// Changes of the same originator coalesce until they are requested.
+		subscription[0].request( 1 );
+		assertEquals( 1, states.size( ) );
+		assertEquals( stateC, states.get( 0 ) );
+		
+		subscription[0].request( 1 );
+		o.getStateFromMemento( m );
+		assertEquals( stateA, states.get( 1 ) );
+	}
 }
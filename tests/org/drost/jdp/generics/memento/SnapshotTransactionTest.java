@@ -0,0 +1,156 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SnapshotTransactionTest
+{
+	@Test
+	public void testRollback( )
+	{
+		Originator<List<String>> a = originator( "a" );
+		Originator<List<String>> b = originator( "b" );
+
+		SnapshotTransaction tx = new SnapshotTransaction( );
+		tx.getStateForUpdate( a ).add( "x" );
+		tx.getStateForUpdate( a ).add( "y" );
+		tx.getStateForUpdate( b ).clear( );
+
+		assertEquals( 2, tx.getSnapshotCount( ) );
+		tx.rollback( );
+
+		assertEquals( list( "a" ), a.getState( ) );
+		assertEquals( list( "b" ), b.getState( ) );
+		assertFalse( tx.isActive( ) );
+	}
+
+	@Test
+	public void testCommit( )
+	{
+		Originator<List<String>> a = originator( "a" );
+
+		SnapshotTransaction tx = new SnapshotTransaction( );
+		tx.getStateForUpdate( a ).add( "x" );
+		tx.commit( );
+
+		assertEquals( list( "a", "x" ), a.getState( ) );
+		assertEquals( 0, tx.getSnapshotCount( ) );
+	}
+
+	@Test
+	public void testLazySnapshots( )
+	{
+		Originator<List<String>> a = originator( "a" );
+		Originator<List<String>> b = originator( "b" );
+		List<String> state = b.getState( );
+
+		SnapshotTransaction tx = new SnapshotTransaction( );
+		tx.getStateForUpdate( a ).add( "x" );
+
+		assertTrue( tx.contains( a ) );
+		assertFalse( tx.contains( b ) );
+
+		// An originator that is only read is neither snapshot nor copied.
+		assertEquals( list( "b" ), b.getState( ) );
+		tx.commit( );
+		assertSame( state, b.getStateForUpdate( ) );
+	}
+
+	@Test
+	public void testCloseRollsBack( )
+	{
+		Originator<String> a = new Originator<String>( );
+		a.setState( "State A" );
+
+		try( SnapshotTransaction tx = new SnapshotTransaction( ) )
+		{
+			tx.setState( a, "State B" );
+			throw new IllegalStateException( "Failure" );
+		}
+		catch ( IllegalStateException e )
+		{
+			assertEquals( "Failure", e.getMessage( ) );
+		}
+
+		assertEquals( "State A", a.getState( ) );
+	}
+
+	@Test
+	public void testManyOriginators( )
+	{
+		List<Originator<String>> originators = new ArrayList<Originator<String>>( );
+		SnapshotTransaction tx = new SnapshotTransaction( );
+
+		for( int i = 0; i < 100; i++ )
+		{
+			Originator<String> o = new Originator<String>( );
+			o.setState( "State " + i );
+			originators.add( o );
+
+			tx.setState( o, "Other" );
+			assertFalse( tx.snapshot( o ) );
+		}
+
+		assertEquals( 100, tx.getSnapshotCount( ) );
+		tx.close( );
+
+		for( int i = 0; i < 100; i++ )
+			assertEquals( "State " + i, originators.get( i ).getState( ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testFinished( )
+	{
+		SnapshotTransaction tx = new SnapshotTransaction( );
+		tx.commit( );
+		tx.snapshot( originator( "a" ) );
+	}
+
+	private static Originator<List<String>> originator( String value )
+	{
+		Originator<List<String>> o = new Originator<List<String>>( new StateCopier<List<String>>( )
+		{
+			@Override
+			public List<String> copy( List<String> state )
+			{
+				return new ArrayList<String>( state );
+			}
+		}, true );
+
+		o.setState( list( value ) );
+		return o;
+	}
+
+	private static List<String> list( String... values )
+	{
+		List<String> list = new ArrayList<String>( );
+
+		for( String value : values )
+			list.add( value );
+
+		return list;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.memento;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StateCopierTest
+{
+	@Test
+	public void testCloning( )
+	{
+		Document d = new Document( "a" );
+		Document copy = StateCopiers.<Document> cloning( ).copy( d );
+
+		assertNotSame( d, copy );
+		assertEquals( d.lines, copy.lines );
+	}
+
+	@Test
+	public void testCopyConstructor( )
+	{
+		Document d = new Document( "a" );
+		Document copy = StateCopiers.<Document> copyConstructor( ).copy( d );
+
+		assertNotSame( d.lines, copy.lines );
+		assertEquals( d.lines, copy.lines );
+	}
+
+	@Test
+	public void testExactCopyConstructor( )
+	{
+		Overloaded copy = StateCopiers.<Overloaded> copyConstructor( ).copy( new Overloaded( ) );
+		assertEquals( "Overloaded", copy.source );
+
+		// Without an exact one, the most specific one is chosen.
+		Derived derived = StateCopiers.<Derived> copyConstructor( ).copy( new Derived( ) );
+		assertEquals( "Overloaded", ( (Overloaded) derived ).source );
+	}
+
+	@Test
+	public void testSerializing( )
+	{
+		Document d = new Document( "a" );
+		Document copy = StateCopiers.<Document> serializing( ).copy( d );
+
+		assertNotSame( d.lines, copy.lines );
+		assertEquals( d.lines, copy.lines );
+	}
+
+	@Test
+	public void testFieldByField( )
+	{
+		Document d = new Document( "a" );
+		d.title = "Title";
+		Document copy = StateCopiers.<Document> fieldByField( ).copy( d );
+
+		assertNotSame( d, copy );
+		assertEquals( "Title", copy.title );
+		assertSame( d.lines, copy.lines );
+
+		// Hidden fields of super classes are copied as well.
+		Derived derived = new Derived( );
+		derived.source = "derived";
+		( (Overloaded) derived ).source = "base";
+		Derived derivedCopy = StateCopiers.<Derived> fieldByField( ).copy( derived );
+
+		assertEquals( "derived", derivedCopy.source );
+		assertEquals( "base", ( (Overloaded) derivedCopy ).source );
+	}
+
+	@Test
+	public void testEagerCopy( )
+	{
+		Originator<Document> o = new Originator<Document>( StateCopiers.<Document> copyConstructor( ), false );
+		o.setState( new Document( "a" ) );
+
+		Memento<Document> m = o.saveStateToMemento( );
+		o.getState( ).lines.add( "b" );
+
+		assertEquals( Arrays.asList( "a" ), m.getState( ).lines );
+
+		o.getStateFromMemento( m );
+		o.getState( ).lines.add( "c" );
+
+		assertEquals( Arrays.asList( "a" ), m.getState( ).lines );
+	}
+
+	@Test
+	public void testCopyOnWrite( )
+	{
+		Originator<Document> o = new Originator<Document>( StateCopiers.<Document> copyConstructor( ), true );
+		Document d = new Document( "a" );
+		o.setState( d );
+
+		Memento<Document> m1 = o.saveStateToMemento( );
+		Memento<Document> m2 = o.saveStateToMemento( );
+
+		// No modification, no copy.
+		assertSame( d, m1.getState( ) );
+		assertSame( d, m2.getState( ) );
+
+		o.getStateForUpdate( ).lines.add( "b" );
+		assertNotSame( d, o.getState( ) );
+		assertEquals( Arrays.asList( "a" ), m1.getState( ).lines );
+
+		// The copy is not shared anymore, so it is modified in place.
+		Document updated = o.getState( );
+		o.getStateForUpdate( ).lines.add( "c" );
+		assertSame( updated, o.getState( ) );
+
+		o.getStateFromMemento( m1 );
+		o.getStateForUpdate( ).lines.add( "d" );
+		assertEquals( Arrays.asList( "a" ), m1.getState( ).lines );
+	}
+
+	/**
+	 * A mutable state supporting all kinds of copies.
+	 */
+	private static class Document implements Cloneable, Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		String title;
+
+		List<String> lines = new ArrayList<String>( );
+
+		Document( )
+		{
+		}
+
+		Document( String line )
+		{
+			lines.add( line );
+		}
+
+		Document( Document other )
+		{
+			title = other.title;
+			lines = new ArrayList<String>( other.lines );
+		}
+
+		@Override
+		public Document clone( )
+		{
+			try
+			{
+				return (Document) super.clone( );
+			}
+			catch ( CloneNotSupportedException e )
+			{
+				throw new AssertionError( e );
+			}
+		}
+	}
+
+	/**
+	 * A class with several constructors consuming a single instance.
+	 */
+	private static class Overloaded
+	{
+		String source;
+
+		Overloaded( )
+		{
+		}
+
+		Overloaded( Object other )
+		{
+			source = "Object";
+		}
+
+		Overloaded( Comparable<?> other )
+		{
+			source = "Comparable";
+		}
+
+		Overloaded( Overloaded other )
+		{
+			source = "Overloaded";
+		}
+	}
+
+	private static class Derived extends Overloaded
+	{
+		String source;
+
+		Derived( )
+		{
+		}
+
+		Derived( Object other )
+		{
+			super( other );
+		}
+
+		Derived( Overloaded other )
+		{
+			super( other );
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.drost.jdp.generics.builder.Builder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessorProcessorTest
+{
+	private static final String SOURCE = "package sample;\n"
+			+ "import org.drost.jdp.generics.reflect.GenerateAccessor;\n"
+			+ "@GenerateAccessor\n"
+			+ "public class Person extends Entity {\n"
+			+ "  public int age;\n"
+			+ "  public Object tag;\n"
+			+ "  public int[] scores;\n"
+			+ "  public String[][] names;\n"
+			+ "  public void setAge( int age ) { this.age = age; }\n"
+			+ "  public void setTag( Object tag ) { this.tag = \"object\"; }\n"
+			+ "  public void setTag( String tag ) { this.tag = tag; }\n"
+			+ "  public void setScores( int[] scores ) { this.scores = scores; }\n"
+			+ "  public void setNames( String[][] names ) { this.names = names; }\n"
+			+ "  @GenerateAccessor\n"
+			+ "  public static class Service { private Service( ) { } }\n"
+			+ "  @GenerateAccessor\n"
+			+ "  public static class Label extends Holder<String> { }\n"
+			+ "}\n"
+			+ "class Holder<T> {\n"
+			+ "  public T value;\n"
+			+ "  public void setValue( T value ) { this.value = value; }\n"
+			+ "}\n"
+			+ "class Entity {\n"
+			+ "  public long id;\n"
+			+ "  public void setId( long id ) throws java.io.IOException { if( id < 0 ) throw new java.io.IOException( ); this.id = id; }\n"
+			+ "}\n";
+
+	private Path dir;
+
+	private URLClassLoader loader;
+
+	private DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>( );
+
+	@Before
+	public void setUp( ) throws IOException
+	{
+		dir = Files.createTempDirectory( "accessor" );
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler( );
+		JavaFileObject source = new SimpleJavaFileObject( URI.create( "string:///sample/Person.java" ), JavaFileObject.Kind.SOURCE )
+		{
+			@Override
+			public CharSequence getCharContent( boolean ignoreEncodingErrors )
+			{
+				return SOURCE;
+			}
+		};
+
+		// The generated accessors are compiled in the following round.
+		JavaCompiler.CompilationTask task = compiler.getTask( null, null, diagnostics,
+				Arrays.asList( "-Xlint:cast", "-d", dir.toString( ), "-s", dir.toString( ), "-classpath",
+						System.getProperty( "java.class.path" ) ),
+				null, Collections.singletonList( source ) );
+		task.setProcessors( Collections.singletonList( new AccessorProcessor( ) ) );
+		assertTrue( task.call( ) );
+
+		loader = new URLClassLoader( new URL[] { dir.toUri( ).toURL( ) }, getClass( ).getClassLoader( ) );
+	}
+
+	@After
+	public void tearDown( ) throws IOException
+	{
+		loader.close( );
+		delete( dir.toFile( ) );
+	}
+
+	@Test
+	public void testAccessor( ) throws Exception
+	{
+		Class<?> type = loader.loadClass( "sample.Person" );
+		ClassMetadata<?> metadata = ClassMetadata.of( type );
+
+		assertNotNull( metadata.getAccessor( ) );
+		assertTrue( metadata.hasDefaultConstructor( ) );
+
+		Object p = new Builder<Object>( cast( type ) ).set( "age", 35 ).set( "tag", "text" ).set( "id", 7L ).build( );
+
+		assertEquals( 35, type.getField( "age" ).get( p ) );
+		assertEquals( "text", type.getField( "tag" ).get( p ) );
+		assertEquals( 7L, metadata.getField( "id" ).get( p ) );
+	}
+
+	@Test
+	public void testArraySetters( ) throws Exception
+	{
+		Class<?> type = loader.loadClass( "sample.Person" );
+		int[] scores = { 1, 2, 3 };
+		String[][] names = { { "a" } };
+
+		Object p = new Builder<Object>( cast( type ) ).set( "scores", scores ).set( "names", (Object) names ).build( );
+
+		assertSame( scores, type.getField( "scores" ).get( p ) );
+		assertSame( names, type.getField( "names" ).get( p ) );
+		assertFalse( ClassMetadata.of( cast( type ) ).getAccessor( ).set( p, "setScores", new Integer[] { 1 } ) );
+	}
+
+	@Test
+	public void testGenericSuperClass( ) throws Exception
+	{
+		Class<?> type = loader.loadClass( "sample.Person$Label" );
+		ClassMetadata<Object> metadata = ClassMetadata.of( cast( type ) );
+		Accessor<Object> accessor = metadata.getAccessor( );
+		Object label = accessor.newInstance( );
+
+		// The inherited setter takes the bound type argument.
+		assertTrue( accessor.set( label, "setValue", "text" ) );
+		assertFalse( accessor.set( label, "setValue", 5 ) );
+		assertEquals( "text", metadata.getField( "value" ).get( label ) );
+	}
+
+	@Test
+	public void testNoRedundantCasts( )
+	{
+		for( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics( ) )
+			assertFalse( diagnostic.toString( ), "compiler.warn.redundant.cast".equals( diagnostic.getCode( ) ) );
+	}
+
+	@Test
+	public void testPrivateConstructor( ) throws Exception
+	{
+		Class<?> type = loader.loadClass( "sample.Person$Service" );
+		ClassMetadata<?> metadata = ClassMetadata.of( type );
+
+		// The accessor cannot call the constructor, so reflection is used.
+		assertFalse( metadata.getAccessor( ).isInstantiable( ) );
+		assertNotNull( metadata.newInstance( ) );
+	}
+
+	@Test
+	public void testReflectConfig( ) throws IOException
+	{
+		String config = new String( Files.readAllBytes( dir.resolve( AccessorProcessor.REFLECT_CONFIG ) ), StandardCharsets.UTF_8 );
+
+		assertTrue( config.contains( "\"name\" : \"sample.Person\"" ) );
+		assertTrue( config.contains( "\"name\" : \"sample.Entity\"" ) );
+		assertTrue( config.contains( "\"name\" : \"sample.Person$Service\"" ) );
+		assertTrue( config.contains( "\"name\" : \"sample.Person$$Accessor\"" ) );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static Class<Object> cast( Class<?> type )
+	{
+		return (Class<Object>) type;
+	}
+
+	private static void delete( File file )
+	{
+		File[] children = file.listFiles( );
+
+		if( children != null )
+			for( File child : children )
+				delete( child );
+
+		file.delete( );
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.reflect;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+public class ClassMetadataTest
+{
+	@Test
+	public void testCached( )
+	{
+		assertSame( ClassMetadata.of( Person.class ), ClassMetadata.of( Person.class ) );
+	}
+
+	@Test
+	public void testNewInstance( ) throws Exception
+	{
+		ClassMetadata<Person> metadata = ClassMetadata.of( Person.class );
+
+		assertTrue( metadata.hasDefaultConstructor( ) );
+		assertNotNull( metadata.newInstance( ) );
+		assertNotSame( metadata.newInstance( ), metadata.newInstance( ) );
+	}
+
+	@Test( expected = InstantiationException.class )
+	public void testNoDefaultConstructor( ) throws Exception
+	{
+		ClassMetadata<Named> metadata = ClassMetadata.of( Named.class );
+
+		assertFalse( metadata.hasDefaultConstructor( ) );
+		metadata.newInstance( );
+	}
+
+	@Test( expected = InvocationTargetException.class )
+	public void testFailingConstructor( ) throws Exception
+	{
+		ClassMetadata.of( Failing.class ).newInstance( );
+	}
+
+	@Test
+	public void testSetters( ) throws Exception
+	{
+		ClassMetadata<Person> metadata = ClassMetadata.of( Person.class );
+
+		assertEquals( 2, metadata.getSetters( "setAge" ).size( ) );
+		assertSame( metadata.getSetters( "setName" ), metadata.getPropertySetters( "name" ) );
+		assertTrue( metadata.getPropertyNames( ).contains( "age" ) );
+		assertTrue( metadata.getSetters( "setHeight" ).isEmpty( ) );
+
+		assertEquals( int.class, metadata.findSetter( "setAge", 35 ).getParameterTypes( )[0] );
+		assertEquals( String.class, metadata.findSetter( "setAge", "35" ).getParameterTypes( )[0] );
+		assertEquals( String.class, metadata.findSetter( "setAge", (Object) null ).getParameterTypes( )[0] );
+		assertNull( metadata.findSetter( "setAge", 1.5 ) );
+	}
+
+	@Test
+	public void testMostSpecificSetter( )
+	{
+		ClassMetadata<Person> metadata = ClassMetadata.of( Person.class );
+
+		assertEquals( 3, metadata.getSetters( "setTag" ).size( ) );
+		assertEquals( String.class, metadata.findSetter( "setTag", "text" ).getParameterTypes( )[0] );
+		assertEquals( String.class, metadata.findSetter( "setTag", (Object) null ).getParameterTypes( )[0] );
+		assertEquals( CharSequence.class, metadata.findSetter( "setTag", new StringBuilder( ) ).getParameterTypes( )[0] );
+		assertEquals( Object.class, metadata.findSetter( "setTag", 5 ).getParameterTypes( )[0] );
+	}
+
+	@Test
+	public void testFields( )
+	{
+		ClassMetadata<Person> metadata = ClassMetadata.of( Person.class );
+
+		assertNotNull( metadata.getField( "age" ) );
+		assertNotNull( metadata.getField( "id" ) );
+		assertNull( metadata.getField( "COUNT" ) );
+	}
+
+	private static class Entity
+	{
+		long id;
+	}
+
+	private static class Person extends Entity
+	{
+		static int COUNT;
+
+		int age;
+
+		String name;
+
+		private Person( )
+		{
+			COUNT++;
+		}
+
+		public void setAge( int age )
+		{
+			this.age = age;
+		}
+
+		public void setAge( String age )
+		{
+			this.age = Integer.parseInt( age );
+		}
+
+		public void setName( String name )
+		{
+			this.name = name;
+		}
+
+		public void setTag( Object tag )
+		{
+		}
+
+		public void setTag( CharSequence tag )
+		{
+		}
+
+		public void setTag( String tag )
+		{
+		}
+	}
+
+	private static class Named
+	{
+		Named( String name )
+		{
+		}
+	}
+
+	private static class Failing
+	{
+		Failing( )
+		{
+			throw new IllegalStateException( );
+		}
+	}
+}
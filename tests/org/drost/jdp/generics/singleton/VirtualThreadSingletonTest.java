@@ -0,0 +1,413 @@
+/*
+ * This file is part of the application library that simplifies common
+ * initialization and helps setting up any java program.
+ *
+ * Copyright (C) 2016 Yannick Drost, all rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.drost.jdp.generics.singleton;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Requests a singleton from thousands of virtual threads while its
+ * constructor blocks. If waiting for the constructor pinned the carrier
+ * threads, no other virtual thread could run until the constructor returns.
+ * Singletons of different classes must be created concurrently rather than
+ * one after another, so the time to create several of them must not grow with
+ * their number.
+ * <p>
+ * The test is meant to run on JDK 21 or later. Before JDK 21 the pinning test
+ * is skipped and the other tests request the singletons from a pool of
+ * platform threads instead. The throughput of looking up existing instances is
+ * measured by {@code SingletonBenchmark} in the {@code jmh} profile.
+ * </p>
+ * <p>
+ * The scenarios run in their own class loader, so the singletons they create
+ * are not registered with the {@code Singleton} class used by the other
+ * tests.
+ * </p>
+ */
+public class VirtualThreadSingletonTest
+{
+	private static final int THREAD_COUNT = 10000;
+
+	@Test
+	public void testNoCarrierStarvation( ) throws Exception
+	{
+		Assume.assumeTrue( "Virtual threads require JDK 21", virtualThreadExecutor( ) != null );
+
+		int[] result = runIsolated( "run", THREAD_COUNT );
+
+		assertEquals( "Other virtual threads made progress", 1, result[0] );
+		assertEquals( "Instances created", 1, result[1] );
+		assertEquals( "Callers receiving the instance", THREAD_COUNT, result[2] );
+		assertFalse( Singleton.isInstance( SlowSingleton.class ) );
+	}
+
+	@Test
+	public void testIndependentClasses( ) throws Exception
+	{
+		int[] result = runIsolated( "runPaired", THREAD_COUNT );
+
+		assertEquals( "Instances created", 2, result[0] );
+		assertEquals( "Callers receiving their instance", THREAD_COUNT, result[1] );
+		assertFalse( Singleton.isInstance( PairedSingleton.class ) );
+	}
+
+	@Test
+	public void testScaling( ) throws Exception
+	{
+		int[] result = runIsolated( "runScaling", THREAD_COUNT );
+		int classCount = result[0];
+
+		assertEquals( "Instances created", classCount, result[1] );
+		assertEquals( "Callers receiving their instance", THREAD_COUNT, result[2] );
+
+		// Created one after another, the singletons would take the sum of
+		// their constructor times.
+		long sequential = classCount * SleepingSingleton.MILLIS;
+		assertTrue( "Created in " + result[3] + " ms instead of about " + SleepingSingleton.MILLIS + " ms",
+				result[3] < sequential / 2 );
+	}
+
+	/**
+	 * Invokes a method of {@link Scenario} loaded by a separate class loader.
+	 */
+	private static int[] runIsolated( String method, int threadCount ) throws Exception
+	{
+		URL[] classPath = { Singleton.class.getProtectionDomain( ).getCodeSource( ).getLocation( ),
+				VirtualThreadSingletonTest.class.getProtectionDomain( ).getCodeSource( ).getLocation( ) };
+
+		try( URLClassLoader loader = new URLClassLoader( classPath, ClassLoader.getPlatformClassLoader( ) ) )
+		{
+			Class<?> scenario = loader.loadClass( Scenario.class.getName( ) );
+			assertNotSame( Scenario.class, scenario );
+
+			return (int[]) scenario.getMethod( method, int.class ).invoke( null, threadCount );
+		}
+	}
+
+	/**
+	 * Returns a new executor running each task in a virtual thread or
+	 * {@code null} before JDK 21.
+	 */
+	static ExecutorService virtualThreadExecutor( ) throws Exception
+	{
+		Method factory;
+
+		try
+		{
+			factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+		}
+		catch ( NoSuchMethodException e )
+		{
+			return null;
+		}
+
+		return (ExecutorService) factory.invoke( null );
+	}
+
+	/**
+	 * Returns a new executor running each task in a virtual thread or, before
+	 * JDK 21, in a pool of platform threads.
+	 */
+	static ExecutorService executor( ) throws Exception
+	{
+		ExecutorService executor = virtualThreadExecutor( );
+
+		return executor != null ? executor : Executors.newFixedThreadPool( 64 );
+	}
+
+	/**
+	 * The scenario, loaded by a separate class loader.
+	 */
+	public static final class Scenario
+	{
+		/**
+		 * Returns whether other virtual threads made progress while the
+		 * constructor blocked, the number of created instances and the number
+		 * of callers that received the instance.
+		 */
+		public static int[] run( int threadCount ) throws Exception
+		{
+			ExecutorService executor = virtualThreadExecutor( );
+
+			try
+			{
+				List<Future<Object>> futures = new ArrayList<Future<Object>>( threadCount );
+
+				for( int i = 0; i < threadCount; i++ )
+				{
+					futures.add( executor.submit( new Callable<Object>( )
+					{
+						@Override
+						public Object call( ) throws Exception
+						{
+							return Singleton.getInstance( SlowSingleton.class );
+						}
+					} ) );
+				}
+
+				if( !SlowSingleton.STARTED.await( 30, TimeUnit.SECONDS ) )
+					throw new IllegalStateException( "The constructor has not been invoked." );
+
+				// Runs while the constructor still blocks and all other callers wait.
+				int otherCount = 1000;
+				final CountDownLatch others = new CountDownLatch( otherCount );
+
+				for( int i = 0; i < otherCount; i++ )
+				{
+					executor.submit( new Callable<Object>( )
+					{
+						@Override
+						public Object call( ) throws Exception
+						{
+							Thread.sleep( 1 );
+							others.countDown( );
+							return null;
+						}
+					} );
+				}
+
+				boolean progressed = others.await( 30, TimeUnit.SECONDS );
+				SlowSingleton.RELEASE.countDown( );
+
+				Object instance = Singleton.getInstance( SlowSingleton.class );
+				int received = 0;
+
+				for( Future<Object> future : futures )
+					if( future.get( 30, TimeUnit.SECONDS ) == instance )
+						received++;
+
+				return new int[] { progressed ? 1 : 0, SlowSingleton.INSTANCES.get( ), received };
+			}
+			finally
+			{
+				SlowSingleton.RELEASE.countDown( );
+				executor.shutdown( );
+			}
+		}
+
+		/**
+		 * Returns the number of created instances and the number of callers
+		 * that received the instance of their class, half of them requesting
+		 * each of two classes whose constructors wait for each other.
+		 */
+		public static int[] runPaired( int threadCount ) throws Exception
+		{
+			ExecutorService executor = executor( );
+
+			try
+			{
+				List<Future<Object>> futures = new ArrayList<Future<Object>>( threadCount );
+
+				for( int i = 0; i < threadCount; i++ )
+				{
+					final Class<?> type = i % 2 == 0 ? PairedSingleton.class : OtherPairedSingleton.class;
+
+					futures.add( executor.submit( new Callable<Object>( )
+					{
+						@Override
+						public Object call( ) throws Exception
+						{
+							return Singleton.getInstance( type );
+						}
+					} ) );
+				}
+
+				int received = 0;
+
+				for( int i = 0; i < threadCount; i++ )
+				{
+					Class<?> type = i % 2 == 0 ? PairedSingleton.class : OtherPairedSingleton.class;
+
+					if( type.isInstance( futures.get( i ).get( 30, TimeUnit.SECONDS ) ) )
+						received++;
+				}
+
+				return new int[] { PairedSingleton.INSTANCES.get( ), received };
+			}
+			finally
+			{
+				executor.shutdown( );
+			}
+		}
+
+		/**
+		 * Returns the number of singleton classes, the number of created
+		 * instances, the number of callers that received the instance of their
+		 * class and the time in milliseconds until all callers received it. The
+		 * callers request eight copies of {@link SleepingSingleton}.
+		 */
+		public static int[] runScaling( int threadCount ) throws Exception
+		{
+			Class<?>[] types = new Class<?>[8];
+
+			for( int i = 0; i < types.length; i++ )
+				types[i] = new CopyingClassLoader( ).copy( SleepingSingleton.class );
+
+			ExecutorService executor = executor( );
+
+			try
+			{
+				List<Future<Object>> futures = new ArrayList<Future<Object>>( threadCount );
+				long start = System.nanoTime( );
+
+				for( int i = 0; i < threadCount; i++ )
+				{
+					final Class<?> type = types[i % types.length];
+
+					futures.add( executor.submit( new Callable<Object>( )
+					{
+						@Override
+						public Object call( ) throws Exception
+						{
+							return Singleton.getInstance( type );
+						}
+					} ) );
+				}
+
+				int received = 0;
+
+				for( int i = 0; i < threadCount; i++ )
+					if( types[i % types.length].isInstance( futures.get( i ).get( 30, TimeUnit.SECONDS ) ) )
+						received++;
+
+				long millis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - start );
+				int created = 0;
+
+				for( Class<?> type : types )
+					if( Singleton.isInstance( type ) )
+						created++;
+
+				return new int[] { types.length, created, received, (int) millis };
+			}
+			finally
+			{
+				executor.shutdown( );
+			}
+		}
+	}
+
+	/**
+	 * A singleton whose constructor blocks until it is released, like a
+	 * constructor performing slow I/O.
+	 */
+	static final class SlowSingleton
+	{
+		static final CountDownLatch STARTED = new CountDownLatch( 1 );
+
+		static final CountDownLatch RELEASE = new CountDownLatch( 1 );
+
+		static final AtomicInteger INSTANCES = new AtomicInteger( );
+
+		private SlowSingleton( ) throws InterruptedException
+		{
+			INSTANCES.incrementAndGet( );
+			STARTED.countDown( );
+			RELEASE.await( );
+		}
+	}
+
+	/**
+	 * A singleton whose constructor only returns once the constructor of
+	 * {@link OtherPairedSingleton} has been invoked as well, so both can only
+	 * be created if different classes do not wait for each other.
+	 */
+	static final class PairedSingleton
+	{
+		static final CountDownLatch PAIR = new CountDownLatch( 2 );
+
+		static final AtomicInteger INSTANCES = new AtomicInteger( );
+
+		private PairedSingleton( ) throws InterruptedException
+		{
+			INSTANCES.incrementAndGet( );
+			PAIR.countDown( );
+
+			if( !PAIR.await( 10, TimeUnit.SECONDS ) )
+				throw new IllegalStateException( "The singletons have been created one after another." );
+		}
+	}
+
+	static final class OtherPairedSingleton
+	{
+		private OtherPairedSingleton( ) throws InterruptedException
+		{
+			PairedSingleton.INSTANCES.incrementAndGet( );
+			PairedSingleton.PAIR.countDown( );
+
+			if( !PairedSingleton.PAIR.await( 10, TimeUnit.SECONDS ) )
+				throw new IllegalStateException( "The singletons have been created one after another." );
+		}
+	}
+
+	/**
+	 * A singleton whose constructor takes a fixed time. Every copy defined by
+	 * a {@link CopyingClassLoader} is a distinct singleton class.
+	 */
+	static final class SleepingSingleton
+	{
+		static final long MILLIS = 250;
+
+		private SleepingSingleton( ) throws InterruptedException
+		{
+			Thread.sleep( MILLIS );
+		}
+	}
+
+	/**
+	 * Defines a copy of a class read from the class file of the original.
+	 */
+	static final class CopyingClassLoader extends ClassLoader
+	{
+		CopyingClassLoader( )
+		{
+			super( CopyingClassLoader.class.getClassLoader( ) );
+		}
+
+		Class<?> copy( Class<?> type ) throws IOException
+		{
+			String name = type.getName( );
+			byte[] bytes;
+
+			try( InputStream in = getParent( ).getResourceAsStream( name.replace( '.', '/' ) + ".class" ) )
+			{
+				bytes = in.readAllBytes( );
+			}
+
+			return defineClass( name, bytes, 0, bytes.length );
+		}
+	}
+}